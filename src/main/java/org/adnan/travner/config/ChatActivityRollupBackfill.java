@@ -0,0 +1,52 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.service.ChatActivityRollupService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Builds the hourly chat activity rollups from message history on the first start
+ * after they were introduced. Hours before the current one are rebuilt; the current
+ * hour is left to the live updates, so it may miss messages sent just before the
+ * upgrade. Does nothing once any past hour has a rollup. Runs after the bucket
+ * migration so history moved into buckets is counted.
+ */
+@Component
+@Order(3)
+@Slf4j
+public class ChatActivityRollupBackfill implements CommandLineRunner {
+
+    private final ChatActivityRollupService rollupService;
+    private final boolean enabled;
+
+    public ChatActivityRollupBackfill(ChatActivityRollupService rollupService,
+            @Value("${app.chat.migrations.activity-rollups:true}") boolean enabled) {
+        this.rollupService = rollupService;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            LocalDateTime until = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS);
+            if (rollupService.hasRollupsBefore(until)) {
+                return;
+            }
+            int hours = rollupService.backfill(LocalDateTime.of(1970, 1, 1, 0, 0), until);
+            if (hours > 0) {
+                log.info("Backfilled chat activity rollups for {} hours", hours);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping chat activity rollup backfill: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.ChatConversation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Gives direct conversations created before pair keys their key. Where earlier
+ * races left several conversations for one pair, the oldest gets the key and is
+ * the one opened from then on; the unique index turns the others away and they
+ * stay reachable by id. Does nothing once every direct conversation has a key.
+ */
+@Component
+@Order(4)
+@Slf4j
+public class ChatDirectPairKeyMigration implements CommandLineRunner {
+
+    private final MongoTemplate mongoTemplate;
+    private final boolean enabled;
+
+    public ChatDirectPairKeyMigration(MongoTemplate mongoTemplate,
+            @Value("${app.chat.migrations.direct-pair-keys:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Query unkeyed = new Query(Criteria.where("type").is("DIRECT").and("pairKey").exists(false))
+                    .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+            unkeyed.fields().include("participantIds");
+            int keyed = 0;
+            int duplicates = 0;
+            try (Stream<ChatConversation> conversations = mongoTemplate.stream(unkeyed, ChatConversation.class)) {
+                for (ChatConversation conversation : (Iterable<ChatConversation>) conversations::iterator) {
+                    List<String> participants = conversation.getParticipantIds();
+                    if (participants == null || participants.size() != 2) {
+                        continue;
+                    }
+                    try {
+                        mongoTemplate.updateFirst(
+                                new Query(Criteria.where("_id").is(conversation.getId()).and("pairKey").exists(false)),
+                                new Update().set("pairKey",
+                                        ChatConversation.directPairKey(participants.get(0), participants.get(1))),
+                                ChatConversation.class);
+                        keyed++;
+                    } catch (DuplicateKeyException e) {
+                        duplicates++;
+                    }
+                }
+            }
+            if (keyed > 0 || duplicates > 0) {
+                log.info("Keyed {} direct conversations by user pair; {} duplicates left unkeyed", keyed, duplicates);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping direct conversation pair key migration: {}", e.getMessage());
+        }
+    }
+}
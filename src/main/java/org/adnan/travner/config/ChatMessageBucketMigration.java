@@ -0,0 +1,256 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.domain.message.Message;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatMessageBucket;
+import org.adnan.travner.repository.ChatSequenceCounter;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Copies chat history into chat_message_buckets for app.chat.storage.mode=bucketed.
+ * Each conversation's chat_messages and (not deleted) messages documents are merged
+ * by creation time and written bucket by bucket; both are streamed, so only one
+ * bucket per conversation is held at a time. Messages keep the sequence they were
+ * stored with; ones stored without a sequence are numbered in creation order around
+ * them, below the first stored sequence when they are older than it. The sequence
+ * counter is then raised past the conversation's last number.
+ * <p>
+ * A finished conversation gets a migration marker. A conversation with buckets but
+ * no marker was interrupted, and is resumed after its last written bucket; buckets
+ * are inserted whole and in order, so the ones present are a complete prefix. The
+ * source collections are left alone. Opt-in: run it, with no chat traffic, before
+ * switching the storage mode.
+ */
+@Component
+@Order(2)
+@Slf4j
+public class ChatMessageBucketMigration implements CommandLineRunner {
+
+    static final String MARKER_PREFIX = "chat-message-buckets:";
+    private static final int BUCKETS_PER_INSERT = 20;
+
+    private final MongoTemplate mongoTemplate;
+    private final MigrationMarkers markers;
+    private final ChatSequenceCounter sequences;
+    private final int bucketSize;
+    private final boolean enabled;
+
+    public ChatMessageBucketMigration(MongoTemplate mongoTemplate, MigrationMarkers markers,
+            ChatSequenceCounter sequences,
+            @Value("${app.chat.storage.bucket-size:100}") int bucketSize,
+            @Value("${app.chat.migrations.message-buckets:false}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.markers = markers;
+        this.sequences = sequences;
+        this.bucketSize = bucketSize;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Set<String> conversationIds = new TreeSet<>(
+                    mongoTemplate.findDistinct(new Query(), "conversationId", ChatMessage.class, String.class));
+            mongoTemplate.findDistinct(new Query(), "conversationId", Message.class, ObjectId.class)
+                    .forEach(id -> conversationIds.add(id.toHexString()));
+            int migrated = 0;
+            long messages = 0;
+            for (String conversationId : conversationIds) {
+                if (markers.isDone(MARKER_PREFIX + conversationId)) {
+                    continue;
+                }
+                try {
+                    messages += migrateConversation(conversationId);
+                    markers.markDone(MARKER_PREFIX + conversationId);
+                    migrated++;
+                } catch (DuplicateKeyException e) {
+                    log.warn("Conversation {} received bucketed writes during migration, skipped", conversationId);
+                }
+            }
+            if (migrated > 0) {
+                log.info("Migrated {} messages of {} conversations to buckets", messages, migrated);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping chat message bucket migration: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @return number of messages written
+     */
+    long migrateConversation(String conversationId) {
+        Query chatQuery = new Query(Criteria.where("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+        Query domainQuery = ObjectId.isValid(conversationId)
+                ? domainQuery(conversationId).with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"))
+                : null;
+        long written = lastWrittenBucket(conversationId);
+
+        long sequence = firstSequence(conversationId) - 1;
+        long renumbered = 0;
+        long count = 0;
+        List<ChatMessage> current = new ArrayList<>(bucketSize);
+        List<ChatMessageBucket> pending = new ArrayList<>(BUCKETS_PER_INSERT);
+        try (Stream<ChatMessage> chat = mongoTemplate.stream(chatQuery, ChatMessage.class);
+                Stream<Message> domain = domainQuery != null
+                        ? mongoTemplate.stream(domainQuery, Message.class) : Stream.empty()) {
+            Iterator<ChatMessage> left = chat.iterator();
+            Iterator<ChatMessage> right = domain.map(message -> toChatMessage(conversationId, message)).iterator();
+            ChatMessage nextLeft = left.hasNext() ? left.next() : null;
+            ChatMessage nextRight = right.hasNext() ? right.next() : null;
+            while (nextLeft != null || nextRight != null) {
+                ChatMessage message;
+                if (nextRight == null || (nextLeft != null && !isAfter(nextLeft, nextRight))) {
+                    message = nextLeft;
+                    nextLeft = left.hasNext() ? left.next() : null;
+                } else {
+                    message = nextRight;
+                    nextRight = right.hasNext() ? right.next() : null;
+                }
+                Long stored = message.getSequence();
+                sequence = stored != null && stored > sequence ? stored : sequence + 1;
+                if (stored != null && stored != sequence) {
+                    renumbered++;
+                }
+                long bucket = bucketOf(sequence);
+                if (bucket <= written) {
+                    continue;
+                }
+                if (!current.isEmpty() && bucketOf(current.get(0).getSequence()) != bucket) {
+                    pending.add(bucket(conversationId, current));
+                    current = new ArrayList<>(bucketSize);
+                    if (pending.size() == BUCKETS_PER_INSERT) {
+                        mongoTemplate.insert(pending, ChatMessageBucket.class);
+                        pending.clear();
+                    }
+                }
+                message.setSequence(sequence);
+                message.setReadBy(null);
+                current.add(message);
+                count++;
+            }
+        }
+        if (!current.isEmpty()) {
+            pending.add(bucket(conversationId, current));
+        }
+        if (!pending.isEmpty()) {
+            mongoTemplate.insert(pending, ChatMessageBucket.class);
+        }
+        if (renumbered > 0) {
+            log.warn("Conversation {} had {} messages whose sequence clashed with older ones, renumbered",
+                    conversationId, renumbered);
+        }
+        sequences.seed(conversationId, sequence);
+        return count;
+    }
+
+    /**
+     * Number for the oldest message: the first stored sequence less the messages
+     * stored without one before it, or 1 when no message has a sequence
+     */
+    private long firstSequence(String conversationId) {
+        Query firstSequenced = new Query(Criteria.where("conversationId").is(conversationId)
+                .and("sequence").ne(null))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"));
+        firstSequenced.fields().include("sequence", "createdAt");
+        ChatMessage first = mongoTemplate.findOne(firstSequenced, ChatMessage.class);
+        if (first == null || first.getCreatedAt() == null) {
+            return 1;
+        }
+        long older = mongoTemplate.count(new Query(Criteria.where("conversationId").is(conversationId)
+                .and("sequence").is(null).and("createdAt").lt(first.getCreatedAt())), ChatMessage.class);
+        if (ObjectId.isValid(conversationId)) {
+            Instant before = first.getCreatedAt().atZone(ZoneId.systemDefault()).toInstant();
+            older += mongoTemplate.count(domainQuery(conversationId).addCriteria(Criteria.where("createdAt").lt(before)),
+                    Message.class);
+        }
+        return first.getSequence() - older;
+    }
+
+    /**
+     * Highest bucket an interrupted run already wrote, Long.MIN_VALUE when there is none
+     */
+    private long lastWrittenBucket(String conversationId) {
+        Query query = new Query(Criteria.where("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.DESC, "bucket")).limit(1);
+        query.fields().include("bucket");
+        ChatMessageBucket last = mongoTemplate.findOne(query, ChatMessageBucket.class);
+        return last != null ? last.getBucket() : Long.MIN_VALUE;
+    }
+
+    private static Query domainQuery(String conversationId) {
+        return new Query(Criteria.where("conversationId").is(new ObjectId(conversationId)).and("deletedAt").is(null));
+    }
+
+    private long bucketOf(long sequence) {
+        return Math.floorDiv(sequence - 1, bucketSize);
+    }
+
+    private ChatMessageBucket bucket(String conversationId, List<ChatMessage> messages) {
+        ChatMessage first = messages.get(0);
+        ChatMessage last = messages.get(messages.size() - 1);
+        long bucket = bucketOf(first.getSequence());
+        return ChatMessageBucket.builder()
+                .id(ChatMessageBucket.idOf(conversationId, bucket))
+                .conversationId(conversationId)
+                .bucket(bucket)
+                .count(messages.size())
+                .firstSequence(first.getSequence())
+                .lastSequence(last.getSequence())
+                .firstAt(first.getCreatedAt())
+                .lastAt(last.getCreatedAt())
+                .messages(messages)
+                .build();
+    }
+
+    private static boolean isAfter(ChatMessage a, ChatMessage b) {
+        if (a.getCreatedAt() == null || b.getCreatedAt() == null) {
+            return a.getCreatedAt() != null;
+        }
+        return a.getCreatedAt().isAfter(b.getCreatedAt());
+    }
+
+    private static ChatMessage toChatMessage(String conversationId, Message message) {
+        return ChatMessage.builder()
+                .id(message.getId().toHexString())
+                .conversationId(conversationId)
+                .senderId(message.getSenderId() != null ? message.getSenderId().toHexString() : null)
+                .senderUsername(message.getSenderUsername())
+                .content(message.getContent())
+                .messageType(message.getKind() != null ? message.getKind().name() : "TEXT")
+                .createdAt(toLocal(message.getCreatedAt()))
+                .updatedAt(toLocal(message.getUpdatedAt()))
+                .isEdited(message.isEdited())
+                .replyToMessageId(message.getReplyToMessageId() != null
+                        ? message.getReplyToMessageId().toHexString() : null)
+                .status("DELIVERED")
+                .build();
+    }
+
+    private static LocalDateTime toLocal(Instant instant) {
+        return instant != null ? LocalDateTime.ofInstant(instant, ZoneId.systemDefault()) : null;
+    }
+}
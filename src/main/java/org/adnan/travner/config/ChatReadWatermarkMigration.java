@@ -0,0 +1,98 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatMessage;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Converts the legacy per-message readBy lists into per-member read watermarks.
+ * For every member the newest message they had read becomes their watermark and
+ * the readBy field is then removed. Completion is recorded in {@link MigrationMarkers}
+ * so later starts skip the readBy scan altogether.
+ */
+@Component
+@Order(1)
+@Slf4j
+public class ChatReadWatermarkMigration implements CommandLineRunner {
+
+    static final String MARKER = "chat-read-watermarks";
+
+    private final MongoTemplate mongoTemplate;
+    private final MigrationMarkers markers;
+    private final boolean enabled;
+
+    public ChatReadWatermarkMigration(MongoTemplate mongoTemplate, MigrationMarkers markers,
+            @Value("${app.chat.migrations.read-watermarks:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.markers = markers;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (markers.isDone(MARKER)) {
+                return;
+            }
+            List<String> conversationIds = mongoTemplate.findDistinct(
+                    new Query(Criteria.where("readBy").exists(true)), "conversationId", ChatMessage.class, String.class);
+            for (String conversationId : conversationIds) {
+                migrateConversation(conversationId);
+            }
+            if (!conversationIds.isEmpty()) {
+                log.info("Migrated read state of {} conversations to read watermarks", conversationIds.size());
+            }
+            markers.markDone(MARKER);
+        } catch (Exception e) {
+            log.warn("Skipping read watermark migration: {}", e.getMessage());
+        }
+    }
+
+    void migrateConversation(String conversationId) {
+        ChatConversation conversation = mongoTemplate.findById(conversationId, ChatConversation.class);
+        List<String> participants = conversation != null && conversation.getParticipantIds() != null
+                ? conversation.getParticipantIds() : List.of();
+
+        for (String userId : participants) {
+            Query lastRead = new Query(Criteria.where("conversationId").is(conversationId).and("readBy").is(userId))
+                    .with(Sort.by(Sort.Direction.DESC, "createdAt"))
+                    .limit(1);
+            lastRead.fields().include("_id").include("createdAt");
+            ChatMessage watermark = mongoTemplate.findOne(lastRead, ChatMessage.class);
+
+            long unread = mongoTemplate.count(new Query(Criteria.where("conversationId").is(conversationId)
+                    .and("senderId").ne(userId)
+                    .and("readBy").ne(userId)), ChatMessage.class);
+
+            Update update = new Update()
+                    .set("unreadCount", unread)
+                    .setOnInsert("role", ConversationMembership.MemberRole.MEMBER)
+                    .setOnInsert("joinedAt", Instant.now());
+            if (watermark != null) {
+                update.set("lastReadMessageId", watermark.getId())
+                        .set("lastReadMessageAt", watermark.getCreatedAt());
+            }
+            mongoTemplate.upsert(new Query(Criteria.where("conversationId").is(conversationId).and("userId").is(userId)),
+                    update, ConversationMembership.class);
+        }
+
+        mongoTemplate.updateMulti(new Query(Criteria.where("conversationId").is(conversationId).and("readBy").exists(true)),
+                new Update().unset("readBy"), ChatMessage.class);
+    }
+}
@@ -0,0 +1,97 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatRecentContacts;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.service.ChatRecentContactsService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Builds recent contact lists from existing direct conversations, oldest activity
+ * first so each list ends up newest first. Runs after the storage and pair key
+ * migrations and does nothing once any list exists.
+ */
+@Component
+@Order(5)
+@Slf4j
+public class ChatRecentContactsBackfill implements CommandLineRunner {
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatMessageStore messageStore;
+    private final ChatRecentContactsService recentContacts;
+    private final boolean enabled;
+
+    public ChatRecentContactsBackfill(MongoTemplate mongoTemplate, ChatMessageStore messageStore,
+            ChatRecentContactsService recentContacts,
+            @Value("${app.chat.migrations.recent-contacts:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageStore = messageStore;
+        this.recentContacts = recentContacts;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (mongoTemplate.exists(new Query(), ChatRecentContacts.class)) {
+                return;
+            }
+            Query direct = new Query(Criteria.where("type").is("DIRECT").and("lastMessageAt").ne(null))
+                    .with(Sort.by(Sort.Direction.ASC, "lastMessageAt"));
+            int conversations = 0;
+            try (Stream<ChatConversation> stream = mongoTemplate.stream(direct, ChatConversation.class)) {
+                for (ChatConversation conversation : (Iterable<ChatConversation>) stream::iterator) {
+                    List<String> participants = conversation.getParticipantIds();
+                    if (participants == null || participants.size() != 2) {
+                        continue;
+                    }
+                    seed(conversation, participants);
+                    conversations++;
+                }
+            }
+            if (conversations > 0) {
+                log.info("Built recent contacts from {} direct conversations", conversations);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping recent contacts backfill: {}", e.getMessage());
+        }
+    }
+
+    private void seed(ChatConversation conversation, List<String> participants) {
+        String conversationId = conversation.getId();
+        Optional<ChatMessage> latest = messageStore.findLatest(conversationId);
+        long messageCount = messageStore.countByConversation(conversationId);
+        for (int i = 0; i < 2; i++) {
+            String userId = participants.get(i);
+            ConversationMembership membership = mongoTemplate.findOne(new Query(Criteria.where("conversationId")
+                    .is(conversationId).and("userId").is(userId)), ConversationMembership.class);
+            recentContacts.seed(userId, ChatRecentContacts.Contact.builder()
+                    .peerId(participants.get(1 - i))
+                    .conversationId(conversationId)
+                    .lastMessage(ChatRecentContactsService.preview(
+                            latest.map(ChatMessage::getContent).orElse(conversation.getLastMessage())))
+                    .lastSenderId(latest.map(ChatMessage::getSenderId).orElse(null))
+                    .lastMessageAt(latest.map(ChatMessage::getCreatedAt).orElse(conversation.getLastMessageAt()))
+                    .unread(membership != null ? membership.getUnreadCount() : 0)
+                    .messageCount(messageCount)
+                    .build());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatSearchEntry;
+import org.adnan.travner.service.ChatSearchService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.stream.Stream;
+
+/**
+ * Indexes existing history for message search, streaming conversations and each
+ * conversation's messages a page at a time. Runs after the storage migrations and
+ * does nothing once the index has any entry.
+ */
+@Component
+@Order(6)
+@Slf4j
+public class ChatSearchIndexBackfill implements CommandLineRunner {
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatSearchService searchService;
+    private final boolean enabled;
+
+    public ChatSearchIndexBackfill(MongoTemplate mongoTemplate, ChatSearchService searchService,
+            @Value("${app.chat.migrations.search-index:true}") boolean enabled) {
+        this.mongoTemplate = mongoTemplate;
+        this.searchService = searchService;
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (mongoTemplate.exists(new Query(), ChatSearchEntry.class)) {
+                return;
+            }
+            Query withMessages = new Query(Criteria.where("lastMessageAt").ne(null));
+            withMessages.fields().include("_id");
+            int conversations = 0;
+            long messages = 0;
+            try (Stream<ChatConversation> stream = mongoTemplate.stream(withMessages, ChatConversation.class)) {
+                for (ChatConversation conversation : (Iterable<ChatConversation>) stream::iterator) {
+                    messages += searchService.rebuild(conversation.getId());
+                    conversations++;
+                }
+            }
+            if (messages > 0) {
+                log.info("Indexed {} messages from {} conversations for search", messages, conversations);
+            }
+        } catch (Exception e) {
+            log.warn("Skipping search index backfill: {}", e.getMessage());
+        }
+    }
+}
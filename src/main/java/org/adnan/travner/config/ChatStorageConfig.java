@@ -0,0 +1,34 @@
+package org.adnan.travner.config;
+
+import org.adnan.travner.repository.BucketedChatMessageStore;
+import org.adnan.travner.repository.ChatMessageRepository;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.repository.DocumentChatMessageStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+/**
+ * Chooses how chat history is stored: one document per message, or buckets of
+ * messages per conversation. Switching to buckets needs ChatMessageBucketMigration
+ * to have copied the existing history first.
+ */
+@Configuration
+public class ChatStorageConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.chat.storage.mode", havingValue = "bucketed")
+    public ChatMessageStore bucketedChatMessageStore(MongoTemplate mongoTemplate,
+            @Value("${app.chat.storage.bucket-size:100}") int bucketSize) {
+        return new BucketedChatMessageStore(mongoTemplate, bucketSize);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.chat.storage.mode", havingValue = "document", matchIfMissing = true)
+    public ChatMessageStore documentChatMessageStore(ChatMessageRepository chatMessageRepository,
+            MongoTemplate mongoTemplate) {
+        return new DocumentChatMessageStore(chatMessageRepository, mongoTemplate);
+    }
+}
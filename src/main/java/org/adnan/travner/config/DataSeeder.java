@@ -23,7 +23,7 @@ public class DataSeeder implements CommandLineRunner {
     private final UserRepository userRepository;
     private final PostRepository postRepository;
     private final ChatConversationRepository chatConversationRepository;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageStore messageStore;
     private final CommentRepository commentRepository;
     private final ItineraryRepository itineraryRepository;
     private final LocalGuideRepository localGuideRepository;
@@ -237,6 +237,7 @@ public class DataSeeder implements CommandLineRunner {
             .title("Direct Message")
             .type("DIRECT")
             .participantIds(Arrays.asList(users.get(0).getId().toString(), users.get(1).getId().toString()))
+            .pairKey(ChatConversation.directPairKey(users.get(0).getId().toString(), users.get(1).getId().toString()))
             .createdAt(LocalDateTime.now().minusDays(5))
             .build();
         
@@ -244,6 +245,7 @@ public class DataSeeder implements CommandLineRunner {
             .title("Direct Message")
             .type("DIRECT")
             .participantIds(Arrays.asList(users.get(1).getId().toString(), users.get(2).getId().toString()))
+            .pairKey(ChatConversation.directPairKey(users.get(1).getId().toString(), users.get(2).getId().toString()))
             .createdAt(LocalDateTime.now().minusDays(3))
             .build();
         
@@ -260,6 +262,7 @@ public class DataSeeder implements CommandLineRunner {
         List<ChatMessage> messages = Arrays.asList(
             ChatMessage.builder()
                 .conversationId(conversation.getId().toString())
+                .sequence(1L)
                 .senderId(participants.get(0).getId().toString())
                 .senderUsername(participants.get(0).getUserName())
                 .content("Hey everyone! How is your travel planning going?")
@@ -269,6 +272,7 @@ public class DataSeeder implements CommandLineRunner {
                 
             ChatMessage.builder()
                 .conversationId(conversation.getId().toString())
+                .sequence(2L)
                 .senderId(participants.get(1).getId().toString())
                 .senderUsername(participants.get(1).getUserName())
                 .content("Great! Just booked my flight to Japan. So excited!")
@@ -278,6 +282,7 @@ public class DataSeeder implements CommandLineRunner {
                 
             ChatMessage.builder()
                 .conversationId(conversation.getId().toString())
+                .sequence(3L)
                 .senderId(participants.get(0).getId().toString())
                 .senderUsername(participants.get(0).getUserName())
                 .content("That is awesome! I have been to Japan before. You will love it!")
@@ -286,7 +291,7 @@ public class DataSeeder implements CommandLineRunner {
                 .build()
         );
         
-        chatMessageRepository.saveAll(messages);
+        messageStore.append(conversation.getId().toString(), messages);
     }
 
     private void seedItineraries() {
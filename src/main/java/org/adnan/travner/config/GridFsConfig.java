@@ -1,5 +1,7 @@
 package org.adnan.travner.config;
 
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSBuckets;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
@@ -24,4 +26,16 @@ public class GridFsConfig {
         return new GridFsTemplate(mongoTemplate.getMongoDatabaseFactory(),
                 mongoTemplate.getConverter());
     }
+
+    /**
+     * The driver's bucket over the same default "fs" collections, for uploads that
+     * write chunks as the request body arrives
+     *
+     * @param mongoTemplate The MongoTemplate instance
+     * @return The default GridFS bucket
+     */
+    @Bean
+    public GridFSBucket gridFsBucket(MongoTemplate mongoTemplate) {
+        return GridFSBuckets.create(mongoTemplate.getDb());
+    }
 }
@@ -0,0 +1,34 @@
+package org.adnan.travner.config;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Completion markers for startup migrations, one document per finished unit of
+ * work in migration_markers, so a migration that has run (or the parts of it
+ * that have) is skipped on the next start.
+ */
+@Component
+@RequiredArgsConstructor
+public class MigrationMarkers {
+
+    static final String COLLECTION = "migration_markers";
+
+    private final MongoTemplate mongoTemplate;
+
+    public boolean isDone(String key) {
+        return mongoTemplate.exists(new Query(Criteria.where("_id").is(key)), COLLECTION);
+    }
+
+    public void markDone(String key) {
+        mongoTemplate.upsert(new Query(Criteria.where("_id").is(key)),
+                new Update().set("completedAt", Instant.now()), Document.class, COLLECTION);
+    }
+}
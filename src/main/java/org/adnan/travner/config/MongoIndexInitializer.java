@@ -0,0 +1,123 @@
+package org.adnan.travner.config;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatMessageBucket;
+import org.adnan.travner.entry.ChatSearchEntry;
+import org.adnan.travner.entry.MediaEntry;
+import org.adnan.travner.entry.UserEntry;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates the indexes that hot queries depend on.
+ * Automatic index creation is disabled in application.yml, so indexes declared
+ * with annotations are not built on their own; the ones listed here are.
+ */
+@Component
+@Order(0)
+@RequiredArgsConstructor
+@Slf4j
+public class MongoIndexInitializer implements CommandLineRunner {
+
+    private final MongoTemplate mongoTemplate;
+
+    private volatile boolean uniqueUserIndexes;
+
+    @Override
+    public void run(String... args) {
+        try {
+            // Multikey index backing role filters and role-based admin listings
+            ensureIndex(UserEntry.class, new Index().on("roles", Sort.Direction.ASC).named("roles_idx"));
+
+            // Per-member chat state: counter updates and the conversation list look up by both keys
+            ensureIndex(ConversationMembership.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("userId", Sort.Direction.ASC).unique().named("conversation_user_idx"));
+
+            // Direct conversations: one per pair of users, found and created by one upsert on this key
+            ensureIndex(ChatConversation.class, new Index().on("pairKey", Sort.Direction.ASC).unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("pairKey").type(JsonSchemaObject.Type.STRING)))
+                    .named("direct_pair_idx"));
+
+            // Chat history: cursor windows, latest message and mark-read all walk this index
+            ensureIndex(ChatMessage.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC)
+                    .named("conversation_created_idx"));
+
+            // Bucketed history: newest bucket of a conversation, and cursor lookups by message id
+            ensureIndex(ChatMessageBucket.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("bucket", Sort.Direction.DESC).named("conversation_bucket_idx"));
+            ensureIndex(ChatMessageBucket.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("messages._id", Sort.Direction.ASC).named("conversation_message_idx"));
+
+            // Message search: one key per term of each message, scanned within a conversation newest first
+            ensureIndex(ChatSearchEntry.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("terms", Sort.Direction.ASC).on("createdAt", Sort.Direction.DESC)
+                    .on("_id", Sort.Direction.DESC).named("conversation_term_idx"));
+
+            // Media served by stored filename
+            ensureIndex(MediaEntry.class, new Index().on("filename", Sort.Direction.ASC).named("filename_idx"));
+        } catch (Exception e) {
+            log.warn("Skipping index initialization, MongoDB not available: {}", e.getMessage());
+        }
+
+        // Seeds a conversation's sequence counter, and rejects a sequence handed out twice.
+        // Legacy messages without a sequence are left out of it.
+        try {
+            // Replaces the earlier non-unique index of the same name
+            mongoTemplate.indexOps(ChatMessage.class).getIndexInfo().stream()
+                    .filter(index -> "conversation_sequence_idx".equals(index.getName()) && !index.isUnique())
+                    .findFirst()
+                    .ifPresent(index -> mongoTemplate.indexOps(ChatMessage.class).dropIndex(index.getName()));
+            ensureIndex(ChatMessage.class, new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("sequence", Sort.Direction.DESC).unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("sequence").exists(true)))
+                    .named("conversation_sequence_idx"));
+        } catch (Exception e) {
+            log.warn("Unique conversation_sequence_idx not built, duplicate sequences go undetected: {}",
+                    e.getMessage());
+            try {
+                ensureIndex(ChatMessage.class, new Index().on("conversationId", Sort.Direction.ASC)
+                        .on("sequence", Sort.Direction.DESC).named("conversation_sequence_idx"));
+            } catch (Exception ignored) {
+                // Already logged above
+            }
+        }
+
+        // Registration relies on these to reject duplicates instead of check-then-insert.
+        // An existing duplicate fails the build; registration then checks before inserting.
+        try {
+            ensureIndex(UserEntry.class, new Index().on("userName", Sort.Direction.ASC).unique().named("userName"));
+            ensureIndex(UserEntry.class, new Index().on("email", Sort.Direction.ASC).unique()
+                    .partial(PartialIndexFilter.of(Criteria.where("email").type(JsonSchemaObject.Type.STRING)))
+                    .named("email"));
+            uniqueUserIndexes = true;
+        } catch (Exception e) {
+            log.warn("Unique userName/email indexes not built, registration falls back to duplicate checks: {}",
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Whether the unique userName and email indexes are in place to reject duplicate registrations
+     */
+    public boolean hasUniqueUserIndexes() {
+        return uniqueUserIndexes;
+    }
+
+    private void ensureIndex(Class<?> entityClass, IndexDefinition index) {
+        String name = mongoTemplate.indexOps(entityClass).createIndex(index);
+        log.debug("Ensured index {} on {}", name, mongoTemplate.getCollectionName(entityClass));
+    }
+}
@@ -0,0 +1,52 @@
+package org.adnan.travner.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.service.LocalPresenceSync;
+import org.adnan.travner.service.PresenceSync;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chooses how presence is shared between nodes: in-process only, or Redis pub/sub.
+ * Presence, membership cache invalidations, identity filter additions and follow graph
+ * patches travel over this channel, so a shared (external) broker with in-process sync
+ * is refused unless the deployment declares itself single-node.
+ */
+@Slf4j
+@Configuration
+public class PresenceSyncConfig {
+
+    @Bean
+    @ConditionalOnProperty(name = "app.chat.presence.sync", havingValue = "redis")
+    public PresenceSync redisPresenceSync(
+            @Value("${app.cache.redis.host:localhost}") String host,
+            @Value("${app.cache.redis.port:6379}") int port,
+            @Value("${app.cache.redis.password:}") String password,
+            @Value("${app.cache.redis.timeout:2000}") int timeoutMillis,
+            @Value("${app.chat.presence.node-heartbeat-seconds:10}") long nodeHeartbeatSeconds,
+            ObjectMapper objectMapper) {
+        return new RedisPresenceSync(host, port, password, timeoutMillis,
+                (int) (nodeHeartbeatSeconds * 1000 * 3), objectMapper);
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "app.chat.presence.sync", havingValue = "local", matchIfMissing = true)
+    public PresenceSync localPresenceSync(
+            @Value("${app.chat.broker.type:simple}") String brokerType,
+            @Value("${app.chat.presence.single-node:false}") boolean singleNode) {
+        if ("external".equalsIgnoreCase(brokerType)) {
+            if (!singleNode) {
+                throw new IllegalStateException("app.chat.broker.type=external shares the broker between nodes, "
+                        + "but app.chat.presence.sync=local keeps presence and cache invalidations on this node; "
+                        + "set app.chat.presence.sync=redis, or app.chat.presence.single-node=true if only one "
+                        + "node runs");
+            }
+            log.warn("External broker with local presence sync: other nodes will not see presence or "
+                    + "cache invalidations from this one");
+        }
+        return new LocalPresenceSync();
+    }
+}
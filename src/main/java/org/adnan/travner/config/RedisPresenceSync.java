@@ -0,0 +1,306 @@
+package org.adnan.travner.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.service.PresenceSync;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * Presence channel over Redis pub/sub, spoken in RESP on plain sockets for the same
+ * reason as {@link StompRelayTcpClient}: the Redis starter (and the Netty it brings)
+ * is kept off the classpath. One connection publishes from a bounded queue, one
+ * stays subscribed; both reconnect on failure. Lost events are repaired by the
+ * periodic snapshots each node sends.
+ */
+@Slf4j
+public class RedisPresenceSync implements PresenceSync, AutoCloseable {
+
+    private static final String CHANNEL = "travner:presence";
+    private static final int QUEUE_CAPACITY = 10_000;
+    private static final long RECONNECT_DELAY_MS = 1000;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int timeoutMillis;
+    private final int subscriberIdleMillis;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<byte[]> outbound = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final List<Consumer<Event>> listeners = new CopyOnWriteArrayList<>();
+    private final List<Thread> workers = new CopyOnWriteArrayList<>();
+    private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * @param subscriberIdleMillis how long the subscription may stay silent before it
+     *                             is considered dead; nodes hear their own heartbeats,
+     *                             so this only needs to exceed the heartbeat interval
+     */
+    public RedisPresenceSync(String host, int port, String password, int timeoutMillis, int subscriberIdleMillis,
+            ObjectMapper objectMapper) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+        this.subscriberIdleMillis = subscriberIdleMillis;
+        this.objectMapper = objectMapper;
+        workers.add(Thread.ofVirtual().name("presence-redis-pub").start(this::publishLoop));
+    }
+
+    @Override
+    public void publish(Event event) {
+        try {
+            if (!outbound.offer(objectMapper.writeValueAsBytes(event))) {
+                log.warn("Presence publish queue full, dropping {} event", event.type());
+            }
+        } catch (IOException e) {
+            log.warn("Could not serialize presence event: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void subscribe(Consumer<Event> listener) {
+        listeners.add(listener);
+        if (listeners.size() == 1) {
+            workers.add(Thread.ofVirtual().name("presence-redis-sub").start(this::subscribeLoop));
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        workers.forEach(Thread::interrupt);
+        for (Socket socket : sockets) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+
+    private void publishLoop() {
+        byte[] unsent = null;
+        while (!closed) {
+            Connection connection = null;
+            try {
+                connection = connect(timeoutMillis);
+                while (!closed) {
+                    byte[] payload = unsent != null ? unsent : outbound.take();
+                    unsent = payload;
+                    connection.command("PUBLISH".getBytes(StandardCharsets.US_ASCII),
+                            CHANNEL.getBytes(StandardCharsets.UTF_8), payload);
+                    readReply(connection.in());
+                    unsent = null;
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed && !pause(e)) {
+                    return;
+                }
+            } finally {
+                release(connection);
+            }
+        }
+    }
+
+    private void subscribeLoop() {
+        while (!closed) {
+            Connection connection = null;
+            try {
+                connection = connect(subscriberIdleMillis);
+                connection.command("SUBSCRIBE".getBytes(StandardCharsets.US_ASCII),
+                        CHANNEL.getBytes(StandardCharsets.UTF_8));
+                while (!closed) {
+                    if (readReply(connection.in()) instanceof List<?> reply && reply.size() == 3
+                            && "message".equals(asString(reply.get(0)))) {
+                        dispatch((byte[]) reply.get(2));
+                    }
+                }
+            } catch (IOException e) {
+                if (!closed && !pause(e)) {
+                    return;
+                }
+            } finally {
+                release(connection);
+            }
+        }
+    }
+
+    private void dispatch(byte[] payload) {
+        Event event;
+        try {
+            event = objectMapper.readValue(payload, Event.class);
+        } catch (IOException e) {
+            log.warn("Ignoring malformed presence event: {}", e.getMessage());
+            return;
+        }
+        for (Consumer<Event> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                log.warn("Presence listener failed on {}: {}", event.type(), e.getMessage());
+            }
+        }
+    }
+
+    private Connection connect(int readTimeoutMillis) throws IOException {
+        Socket socket = new Socket();
+        sockets.add(socket);
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            socket.setSoTimeout(readTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            Connection connection = new Connection(socket, new BufferedInputStream(socket.getInputStream()),
+                    socket.getOutputStream());
+            if (password != null && !password.isBlank()) {
+                connection.command("AUTH".getBytes(StandardCharsets.US_ASCII), password.getBytes(StandardCharsets.UTF_8));
+                readReply(connection.in());
+            }
+            return connection;
+        } catch (IOException e) {
+            sockets.remove(socket);
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void release(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        sockets.remove(connection.socket());
+        try {
+            connection.socket().close();
+        } catch (IOException ignored) {
+            // Already gone
+        }
+    }
+
+    private boolean pause(IOException cause) {
+        log.warn("Redis presence connection to {}:{} failed: {}", host, port, cause.getMessage());
+        try {
+            Thread.sleep(RECONNECT_DELAY_MS);
+            return true;
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Read one RESP2 reply: strings and integers as String/Long, bulk strings as
+     * byte[] and arrays as List. Error replies are thrown.
+     */
+    private static Object readReply(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            throw new IOException("Connection closed by Redis");
+        }
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                throw new IOException("Redis error: " + line);
+            case ':':
+                return parseLong(line);
+            case '$': {
+                int length = parseLength(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] bulk = in.readNBytes(length);
+                if (bulk.length != length || in.read() != '\r' || in.read() != '\n') {
+                    throw new IOException("Truncated bulk reply");
+                }
+                return bulk;
+            }
+            case '*': {
+                int count = parseLength(line);
+                if (count < 0) {
+                    return null;
+                }
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(readReply(in));
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unexpected RESP type '" + (char) type + "'");
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Connection closed by Redis");
+            }
+            if (line.length() == MAX_LINE_LENGTH) {
+                throw new IOException("RESP line longer than " + MAX_LINE_LENGTH + " bytes");
+            }
+            line.append((char) c);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed RESP line");
+        }
+        return line.toString();
+    }
+
+    /**
+     * Malformed numbers are reported as IOException so the connection is replaced
+     * rather than the worker thread dying on a NumberFormatException
+     */
+    private static long parseLong(String line) throws IOException {
+        try {
+            return Long.parseLong(line);
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed RESP number: " + line);
+        }
+    }
+
+    private static int parseLength(String line) throws IOException {
+        long length = parseLong(line);
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("RESP length out of range: " + line);
+        }
+        return (int) length;
+    }
+
+    private static String asString(Object value) {
+        return value instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : String.valueOf(value);
+    }
+
+    private record Connection(Socket socket, InputStream in, OutputStream out) {
+
+        void command(byte[]... args) throws IOException {
+            ByteArrayOutputStream frame = new ByteArrayOutputStream();
+            frame.writeBytes(("*" + args.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (byte[] arg : args) {
+                frame.writeBytes(("$" + arg.length + "\r\n").getBytes(StandardCharsets.US_ASCII));
+                frame.writeBytes(arg);
+                frame.writeBytes(new byte[] { '\r', '\n' });
+            }
+            out.write(frame.toByteArray());
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.adnan.travner.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables {@code @Scheduled} for periodic in-memory index rebuilds
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
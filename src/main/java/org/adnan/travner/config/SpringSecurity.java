@@ -106,7 +106,7 @@ public class SpringSecurity {
                         .requestMatchers("/api/conversations/**").hasAnyRole("USER", "ADMIN")
                         .requestMatchers("/api/chat/conversations/**").hasAnyRole("USER", "ADMIN")
                         .requestMatchers("/api/messages/**").hasAnyRole("USER", "ADMIN")
-                        .requestMatchers("/api/media/upload").hasAnyRole("USER", "ADMIN")
+                        .requestMatchers("/api/media/upload", "/api/media/upload/stream").hasAnyRole("USER", "ADMIN")
                         
                         // Location-based features - require authentication for write operations
                         .requestMatchers(HttpMethod.POST, "/api/itineraries").hasAnyRole("USER", "ADMIN")
@@ -0,0 +1,122 @@
+package org.adnan.travner.config;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Negotiates a compact binary body encoding per STOMP session. A client that sends
+ * {@code payload-format: cbor} on CONNECT receives MESSAGE bodies as CBOR instead of
+ * JSON. Spring only sends binary WebSocket frames for application/octet-stream
+ * bodies, so those frames carry that content type and name the format in the
+ * payload-format header. The server still encodes JSON once per message; each JSON
+ * body is transcoded to CBOR once, however many sessions it fans out to.
+ * <p>
+ * Registered on both client channels: CONNECT and DISCONNECT arrive inbound, and
+ * only outbound MESSAGE frames carry a subscription id. Clients may send CBOR
+ * bodies with content-type application/cbor whatever they negotiated.
+ */
+@Component
+@Slf4j
+public class StompPayloadFormatInterceptor implements ChannelInterceptor {
+
+    public static final String FORMAT_HEADER = "payload-format";
+    public static final String CBOR = "cbor";
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+    private final CBORFactory cborFactory = new CBORFactory();
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+    // Weak keys compare by identity: the broker hands the same payload array to every subscriber
+    private final Cache<byte[], byte[]> transcoded = Caffeine.newBuilder().weakKeys().maximumSize(1024).build();
+    private final boolean enabled;
+
+    public StompPayloadFormatInterceptor(@Value("${app.chat.websocket.binary-payloads:true}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (type == null || sessionId == null) {
+            return message;
+        }
+        switch (type) {
+            case CONNECT -> negotiate(message, sessionId);
+            case DISCONNECT -> cborSessions.remove(sessionId);
+            case MESSAGE -> {
+                if (SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders()) != null
+                        && cborSessions.contains(sessionId)) {
+                    return toCbor(message);
+                }
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private void negotiate(Message<?> message, String sessionId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (enabled && CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(FORMAT_HEADER))) {
+            cborSessions.add(sessionId);
+        }
+    }
+
+    private Message<?> toCbor(Message<?> message) {
+        Object header = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        MimeType contentType = header instanceof String value ? MimeTypeUtils.parseMimeType(value) : (MimeType) header;
+        if (!(message.getPayload() instanceof byte[] json) || json.length == 0 || contentType == null
+                || !MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType)) {
+            return message;
+        }
+        byte[] cbor;
+        try {
+            cbor = transcoded.get(json, this::transcode);
+        } catch (UncheckedIOException e) {
+            log.debug("Sending JSON, could not transcode body to CBOR: {}", e.getMessage());
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(StompHeaderAccessor.STOMP_CONTENT_TYPE_HEADER,
+                MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE);
+        accessor.setNativeHeader(FORMAT_HEADER, CBOR);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    byte[] transcode(byte[] json) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonFactory.createParser(json);
+                JsonGenerator generator = cborFactory.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,41 @@
+package org.adnan.travner.config;
+
+import lombok.RequiredArgsConstructor;
+import org.adnan.travner.service.PrincipalContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Resolves the connecting user once on STOMP CONNECT and keeps it in the
+ * session attributes, so message handlers never look the sender up again.
+ * SEND and SUBSCRIBE frames re-check it once the snapshot expires, and a user
+ * deactivated since CONNECT gets an ERROR frame instead of being served.
+ */
+@Component
+@RequiredArgsConstructor
+public class StompPrincipalInterceptor implements ChannelInterceptor {
+
+    private final PrincipalContext principalContext;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getUser() == null) {
+            return message;
+        }
+        StompCommand command = accessor.getCommand();
+        if (StompCommand.CONNECT.equals(command)) {
+            principalContext.bindSession(accessor.getUser().getName(), accessor.getSessionAttributes());
+        } else if ((StompCommand.SEND.equals(command) || StompCommand.SUBSCRIBE.equals(command))
+                && !principalContext.revalidateSession(accessor.getSessionAttributes())) {
+            throw new MessageDeliveryException(message, "User " + accessor.getUser().getName() + " is no longer active");
+        }
+        return message;
+    }
+}
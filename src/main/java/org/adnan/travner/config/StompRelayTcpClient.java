@@ -0,0 +1,232 @@
+package org.adnan.travner.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.tcp.ReconnectStrategy;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+import org.springframework.messaging.tcp.TcpOperations;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * STOMP-over-TCP client for the broker relay built on plain sockets and virtual
+ * threads. Reactor Netty, the relay's default transport, is kept off the classpath
+ * (see the disabled webflux starter in pom.xml), so the relay is given this instead.
+ * One virtual thread reads each connection; heartbeat checks and reconnects run on
+ * a single timer thread.
+ */
+@Slf4j
+public class StompRelayTcpClient implements TcpOperations<byte[]> {
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final String host;
+    private final int port;
+    private final int connectTimeoutMillis;
+    private final int maxFrameSize;
+    private final ScheduledExecutorService timer;
+    private final Set<SocketConnection> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown;
+
+    public StompRelayTcpClient(String host, int port, int connectTimeoutMillis, int maxFrameSize) {
+        this.host = host;
+        this.port = port;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.maxFrameSize = maxFrameSize;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stomp-relay-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler) {
+        return connectAsync(handler, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> connectAsync(TcpConnectionHandler<byte[]> handler, ReconnectStrategy reconnectStrategy) {
+        CompletableFuture<Void> connected = new CompletableFuture<>();
+        if (shutdown) {
+            connected.completeExceptionally(new IllegalStateException("Relay TCP client is shut down"));
+            return connected;
+        }
+        Thread.ofVirtual().name("stomp-relay-connect").start(() -> connect(handler, reconnectStrategy, 1, connected));
+        return connected;
+    }
+
+    @Override
+    public CompletableFuture<Void> shutdownAsync() {
+        shutdown = true;
+        connections.forEach(SocketConnection::close);
+        timer.shutdownNow();
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void connect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy reconnectStrategy, int attempt,
+            CompletableFuture<Void> connected) {
+        SocketConnection connection;
+        try {
+            Socket socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMillis);
+            socket.setTcpNoDelay(true);
+            connection = new SocketConnection(socket);
+        } catch (IOException e) {
+            handler.afterConnectFailure(e);
+            if (!scheduleReconnect(handler, reconnectStrategy, attempt, connected)) {
+                connected.completeExceptionally(e);
+            }
+            return;
+        }
+
+        connections.add(connection);
+        connected.complete(null);
+        handler.afterConnected(connection);
+        try {
+            connection.readFrames(handler);
+        } finally {
+            connection.close();
+            connections.remove(connection);
+            handler.afterConnectionClosed();
+        }
+        scheduleReconnect(handler, reconnectStrategy, 1, new CompletableFuture<>());
+    }
+
+    private boolean scheduleReconnect(TcpConnectionHandler<byte[]> handler, ReconnectStrategy reconnectStrategy,
+            int attempt, CompletableFuture<Void> connected) {
+        if (reconnectStrategy == null || shutdown) {
+            return false;
+        }
+        Long delay = reconnectStrategy.getTimeToNextAttempt(attempt);
+        if (delay == null) {
+            return false;
+        }
+        timer.schedule(() -> Thread.ofVirtual().name("stomp-relay-connect")
+                .start(() -> connect(handler, reconnectStrategy, attempt + 1, connected)), delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private final class SocketConnection implements TcpConnection<byte[]> {
+
+        private final Socket socket;
+        private final OutputStream out;
+        private final StompEncoder encoder = new StompEncoder();
+        private final List<ScheduledFuture<?>> inactivityChecks = new CopyOnWriteArrayList<>();
+        private volatile long lastReadNanos = System.nanoTime();
+        private volatile long lastWriteNanos = System.nanoTime();
+        private volatile boolean closed;
+
+        SocketConnection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        @Override
+        public CompletableFuture<Void> sendAsync(Message<byte[]> message) {
+            try {
+                byte[] frame = encoder.encode(message);
+                synchronized (out) {
+                    out.write(frame);
+                    out.flush();
+                }
+                lastWriteNanos = System.nanoTime();
+                return CompletableFuture.completedFuture(null);
+            } catch (IOException e) {
+                close();
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+
+        @Override
+        public void onReadInactivity(Runnable runnable, long duration) {
+            scheduleInactivityCheck(runnable, duration, true);
+        }
+
+        @Override
+        public void onWriteInactivity(Runnable runnable, long duration) {
+            scheduleInactivityCheck(runnable, duration, false);
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            inactivityChecks.forEach(check -> check.cancel(false));
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Error closing relay connection: {}", e.getMessage());
+            }
+        }
+
+        private void scheduleInactivityCheck(Runnable runnable, long duration, boolean read) {
+            // Writes fire at half the interval so heartbeats arrive before the peer's deadline
+            long durationNanos = TimeUnit.MILLISECONDS.toNanos(read ? duration : duration / 2);
+            long period = Math.max(1, duration / 4);
+            inactivityChecks.add(timer.scheduleWithFixedDelay(() -> {
+                long last = read ? lastReadNanos : lastWriteNanos;
+                if (!closed && System.nanoTime() - last >= durationNanos) {
+                    runnable.run();
+                }
+            }, period, period, TimeUnit.MILLISECONDS));
+        }
+
+        /**
+         * Decode frames until the socket closes. Partial frames stay in the buffer until
+         * the rest arrives; a frame larger than the configured limit fails the connection.
+         */
+        void readFrames(TcpConnectionHandler<byte[]> handler) {
+            StompDecoder decoder = new StompDecoder();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            byte[] chunk = new byte[READ_BUFFER_SIZE];
+            try {
+                InputStream in = socket.getInputStream();
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    lastReadNanos = System.nanoTime();
+                    if (buffer.remaining() < read) {
+                        if (buffer.position() + read > maxFrameSize) {
+                            throw new IOException("STOMP frame exceeds " + maxFrameSize
+                                    + " bytes; raise app.chat.broker.max-frame-size-kb");
+                        }
+                        ByteBuffer larger = ByteBuffer.allocate(Math.min(maxFrameSize,
+                                Math.max(buffer.capacity() * 2, buffer.position() + read)));
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                    buffer.put(chunk, 0, read);
+                    buffer.flip();
+                    for (Message<byte[]> message : decoder.decode(buffer)) {
+                        handler.handleMessage(message);
+                    }
+                    buffer.compact();
+                }
+            } catch (Exception e) {
+                if (!closed) {
+                    handler.handleFailure(e);
+                }
+            }
+        }
+    }
+}
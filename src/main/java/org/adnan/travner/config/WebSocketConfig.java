@@ -1,19 +1,133 @@
 package org.adnan.travner.config;
 
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.TaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.List;
+
+/**
+ * STOMP configuration. With app.chat.broker.type=external, destinations are relayed
+ * to a shared STOMP broker so users connected to different nodes reach each other;
+ * otherwise the in-memory simple broker serves a single node.
+ */
 @Configuration
 @EnableWebSocketMessageBroker
+@Slf4j
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final StompPrincipalInterceptor stompPrincipalInterceptor;
+    private final PresenceChannelInterceptor presenceChannelInterceptor;
+    private final StompPayloadFormatInterceptor payloadFormatInterceptor;
+    private TaskScheduler messageBrokerTaskScheduler;
+
+    @Value("${app.chat.broker.type:simple}")
+    private String brokerType;
+
+    @Value("${app.chat.broker.relay-host:localhost}")
+    private String relayHost;
+
+    @Value("${app.chat.broker.relay-port:61613}")
+    private int relayPort;
+
+    @Value("${app.chat.broker.relay-login:guest}")
+    private String relayLogin;
+
+    @Value("${app.chat.broker.relay-passcode:guest}")
+    private String relayPasscode;
+
+    @Value("${app.chat.broker.connect-timeout-ms:5000}")
+    private int relayConnectTimeoutMs;
+
+    // Frames from the broker include the user registry broadcast, which grows with every
+    // session in the cluster, so this is sized apart from the client message limit
+    @Value("${app.chat.broker.max-frame-size-kb:4096}")
+    private int relayMaxFrameSizeKb;
+
+    @Value("${app.chat.websocket.heartbeat-ms:10000}")
+    private long heartbeatMs;
+
+    @Value("${app.chat.websocket.inbound.core-pool-size:8}")
+    private int inboundCorePoolSize;
+
+    @Value("${app.chat.websocket.inbound.max-pool-size:32}")
+    private int inboundMaxPoolSize;
+
+    @Value("${app.chat.websocket.inbound.queue-capacity:10000}")
+    private int inboundQueueCapacity;
+
+    @Value("${app.chat.websocket.outbound.core-pool-size:8}")
+    private int outboundCorePoolSize;
+
+    @Value("${app.chat.websocket.outbound.max-pool-size:32}")
+    private int outboundMaxPoolSize;
+
+    @Value("${app.chat.websocket.outbound.queue-capacity:10000}")
+    private int outboundQueueCapacity;
+
+    @Value("${app.chat.websocket.message-size-limit-kb:64}")
+    private int messageSizeLimitKb;
+
+    @Value("${app.chat.websocket.send-buffer-size-limit-kb:512}")
+    private int sendBufferSizeLimitKb;
+
+    @Value("${app.chat.websocket.send-time-limit-ms:15000}")
+    private int sendTimeLimitMs;
+
+    // Presence sends through the messaging template this configuration builds, hence the lazy proxy
+    public WebSocketConfig(StompPrincipalInterceptor stompPrincipalInterceptor,
+            @Lazy PresenceChannelInterceptor presenceChannelInterceptor,
+            StompPayloadFormatInterceptor payloadFormatInterceptor) {
+        this.stompPrincipalInterceptor = stompPrincipalInterceptor;
+        this.presenceChannelInterceptor = presenceChannelInterceptor;
+        this.payloadFormatInterceptor = payloadFormatInterceptor;
+    }
+
+    @Autowired
+    public void setMessageBrokerTaskScheduler(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler scheduler) {
+        this.messageBrokerTaskScheduler = scheduler;
+    }
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        // Enable simple broker for topics and queues
-        config.enableSimpleBroker("/topic", "/queue", "/user");
+        if ("external".equalsIgnoreCase(brokerType)) {
+            // Relay to the shared broker; unresolved user destinations and the user
+            // registry are broadcast so /user queues work across nodes
+            log.info("Relaying STOMP destinations to broker at {}:{}", relayHost, relayPort);
+            config.enableStompBrokerRelay("/topic", "/queue")
+                    .setRelayHost(relayHost)
+                    .setRelayPort(relayPort)
+                    .setClientLogin(relayLogin)
+                    .setClientPasscode(relayPasscode)
+                    .setSystemLogin(relayLogin)
+                    .setSystemPasscode(relayPasscode)
+                    .setSystemHeartbeatSendInterval(heartbeatMs)
+                    .setSystemHeartbeatReceiveInterval(heartbeatMs)
+                    .setUserDestinationBroadcast("/topic/unresolved-user-destination")
+                    .setUserRegistryBroadcast("/topic/user-registry")
+                    .setTcpClient(new StompRelayTcpClient(relayHost, relayPort, relayConnectTimeoutMs,
+                            relayMaxFrameSizeKb * 1024));
+        } else {
+            // Enable simple broker for topics and queues. /user is not a broker prefix: those
+            // subscriptions are translated to per-session queues, and registering the raw one too
+            // under the same subscription id can displace the translated one
+            config.enableSimpleBroker("/topic", "/queue")
+                    .setHeartbeatValue(new long[] { heartbeatMs, heartbeatMs })
+                    .setTaskScheduler(messageBrokerTaskScheduler);
+        }
         
         // Set application destination prefix
         config.setApplicationDestinationPrefixes("/app");
@@ -22,6 +136,45 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         config.setUserDestinationPrefix("/user");
     }
 
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // Resolve the session principal once on CONNECT; every frame keeps presence alive
+        registration.interceptors(stompPrincipalInterceptor, presenceChannelInterceptor, payloadFormatInterceptor);
+        registration.taskExecutor()
+                .corePoolSize(inboundCorePoolSize)
+                .maxPoolSize(inboundMaxPoolSize)
+                .queueCapacity(inboundQueueCapacity);
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Re-encodes bodies for sessions that negotiated CBOR
+        registration.interceptors(payloadFormatInterceptor);
+        registration.taskExecutor()
+                .corePoolSize(outboundCorePoolSize)
+                .maxPoolSize(outboundMaxPoolSize)
+                .queueCapacity(outboundQueueCapacity);
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // Reads application/cbor frames from clients; strict, so JSON stays the default for sending
+        MappingJackson2MessageConverter cbor =
+                new MappingJackson2MessageConverter(StompPayloadFormatInterceptor.APPLICATION_CBOR);
+        cbor.setObjectMapper(Jackson2ObjectMapperBuilder.cbor().build());
+        cbor.setStrictContentTypeMatch(true);
+        messageConverters.add(cbor);
+        return true;
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Bounded per-session buffering: a slow client is disconnected instead of growing memory
+        registration.setMessageSizeLimit(messageSizeLimitKb * 1024)
+                .setSendBufferSizeLimit(sendBufferSizeLimitKb * 1024)
+                .setSendTimeLimit(sendTimeLimitMs);
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         // Register WebSocket endpoint
@@ -29,4 +182,4 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
-}
\ No newline at end of file
+}
@@ -1,5 +1,6 @@
 package org.adnan.travner.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.adnan.travner.dto.ApiResponse;
@@ -7,7 +8,9 @@ import org.adnan.travner.dto.PostDTO;
 import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.PostRepository;
 import org.adnan.travner.repository.UserRepository;
+import org.adnan.travner.service.BulkUserOperationService;
 import org.adnan.travner.service.UserService;
+import org.adnan.travner.service.UserSummaryCache;
 import org.adnan.travner.service.PostService;
 import org.adnan.travner.service.ProductService;
 import org.springframework.data.domain.Page;
@@ -18,13 +21,20 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import jakarta.validation.Valid;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -44,9 +54,14 @@ public class AdminController {
     private final UserRepository userRepository;
     private final MongoTemplate mongoTemplate;
     private final UserService userService;
+    private final UserSummaryCache userSummaryCache;
+    private final BulkUserOperationService bulkUserOperationService;
     private final PostService postService;
     private final ProductService productService;
     private final PasswordEncoder passwordEncoder;
+    private final ObjectMapper objectMapper;
+
+    private static final String NDJSON = "application/x-ndjson";
 
     /**
      * Check if user has admin role
@@ -108,13 +123,11 @@ public class AdminController {
             // Get total count
             long totalElements = mongoTemplate.count(query, UserEntry.class);
 
-            // Get paginated results
+            // Get paginated results; password is never loaded
             query.with(pageable);
+            query.fields().exclude("password");
             List<UserEntry> users = mongoTemplate.find(query, UserEntry.class);
 
-            // Remove passwords for security
-            users.forEach(user -> user.setPassword(""));
-
             // Create response with pagination info
             Map<String, Object> response = new HashMap<>();
             response.put("content", users);
@@ -134,6 +147,39 @@ public class AdminController {
         }
     }
 
+    /**
+     * Export users as newline-delimited JSON, streamed from a Mongo cursor
+     */
+    @GetMapping(value = "/users/export", produces = NDJSON)
+    public ResponseEntity<StreamingResponseBody> exportUsers(
+            @RequestParam(required = false) String role,
+            Authentication authentication) {
+
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+
+        String adminName = authentication.getName();
+        StreamingResponseBody body = outputStream -> {
+            OutputStream out = new BufferedOutputStream(outputStream);
+            long exported = userService.forEachUser(role, user -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(user));
+                    out.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            out.flush();
+            log.info("Admin {} exported {} users (role filter: {})", adminName, exported, role);
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NDJSON))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"users.ndjson\"")
+                .body(body);
+    }
+
     /**
      * Get user by username
      */
@@ -192,6 +238,7 @@ public class AdminController {
 
             user.setRoles(roles);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             user.setPassword(""); // Remove password for security
 
             log.info("Admin {} updated roles for user {} to {}", 
@@ -228,6 +275,7 @@ public class AdminController {
 
             user.setActive(true);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             user.setPassword(""); // Remove password for security
 
             log.info("Admin {} activated user {}", authentication.getName(), username);
@@ -263,6 +311,7 @@ public class AdminController {
 
             user.setActive(false);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             user.setPassword(""); // Remove password for security
 
             log.info("Admin {} deactivated user {}", authentication.getName(), username);
@@ -303,6 +352,7 @@ public class AdminController {
             }
 
             userRepository.delete(user);
+            userSummaryCache.invalidate(user);
 
             log.info("Admin {} deleted user {}", authentication.getName(), username);
 
@@ -751,69 +801,37 @@ public class AdminController {
             String operation = (String) request.get("operation");
             @SuppressWarnings("unchecked")
             List<String> usernames = (List<String>) request.get("usernames");
+            @SuppressWarnings("unchecked")
+            List<String> roles = (List<String>) request.get("roles");
             
             if (usernames == null || usernames.isEmpty()) {
                 return ResponseEntity.badRequest()
                         .body(ApiResponse.error("Usernames are required"));
             }
-            
-            int successCount = 0;
-            int failureCount = 0;
-            List<String> errors = new java.util.ArrayList<>();
-            
-            for (String username : usernames) {
-                try {
-                    UserEntry user = userRepository.findByuserName(username);
-                    if (user == null) {
-                        errors.add("User " + username + " not found");
-                        failureCount++;
-                        continue;
-                    }
-                    
-                    switch (operation) {
-                        case "activate":
-                            user.setActive(true);
-                            break;
-                        case "deactivate":
-                            user.setActive(false);
-                            break;
-                        case "delete":
-                            if (user.getRoles() != null && user.getRoles().contains("ADMIN")) {
-                                errors.add("Cannot delete admin user " + username);
-                                failureCount++;
-                                continue;
-                            }
-                            userRepository.delete(user);
-                            break;
-                        default:
-                            errors.add("Invalid operation: " + operation);
-                            failureCount++;
-                            continue;
-                    }
-                    
-                    if (!"delete".equals(operation)) {
-                        userRepository.save(user);
-                    }
-                    
-                    successCount++;
-                    
-                } catch (Exception e) {
-                    errors.add("Error processing " + username + ": " + e.getMessage());
-                    failureCount++;
-                }
+            if (!bulkUserOperationService.isSupported(operation)) {
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Invalid operation: " + operation));
             }
-            
-            Map<String, Object> result = new HashMap<>();
-            result.put("operation", operation);
-            result.put("totalProcessed", usernames.size());
-            result.put("successCount", successCount);
-            result.put("failureCount", failureCount);
-            result.put("errors", errors);
+            if ("roles".equals(operation) && (roles == null || roles.isEmpty())) {
+                return ResponseEntity.badRequest()
+                        .body(ApiResponse.error("Roles are required"));
+            }
+
+            if (bulkUserOperationService.shouldRunAsync(usernames.size())) {
+                BulkUserOperationService.BulkJob job = bulkUserOperationService.submit(operation, usernames, roles);
+                log.info("Admin {} queued bulk operation {} on {} users as job {}",
+                    authentication.getName(), operation, usernames.size(), job.getId());
+                return ResponseEntity.status(HttpStatus.ACCEPTED)
+                        .header(HttpHeaders.LOCATION, "/api/admin/users/bulk/jobs/" + job.getId())
+                        .body(ApiResponse.success("Bulk operation queued", job.toMap()));
+            }
+
+            BulkUserOperationService.BulkJob job = bulkUserOperationService.execute(operation, usernames, roles);
             
             log.info("Admin {} performed bulk operation {} on {} users: {} success, {} failures", 
-                authentication.getName(), operation, usernames.size(), successCount, failureCount);
+                authentication.getName(), operation, usernames.size(), job.getSuccess().get(), job.getFailureCount().get());
             
-            return ResponseEntity.ok(ApiResponse.success("Bulk operation completed", result));
+            return ResponseEntity.ok(ApiResponse.success("Bulk operation completed", job.toMap()));
             
         } catch (Exception e) {
             log.error("Error performing bulk user operation: {}", e.getMessage(), e);
@@ -822,6 +840,25 @@ public class AdminController {
         }
     }
 
+    /**
+     * Poll the progress of a queued bulk user operation
+     */
+    @GetMapping("/users/bulk/jobs/{jobId}")
+    public ResponseEntity<ApiResponse<Map<String, Object>>> getBulkJob(
+            @PathVariable String jobId,
+            Authentication authentication) {
+
+        if (!isAdmin(authentication)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN)
+                    .body(ApiResponse.error("Admin access required"));
+        }
+
+        return bulkUserOperationService.getJob(jobId)
+                .map(job -> ResponseEntity.ok(ApiResponse.success(job.getStatus().name(), job.toMap())))
+                .orElseGet(() -> ResponseEntity.status(HttpStatus.NOT_FOUND)
+                        .body(ApiResponse.error("Bulk job not found or expired")));
+    }
+
     /**
      * Get content moderation queue
      */
@@ -2,14 +2,23 @@ package org.adnan.travner.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.adnan.travner.dto.*;
+import org.adnan.travner.dto.chat.AddMembersRequest;
+import org.adnan.travner.service.ChatFanOutService;
+import org.adnan.travner.service.ChatMessagePipeline;
+import org.adnan.travner.service.ChatSearchService;
 import org.adnan.travner.service.ChatService;
+import org.adnan.travner.service.MediaService;
+import org.adnan.travner.service.TypingIndicatorAggregator;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.messaging.handler.annotation.MessageMapping;
 import org.springframework.messaging.handler.annotation.Payload;
@@ -21,6 +30,9 @@ import org.springframework.web.multipart.MultipartFile;
 import java.security.Principal;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
 
 @RestController
 @RequestMapping("/api/chat")
@@ -29,8 +41,15 @@ import java.util.Map;
 @Tag(name = "Chat", description = "Chat management APIs")
 public class ChatController {
 
+    private static final int MAX_HISTORY_LIMIT = 100;
+
     private final ChatService chatService;
+    private final ChatMessagePipeline messagePipeline;
+    private final ChatSearchService searchService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final TypingIndicatorAggregator typingAggregator;
+    private final ChatFanOutService fanOut;
+    private final MediaService mediaService;
 
     /**
      * Get user's conversations
@@ -91,8 +110,7 @@ public class ChatController {
         String userId = authentication.getName();
         
         // Verify user is participant
-        ChatConversationDTO conversation = chatService.getConversationById(conversationId);
-        if (!conversation.getParticipantIds().contains(userId)) {
+        if (!chatService.isParticipant(conversationId, userId)) {
             return ResponseEntity.badRequest().body(
                 ApiResponse.<Page<ChatMessageDTO>>builder()
                     .success(false)
@@ -113,6 +131,100 @@ public class ChatController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Get conversation history by cursor
+     */
+    @GetMapping("/conversations/{conversationId}/messages/history")
+    @Operation(summary = "Get message history by cursor",
+            description = "Get messages before or after a message id, or a window around one, without offsets or totals")
+    public ResponseEntity<ApiResponse<ChatMessageWindowDTO>> getMessageHistory(
+            @PathVariable String conversationId,
+            @RequestParam(required = false) String before,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String around,
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication authentication) {
+        
+        String userId = authentication.getName();
+        if (!chatService.isParticipant(conversationId, userId)) {
+            return ResponseEntity.badRequest().body(ApiResponse.<ChatMessageWindowDTO>builder()
+                    .success(false)
+                    .message("User is not a participant in this conversation")
+                    .build());
+        }
+        long cursors = Stream.of(before, after, around).filter(Objects::nonNull).count();
+        if (cursors > 1) {
+            return ResponseEntity.badRequest().body(ApiResponse.<ChatMessageWindowDTO>builder()
+                    .success(false)
+                    .message("Use only one of before, after or around")
+                    .build());
+        }
+        
+        try {
+            ChatMessageWindowDTO window = chatService.getMessageWindow(conversationId, before, after, around,
+                    Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT)));
+            return ResponseEntity.ok(ApiResponse.<ChatMessageWindowDTO>builder()
+                    .success(true)
+                    .message("Messages retrieved successfully")
+                    .data(window)
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<ChatMessageWindowDTO>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Search messages in a conversation
+     */
+    @GetMapping("/conversations/{conversationId}/messages/search")
+    @Operation(summary = "Search messages in a conversation",
+            description = "Messages containing every word of the query, newest first, with a highlighted snippet")
+    public ResponseEntity<ApiResponse<ChatSearchResultDTO>> searchConversationMessages(
+            @PathVariable String conversationId,
+            @RequestParam String q,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication) {
+        
+        return search(authentication.getName(), conversationId, q, before, limit);
+    }
+
+    /**
+     * Search messages across the user's conversations
+     */
+    @GetMapping("/messages/search")
+    @Operation(summary = "Search messages",
+            description = "Search every conversation the user belongs to, newest first, with a highlighted snippet")
+    public ResponseEntity<ApiResponse<ChatSearchResultDTO>> searchMessages(
+            @RequestParam String q,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication) {
+        
+        return search(authentication.getName(), null, q, before, limit);
+    }
+
+    private ResponseEntity<ApiResponse<ChatSearchResultDTO>> search(String userId, String conversationId, String q,
+            String before, int limit) {
+        try {
+            ChatSearchResultDTO result = searchService.search(userId, conversationId, q, before,
+                    Math.max(1, Math.min(limit, MAX_HISTORY_LIMIT)));
+            return ResponseEntity.ok(ApiResponse.<ChatSearchResultDTO>builder()
+                    .success(true)
+                    .message("Messages retrieved successfully")
+                    .data(result)
+                    .build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<ChatSearchResultDTO>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
     /**
      * Send message via REST API
      */
@@ -123,10 +235,21 @@ public class ChatController {
             Authentication authentication) {
         
         String senderId = authentication.getName();
-        ChatMessageDTO message = chatService.sendMessage(request, senderId);
+        ChatMessagePipeline.Accepted accepted = messagePipeline.submit(request, senderId);
         
-        // Broadcast message to conversation participants via WebSocket
-        messagingTemplate.convertAndSend("/topic/conversation/" + request.getConversationId(), message);
+        // The REST caller always gets the durable result
+        ChatMessageDTO message;
+        try {
+            message = accepted.persisted().join();
+        } catch (CompletionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(ApiResponse.<ChatMessageDTO>builder()
+                    .success(false)
+                    .message("Message could not be saved, please retry")
+                    .build());
+        }
+        
+        // Deliver to the conversation topic and the members' personal queues via WebSocket, once saved
+        fanOut.publish(request.getConversationId(), senderId, message);
         
         ApiResponse<ChatMessageDTO> response = ApiResponse.<ChatMessageDTO>builder()
                 .success(true)
@@ -146,15 +269,115 @@ public class ChatController {
             @PathVariable String conversationId,
             Authentication authentication) {
         
-        String userId = authentication.getName();
-        chatService.markMessagesAsRead(conversationId, userId);
+        try {
+            chatService.markMessagesAsRead(conversationId, authentication.getName());
+            return ResponseEntity.ok(ApiResponse.<Void>builder()
+                    .success(true)
+                    .message("Messages marked as read")
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<Void>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Add members to a group conversation
+     */
+    @PostMapping("/conversations/{conversationId}/members")
+    @Operation(summary = "Add members", description = "Add members to a group conversation")
+    public ResponseEntity<ApiResponse<ChatConversationDTO>> addMembers(
+            @PathVariable String conversationId,
+            @Valid @RequestBody AddMembersRequest request,
+            Authentication authentication) {
         
-        ApiResponse<Void> response = ApiResponse.<Void>builder()
-                .success(true)
-                .message("Messages marked as read")
-                .build();
+        request.setConversationId(conversationId);
+        try {
+            ChatConversationDTO conversation = chatService.addMembers(request, authentication.getName());
+            return ResponseEntity.ok(ApiResponse.<ChatConversationDTO>builder()
+                    .success(true)
+                    .message("Members added successfully")
+                    .data(conversation)
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<ChatConversationDTO>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Remove a member from a group conversation
+     */
+    @DeleteMapping("/conversations/{conversationId}/members/{userId}")
+    @Operation(summary = "Remove member", description = "Remove a member from a group conversation")
+    public ResponseEntity<ApiResponse<Void>> removeMember(
+            @PathVariable String conversationId,
+            @PathVariable String userId,
+            Authentication authentication) {
         
-        return ResponseEntity.ok(response);
+        try {
+            chatService.removeMember(conversationId, userId, authentication.getName());
+            return ResponseEntity.ok(ApiResponse.<Void>builder()
+                    .success(true)
+                    .message("Member removed successfully")
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<Void>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Archive a conversation
+     */
+    @PostMapping("/conversations/{conversationId}/archive")
+    @Operation(summary = "Archive conversation", description = "Archive a conversation so it no longer accepts messages")
+    public ResponseEntity<ApiResponse<Void>> archiveConversation(
+            @PathVariable String conversationId,
+            Authentication authentication) {
+        
+        try {
+            chatService.archiveConversation(conversationId, authentication.getName());
+            return ResponseEntity.ok(ApiResponse.<Void>builder()
+                    .success(true)
+                    .message("Conversation archived")
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<Void>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
+    }
+
+    /**
+     * Mute or unmute a conversation for the current user
+     */
+    @PostMapping("/conversations/{conversationId}/mute")
+    @Operation(summary = "Mute conversation", description = "Stop or resume personal notifications for a conversation")
+    public ResponseEntity<ApiResponse<Void>> muteConversation(
+            @PathVariable String conversationId,
+            @RequestParam(defaultValue = "true") boolean muted,
+            Authentication authentication) {
+        
+        try {
+            chatService.setMuted(conversationId, authentication.getName(), muted);
+            return ResponseEntity.ok(ApiResponse.<Void>builder()
+                    .success(true)
+                    .message(muted ? "Conversation muted" : "Conversation unmuted")
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.<Void>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build());
+        }
     }
 
     /**
@@ -166,13 +389,25 @@ public class ChatController {
         log.debug("Received WebSocket message from user: {} to conversation: {}", senderId, request.getConversationId());
         
         try {
-            ChatMessageDTO message = chatService.sendMessage(request, senderId);
-            
-            // Broadcast to conversation participants
-            messagingTemplate.convertAndSend("/topic/conversation/" + request.getConversationId(), message);
+            ChatMessagePipeline.Accepted accepted = messagePipeline.submit(request, senderId);
+            boolean ackOnEnqueue = messagePipeline.getAckMode() == ChatMessagePipeline.AckMode.ENQUEUE;
             
-            // Send to user-specific queue for notifications
-            messagingTemplate.convertAndSendToUser(senderId, "/queue/messages", message);
+            // Acknowledge on the sender's queue once enqueued or once persisted, as configured
+            if (ackOnEnqueue) {
+                messagingTemplate.convertAndSendToUser(senderId, "/queue/messages", accepted.message());
+            }
+            // Participants only hear about messages that were saved
+            accepted.persisted().whenComplete((persisted, error) -> {
+                if (error == null) {
+                    fanOut.publish(request.getConversationId(), senderId, persisted);
+                    if (!ackOnEnqueue) {
+                        messagingTemplate.convertAndSendToUser(senderId, "/queue/messages", persisted);
+                    }
+                } else {
+                    accepted.message().setStatus("FAILED");
+                    messagingTemplate.convertAndSendToUser(senderId, "/queue/messages", accepted.message());
+                }
+            });
             
         } catch (Exception e) {
             log.error("Error handling WebSocket message: {}", e.getMessage(), e);
@@ -180,19 +415,20 @@ public class ChatController {
     }
 
     /**
-     * WebSocket endpoint for typing indicators
+     * WebSocket endpoint for typing indicators. Frames are coalesced per conversation
+     * rather than rebroadcast one by one.
      */
     @MessageMapping("/chat.typing")
     public void handleTypingIndicator(@Payload TypingIndicatorDTO typingIndicator, Principal principal) {
         String senderId = principal.getName();
         log.debug("Received typing indicator from user: {} in conversation: {}", senderId, typingIndicator.getConversationId());
         
-        // Set the user info
-        typingIndicator.setUserId(senderId);
-        typingIndicator.setUsername(principal.getName());
-        
-        // Broadcast typing indicator to conversation participants
-        messagingTemplate.convertAndSend("/topic/conversation/" + typingIndicator.getConversationId() + "/typing", typingIndicator);
+        if (typingIndicator.getConversationId() == null
+                || !chatService.isParticipant(typingIndicator.getConversationId(), senderId)) {
+            return;
+        }
+        typingAggregator.onTyping(typingIndicator.getConversationId(), senderId, principal.getName(),
+                typingIndicator.isTyping());
     }
 
     /**
@@ -210,8 +446,7 @@ public class ChatController {
         
         try {
             // Verify user is participant in conversation
-            ChatConversationDTO conversation = chatService.getConversationById(conversationId);
-            if (!conversation.getParticipantIds().contains(userId)) {
+            if (!chatService.isParticipant(conversationId, userId)) {
                 return ResponseEntity.badRequest().body(
                     ApiResponse.<Map<String, String>>builder()
                         .success(false)
@@ -272,4 +507,63 @@ public class ChatController {
             );
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Upload a chat attachment as the raw request body, written to GridFS as it arrives
+     */
+    @PostMapping("/upload/stream")
+    @Operation(summary = "Stream file for chat",
+            description = "Upload a file as the request body with its own Content-Type; it is stored without multipart buffering")
+    public ResponseEntity<ApiResponse<Map<String, String>>> uploadFileStream(
+            @RequestParam("conversationId") String conversationId,
+            @RequestParam("fileName") String fileName,
+            HttpServletRequest request,
+            Authentication authentication) {
+        
+        String userId = authentication.getName();
+        log.debug("Streaming file upload for user: {} in conversation: {}", userId, conversationId);
+        
+        if (!chatService.isParticipant(conversationId, userId)) {
+            return ResponseEntity.badRequest().body(
+                ApiResponse.<Map<String, String>>builder()
+                    .success(false)
+                    .message("User is not a participant in this conversation")
+                    .build()
+            );
+        }
+        
+        try {
+            MediaDTO media = mediaService.uploadMediaStream(request.getInputStream(), fileName,
+                    request.getContentType(), request.getContentLengthLong(), userId, MediaService.CHAT_TYPE, conversationId);
+            
+            Map<String, String> responseData = new HashMap<>();
+            responseData.put("fileUrl", "/api/media/" + media.getId());
+            responseData.put("fileName", fileName);
+            responseData.put("mediaId", media.getId());
+            responseData.put("size", String.valueOf(media.getSize()));
+            responseData.put("sha256", media.getSha256());
+            
+            return ResponseEntity.ok(ApiResponse.<Map<String, String>>builder()
+                    .success(true)
+                    .message("File uploaded successfully")
+                    .data(responseData)
+                    .build());
+            
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(
+                ApiResponse.<Map<String, String>>builder()
+                    .success(false)
+                    .message(e.getMessage())
+                    .build()
+            );
+        } catch (Exception e) {
+            log.error("Error streaming file upload: {}", e.getMessage(), e);
+            return ResponseEntity.internalServerError().body(
+                ApiResponse.<Map<String, String>>builder()
+                    .success(false)
+                    .message("Failed to upload file")
+                    .build()
+            );
+        }
+    }
+}
@@ -4,7 +4,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.adnan.travner.dto.ApiResponse;
 import org.adnan.travner.dto.UserSummaryDTO;
+import org.adnan.travner.dto.chat.UserPresenceDTO;
+import org.adnan.travner.entry.ChatRecentContacts;
+import org.adnan.travner.service.ChatRecentContactsService;
+import org.adnan.travner.service.PresenceService;
 import org.adnan.travner.service.UserService;
+import org.adnan.travner.service.UserSummaryCache;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
@@ -12,6 +17,7 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 
 import java.util.List;
+import java.util.Optional;
 
 /**
  * REST Controller for chat-related user operations
@@ -23,7 +29,12 @@ import java.util.List;
 @Tag(name = "Chat Users", description = "Chat-related user operations")
 public class ChatUserController {
 
+    private static final int SUGGESTION_LIMIT = 20;
+
     private final UserService userService;
+    private final PresenceService presenceService;
+    private final ChatRecentContactsService recentContactsService;
+    private final UserSummaryCache userSummaryCache;
 
     /**
      * Get recent chat users (users you've chatted with recently)
@@ -33,8 +44,7 @@ public class ChatUserController {
     public ResponseEntity<ApiResponse<List<UserSummaryDTO>>> getRecentChatUsers(Authentication authentication) {
         log.debug("Getting recent chat users for user: {}", authentication.getName());
 
-        // TODO: Implement chat history logic
-        List<UserSummaryDTO> recentUsers = List.of(); // Placeholder
+        List<UserSummaryDTO> recentUsers = recentContactsService.getRecentUsers(authentication.getName());
 
         ApiResponse<List<UserSummaryDTO>> response = ApiResponse.<List<UserSummaryDTO>>builder()
                 .success(true)
@@ -49,14 +59,13 @@ public class ChatUserController {
      * Get online users
      */
     @GetMapping("/online")
-    @Operation(summary = "Get online users", description = "Get list of currently online users")
-    public ResponseEntity<ApiResponse<List<UserSummaryDTO>>> getOnlineUsers(Authentication authentication) {
+    @Operation(summary = "Get online users", description = "Get the user's conversation partners who are currently online")
+    public ResponseEntity<ApiResponse<List<UserPresenceDTO>>> getOnlineUsers(Authentication authentication) {
         log.debug("Getting online users for user: {}", authentication.getName());
 
-        // TODO: Implement online users logic
-        List<UserSummaryDTO> onlineUsers = List.of(); // Placeholder
+        List<UserPresenceDTO> onlineUsers = presenceService.getOnlineContacts(authentication.getName());
 
-        ApiResponse<List<UserSummaryDTO>> response = ApiResponse.<List<UserSummaryDTO>>builder()
+        ApiResponse<List<UserPresenceDTO>> response = ApiResponse.<List<UserPresenceDTO>>builder()
                 .success(true)
                 .message("Online users retrieved successfully")
                 .data(onlineUsers)
@@ -73,8 +82,7 @@ public class ChatUserController {
     public ResponseEntity<ApiResponse<List<UserSummaryDTO>>> getSuggestedUsers(Authentication authentication) {
         log.debug("Getting suggested users for user: {}", authentication.getName());
 
-        // TODO: Implement suggested users logic
-        List<UserSummaryDTO> suggestedUsers = List.of(); // Placeholder
+        List<UserSummaryDTO> suggestedUsers = userService.getSuggestions(authentication.getName(), SUGGESTION_LIMIT);
 
         ApiResponse<List<UserSummaryDTO>> response = ApiResponse.<List<UserSummaryDTO>>builder()
                 .success(true)
@@ -95,8 +103,24 @@ public class ChatUserController {
             Authentication authentication) {
         log.debug("Getting chat summary between user {} and {}", authentication.getName(), userId);
 
-        // TODO: Implement chat summary logic
-        ChatSummaryResponse summary = new ChatSummaryResponse(); // Placeholder
+        // Chat participants are usernames; the path may carry either
+        Optional<UserSummaryCache.CachedUser> peer = userSummaryCache.resolve(userId);
+        String peerName = peer.map(UserSummaryCache.CachedUser::getUserName).orElse(userId);
+        ChatRecentContacts.Contact contact = recentContactsService.getContact(authentication.getName(), peerName)
+                .orElseGet(ChatRecentContacts.Contact::new);
+
+        ChatSummaryResponse summary = new ChatSummaryResponse(
+                peer.map(user -> user.getId().toString()).orElse(userId),
+                peerName,
+                peer.map(UserSummaryCache.CachedUser::getFirstName).orElse(null),
+                peer.map(UserSummaryCache.CachedUser::getLastName).orElse(null),
+                peer.map(UserSummaryCache.CachedUser::getProfileImageUrl).orElse(null),
+                presenceService.isOnline(peerName),
+                contact.getMessageCount(),
+                contact.getLastMessage(),
+                contact.getLastMessageAt() != null ? contact.getLastMessageAt().toString() : null,
+                contact.getUnread() > 0,
+                (int) Math.min(contact.getUnread(), Integer.MAX_VALUE));
 
         ApiResponse<ChatSummaryResponse> response = ApiResponse.<ChatSummaryResponse>builder()
                 .success(true)
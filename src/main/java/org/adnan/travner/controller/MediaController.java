@@ -1,11 +1,13 @@
 package org.adnan.travner.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.adnan.travner.dto.ApiResponse;
 import org.adnan.travner.dto.MediaDTO;
 import org.adnan.travner.service.MediaService;
 import org.springframework.core.io.InputStreamResource;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
@@ -70,12 +72,53 @@ public class MediaController {
     }
 
     /**
-     * Get media file by filename for serving
+     * Streaming media upload: the request body is the file itself, with the file's
+     * Content-Type. It bypasses multipart parsing and is written to GridFS as it
+     * arrives, so large videos are never held in memory or a temp file.
+     *
+     * @param authentication User authentication
+     * @param request The request whose body is read
+     * @param filename Original file name
+     * @param type Upload type (product, post, profile, etc.)
+     * @param entityId Optional entity ID (productId, postId, etc.)
+     * @return Media details with access URL, size and SHA-256
+     */
+    @PostMapping("/upload/stream")
+    public ResponseEntity<ApiResponse<MediaDTO>> uploadMediaStream(
+            Authentication authentication,
+            HttpServletRequest request,
+            @RequestParam("filename") String filename,
+            @RequestParam(value = "type", defaultValue = "general") String type,
+            @RequestParam(value = "entityId", required = false) String entityId) {
+
+        if (authentication == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(ApiResponse.error("Authentication required"));
+        }
+
+        try {
+            MediaDTO uploadedMedia = mediaService.uploadMediaStream(request.getInputStream(), filename,
+                    request.getContentType(), request.getContentLengthLong(), authentication.getName(), type,
+                    entityId);
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .body(ApiResponse.success("Media uploaded successfully", uploadedMedia));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ApiResponse.error(e.getMessage()));
+        } catch (Exception e) {
+            log.error("Error streaming media upload: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(ApiResponse.error("Failed to upload media: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Get media file by filename for serving; chat attachments need a participant
      */
     @GetMapping("/files/{filename}")
-    public ResponseEntity<InputStreamResource> getMediaFileByName(@PathVariable String filename) {
+    public ResponseEntity<InputStreamResource> getMediaFileByName(Authentication authentication,
+            @PathVariable String filename, @RequestHeader HttpHeaders headers) {
         try {
-            return mediaService.getMediaFileByName(filename);
+            return mediaService.getMediaFileByName(filename, headers, viewer(authentication));
         } catch (IOException e) {
             log.error("Error retrieving media file {}: {}", filename, e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -121,12 +164,13 @@ public class MediaController {
     }
 
     /**
-     * Get a specific media file by ID for download
+     * Get a specific media file by ID for download; chat attachments need a participant
      */
     @GetMapping("/{mediaId}")
-    public ResponseEntity<InputStreamResource> getMediaFile(@PathVariable String mediaId) {
+    public ResponseEntity<InputStreamResource> getMediaFile(Authentication authentication,
+            @PathVariable String mediaId, @RequestHeader HttpHeaders headers) {
         try {
-            return mediaService.getMediaFile(mediaId);
+            return mediaService.getMediaFile(mediaId, headers, viewer(authentication));
         } catch (IOException e) {
             log.error("Error retrieving media file by ID {}: {}", mediaId, e.getMessage());
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
@@ -159,4 +203,8 @@ public class MediaController {
                     .body(ApiResponse.error("Failed to delete media: " + e.getMessage()));
         }
     }
+
+    private static String viewer(Authentication authentication) {
+        return authentication != null ? authentication.getName() : null;
+    }
 }
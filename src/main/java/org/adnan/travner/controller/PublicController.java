@@ -31,17 +31,11 @@ public class PublicController {
                         .body(ApiResponse.error("Username and password are required"));
             }
 
-            // Check if username is available
-            if (!userService.isUsernameAvailable(userRequest.getUserName())) {
-                return ResponseEntity.status(HttpStatus.CONFLICT)
-                        .body(ApiResponse.error("Username already exists"));
-            }
-
-            // Create new user
+            // Create new user; duplicates are rejected by the unique indexes
             userService.saveNewUser(userRequest);
 
-            // Return user info without password
-            UserEntry createdUser = userService.getByUsernameSecure(userRequest.getUserName());
+            // Return user info without password; save() has assigned the id
+            UserEntry createdUser = userRequest;
             UserSummaryDTO userSummary = UserSummaryDTO.builder()
                     .id(createdUser.getId().toString())
                     .userName(createdUser.getUserName())
@@ -56,6 +50,11 @@ public class PublicController {
             return ResponseEntity.status(HttpStatus.CREATED)
                     .body(ApiResponse.success("User registered successfully", userSummary));
 
+        } catch (IllegalArgumentException e) {
+            HttpStatus status = e.getMessage() != null && e.getMessage().endsWith("already exists")
+                    ? HttpStatus.CONFLICT
+                    : HttpStatus.BAD_REQUEST;
+            return ResponseEntity.status(status).body(ApiResponse.error(e.getMessage()));
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(ApiResponse.error("Registration failed: " + e.getMessage()));
@@ -71,6 +71,28 @@ public class UserController {
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Get people the current user may know
+     */
+    @GetMapping("/suggestions")
+    @Operation(summary = "Get user suggestions", description = "Users followed by people you follow, ranked by mutual connections")
+    public ResponseEntity<ApiResponse<List<UserSummaryDTO>>> getSuggestions(
+            @Parameter(description = "Maximum number of suggestions") @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication) {
+
+        log.debug("Getting suggestions for user: {}", authentication.getName());
+
+        List<UserSummaryDTO> suggestions = userService.getSuggestions(authentication.getName(), Math.min(limit, 100));
+
+        ApiResponse<List<UserSummaryDTO>> response = ApiResponse.<List<UserSummaryDTO>>builder()
+                .success(true)
+                .message("Suggestions retrieved successfully")
+                .data(suggestions)
+                .build();
+
+        return ResponseEntity.ok(response);
+    }
+
     /**
      * Get user by ID
      */
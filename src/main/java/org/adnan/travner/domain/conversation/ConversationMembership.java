@@ -10,10 +10,12 @@ import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.time.LocalDateTime;
 
 /**
  * Represents a user's membership in a conversation with role and state
- * information
+ * information. Ids are kept as strings so they line up with the chat
+ * conversation ids and participant ids used by ChatService.
  */
 @Document(collection = "conversation_membership")
 @CompoundIndex(def = "{'conversationId': 1, 'userId': 1}", unique = true)
@@ -26,14 +28,29 @@ public class ConversationMembership {
     @Id
     private ObjectId id;
 
-    private ObjectId conversationId;
+    private String conversationId;
 
-    private ObjectId userId;
+    private String userId;
 
     private MemberRole role;
 
     private Instant lastReadAt;
 
+    /**
+     * Read watermark: the newest message the member has read and its creation
+     * time. Every message at or before this position counts as read.
+     */
+    private String lastReadMessageId;
+
+    private LocalDateTime lastReadMessageAt;
+
+    /**
+     * Messages received since the member last read the conversation,
+     * incremented on send and reset on mark-read
+     */
+    @Builder.Default
+    private long unreadCount = 0;
+
     @Builder.Default
     private boolean muted = false;
 
@@ -3,7 +3,11 @@ package org.adnan.travner.domain.conversation;
 import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -15,42 +19,78 @@ public interface ConversationMembershipRepository extends MongoRepository<Conver
     /**
      * Find membership by conversation and user
      */
-    Optional<ConversationMembership> findByConversationIdAndUserId(ObjectId conversationId, ObjectId userId);
+    Optional<ConversationMembership> findByConversationIdAndUserId(String conversationId, String userId);
 
     /**
      * Find all memberships for a conversation
      */
-    List<ConversationMembership> findByConversationId(ObjectId conversationId);
+    List<ConversationMembership> findByConversationId(String conversationId);
+
+    /**
+     * Find the members who muted a conversation
+     */
+    List<ConversationMembership> findByConversationIdAndMutedTrue(String conversationId);
 
     /**
      * Find all memberships for a user
      */
-    List<ConversationMembership> findByUserId(ObjectId userId);
+    List<ConversationMembership> findByUserId(String userId);
 
     /**
      * Check if user is member of conversation
      */
-    boolean existsByConversationIdAndUserId(ObjectId conversationId, ObjectId userId);
+    boolean existsByConversationIdAndUserId(String conversationId, String userId);
 
     /**
      * Find members with specific roles in a conversation
      */
     @Query("{ 'conversationId': ?0, 'role': { $in: ?1 } }")
-    List<ConversationMembership> findByConversationIdAndRoleIn(ObjectId conversationId,
+    List<ConversationMembership> findByConversationIdAndRoleIn(String conversationId,
             List<ConversationMembership.MemberRole> roles);
 
     /**
      * Delete all memberships for a conversation
      */
-    void deleteByConversationId(ObjectId conversationId);
+    void deleteByConversationId(String conversationId);
 
     /**
      * Count members in a conversation
      */
-    long countByConversationId(ObjectId conversationId);
+    long countByConversationId(String conversationId);
 
     /**
      * Delete membership by conversation and user
      */
-    void deleteByConversationIdAndUserId(ObjectId conversationId, ObjectId userId);
-}
\ No newline at end of file
+    void deleteByConversationIdAndUserId(String conversationId, String userId);
+
+    /**
+     * Find a user's memberships for a page of conversations
+     */
+    List<ConversationMembership> findByUserIdAndConversationIdIn(String userId, Collection<String> conversationIds);
+
+    /**
+     * Add unread messages for the given members in a single update
+     */
+    @Query("{ 'conversationId': ?0, 'userId': { $in: ?1 } }")
+    @Update("{ '$inc': { 'unreadCount': ?2 } }")
+    long incrementUnreadCount(String conversationId, Collection<String> userIds, long by);
+
+    /**
+     * Move a member's read watermark on from the one it was read at and take the
+     * messages it passes off their unread counter, never below zero. Matches nothing
+     * when the watermark moved in the meantime, so each message is subtracted once.
+     */
+    @Query("{ 'conversationId': ?0, 'userId': ?1, 'lastReadMessageAt': ?5 }")
+    @Update(pipeline = "{ '$set': { 'unreadCount': { '$max': [0, { '$subtract': ['$unreadCount', ?6] }] }, "
+            + "'lastReadAt': ?2, 'lastReadMessageId': ?3, 'lastReadMessageAt': ?4 } }")
+    long markRead(String conversationId, String userId, Instant readAt,
+            String lastReadMessageId, LocalDateTime lastReadMessageAt,
+            LocalDateTime previousReadMessageAt, long read);
+
+    /**
+     * Mute or unmute a conversation for one member
+     */
+    @Query("{ 'conversationId': ?0, 'userId': ?1 }")
+    @Update("{ '$set': { 'muted': ?2 } }")
+    long setMuted(String conversationId, String userId, boolean muted);
+}
@@ -17,6 +17,7 @@ public class ChatMessageDTO {
     @Id
     private String id;
     private String conversationId;
+    private Long sequence; // Per-conversation order assigned by the server
     private String senderId;
     private String senderUsername;
     private String content;
@@ -0,0 +1,24 @@
+package org.adnan.travner.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * A slice of conversation history in chronological order, addressed by message id
+ * cursors instead of page offsets. No total count is computed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatMessageWindowDTO {
+    private List<ChatMessageDTO> messages;
+    private boolean hasMoreBefore;
+    private boolean hasMoreAfter;
+    private String beforeCursor; // Oldest message id in the window; pass as "before" for older history
+    private String afterCursor; // Newest message id in the window; pass as "after" for newer messages
+}
@@ -0,0 +1,44 @@
+package org.adnan.travner.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A page of message search hits, newest first. Pages are addressed by a message id
+ * cursor instead of an offset, and no total count is computed.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChatSearchResultDTO {
+    private List<Hit> hits;
+    private boolean hasMore;
+    private String nextCursor; // Id of the last hit; pass as "before" for the next page
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Hit {
+        private String messageId;
+        private String conversationId;
+        private String senderId;
+        private LocalDateTime createdAt;
+        private String snippet; // Window of the content around the first match
+        private List<Highlight> highlights; // Matched words, as offsets into the snippet
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Highlight {
+        private int start;
+        private int end; // Exclusive
+    }
+}
@@ -27,4 +27,5 @@ public class MediaDTO {
     private LocalDateTime uploadedAt;
     private String downloadUrl;     // Fixed: was fileUrl, now matches usage
     private String gridFsId;
+    private String sha256;
 }
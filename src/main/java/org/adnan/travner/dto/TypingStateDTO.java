@@ -0,0 +1,36 @@
+package org.adnan.travner.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Consolidated typing state broadcast on /topic/conversation/{id}/typing: everyone
+ * currently typing, plus those who stopped or timed out since the previous frame.
+ *
+ * Each application node only knows the typists connected to it, so {@code typing}
+ * is the full list for {@code nodeId}, not for the conversation. Clients keep the
+ * latest list per node and show their union.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TypingStateDTO {
+    private String conversationId;
+    private String nodeId;
+    private List<TypingUser> typing;
+    private List<String> stoppedUserIds;
+    private long timestamp;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TypingUser {
+        private String userId;
+        private String username;
+    }
+}
@@ -0,0 +1,33 @@
+package org.adnan.travner.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+
+/**
+ * Chat activity for one hour, keyed by the start of the hour. Distinct
+ * conversations and senders are HyperLogLog registers (index to value) so hours
+ * can be combined without keeping the ids themselves.
+ */
+@Document(collection = "chat_activity_hourly")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatActivityRollup {
+
+    @Id
+    private LocalDateTime hour;
+
+    private long messageCount;
+
+    private Map<String, Integer> conversations;
+
+    private Map<String, Integer> senders;
+}
@@ -29,6 +29,8 @@ public class ChatConversation {
     
     private String type; // DIRECT, GROUP
     
+    private String pairKey; // DIRECT only: the two participant ids in sorted order, unique
+    
     private String lastMessage;
     
     private LocalDateTime lastMessageAt;
@@ -40,4 +42,11 @@ public class ChatConversation {
     private int unreadCount;
     
     private boolean isActive;
+
+    /**
+     * Canonical key of a direct conversation, the same whichever user opens it
+     */
+    public static String directPairKey(String userId1, String userId2) {
+        return userId1.compareTo(userId2) <= 0 ? userId1 + ":" + userId2 : userId2 + ":" + userId1;
+    }
 }
\ No newline at end of file
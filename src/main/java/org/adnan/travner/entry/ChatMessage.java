@@ -25,6 +25,8 @@ public class ChatMessage {
     
     private String conversationId;
     
+    private Long sequence; // Per-conversation order, assigned by ChatMessagePipeline
+    
     private String senderId;
     
     private String senderUsername;
@@ -41,7 +43,11 @@ public class ChatMessage {
     
     private String replyToMessageId;
     
-    private List<String> readBy; // List of user IDs who read this message
+    /**
+     * Legacy per-message read list, no longer written. Read state now comes from
+     * the members' read watermarks; ChatReadWatermarkMigration converts and removes it.
+     */
+    private List<String> readBy;
     
-    private String status; // SENT, DELIVERED, READ
+    private String status; // SENT, DELIVERED; READ is derived from member watermarks
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package org.adnan.travner.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A fixed-size run of one conversation's messages, keyed "conversationId:bucket".
+ * Bucket n holds sequences n * size + 1 to (n + 1) * size in sequence order, so a
+ * page of recent history is one or two documents.
+ */
+@Document(collection = "chat_message_buckets")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatMessageBucket {
+
+    @Id
+    private String id;
+
+    private String conversationId;
+
+    private long bucket;
+
+    private int count;
+
+    private long firstSequence;
+
+    private long lastSequence;
+
+    private LocalDateTime firstAt;
+
+    private LocalDateTime lastAt;
+
+    private List<ChatMessage> messages;
+
+    public static String idOf(String conversationId, long bucket) {
+        return conversationId + ":" + bucket;
+    }
+}
@@ -0,0 +1,52 @@
+package org.adnan.travner.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The users a user has recently chatted with directly, newest first and bounded
+ * by app.chat.recent-contacts.limit. Maintained as messages are persisted so the
+ * recent list and per-contact summaries are a single read.
+ */
+@Document(collection = "chat_recent_contacts")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatRecentContacts {
+
+    @Id
+    private String userId;
+
+    private List<Contact> contacts;
+
+    private LocalDateTime updatedAt;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Contact {
+
+        private String peerId;
+
+        private String conversationId;
+
+        private String lastMessage; // preview, truncated
+
+        private String lastSenderId;
+
+        private LocalDateTime lastMessageAt;
+
+        private long unread;
+
+        private long messageCount;
+    }
+}
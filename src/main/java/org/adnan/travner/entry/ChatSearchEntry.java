@@ -0,0 +1,38 @@
+package org.adnan.travner.entry;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * A message's entry in the chat search index, keyed by message id. The multikey
+ * index on (conversationId, terms, createdAt, _id) makes this collection an
+ * inverted index partitioned by conversation: each key is one posting, and a
+ * query only scans the postings of the conversations it names.
+ */
+@Document(collection = "chat_search_index")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ChatSearchEntry {
+
+    @Id
+    private String messageId;
+
+    private String conversationId;
+
+    private List<String> terms; // Normalized, distinct; see ChatSearchService.tokenize
+
+    private String senderId;
+
+    private String content; // Kept for highlighting without a second read
+
+    private LocalDateTime createdAt;
+}
@@ -32,6 +32,7 @@ public class MediaEntry {
     private String gridFsId;        // ID of the file in GridFS
     private String contentType;     // Added: was fileType, now matches MediaService usage
     private Long size;              // Added: was fileSize, now matches MediaService usage
+    private String sha256;          // Hex content hash, recorded by streaming uploads
     private String uploadedBy;      // Added: username of uploader
     private String type;            // Added: media type (post, profile, etc.)
     private String entityId;        // Added: associated entity ID
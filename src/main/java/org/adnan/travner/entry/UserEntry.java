@@ -48,6 +48,8 @@ public class UserEntry {
     @NotBlank(message = "Last name is required")
     @Size(max = 50, message = "Last name must not exceed 50 characters")
     private String lastName;
+
+    @Indexed
     private List<String> roles;
 
     @Builder.Default
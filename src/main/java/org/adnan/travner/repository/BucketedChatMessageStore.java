@@ -0,0 +1,271 @@
+package org.adnan.travner.repository;
+
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatMessageBucket;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Messages packed into {@link ChatMessageBucket} documents by sequence number.
+ * A batch becomes one $push upsert per bucket it touches, and history reads walk
+ * the conversation's buckets from the newest (or the cursor's) one, usually
+ * stopping after one or two documents.
+ */
+public class BucketedChatMessageStore implements ChatMessageStore {
+
+    private final MongoTemplate mongoTemplate;
+    private final int bucketSize;
+
+    public BucketedChatMessageStore(MongoTemplate mongoTemplate, int bucketSize) {
+        if (bucketSize < 1) {
+            throw new IllegalArgumentException("Bucket size must be positive: " + bucketSize);
+        }
+        this.mongoTemplate = mongoTemplate;
+        this.bucketSize = bucketSize;
+    }
+
+    @Override
+    public void append(String conversationId, List<ChatMessage> batch) {
+        Map<Long, List<ChatMessage>> runs = new LinkedHashMap<>();
+        for (ChatMessage message : batch) {
+            if (message.getSequence() == null) {
+                throw new IllegalArgumentException("Bucketed storage needs sequenced messages");
+            }
+            if (message.getId() == null) {
+                message.setId(new ObjectId().toHexString());
+            }
+            runs.computeIfAbsent(bucketOf(message.getSequence()), bucket -> new ArrayList<>()).add(message);
+        }
+        runs.forEach((bucket, run) -> {
+            ChatMessage first = run.get(0);
+            ChatMessage last = run.get(run.size() - 1);
+            // Nodes append to a shared bucket concurrently; sorting keeps it in sequence order
+            Update update = new Update()
+                    .push("messages").sort(Sort.by("sequence")).each(run.toArray())
+                    .inc("count", run.size())
+                    .min("firstSequence", first.getSequence())
+                    .max("lastSequence", last.getSequence())
+                    .min("firstAt", first.getCreatedAt())
+                    .max("lastAt", last.getCreatedAt())
+                    .setOnInsert("conversationId", conversationId)
+                    .setOnInsert("bucket", bucket);
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(ChatMessageBucket.idOf(conversationId, bucket))),
+                    update, ChatMessageBucket.class);
+        });
+    }
+
+    @Override
+    public Optional<ChatMessage> findById(String conversationId, String messageId) {
+        if (!ObjectId.isValid(messageId)) {
+            return Optional.empty();
+        }
+        Query query = new Query(Criteria.where("conversationId").is(conversationId)
+                .and("messages._id").is(new ObjectId(messageId)));
+        query.fields().position("messages", 1);
+        return firstMessage(mongoTemplate.findOne(query, ChatMessageBucket.class), false);
+    }
+
+    @Override
+    public Optional<ChatMessage> findLatest(String conversationId) {
+        Query query = newestBucket(conversationId);
+        query.fields().slice("messages", -1);
+        return firstMessage(mongoTemplate.findOne(query, ChatMessageBucket.class), true);
+    }
+
+    @Override
+    public long findLastSequence(String conversationId) {
+        Query query = newestBucket(conversationId);
+        query.fields().include("lastSequence");
+        ChatMessageBucket bucket = mongoTemplate.findOne(query, ChatMessageBucket.class);
+        return bucket == null ? 0 : bucket.getLastSequence();
+    }
+
+    /**
+     * Reads the bucket counts first (small documents) to find which buckets hold
+     * the page, then only those buckets in full.
+     */
+    @Override
+    public Page<ChatMessage> findPage(String conversationId, Pageable pageable) {
+        Query headerQuery = new Query(Criteria.where("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.DESC, "bucket"));
+        headerQuery.fields().include("count");
+        List<ChatMessageBucket> headers = mongoTemplate.find(headerQuery, ChatMessageBucket.class);
+        long total = headers.stream().mapToLong(ChatMessageBucket::getCount).sum();
+        long offset = pageable.isPaged() ? pageable.getOffset() : 0;
+        long size = pageable.isPaged() ? pageable.getPageSize() : total;
+
+        List<String> ids = new ArrayList<>();
+        long position = 0;
+        long skip = 0;
+        for (ChatMessageBucket header : headers) {
+            if (position >= offset + size) {
+                break;
+            }
+            if (position + header.getCount() > offset) {
+                if (ids.isEmpty()) {
+                    skip = offset - position;
+                }
+                ids.add(header.getId());
+            }
+            position += header.getCount();
+        }
+        if (ids.isEmpty()) {
+            return new PageImpl<>(List.of(), pageable, total);
+        }
+
+        Query pageQuery = new Query(Criteria.where("_id").in(ids)).with(Sort.by(Sort.Direction.DESC, "bucket"));
+        List<ChatMessage> content = new ArrayList<>();
+        for (ChatMessageBucket bucket : mongoTemplate.find(pageQuery, ChatMessageBucket.class)) {
+            List<ChatMessage> messages = bucket.getMessages();
+            for (int i = messages.size() - 1; i >= 0 && content.size() < size; i--) {
+                if (skip > 0) {
+                    skip--;
+                } else {
+                    content.add(messages.get(i));
+                }
+            }
+        }
+        return new PageImpl<>(content, pageable, total);
+    }
+
+    @Override
+    public List<ChatMessage> findNewest(String conversationId, int limit) {
+        Query query = new Query(Criteria.where("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.DESC, "bucket"));
+        return collect(query, limit, true, message -> true);
+    }
+
+    @Override
+    public List<ChatMessage> findBefore(ChatMessage cursor, int limit) {
+        long sequence = cursor.getSequence();
+        Query query = new Query(Criteria.where("conversationId").is(cursor.getConversationId())
+                .and("firstSequence").lt(sequence))
+                .with(Sort.by(Sort.Direction.DESC, "bucket"));
+        return collect(query, limit, true, message -> message.getSequence() < sequence);
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(ChatMessage cursor, int limit) {
+        long sequence = cursor.getSequence();
+        Query query = new Query(Criteria.where("conversationId").is(cursor.getConversationId())
+                .and("lastSequence").gt(sequence))
+                .with(Sort.by(Sort.Direction.ASC, "bucket"));
+        return collect(query, limit, false, message -> message.getSequence() > sequence);
+    }
+
+    @Override
+    public long count() {
+        return total(Aggregation.newAggregation(
+                Aggregation.group().sum("count").as("total")));
+    }
+
+    @Override
+    public long countByConversation(String conversationId) {
+        return total(Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("conversationId").is(conversationId)),
+                Aggregation.group().sum("count").as("total")));
+    }
+
+    @Override
+    public long countBySender(String senderId) {
+        return total(Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("messages.senderId").is(senderId)),
+                Aggregation.unwind("messages"),
+                Aggregation.match(Criteria.where("messages.senderId").is(senderId)),
+                Aggregation.count().as("total")));
+    }
+
+    @Override
+    public long countFromOthers(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo) {
+        // Only buckets overlapping (after, upTo] are unwound
+        Criteria buckets = Criteria.where("conversationId").is(conversationId).and("firstAt").lte(upTo);
+        Criteria createdAt = Criteria.where("messages.createdAt").lte(upTo);
+        if (after != null) {
+            buckets.and("lastAt").gt(after);
+            createdAt = Criteria.where("messages.createdAt").gt(after).lte(upTo);
+        }
+        return total(Aggregation.newAggregation(
+                Aggregation.match(buckets),
+                Aggregation.unwind("messages"),
+                Aggregation.match(new Criteria().andOperator(createdAt,
+                        Criteria.where("messages.senderId").ne(userId))),
+                Aggregation.count().as("total")));
+    }
+
+    @Override
+    public Stream<HourlyActivity> streamHourlyActivity(LocalDateTime from, LocalDateTime until) {
+        return mongoTemplate.aggregateStream(HourlyActivityAggregation.of("messages.",
+                        Aggregation.match(Criteria.where("firstAt").lt(until).and("lastAt").gte(from)),
+                        Aggregation.unwind("messages"),
+                        Aggregation.match(Criteria.where("messages.createdAt").gte(from).lt(until))),
+                ChatMessageBucket.class, Document.class)
+                .map(HourlyActivityAggregation::toActivity);
+    }
+
+    long bucketOf(long sequence) {
+        // Floor, so sequences a migration numbered below 1 still get their own buckets
+        return Math.floorDiv(sequence - 1, bucketSize);
+    }
+
+    /**
+     * Walk buckets in query order, taking messages in the same direction until the
+     * limit is reached. The cursor fetches only as many buckets as the limit can span.
+     */
+    private List<ChatMessage> collect(Query query, int limit, boolean newestFirst, Predicate<ChatMessage> filter) {
+        query.cursorBatchSize(limit / bucketSize + 2);
+        List<ChatMessage> result = new ArrayList<>(limit);
+        try (Stream<ChatMessageBucket> buckets = mongoTemplate.stream(query, ChatMessageBucket.class)) {
+            Iterator<ChatMessageBucket> iterator = buckets.iterator();
+            while (result.size() < limit && iterator.hasNext()) {
+                List<ChatMessage> messages = iterator.next().getMessages();
+                int n = messages.size();
+                for (int i = 0; i < n && result.size() < limit; i++) {
+                    ChatMessage message = messages.get(newestFirst ? n - 1 - i : i);
+                    if (filter.test(message)) {
+                        result.add(message);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private Query newestBucket(String conversationId) {
+        return new Query(Criteria.where("conversationId").is(conversationId))
+                .with(Sort.by(Sort.Direction.DESC, "bucket"))
+                .limit(1);
+    }
+
+    private long total(Aggregation aggregation) {
+        Document result = mongoTemplate.aggregate(aggregation, ChatMessageBucket.class, Document.class)
+                .getUniqueMappedResult();
+        return result == null ? 0 : ((Number) result.get("total")).longValue();
+    }
+
+    private static Optional<ChatMessage> firstMessage(ChatMessageBucket bucket, boolean last) {
+        if (bucket == null || bucket.getMessages() == null || bucket.getMessages().isEmpty()) {
+            return Optional.empty();
+        }
+        List<ChatMessage> messages = bucket.getMessages();
+        return Optional.of(messages.get(last ? messages.size() - 1 : 0));
+    }
+}
@@ -5,16 +5,19 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 
 /**
  * Repository for ChatConversation entity
  */
 @Repository
-public interface ChatConversationRepository extends MongoRepository<ChatConversation, String> {
+public interface ChatConversationRepository extends MongoRepository<ChatConversation, String>,
+        ChatConversationRepositoryCustom {
     
     /**
      * Find conversations by participant ID and active status
@@ -26,12 +29,6 @@ public interface ChatConversationRepository extends MongoRepository<ChatConversa
      */
     List<ChatConversation> findByParticipantIdsContainingAndType(String participantId, String type);
     
-    /**
-     * Find direct conversation between two users
-     */
-    @Query("{ 'type': 'DIRECT', 'participantIds': { $all: [?0, ?1] }, 'participantIds': { $size: 2 } }")
-    Optional<ChatConversation> findDirectConversationBetweenUsers(String userId1, String userId2);
-    
     /**
      * Find conversations by participant ID
      */
@@ -46,4 +43,32 @@ public interface ChatConversationRepository extends MongoRepository<ChatConversa
      * Find conversations by title (for group conversations)
      */
     List<ChatConversation> findByTitleContainingIgnoreCaseAndIsActiveTrue(String title);
-}
\ No newline at end of file
+
+    /**
+     * Record the latest message without rewriting the whole conversation document
+     */
+    @Query("{ '_id': ?0 }")
+    @Update("{ '$set': { 'lastMessage': ?1, 'lastMessageAt': ?2, 'updatedAt': ?2 } }")
+    long updateLastMessage(String conversationId, String lastMessage, LocalDateTime at);
+
+    /**
+     * Add participants, ignoring ones already present
+     */
+    @Query("{ '_id': ?0 }")
+    @Update("{ '$addToSet': { 'participantIds': { '$each': ?1 } }, '$set': { 'updatedAt': ?2 } }")
+    long addParticipants(String conversationId, Collection<String> userIds, LocalDateTime at);
+
+    /**
+     * Remove a participant
+     */
+    @Query("{ '_id': ?0 }")
+    @Update("{ '$pull': { 'participantIds': ?1 }, '$set': { 'updatedAt': ?2 } }")
+    long removeParticipant(String conversationId, String userId, LocalDateTime at);
+
+    /**
+     * Archive a conversation; it no longer appears in the active lists and accepts no messages
+     */
+    @Query("{ '_id': ?0 }")
+    @Update("{ '$set': { 'isActive': false, 'updatedAt': ?1 } }")
+    long archive(String conversationId, LocalDateTime at);
+}
@@ -0,0 +1,15 @@
+package org.adnan.travner.repository;
+
+import org.adnan.travner.entry.ChatConversation;
+
+/**
+ * Conversation writes that need more than a derived or annotated query
+ */
+public interface ChatConversationRepositoryCustom {
+
+    /**
+     * Return the direct conversation with the candidate's pair key, inserting the
+     * candidate if there is none. The caller can tell it was inserted by its id.
+     */
+    ChatConversation upsertDirectConversation(ChatConversation candidate);
+}
@@ -0,0 +1,42 @@
+package org.adnan.travner.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.adnan.travner.entry.ChatConversation;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@RequiredArgsConstructor
+class ChatConversationRepositoryCustomImpl implements ChatConversationRepositoryCustom {
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * One findAndModify upsert on the unique pairKey index. Two first messages racing
+     * for the same pair both end up with the one conversation that was inserted.
+     */
+    @Override
+    public ChatConversation upsertDirectConversation(ChatConversation candidate) {
+        Query query = new Query(Criteria.where("pairKey").is(candidate.getPairKey()));
+        Update update = new Update()
+                .setOnInsert("_id", new ObjectId(candidate.getId()))
+                .setOnInsert("participantIds", candidate.getParticipantIds())
+                .setOnInsert("type", candidate.getType())
+                .setOnInsert("title", candidate.getTitle())
+                .setOnInsert("createdAt", candidate.getCreatedAt())
+                .setOnInsert("updatedAt", candidate.getUpdatedAt())
+                .setOnInsert("unreadCount", candidate.getUnreadCount())
+                .setOnInsert("isActive", candidate.isActive());
+        try {
+            return mongoTemplate.findAndModify(query, update,
+                    FindAndModifyOptions.options().upsert(true).returnNew(true), ChatConversation.class);
+        } catch (DuplicateKeyException e) {
+            // Servers before 4.2 do not retry an upsert that lost the race on the unique index
+            return mongoTemplate.findOne(query, ChatConversation.class);
+        }
+    }
+}
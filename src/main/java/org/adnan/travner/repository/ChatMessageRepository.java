@@ -1,6 +1,7 @@
 package org.adnan.travner.repository;
 
 import org.adnan.travner.entry.ChatMessage;
+import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
@@ -8,6 +9,7 @@ import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
+import java.util.Optional;
 import java.time.LocalDateTime;
 
 /**
@@ -38,6 +40,51 @@ public interface ChatMessageRepository extends MongoRepository<ChatMessage, Stri
     @Query(value = "{ 'conversationId': ?0, 'readBy': { $nin: [?1] } }", count = true)
     long countByConversationIdAndReadByNotContaining(String conversationId, String userId);
     
+    /**
+     * Newest messages of a conversation without a total count; sort by createdAt and id descending
+     */
+    List<ChatMessage> findByConversationId(String conversationId, Pageable pageable);
+
+    /**
+     * Messages strictly older than the cursor position (createdAt, _id); sort descending
+     */
+    @Query("{ 'conversationId': ?0, $or: [ { 'createdAt': { $lt: ?1 } }, { 'createdAt': ?1, '_id': { $lt: ?2 } } ] }")
+    List<ChatMessage> findBeforeCursor(String conversationId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+
+    /**
+     * Messages strictly newer than the cursor position (createdAt, _id); sort ascending
+     */
+    @Query("{ 'conversationId': ?0, $or: [ { 'createdAt': { $gt: ?1 } }, { 'createdAt': ?1, '_id': { $gt: ?2 } } ] }")
+    List<ChatMessage> findAfterCursor(String conversationId, LocalDateTime createdAt, ObjectId id, Pageable pageable);
+
+    /**
+     * Newest message of a conversation, the target of a mark-read
+     */
+    Optional<ChatMessage> findFirstByConversationIdOrderByCreatedAtDesc(String conversationId);
+
+    /**
+     * Message with the highest sequence number, used to seed a conversation's sequence
+     */
+    Optional<ChatMessage> findFirstByConversationIdOrderBySequenceDesc(String conversationId);
+
+    /**
+     * Count messages from others that the user has not read according to legacy readBy data
+     */
+    @Query(value = "{ 'conversationId': ?0, 'senderId': { $ne: ?1 }, 'readBy': { $ne: ?1 } }", count = true)
+    long countUnreadByLegacyReadBy(String conversationId, String userId);
+
+    /**
+     * Count messages from others created after one time, up to and including another
+     */
+    @Query(value = "{ 'conversationId': ?0, 'senderId': { $ne: ?1 }, 'createdAt': { $gt: ?2, $lte: ?3 } }", count = true)
+    long countFromOthersBetween(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo);
+
+    /**
+     * Count messages from others created up to and including a time
+     */
+    @Query(value = "{ 'conversationId': ?0, 'senderId': { $ne: ?1 }, 'createdAt': { $lte: ?2 } }", count = true)
+    long countFromOthersUpTo(String conversationId, String userId, LocalDateTime upTo);
+
     /**
      * Find messages by conversation ID and sender ID
      */
@@ -45,7 +92,6 @@ public interface ChatMessageRepository extends MongoRepository<ChatMessage, Stri
     
     // Analytics methods
     long countBySenderId(String senderId);
-    long countByCreatedAtAfter(LocalDateTime date);
-    List<String> findDistinctConversationIdsByCreatedAtAfter(LocalDateTime date);
-    List<ChatMessage> findByCreatedAtAfter(LocalDateTime date);
+
+    long countByConversationId(String conversationId);
 }
\ No newline at end of file
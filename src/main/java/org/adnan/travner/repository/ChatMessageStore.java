@@ -0,0 +1,79 @@
+package org.adnan.travner.repository;
+
+import org.adnan.travner.entry.ChatMessage;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Storage of chat history, either one document per message or messages packed into
+ * per-conversation buckets (app.chat.storage.mode). Cursor reads take the cursor
+ * message itself so each layout can position on the keys it is ordered by.
+ */
+public interface ChatMessageStore {
+
+    /**
+     * Durably write an ordered batch of one conversation; assigns ids that are missing
+     */
+    void append(String conversationId, List<ChatMessage> batch);
+
+    /**
+     * Find a message by id, only if it belongs to the conversation
+     */
+    Optional<ChatMessage> findById(String conversationId, String messageId);
+
+    /**
+     * Newest message of a conversation
+     */
+    Optional<ChatMessage> findLatest(String conversationId);
+
+    /**
+     * Highest sequence number written in a conversation, 0 when there is none
+     */
+    long findLastSequence(String conversationId);
+
+    /**
+     * Page of history with a total count, newest first
+     */
+    Page<ChatMessage> findPage(String conversationId, Pageable pageable);
+
+    /**
+     * Newest messages of a conversation without a total count, newest first
+     */
+    List<ChatMessage> findNewest(String conversationId, int limit);
+
+    /**
+     * Messages strictly older than the cursor, newest first
+     */
+    List<ChatMessage> findBefore(ChatMessage cursor, int limit);
+
+    /**
+     * Messages strictly newer than the cursor, oldest first
+     */
+    List<ChatMessage> findAfter(ChatMessage cursor, int limit);
+
+    long count();
+
+    long countByConversation(String conversationId);
+
+    long countBySender(String senderId);
+
+    /**
+     * Messages from anyone but the user created after {@code after} (from the start
+     * when null) up to and including {@code upTo}: what a read watermark passes over
+     */
+    long countFromOthers(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo);
+
+    /**
+     * Messages per local hour, conversation and sender created in [from, until),
+     * ordered by hour; the caller closes the stream
+     */
+    Stream<HourlyActivity> streamHourlyActivity(LocalDateTime from, LocalDateTime until);
+
+    record HourlyActivity(LocalDateTime hour, String conversationId, String senderId, long messages) {
+    }
+}
@@ -0,0 +1,48 @@
+package org.adnan.travner.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Per-conversation message sequence counters in chat_sequences. Numbers are
+ * reserved in blocks by one atomic $inc, so nodes sharing a conversation never
+ * hand out the same sequence.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatSequenceCounter {
+
+    static final String COLLECTION = "chat_sequences";
+
+    private final MongoTemplate mongoTemplate;
+
+    /**
+     * Raise the counter to at least {@code floor}, e.g. the highest sequence already
+     * stored for a conversation whose counter does not exist yet
+     */
+    public void seed(String conversationId, long floor) {
+        mongoTemplate.upsert(byConversation(conversationId), new Update().max("value", floor), COLLECTION);
+    }
+
+    /**
+     * Reserve the next {@code count} sequence numbers of a conversation
+     *
+     * @return the first number of the block; the block ends at first + count - 1
+     */
+    public long reserve(String conversationId, int count) {
+        Document counter = mongoTemplate.findAndModify(byConversation(conversationId),
+                new Update().inc("value", (long) count),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), Document.class, COLLECTION);
+        return ((Number) counter.get("value")).longValue() - count + 1;
+    }
+
+    private static Query byConversation(String conversationId) {
+        return new Query(Criteria.where("_id").is(conversationId));
+    }
+}
@@ -0,0 +1,107 @@
+package org.adnan.travner.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.adnan.travner.entry.ChatMessage;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * One document per message in chat_messages, ordered by (createdAt, _id)
+ */
+@RequiredArgsConstructor
+public class DocumentChatMessageStore implements ChatMessageStore {
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final MongoTemplate mongoTemplate;
+
+    @Override
+    public void append(String conversationId, List<ChatMessage> batch) {
+        chatMessageRepository.insert(batch);
+    }
+
+    @Override
+    public Optional<ChatMessage> findById(String conversationId, String messageId) {
+        return chatMessageRepository.findById(messageId)
+                .filter(message -> conversationId.equals(message.getConversationId()));
+    }
+
+    @Override
+    public Optional<ChatMessage> findLatest(String conversationId) {
+        return chatMessageRepository.findFirstByConversationIdOrderByCreatedAtDesc(conversationId);
+    }
+
+    @Override
+    public long findLastSequence(String conversationId) {
+        return chatMessageRepository.findFirstByConversationIdOrderBySequenceDesc(conversationId)
+                .map(ChatMessage::getSequence)
+                .orElse(0L);
+    }
+
+    @Override
+    public Page<ChatMessage> findPage(String conversationId, Pageable pageable) {
+        return chatMessageRepository.findByConversationIdOrderByCreatedAtDesc(conversationId, pageable);
+    }
+
+    @Override
+    public List<ChatMessage> findNewest(String conversationId, int limit) {
+        return chatMessageRepository.findByConversationId(conversationId, historyPage(limit, Sort.Direction.DESC));
+    }
+
+    @Override
+    public List<ChatMessage> findBefore(ChatMessage cursor, int limit) {
+        return chatMessageRepository.findBeforeCursor(cursor.getConversationId(), cursor.getCreatedAt(),
+                new ObjectId(cursor.getId()), historyPage(limit, Sort.Direction.DESC));
+    }
+
+    @Override
+    public List<ChatMessage> findAfter(ChatMessage cursor, int limit) {
+        return chatMessageRepository.findAfterCursor(cursor.getConversationId(), cursor.getCreatedAt(),
+                new ObjectId(cursor.getId()), historyPage(limit, Sort.Direction.ASC));
+    }
+
+    @Override
+    public long count() {
+        return chatMessageRepository.count();
+    }
+
+    @Override
+    public long countByConversation(String conversationId) {
+        return chatMessageRepository.countByConversationId(conversationId);
+    }
+
+    @Override
+    public long countBySender(String senderId) {
+        return chatMessageRepository.countBySenderId(senderId);
+    }
+
+    @Override
+    public long countFromOthers(String conversationId, String userId, LocalDateTime after, LocalDateTime upTo) {
+        return after == null
+                ? chatMessageRepository.countFromOthersUpTo(conversationId, userId, upTo)
+                : chatMessageRepository.countFromOthersBetween(conversationId, userId, after, upTo);
+    }
+
+    @Override
+    public Stream<HourlyActivity> streamHourlyActivity(LocalDateTime from, LocalDateTime until) {
+        return mongoTemplate.aggregateStream(HourlyActivityAggregation.of("",
+                        Aggregation.match(Criteria.where("createdAt").gte(from).lt(until))),
+                ChatMessage.class, Document.class)
+                .map(HourlyActivityAggregation::toActivity);
+    }
+
+    private static Pageable historyPage(int size, Sort.Direction direction) {
+        return PageRequest.of(0, size, Sort.by(direction, "createdAt").and(Sort.by(direction, "id")));
+    }
+}
@@ -5,9 +5,11 @@ import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import java.util.Optional;
+import java.util.stream.Stream;
 
 /**
  * Repository for managing follow relationships
@@ -49,6 +51,12 @@ public interface FollowRepository extends MongoRepository<FollowEntry, ObjectId>
      * Delete follow relationship
      */
     void deleteByFollowerIdAndFollowingId(ObjectId followerId, ObjectId followingId);
+
+    /**
+     * Stream every edge with only the two endpoints loaded; callers must close the stream
+     */
+    @Query(value = "{}", fields = "{ 'followerId': 1, 'followingId': 1 }")
+    Stream<FollowEntry> streamEdges();
 }
 
 
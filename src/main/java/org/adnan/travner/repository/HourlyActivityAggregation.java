@@ -0,0 +1,48 @@
+package org.adnan.travner.repository;
+
+import org.bson.Document;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.aggregation.DateOperators;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The hourly activity pipeline shared by both storage layouts: after the layout's
+ * own stages have produced one row per message (with its fields under
+ * {@code prefix}), count messages per local hour, conversation and sender.
+ */
+final class HourlyActivityAggregation {
+
+    private HourlyActivityAggregation() {
+    }
+
+    static Aggregation of(String prefix, AggregationOperation... messageStages) {
+        DateOperators.Timezone zone = DateOperators.Timezone.valueOf(ZoneId.systemDefault().getId());
+        String createdAt = prefix + "createdAt";
+        List<AggregationOperation> stages = new ArrayList<>(List.of(messageStages));
+        stages.add(Aggregation.project()
+                .and(prefix + "conversationId").as("conversationId")
+                .and(prefix + "senderId").as("senderId")
+                .and(DateOperators.dateOf(createdAt).withTimezone(zone).year()).as("y")
+                .and(DateOperators.dateOf(createdAt).withTimezone(zone).month()).as("m")
+                .and(DateOperators.dateOf(createdAt).withTimezone(zone).dayOfMonth()).as("d")
+                .and(DateOperators.dateOf(createdAt).withTimezone(zone).hour()).as("h"));
+        stages.add(Aggregation.group("y", "m", "d", "h", "conversationId", "senderId").count().as("messages"));
+        stages.add(Aggregation.sort(Sort.by("_id.y", "_id.m", "_id.d", "_id.h")));
+        return Aggregation.newAggregation(stages).withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+    }
+
+    static ChatMessageStore.HourlyActivity toActivity(Document row) {
+        Document key = row.get("_id", Document.class);
+        LocalDateTime hour = LocalDateTime.of(key.getInteger("y"), key.getInteger("m"), key.getInteger("d"),
+                key.getInteger("h"), 0);
+        return new ChatMessageStore.HourlyActivity(hour, key.getString("conversationId"), key.getString("senderId"),
+                ((Number) row.get("messages")).longValue());
+    }
+}
@@ -5,6 +5,7 @@ import org.bson.types.ObjectId;
 import org.springframework.data.mongodb.repository.MongoRepository;
 
 import java.util.List;
+import java.util.Optional;
 
 public interface MediaRepository extends MongoRepository<MediaEntry, ObjectId> {
 
@@ -17,4 +18,6 @@ public interface MediaRepository extends MongoRepository<MediaEntry, ObjectId> {
     List<MediaEntry> findByEntityId(String entityId);
 
     List<MediaEntry> findByEntityIdAndType(String entityId, String type);
+
+    Optional<MediaEntry> findFirstByFilename(String filename);
 }
@@ -7,16 +7,39 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import java.time.LocalDateTime;
+import java.util.stream.Stream;
 
 public interface UserRepository extends MongoRepository<UserEntry, ObjectId> {
     UserEntry findByuserName(String userName);
     
     UserEntry findByEmail(String email);
 
+    boolean existsByuserName(String userName);
+
+    boolean existsByEmail(String email);
+
     void deleteByuserName(String userName);
 
     @Query("{'$or': [{'userName': {'$regex': '?0', '$options': 'i'}}, {'firstName': {'$regex': '?0', '$options': 'i'}}, {'lastName': {'$regex': '?0', '$options': 'i'}}]}")
     Page<UserEntry> searchUsers(String query, Pageable pageable);
+
+    // Listing methods - password is excluded by projection, never loaded
+    @Query(value = "{}", fields = "{ 'password': 0 }")
+    Page<UserEntry> findAllWithoutPassword(Pageable pageable);
+
+    @Query(value = "{ 'roles': ?0 }", fields = "{ 'password': 0 }")
+    Page<UserEntry> findByRoleWithoutPassword(String role, Pageable pageable);
+
+    // Cursor-backed streams for exports; callers must close the stream
+    @Query(value = "{}", fields = "{ 'password': 0 }")
+    Stream<UserEntry> streamAllWithoutPassword();
+
+    @Query(value = "{ 'roles': ?0 }", fields = "{ 'password': 0 }")
+    Stream<UserEntry> streamByRoleWithoutPassword(String role);
+
+    // Username and email only, used to build the identity filter
+    @Query(value = "{}", fields = "{ 'userName': 1, 'email': 1 }")
+    Stream<UserEntry> streamIdentities();
     
     // Analytics methods
     long countByLastLoginAtAfter(LocalDateTime date);
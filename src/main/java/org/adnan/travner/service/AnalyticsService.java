@@ -29,7 +29,8 @@ public class AnalyticsService {
     private final TravelBuddyRepository travelBuddyRepository;
     private final ProductRepository productRepository;
     private final OrderRepository orderRepository;
-    private final ChatMessageRepository chatMessageRepository;
+    private final ChatMessageStore messageStore;
+    private final ChatActivityRollupService chatActivityRollupService;
 
     /**
      * Get platform overview statistics
@@ -56,7 +57,7 @@ public class AnalyticsService {
         
         // Engagement statistics
         long totalVotes = postVoteRepository.count();
-        long totalChatMessages = chatMessageRepository.count();
+        long totalChatMessages = messageStore.count();
         
         stats.put("users", Map.of(
             "total", totalUsers,
@@ -106,7 +107,7 @@ public class AnalyticsService {
         long userProducts = productRepository.countBySellerId(userId);
         
         // Chat activity
-        long userChatMessages = chatMessageRepository.countBySenderId(userId);
+        long userChatMessages = messageStore.countBySender(userId);
         
         metrics.put("posts", userPosts);
         metrics.put("comments", userComments);
@@ -260,28 +261,19 @@ public class AnalyticsService {
     }
 
     /**
-     * Get chat analytics
+     * Get chat analytics from the hourly rollups; distinct counts are estimates
      */
     @Cacheable(value = "chatAnalytics", key = "#timeframe")
     public Map<String, Object> getChatAnalytics(String timeframe) {
         Map<String, Object> analytics = new HashMap<>();
         
         LocalDateTime startDate = getStartDate(timeframe);
+        ChatActivityRollupService.Summary summary = chatActivityRollupService.summarize(startDate);
         
-        long totalMessages = chatMessageRepository.countByCreatedAtAfter(startDate);
-        long uniqueConversations = chatMessageRepository.findDistinctConversationIdsByCreatedAtAfter(startDate).size();
-        
-        // Message distribution by hour
-        Map<Integer, Long> messagesByHour = chatMessageRepository.findByCreatedAtAfter(startDate)
-            .stream()
-            .collect(Collectors.groupingBy(
-                message -> message.getCreatedAt().getHour(),
-                Collectors.counting()
-            ));
-        
-        analytics.put("totalMessages", totalMessages);
-        analytics.put("uniqueConversations", uniqueConversations);
-        analytics.put("messagesByHour", messagesByHour);
+        analytics.put("totalMessages", summary.totalMessages());
+        analytics.put("uniqueConversations", summary.uniqueConversations());
+        analytics.put("activeSenders", summary.activeSenders());
+        analytics.put("messagesByHour", summary.messagesByHour());
         
         return analytics;
     }
@@ -0,0 +1,257 @@
+package org.adnan.travner.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.UserEntry;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Applies admin operations to many users with one lookup and one write per chunk
+ * instead of a find and save per username. Large inputs run as background jobs
+ * whose progress can be polled.
+ */
+@Service
+@Slf4j
+public class BulkUserOperationService {
+
+    public static final String ADMIN_ROLE = "ADMIN";
+    private static final Set<String> OPERATIONS = Set.of("activate", "deactivate", "delete", "roles");
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final UserSummaryCache userSummaryCache;
+    private final int chunkSize;
+    private final int asyncThreshold;
+    private final ExecutorService executor;
+    private final Cache<String, BulkJob> jobs;
+
+    public BulkUserOperationService(MongoTemplate mongoTemplate, UserSummaryCache userSummaryCache,
+            @Value("${app.admin.bulk.chunk-size:1000}") int chunkSize,
+            @Value("${app.admin.bulk.async-threshold:2000}") int asyncThreshold,
+            @Value("${app.admin.bulk.job-retention-minutes:60}") long jobRetentionMinutes) {
+        this.mongoTemplate = mongoTemplate;
+        this.userSummaryCache = userSummaryCache;
+        this.chunkSize = chunkSize;
+        this.asyncThreshold = asyncThreshold;
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bulk-user-ops");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(jobRetentionMinutes))
+                .build();
+    }
+
+    public boolean isSupported(String operation) {
+        return operation != null && OPERATIONS.contains(operation);
+    }
+
+    public boolean shouldRunAsync(int size) {
+        return size > asyncThreshold;
+    }
+
+    /**
+     * Run the operation on the calling thread
+     */
+    public BulkJob execute(String operation, List<String> usernames, List<String> roles) {
+        List<String> unique = distinct(usernames);
+        BulkJob job = new BulkJob(operation, unique.size());
+        run(job, unique, roles);
+        return job;
+    }
+
+    /**
+     * Queue the operation and return the job immediately; poll it with {@link #getJob(String)}
+     */
+    public BulkJob submit(String operation, List<String> usernames, List<String> roles) {
+        List<String> input = distinct(usernames);
+        BulkJob job = new BulkJob(operation, input.size());
+        jobs.put(job.getId(), job);
+        List<String> newRoles = roles != null ? List.copyOf(roles) : null;
+        executor.execute(() -> run(job, input, newRoles));
+        return job;
+    }
+
+    public Optional<BulkJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId));
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Each user is processed once, so the job total counts distinct names
+     */
+    private static List<String> distinct(List<String> usernames) {
+        return List.copyOf(new LinkedHashSet<>(usernames));
+    }
+
+    private void run(BulkJob job, List<String> unique, List<String> roles) {
+        job.status = JobStatus.RUNNING;
+        try {
+            for (int from = 0; from < unique.size(); from += chunkSize) {
+                List<String> chunk = unique.subList(from, Math.min(from + chunkSize, unique.size()));
+                processChunk(job, chunk, roles);
+                job.processed.addAndGet(chunk.size());
+            }
+            job.status = JobStatus.COMPLETED;
+        } catch (Exception e) {
+            log.error("Bulk {} job {} failed after {} users: {}", job.getOperation(), job.getId(),
+                    job.processed.get(), e.getMessage(), e);
+            job.addError("Job aborted: " + e.getMessage());
+            job.status = JobStatus.FAILED;
+        } finally {
+            job.finishedAt = LocalDateTime.now();
+        }
+    }
+
+    private void processChunk(BulkJob job, List<String> chunk, List<String> roles) {
+        Query lookup = new Query(Criteria.where("userName").in(chunk));
+        lookup.fields().include("userName").include("roles");
+        Map<String, UserEntry> found = new HashMap<>();
+        for (UserEntry user : mongoTemplate.find(lookup, UserEntry.class)) {
+            found.put(user.getUserName(), user);
+        }
+
+        boolean protectAdmins = "delete".equals(job.getOperation())
+                || ("roles".equals(job.getOperation()) && !roles.contains(ADMIN_ROLE));
+        List<ObjectId> targets = new ArrayList<>(chunk.size());
+        for (String username : chunk) {
+            UserEntry user = found.get(username);
+            if (user == null) {
+                job.fail("User " + username + " not found");
+            } else if (protectAdmins && user.getRoles() != null && user.getRoles().contains(ADMIN_ROLE)) {
+                job.fail(("delete".equals(job.getOperation()) ? "Cannot delete admin user " : "Cannot remove admin role from ")
+                        + username);
+            } else {
+                targets.add(user.getId());
+            }
+        }
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        // Admin protection is repeated in the write filter so a concurrent promotion is honoured
+        Criteria filter = Criteria.where("_id").in(targets);
+        if (protectAdmins) {
+            filter = filter.and("roles").ne(ADMIN_ROLE);
+        }
+        Query write = new Query(filter);
+        long affected;
+        switch (job.getOperation()) {
+            case "activate" -> affected = updateMatched(write, new Update().set("active", true));
+            case "deactivate" -> affected = updateMatched(write, new Update().set("active", false));
+            case "roles" -> affected = updateMatched(write, new Update().set("roles", roles));
+            case "delete" -> {
+                DeleteResult result = mongoTemplate.remove(write, UserEntry.class);
+                affected = result.getDeletedCount();
+            }
+            default -> throw new IllegalArgumentException("Invalid operation: " + job.getOperation());
+        }
+        targets.forEach(userSummaryCache::invalidate);
+
+        job.success.addAndGet((int) affected);
+        long skipped = targets.size() - affected;
+        if (skipped > 0) {
+            job.failureCount.addAndGet((int) skipped);
+            job.addError(skipped + " user(s) changed or were removed while the operation ran");
+        }
+    }
+
+    private long updateMatched(Query query, Update update) {
+        UpdateResult result = mongoTemplate.updateMulti(query, update, UserEntry.class);
+        return result.getMatchedCount();
+    }
+
+    public enum JobStatus {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    /**
+     * Progress and outcome of one bulk operation
+     */
+    @Getter
+    public static class BulkJob {
+        private final String id = UUID.randomUUID().toString();
+        private final String operation;
+        private final int total;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile JobStatus status = JobStatus.QUEUED;
+        private final AtomicInteger processed = new AtomicInteger();
+        private final AtomicInteger success = new AtomicInteger();
+        private final AtomicInteger failureCount = new AtomicInteger();
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        private volatile boolean errorsTruncated;
+
+        BulkJob(String operation, int total) {
+            this.operation = operation;
+            this.total = total;
+        }
+
+        void fail(String error) {
+            failureCount.incrementAndGet();
+            addError(error);
+        }
+
+        void addError(String error) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            } else {
+                errorsTruncated = true;
+            }
+        }
+
+        public boolean isDone() {
+            return status == JobStatus.COMPLETED || status == JobStatus.FAILED;
+        }
+
+        /**
+         * Same keys as the synchronous bulk response, plus job progress
+         */
+        public Map<String, Object> toMap() {
+            Map<String, Object> result = new HashMap<>();
+            result.put("jobId", id);
+            result.put("status", status.name());
+            result.put("operation", operation);
+            result.put("totalProcessed", total);
+            result.put("processed", processed.get());
+            result.put("successCount", success.get());
+            result.put("failureCount", failureCount.get());
+            result.put("errors", List.copyOf(errors));
+            result.put("errorsTruncated", errorsTruncated);
+            result.put("startedAt", startedAt);
+            result.put("finishedAt", finishedAt);
+            return result;
+        }
+    }
+}
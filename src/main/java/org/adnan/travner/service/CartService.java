@@ -9,7 +9,6 @@ import org.adnan.travner.dto.UpdateCartItemRequest;
 import org.adnan.travner.entry.CartEntry;
 import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.CartRepository;
-import org.adnan.travner.repository.UserRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -26,7 +25,7 @@ import java.util.stream.Collectors;
 public class CartService {
 
     private final CartRepository cartRepository;
-    private final UserRepository userRepository;
+    private final PrincipalContext principalContext;
     private final ProductService productService;
 
     /**
@@ -35,7 +34,7 @@ public class CartService {
     public CartDTO getUserCart(String username) {
         log.debug("Getting cart for user: {}", username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -64,7 +63,7 @@ public class CartService {
     public CartDTO addToCart(String username, AddToCartRequest request) {
         log.debug("Adding product {} to cart for user: {}", request.getProductId(), username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -123,7 +122,7 @@ public class CartService {
         log.debug("Updating cart item {} quantity to {} for user: {}",
                 request.getProductId(), request.getQuantity(), username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -154,7 +153,7 @@ public class CartService {
     public CartDTO removeFromCart(String username, String productId) {
         log.debug("Removing product {} from cart for user: {}", productId, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -183,7 +182,7 @@ public class CartService {
     public CartDTO clearCart(String username) {
         log.debug("Clearing cart for user: {}", username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -205,7 +204,7 @@ public class CartService {
      * Get cart item count for user
      */
     public int getCartItemCount(String username) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
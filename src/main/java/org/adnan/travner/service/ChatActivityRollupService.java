@@ -0,0 +1,143 @@
+package org.adnan.travner.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.ChatActivityRollup;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.util.HyperLogLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Maintains hourly chat activity rollups. Every persisted batch adds to its hour's
+ * document with one upsert; the analytics endpoint reads only these documents, and
+ * {@link #backfill} rebuilds past hours from the message history.
+ */
+@Service
+@Slf4j
+public class ChatActivityRollupService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatMessageStore messageStore;
+    private final int precision;
+
+    public ChatActivityRollupService(MongoTemplate mongoTemplate, ChatMessageStore messageStore,
+            @Value("${app.chat.analytics.hll-precision:11}") int precision) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageStore = messageStore;
+        this.precision = precision;
+    }
+
+    /**
+     * Add a batch of newly persisted messages to their hourly rollups
+     */
+    public void record(List<ChatMessage> batch) {
+        Map<LocalDateTime, List<ChatMessage>> byHour = batch.stream()
+                .filter(message -> message.getCreatedAt() != null)
+                .collect(Collectors.groupingBy(message -> message.getCreatedAt().truncatedTo(ChronoUnit.HOURS)));
+        byHour.forEach((hour, messages) -> {
+            HyperLogLog conversations = new HyperLogLog(precision);
+            HyperLogLog senders = new HyperLogLog(precision);
+            for (ChatMessage message : messages) {
+                conversations.add(message.getConversationId());
+                senders.add(message.getSenderId());
+            }
+            Update update = new Update().inc("messageCount", messages.size());
+            conversations.toSparse().forEach((index, rank) -> update.max("conversations." + index, rank));
+            senders.toSparse().forEach((index, rank) -> update.max("senders." + index, rank));
+            mongoTemplate.upsert(new Query(Criteria.where("_id").is(hour)), update, ChatActivityRollup.class);
+        });
+    }
+
+    /**
+     * Combine the rollups from the hour containing {@code from} onwards
+     */
+    public Summary summarize(LocalDateTime from) {
+        Query query = new Query(Criteria.where("_id").gte(from.truncatedTo(ChronoUnit.HOURS)));
+        HyperLogLog conversations = new HyperLogLog(precision);
+        HyperLogLog senders = new HyperLogLog(precision);
+        Map<Integer, Long> messagesByHour = new TreeMap<>();
+        long total = 0;
+        try (Stream<ChatActivityRollup> rollups = mongoTemplate.stream(query, ChatActivityRollup.class)) {
+            for (ChatActivityRollup rollup : (Iterable<ChatActivityRollup>) rollups::iterator) {
+                total += rollup.getMessageCount();
+                messagesByHour.merge(rollup.getHour().getHour(), rollup.getMessageCount(), Long::sum);
+                conversations.merge(rollup.getConversations());
+                senders.merge(rollup.getSenders());
+            }
+        }
+        return new Summary(total, conversations.estimate(), senders.estimate(), messagesByHour);
+    }
+
+    /**
+     * Rebuild the rollups for hours in [from, until) from the message history in
+     * whichever layout stores it, replacing whatever is stored for them. The store
+     * streams one row per hour, conversation and sender, sorted by hour, so only one
+     * hour is held in memory.
+     *
+     * @return number of hours written
+     */
+    public int backfill(LocalDateTime from, LocalDateTime until) {
+        int hours = 0;
+        ChatActivityRollup current = null;
+        HyperLogLog conversations = null;
+        HyperLogLog senders = null;
+        try (Stream<ChatMessageStore.HourlyActivity> rows = messageStore.streamHourlyActivity(from, until)) {
+            for (ChatMessageStore.HourlyActivity row : (Iterable<ChatMessageStore.HourlyActivity>) rows::iterator) {
+                if (current == null || !current.getHour().equals(row.hour())) {
+                    if (current != null) {
+                        saveRollup(current, conversations, senders);
+                        hours++;
+                    }
+                    current = ChatActivityRollup.builder().hour(row.hour()).build();
+                    conversations = new HyperLogLog(precision);
+                    senders = new HyperLogLog(precision);
+                }
+                current.setMessageCount(current.getMessageCount() + row.messages());
+                if (row.conversationId() != null) {
+                    conversations.add(row.conversationId());
+                }
+                if (row.senderId() != null) {
+                    senders.add(row.senderId());
+                }
+            }
+        }
+        if (current != null) {
+            saveRollup(current, conversations, senders);
+            hours++;
+        }
+        return hours;
+    }
+
+    /**
+     * Whether any hour before {@code until} has a rollup
+     */
+    public boolean hasRollupsBefore(LocalDateTime until) {
+        return mongoTemplate.exists(new Query(Criteria.where("_id").lt(until)), ChatActivityRollup.class);
+    }
+
+    private void saveRollup(ChatActivityRollup rollup, HyperLogLog conversations, HyperLogLog senders) {
+        rollup.setConversations(conversations.toSparse());
+        rollup.setSenders(senders.toSparse());
+        mongoTemplate.save(rollup);
+    }
+
+    /**
+     * Chat activity over a period; distinct counts are estimates
+     */
+    public record Summary(long totalMessages, long uniqueConversations, long activeSenders,
+            Map<Integer, Long> messagesByHour) {
+    }
+}
@@ -0,0 +1,128 @@
+package org.adnan.travner.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Delivers chat messages to a conversation: one broadcast on its topic for clients
+ * viewing it, plus the personal queue of every other member who is online and has
+ * not muted it, so members elsewhere in the app hear about the message too.
+ * <p>
+ * Members come from {@link ConversationMembershipCache} and presence from
+ * {@link PresenceService}. The payload is converted once and the same bytes are
+ * sent to every destination. Queue deliveries are grouped per worker: a member
+ * always maps to the same single-threaded worker, so one publish becomes one task
+ * per worker and each member still receives messages in the order published.
+ */
+@Service
+@Slf4j
+public class ChatFanOutService {
+
+    private static final String USER_QUEUE = "/queue/messages";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ConversationMembershipCache conversationMembers;
+    private final PresenceService presence;
+    private final List<Executor> workers;
+    private final String userDestinationPrefix;
+
+    @Autowired
+    public ChatFanOutService(SimpMessagingTemplate messagingTemplate, ConversationMembershipCache conversationMembers,
+            PresenceService presence, @Value("${app.chat.fan-out.workers:0}") int workers) {
+        this(messagingTemplate, conversationMembers, presence, startWorkers(
+                workers > 0 ? workers : Runtime.getRuntime().availableProcessors()));
+    }
+
+    ChatFanOutService(SimpMessagingTemplate messagingTemplate, ConversationMembershipCache conversationMembers,
+            PresenceService presence, List<Executor> workers) {
+        this.messagingTemplate = messagingTemplate;
+        this.conversationMembers = conversationMembers;
+        this.presence = presence;
+        this.workers = List.copyOf(workers);
+        String prefix = messagingTemplate.getUserDestinationPrefix();
+        this.userDestinationPrefix = prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    /**
+     * Publish a message of the conversation from the sender
+     *
+     * @return number of personal queue deliveries scheduled
+     */
+    public int publish(String conversationId, String senderId, Object payload) {
+        Message<?> encoded = encode(payload);
+        messagingTemplate.send("/topic/conversation/" + conversationId, encoded);
+
+        ConversationMembershipCache.Members members = conversationMembers.get(conversationId).orElse(null);
+        if (members == null) {
+            return 0;
+        }
+        List<List<String>> batches = new ArrayList<>(workers.size());
+        for (int i = 0; i < workers.size(); i++) {
+            batches.add(new ArrayList<>());
+        }
+        int recipients = 0;
+        for (String userId : members.participantIds()) {
+            if (userId.equals(senderId) || members.isMuted(userId) || !presence.isOnline(userId)) {
+                continue;
+            }
+            batches.get(Math.floorMod(userId.hashCode(), workers.size())).add(userId);
+            recipients++;
+        }
+        for (int i = 0; i < workers.size(); i++) {
+            List<String> batch = batches.get(i);
+            if (!batch.isEmpty()) {
+                workers.get(i).execute(() -> deliver(batch, encoded));
+            }
+        }
+        return recipients;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Lets queued deliveries go out before the broker channel closes
+        for (Executor worker : workers) {
+            if (worker instanceof ExecutorService service) {
+                service.close();
+            }
+        }
+    }
+
+    private Message<?> encode(Object payload) {
+        Message<?> encoded = messagingTemplate.getMessageConverter().toMessage(payload, null);
+        if (encoded == null) {
+            throw new MessageConversionException("Unable to convert payload of type " + payload.getClass().getName());
+        }
+        return encoded;
+    }
+
+    private void deliver(List<String> userIds, Message<?> encoded) {
+        for (String userId : userIds) {
+            try {
+                messagingTemplate.send(userDestinationPrefix + userId + USER_QUEUE, encoded);
+            } catch (MessagingException e) {
+                log.warn("Failed to deliver message to {}: {}", userId, e.getMessage());
+            }
+        }
+    }
+
+    private static List<Executor> startWorkers(int count) {
+        List<Executor> workers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            workers.add(Executors.newSingleThreadExecutor(Thread.ofVirtual().name("chat-fan-out-" + i).factory()));
+        }
+        return workers;
+    }
+}
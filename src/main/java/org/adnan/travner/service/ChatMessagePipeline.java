@@ -0,0 +1,183 @@
+package org.adnan.travner.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.ChatMessageDTO;
+import org.adnan.travner.dto.SendMessageDTO;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.repository.ChatSequenceCounter;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts chat messages off the inbound thread and persists them asynchronously.
+ * Each conversation has its own ordered lane: a message gets its server id when it
+ * is enqueued, and a single virtual thread per busy lane drains it in batches
+ * through {@link ChatService#persistBatch}. The drainer numbers each batch from one
+ * block reserved in {@link ChatSequenceCounter}, so sequences stay unique when
+ * several nodes accept messages for the same conversation, cost one round trip
+ * per batch, and the inbound thread never waits on MongoDB.
+ */
+@Service
+@Slf4j
+public class ChatMessagePipeline {
+
+    public enum AckMode {
+        PERSIST, ENQUEUE
+    }
+
+    private final ChatService chatService;
+    private final ChatMessageStore messageStore;
+    private final ChatSequenceCounter sequences;
+    private final int batchSize;
+    private final AckMode ackMode;
+    private final Cache<String, Lane> lanes;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public ChatMessagePipeline(ChatService chatService, ChatMessageStore messageStore, ChatSequenceCounter sequences,
+            @Value("${app.chat.pipeline.batch-size:200}") int batchSize,
+            @Value("${app.chat.pipeline.ack-mode:persist}") String ackMode,
+            @Value("${app.chat.pipeline.lane-idle-minutes:10}") long laneIdleMinutes) {
+        this.chatService = chatService;
+        this.messageStore = messageStore;
+        this.sequences = sequences;
+        this.batchSize = batchSize;
+        this.ackMode = AckMode.valueOf(ackMode.trim().toUpperCase());
+        // Idle lanes are dropped; a closed lane is never written to again and the next
+        // message opens a new one
+        this.lanes = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(laneIdleMinutes))
+                .evictionListener((String conversationId, Lane lane, RemovalCause cause) -> {
+                    if (lane != null) {
+                        lane.close();
+                    }
+                })
+                .build();
+    }
+
+    public AckMode getAckMode() {
+        return ackMode;
+    }
+
+    /**
+     * Validate and enqueue a message. The returned message carries its id; its sequence
+     * number is assigned when its batch is drained. {@code persisted} completes with the
+     * numbered message once the batch containing it has been written, and only then
+     * may it be broadcast.
+     */
+    public Accepted submit(SendMessageDTO request, String senderId) {
+        ChatMessage message = chatService.prepareMessage(request, senderId);
+        message.setId(new ObjectId().toHexString());
+        CompletableFuture<ChatMessageDTO> persisted = new CompletableFuture<>();
+
+        while (true) {
+            Accepted accepted;
+            Lane lane = lanes.get(message.getConversationId(), this::openLane);
+            synchronized (lane) {
+                if (lane.closed) {
+                    continue;
+                }
+                // Snapshot before the drainer can touch the message
+                accepted = new Accepted(chatService.toMessageDTO(message), persisted);
+                lane.queue.add(new Pending(message, persisted));
+                if (!lane.draining) {
+                    lane.draining = true;
+                    executor.execute(() -> drain(lane));
+                }
+            }
+            return accepted;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        // Lets in-flight lanes finish writing what they have accepted
+        executor.close();
+    }
+
+    private Lane openLane(String conversationId) {
+        return new Lane(conversationId);
+    }
+
+    private void drain(Lane lane) {
+        while (true) {
+            List<Pending> batch = new ArrayList<>(Math.min(batchSize, 16));
+            synchronized (lane) {
+                while (batch.size() < batchSize && !lane.queue.isEmpty()) {
+                    batch.add(lane.queue.poll());
+                }
+                if (batch.isEmpty()) {
+                    lane.draining = false;
+                    return;
+                }
+            }
+            persist(lane, batch);
+        }
+    }
+
+    private void persist(Lane lane, List<Pending> batch) {
+        String conversationId = lane.conversationId;
+        try {
+            if (!lane.seeded) {
+                // Conversations written before counters existed continue from their stored messages
+                sequences.seed(conversationId, messageStore.findLastSequence(conversationId));
+                lane.seeded = true;
+            }
+            // Queue order is batch order, so the block numbers the lane in order
+            long sequence = sequences.reserve(conversationId, batch.size());
+            for (Pending pending : batch) {
+                pending.message().setSequence(sequence++);
+            }
+            chatService.persistBatch(conversationId, batch.stream().map(Pending::message).toList());
+            for (Pending pending : batch) {
+                pending.persisted().complete(chatService.toMessageDTO(pending.message()));
+            }
+        } catch (Exception e) {
+            log.error("Failed to persist {} messages for conversation {}: {}", batch.size(), conversationId,
+                    e.getMessage(), e);
+            for (Pending pending : batch) {
+                pending.persisted().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A message accepted by the pipeline and the completion of its durable write
+     */
+    public record Accepted(ChatMessageDTO message, CompletableFuture<ChatMessageDTO> persisted) {
+    }
+
+    private record Pending(ChatMessage message, CompletableFuture<ChatMessageDTO> persisted) {
+    }
+
+    private static final class Lane {
+        private final String conversationId;
+        private final Queue<Pending> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+        // Only touched by the lane's drainer, which hands over under the lane lock
+        private boolean seeded;
+
+        Lane(String conversationId) {
+            this.conversationId = conversationId;
+        }
+
+        synchronized void close() {
+            closed = true;
+        }
+    }
+}
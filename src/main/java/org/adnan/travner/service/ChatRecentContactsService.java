@@ -0,0 +1,182 @@
+package org.adnan.travner.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.UserSummaryDTO;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatRecentContacts;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Maintains each user's recent direct contacts. Every persisted batch of a direct
+ * conversation moves the peer to the front of both participants' lists with one
+ * pipeline upsert per participant: the previous entry for the peer is filtered out,
+ * the new one is prepended with its unread and message counts carried over, and the
+ * list is sliced to the limit. Reads are one document per user.
+ */
+@Service
+@Slf4j
+public class ChatRecentContactsService {
+
+    static final int PREVIEW_LENGTH = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final UserSummaryCache userSummaryCache;
+    private final int limit;
+
+    public ChatRecentContactsService(MongoTemplate mongoTemplate, UserSummaryCache userSummaryCache,
+            @Value("${app.chat.recent-contacts.limit:50}") int limit) {
+        this.mongoTemplate = mongoTemplate;
+        this.userSummaryCache = userSummaryCache;
+        this.limit = limit;
+    }
+
+    /**
+     * Record an ordered batch of a direct conversation in both participants' lists.
+     * A participant's unread count restarts after their own newest message in the
+     * batch; otherwise it grows by the messages their peer sent.
+     */
+    public void record(String conversationId, Set<String> participantIds, List<ChatMessage> batch) {
+        if (batch.isEmpty() || participantIds.size() != 2) {
+            return;
+        }
+        ChatMessage last = batch.get(batch.size() - 1);
+        for (String userId : participantIds) {
+            String peerId = participantIds.stream().filter(id -> !id.equals(userId)).findFirst().orElseThrow();
+            int ownLast = -1;
+            for (int i = 0; i < batch.size(); i++) {
+                if (userId.equals(batch.get(i).getSenderId())) {
+                    ownLast = i;
+                }
+            }
+            long received = batch.size() - 1 - ownLast;
+            ChatRecentContacts.Contact contact = ChatRecentContacts.Contact.builder()
+                    .peerId(peerId)
+                    .conversationId(conversationId)
+                    .lastMessage(preview(last.getContent()))
+                    .lastSenderId(last.getSenderId())
+                    .lastMessageAt(last.getCreatedAt())
+                    .build();
+            moveToFront(userId, contact, ownLast >= 0, received, batch.size());
+        }
+    }
+
+    /**
+     * Put a contact at the front of a user's list with absolute counts; used to
+     * backfill lists from existing conversations
+     */
+    public void seed(String userId, ChatRecentContacts.Contact contact) {
+        moveToFront(userId, contact, true, contact.getUnread(), contact.getMessageCount());
+    }
+
+    /**
+     * Clear the unread count of a conversation in the reader's list
+     */
+    public void markRead(String userId, String conversationId) {
+        mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(userId)),
+                new Update().set("contacts.$[c].unread", 0L)
+                        .filterArray(Criteria.where("c.conversationId").is(conversationId)),
+                ChatRecentContacts.class);
+    }
+
+    public List<ChatRecentContacts.Contact> getContacts(String userId) {
+        ChatRecentContacts recent = mongoTemplate.findById(userId, ChatRecentContacts.class);
+        return recent != null && recent.getContacts() != null ? recent.getContacts() : List.of();
+    }
+
+    /**
+     * The entry for one peer, read with a positional projection
+     */
+    public Optional<ChatRecentContacts.Contact> getContact(String userId, String peerId) {
+        Query query = new Query(Criteria.where("_id").is(userId).and("contacts.peerId").is(peerId));
+        query.fields().position("contacts", 1);
+        ChatRecentContacts recent = mongoTemplate.findOne(query, ChatRecentContacts.class);
+        if (recent == null || recent.getContacts() == null) {
+            return Optional.empty();
+        }
+        return recent.getContacts().stream().findFirst();
+    }
+
+    /**
+     * Recent contacts as user summaries, newest first; profiles come from the user cache
+     */
+    public List<UserSummaryDTO> getRecentUsers(String userId) {
+        return getContacts(userId).stream()
+                .map(contact -> userSummaryCache.getByUsername(contact.getPeerId())
+                        .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                        .orElseGet(() -> UserSummaryDTO.builder().userName(contact.getPeerId()).build()))
+                .toList();
+    }
+
+    private void moveToFront(String userId, ChatRecentContacts.Contact contact, boolean resetUnread, long unread,
+            long messages) {
+        Document existing = new Document("$ifNull", List.of("$contacts", List.of()));
+        Document previous = new Document("$arrayElemAt", List.of(new Document("$filter", new Document("input", existing)
+                .append("cond", new Document("$eq", List.of("$$this.peerId", literal(contact.getPeerId()))))), 0));
+        Document others = new Document("$filter", new Document("input", existing)
+                .append("cond", new Document("$ne", List.of("$$this.peerId", literal(contact.getPeerId())))));
+        Document entry = new Document("peerId", literal(contact.getPeerId()))
+                .append("conversationId", literal(contact.getConversationId()))
+                .append("lastMessage", literal(contact.getLastMessage()))
+                .append("lastSenderId", literal(contact.getLastSenderId()))
+                .append("lastMessageAt", toDate(contact.getLastMessageAt()))
+                .append("unread", resetUnread ? (Object) unread : add("$$previous.unread", unread))
+                .append("messageCount", add("$$previous.messageCount", messages));
+        Document contacts = new Document("$let", new Document("vars", new Document("previous", previous))
+                .append("in", new Document("$slice", List.of(
+                        new Document("$concatArrays", List.of(List.of(entry), others)), limit))));
+        Document set = new Document("$set", new Document("contacts", contacts)
+                .append("updatedAt", toDate(LocalDateTime.now())));
+        AggregationUpdate update = AggregationUpdate.from(List.of(context -> set));
+        Query query = new Query(Criteria.where("_id").is(userId));
+        try {
+            mongoTemplate.upsert(query, update, ChatRecentContacts.class);
+        } catch (DuplicateKeyException e) {
+            // Another batch created the document first; it exists now, so update it
+            mongoTemplate.upsert(query, update, ChatRecentContacts.class);
+        }
+    }
+
+    private static Document add(String field, long value) {
+        return new Document("$add", List.of(new Document("$ifNull", List.of(field, 0L)), value));
+    }
+
+    /**
+     * User content must not be read as a field path or operator
+     */
+    private static Document literal(String value) {
+        return new Document("$literal", value);
+    }
+
+    /**
+     * Dates are stored the way the entity mapping stores LocalDateTime
+     */
+    private static Date toDate(LocalDateTime time) {
+        return time != null ? Date.from(time.atZone(ZoneId.systemDefault()).toInstant()) : null;
+    }
+
+    public static String preview(String content) {
+        if (content == null || content.length() <= PREVIEW_LENGTH) {
+            return content;
+        }
+        int end = PREVIEW_LENGTH - 1;
+        if (Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        return content.substring(0, end) + "…";
+    }
+}
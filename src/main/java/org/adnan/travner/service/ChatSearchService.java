@@ -0,0 +1,271 @@
+package org.adnan.travner.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.ChatSearchResultDTO;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatSearchEntry;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Searches message content within the conversations a user belongs to. Each message
+ * has one entry holding its distinct normalized terms; the multikey index on
+ * (conversationId, terms, createdAt, _id) turns those into postings partitioned by
+ * conversation, so a query reads only the postings of the conversations in scope,
+ * newest first, and resumes from a cursor without skipping. Entries are written as
+ * batches are persisted, replaced when a message changes and removed with it.
+ */
+@Service
+@Slf4j
+public class ChatSearchService {
+
+    static final int MIN_TERM_LENGTH = 2;
+    static final int MAX_TERM_LENGTH = 40;
+    static final int MAX_QUERY_TERMS = 8;
+    private static final int REBUILD_PAGE_SIZE = 500;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+    private final MongoTemplate mongoTemplate;
+    private final ChatMessageStore messageStore;
+    private final ConversationMembershipCache conversationMembers;
+    private final int snippetLength;
+    private final int maxTerms;
+
+    public ChatSearchService(MongoTemplate mongoTemplate, ChatMessageStore messageStore,
+            ConversationMembershipCache conversationMembers,
+            @Value("${app.chat.search.snippet-length:160}") int snippetLength,
+            @Value("${app.chat.search.max-terms:256}") int maxTerms) {
+        this.mongoTemplate = mongoTemplate;
+        this.messageStore = messageStore;
+        this.conversationMembers = conversationMembers;
+        this.snippetLength = snippetLength;
+        this.maxTerms = maxTerms;
+    }
+
+    /**
+     * Add or replace the entries of persisted messages in one unordered bulk write.
+     * Also the path for edited messages: the new content replaces the old terms.
+     */
+    public void index(List<ChatMessage> messages) {
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatSearchEntry.class);
+        int writes = 0;
+        for (ChatMessage message : messages) {
+            if (message.getId() == null) {
+                continue;
+            }
+            Set<String> terms = tokenize(message.getContent());
+            if (terms.isEmpty()) {
+                bulk.remove(Query.query(Criteria.where("_id").is(message.getId())));
+            } else {
+                bulk.replaceOne(Query.query(Criteria.where("_id").is(message.getId())), ChatSearchEntry.builder()
+                        .messageId(message.getId())
+                        .conversationId(message.getConversationId())
+                        .terms(new ArrayList<>(terms))
+                        .senderId(message.getSenderId())
+                        .content(message.getContent())
+                        .createdAt(message.getCreatedAt())
+                        .build(), FindAndReplaceOptions.options().upsert());
+            }
+            writes++;
+        }
+        if (writes > 0) {
+            bulk.execute();
+        }
+    }
+
+    /**
+     * Drop a deleted message from the index
+     */
+    public void remove(String messageId) {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").is(messageId)), ChatSearchEntry.class);
+    }
+
+    /**
+     * Rebuild a conversation's entries from its history, streamed newest first a page
+     * at a time
+     *
+     * @return the number of messages read
+     */
+    public long rebuild(String conversationId) {
+        mongoTemplate.remove(Query.query(Criteria.where("conversationId").is(conversationId)), ChatSearchEntry.class);
+        long read = 0;
+        List<ChatMessage> page = messageStore.findNewest(conversationId, REBUILD_PAGE_SIZE);
+        while (!page.isEmpty()) {
+            index(page);
+            read += page.size();
+            if (page.size() < REBUILD_PAGE_SIZE) {
+                break;
+            }
+            page = messageStore.findBefore(page.get(page.size() - 1), REBUILD_PAGE_SIZE);
+        }
+        return read;
+    }
+
+    /**
+     * Messages containing every term of the query, newest first. Searches one
+     * conversation when conversationId is given, and otherwise every conversation
+     * listing the user among its participantIds; membership rows are not trusted
+     * for access, since they can outlive a participant's removal.
+     *
+     * @param before id of the last hit of the previous page, or null for the first page
+     * @throws IllegalArgumentException when the query has no searchable terms, the cursor is
+     *                                  unknown or the user is not a participant of conversationId
+     */
+    public ChatSearchResultDTO search(String userId, String conversationId, String query, String before, int limit) {
+        List<String> queryTerms = tokenize(query).stream().limit(MAX_QUERY_TERMS).toList();
+        if (queryTerms.isEmpty()) {
+            throw new IllegalArgumentException("Search query must contain a word of at least "
+                    + MIN_TERM_LENGTH + " characters");
+        }
+        Criteria criteria;
+        if (conversationId != null) {
+            if (!conversationMembers.isParticipant(conversationId, userId)) {
+                throw new IllegalArgumentException("User is not a participant in this conversation");
+            }
+            criteria = Criteria.where("conversationId").is(conversationId);
+        } else {
+            Query participating = Query.query(Criteria.where("participantIds").is(userId));
+            participating.fields().include("_id");
+            List<String> conversationIds = mongoTemplate.find(participating, ChatConversation.class).stream()
+                    .map(ChatConversation::getId)
+                    .toList();
+            if (conversationIds.isEmpty()) {
+                return ChatSearchResultDTO.builder().hits(List.of()).build();
+            }
+            criteria = Criteria.where("conversationId").in(conversationIds);
+        }
+        criteria.and("terms").all(queryTerms);
+        if (before != null) {
+            ChatSearchEntry cursor = ObjectId.isValid(before) ? mongoTemplate.findOne(Query.query(
+                    new Criteria().andOperator(Criteria.where("_id").is(before), criteria)), ChatSearchEntry.class) : null;
+            if (cursor == null) {
+                throw new IllegalArgumentException("Unknown search cursor: " + before);
+            }
+            criteria.orOperator(Criteria.where("createdAt").lt(cursor.getCreatedAt()),
+                    Criteria.where("createdAt").is(cursor.getCreatedAt()).and("_id").lt(new ObjectId(before)));
+        }
+
+        List<ChatSearchEntry> entries = mongoTemplate.find(Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .limit(limit + 1), ChatSearchEntry.class);
+        boolean hasMore = entries.size() > limit;
+        List<ChatSearchResultDTO.Hit> hits = entries.stream()
+                .limit(limit)
+                .map(entry -> hit(entry, Set.copyOf(queryTerms)))
+                .toList();
+        return ChatSearchResultDTO.builder()
+                .hits(hits)
+                .hasMore(hasMore)
+                .nextCursor(hasMore ? hits.get(hits.size() - 1).getMessageId() : null)
+                .build();
+    }
+
+    private ChatSearchResultDTO.Hit hit(ChatSearchEntry entry, Set<String> queryTerms) {
+        String content = entry.getContent() != null ? entry.getContent() : "";
+        List<Word> matches = words(content).stream().filter(word -> queryTerms.contains(word.term())).toList();
+        int start = 0;
+        int end = content.length();
+        if (content.length() > snippetLength && !matches.isEmpty()) {
+            Word first = matches.get(0);
+            start = Math.max(0, first.start() - Math.max(0, snippetLength - (first.end() - first.start())) / 2);
+            start = Math.min(start, content.length() - snippetLength);
+            end = start + snippetLength;
+        } else if (content.length() > snippetLength) {
+            end = snippetLength;
+        }
+        // Never split a surrogate pair at either edge
+        if (start > 0 && Character.isLowSurrogate(content.charAt(start))) {
+            start++;
+        }
+        if (end < content.length() && Character.isHighSurrogate(content.charAt(end - 1))) {
+            end--;
+        }
+        String prefix = start > 0 ? "…" : "";
+        String suffix = end < content.length() ? "…" : "";
+        List<ChatSearchResultDTO.Highlight> highlights = new ArrayList<>();
+        for (Word match : matches) {
+            if (match.start() >= start && match.end() <= end) {
+                highlights.add(new ChatSearchResultDTO.Highlight(match.start() - start + prefix.length(),
+                        match.end() - start + prefix.length()));
+            }
+        }
+        return ChatSearchResultDTO.Hit.builder()
+                .messageId(entry.getMessageId())
+                .conversationId(entry.getConversationId())
+                .senderId(entry.getSenderId())
+                .createdAt(entry.getCreatedAt())
+                .snippet(prefix + content.substring(start, end) + suffix)
+                .highlights(highlights)
+                .build();
+    }
+
+    /**
+     * The distinct searchable terms of a text in order of first appearance, capped
+     * at app.chat.search.max-terms
+     */
+    Set<String> tokenize(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (Word word : words(text)) {
+            if (terms.size() >= maxTerms) {
+                break;
+            }
+            terms.add(word.term());
+        }
+        return terms;
+    }
+
+    /**
+     * Runs of letters and digits with their offsets in the text. Terms are
+     * lowercased with diacritics removed, so "Café" and "cafe" match; runs too short
+     * or too long to be useful words (links, hashes) are left out.
+     */
+    static List<Word> words(String text) {
+        List<Word> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        int i = 0;
+        while (i < text.length()) {
+            int codePoint = text.codePointAt(i);
+            if (!Character.isLetterOrDigit(codePoint)) {
+                i += Character.charCount(codePoint);
+                continue;
+            }
+            int start = i;
+            int length = 0;
+            while (i < text.length() && (Character.isLetterOrDigit(codePoint = text.codePointAt(i))
+                    || Character.getType(codePoint) == Character.NON_SPACING_MARK)) {
+                i += Character.charCount(codePoint);
+                length++;
+            }
+            if (length >= MIN_TERM_LENGTH && length <= MAX_TERM_LENGTH) {
+                words.add(new Word(start, i, normalize(text.substring(start, i))));
+            }
+        }
+        return words;
+    }
+
+    private static String normalize(String word) {
+        return MARKS.matcher(Normalizer.normalize(word, Normalizer.Form.NFKD)).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+
+    record Word(int start, int end, String term) {
+    }
+}
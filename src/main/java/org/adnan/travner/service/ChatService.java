@@ -2,19 +2,30 @@ package org.adnan.travner.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.domain.conversation.ConversationMembershipRepository;
 import org.adnan.travner.dto.*;
+import org.adnan.travner.dto.chat.AddMembersRequest;
 import org.adnan.travner.entry.ChatMessage;
 import org.adnan.travner.entry.ChatConversation;
 import org.adnan.travner.repository.ChatMessageRepository;
+import org.adnan.travner.repository.ChatMessageStore;
 import org.adnan.travner.repository.ChatConversationRepository;
+import org.bson.types.ObjectId;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
-import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -22,26 +33,28 @@ import java.util.stream.Collectors;
 @Slf4j
 public class ChatService {
 
+    /** Concurrent mark-reads of one member rarely collide more than once */
+    private static final int MARK_READ_ATTEMPTS = 3;
+
+    private final ChatMessageStore messageStore;
     private final ChatMessageRepository chatMessageRepository;
     private final ChatConversationRepository chatConversationRepository;
-    private final UserService userService;
+    private final PrincipalContext principalContext;
+    private final ConversationMembershipRepository membershipRepository;
+    private final ConversationMembershipCache conversationMembers;
+    private final ChatActivityRollupService activityRollups;
+    private final ChatRecentContactsService recentContacts;
+    private final ChatSearchService searchIndex;
 
     /**
-     * Get or create a direct conversation between two users
+     * Get or create a direct conversation between two users with one atomic upsert on its pair key
      */
     public ChatConversationDTO getOrCreateDirectConversation(String currentUserId, String otherUserId) {
         log.debug("Getting or creating direct conversation between: {} and {}", currentUserId, otherUserId);
         
-        // Check if conversation already exists
-        Optional<ChatConversation> existingConversation = chatConversationRepository
-                .findDirectConversationBetweenUsers(currentUserId, otherUserId);
-
-        if (existingConversation.isPresent()) {
-            return convertToConversationDTO(existingConversation.get());
-        }
-
-        // Create new conversation
-        ChatConversation newConversation = ChatConversation.builder()
+        ChatConversation candidate = ChatConversation.builder()
+                .id(new ObjectId().toHexString())
+                .pairKey(ChatConversation.directPairKey(currentUserId, otherUserId))
                 .participantIds(List.of(currentUserId, otherUserId))
                 .type("DIRECT")
                 .title(generateDirectConversationTitle(currentUserId, otherUserId))
@@ -51,10 +64,16 @@ public class ChatService {
                 .isActive(true)
                 .build();
 
-        ChatConversation savedConversation = chatConversationRepository.save(newConversation);
-        log.debug("Created new direct conversation: {}", savedConversation.getId());
+        ChatConversation conversation = chatConversationRepository.upsertDirectConversation(candidate);
+        if (!candidate.getId().equals(conversation.getId())) {
+            return toConversationDTOFor(List.of(conversation), currentUserId).get(0);
+        }
+
+        conversationMembers.put(conversation);
+        createMemberships(conversation.getId(), conversation.getParticipantIds());
+        log.debug("Created new direct conversation: {}", conversation.getId());
         
-        return convertToConversationDTO(savedConversation);
+        return convertToConversationDTO(conversation, 0);
     }
 
     /**
@@ -66,7 +85,8 @@ public class ChatService {
         Page<ChatConversation> conversations = chatConversationRepository
                 .findByParticipantIdsContainingAndIsActiveTrue(userId, pageable);
         
-        return conversations.map(this::convertToConversationDTO);
+        List<ChatConversationDTO> content = toConversationDTOFor(conversations.getContent(), userId);
+        return new PageImpl<>(content, pageable, conversations.getTotalElements());
     }
 
     /**
@@ -75,87 +95,296 @@ public class ChatService {
     public Page<ChatMessageDTO> getConversationMessages(String conversationId, Pageable pageable) {
         log.debug("Getting messages for conversation: {}", conversationId);
         
-        Page<ChatMessage> messages = chatMessageRepository
-                .findByConversationIdOrderByCreatedAtDesc(conversationId, pageable);
+        Page<ChatMessage> messages = messageStore.findPage(conversationId, pageable);
+        if (messages.isEmpty()) {
+            return messages.map(message -> convertToMessageDTO(message, List.of()));
+        }
         
-        return messages.map(this::convertToMessageDTO);
+        // One membership read per page; read state is derived from the watermarks
+        List<ConversationMembership> members = membershipRepository.findByConversationId(conversationId);
+        return messages.map(message -> convertToMessageDTO(message, members));
     }
 
     /**
-     * Send a message
+     * Get a window of conversation history addressed by message id cursors.
+     * At most one of before, after and around is used; with none, the newest messages are returned.
+     * "around" returns the given message with up to half the limit on either side.
      */
-    public ChatMessageDTO sendMessage(SendMessageDTO request, String senderId) {
+    public ChatMessageWindowDTO getMessageWindow(String conversationId, String before, String after,
+            String around, int limit) {
+        log.debug("Getting message window for conversation: {}", conversationId);
+        
+        List<ChatMessage> older = List.of();
+        List<ChatMessage> newer = List.of();
+        ChatMessage anchor = null;
+        boolean hasMoreBefore = false;
+        boolean hasMoreAfter = false;
+        
+        if (before != null) {
+            ChatMessage cursor = findCursor(conversationId, before);
+            older = messageStore.findBefore(cursor, limit + 1);
+            hasMoreBefore = older.size() > limit;
+            hasMoreAfter = true;
+        } else if (after != null) {
+            ChatMessage cursor = findCursor(conversationId, after);
+            newer = messageStore.findAfter(cursor, limit + 1);
+            hasMoreAfter = newer.size() > limit;
+            hasMoreBefore = true;
+        } else if (around != null) {
+            anchor = findCursor(conversationId, around);
+            int olderLimit = (limit - 1) / 2;
+            int newerLimit = limit - 1 - olderLimit;
+            older = messageStore.findBefore(anchor, olderLimit + 1);
+            newer = messageStore.findAfter(anchor, newerLimit + 1);
+            hasMoreBefore = older.size() > olderLimit;
+            hasMoreAfter = newer.size() > newerLimit;
+            older = older.subList(0, Math.min(older.size(), olderLimit));
+            newer = newer.subList(0, Math.min(newer.size(), newerLimit));
+        } else {
+            older = messageStore.findNewest(conversationId, limit + 1);
+            hasMoreBefore = older.size() > limit;
+        }
+        
+        // Chronological order: older (fetched newest-first), anchor, newer
+        List<ChatMessage> window = new ArrayList<>(limit);
+        List<ChatMessage> olderInWindow = older.subList(0, Math.min(older.size(), limit));
+        for (int i = olderInWindow.size() - 1; i >= 0; i--) {
+            window.add(olderInWindow.get(i));
+        }
+        if (anchor != null) {
+            window.add(anchor);
+        }
+        window.addAll(newer.subList(0, Math.min(newer.size(), limit)));
+        
+        List<ConversationMembership> members = window.isEmpty()
+                ? List.of() : membershipRepository.findByConversationId(conversationId);
+        List<ChatMessageDTO> messages = window.stream()
+                .map(message -> convertToMessageDTO(message, members))
+                .toList();
+        
+        return ChatMessageWindowDTO.builder()
+                .messages(messages)
+                .hasMoreBefore(hasMoreBefore)
+                .hasMoreAfter(hasMoreAfter)
+                .beforeCursor(messages.isEmpty() ? null : messages.get(0).getId())
+                .afterCursor(messages.isEmpty() ? null : messages.get(messages.size() - 1).getId())
+                .build();
+    }
+
+    /**
+     * Validate a message and build it for the pipeline. Participation is checked
+     * against the membership cache, so this does no database access on a cache hit.
+     */
+    public ChatMessage prepareMessage(SendMessageDTO request, String senderId) {
         log.debug("Sending message from user: {} to conversation: {}", senderId, request.getConversationId());
         
-        // Verify conversation exists and user is participant
-        ChatConversation conversation = chatConversationRepository.findById(request.getConversationId())
+        // Verify conversation exists and user is participant (served from the membership cache)
+        ConversationMembershipCache.Members members = conversationMembers.get(request.getConversationId())
                 .orElseThrow(() -> new RuntimeException("Conversation not found"));
         
-        if (!conversation.getParticipantIds().contains(senderId)) {
+        if (!members.contains(senderId)) {
             throw new RuntimeException("User is not a participant in this conversation");
         }
+        if (!members.active()) {
+            throw new RuntimeException("Conversation is archived");
+        }
 
-        // Get sender user details
-        var senderUser = userService.getById(senderId);
-        String senderUsername = senderUser != null ? senderUser.getUserName() : "Unknown User";
+        // Get sender user details (served from the shared user cache)
+        String senderUsername = principalContext.resolve(senderId)
+                .map(UserSummaryCache.CachedUser::getUserName)
+                .orElse("Unknown User");
         
-        // Create and save message
-        ChatMessage message = ChatMessage.builder()
+        LocalDateTime now = LocalDateTime.now();
+        return ChatMessage.builder()
                 .conversationId(request.getConversationId())
                 .senderId(senderId)
                 .senderUsername(senderUsername)
                 .content(request.getContent())
                 .messageType(request.getMessageType())
-                .createdAt(LocalDateTime.now())
-                .updatedAt(LocalDateTime.now())
+                .createdAt(now)
+                .updatedAt(now)
                 .isEdited(false)
                 .replyToMessageId(request.getReplyToMessageId())
-                .readBy(List.of(senderId)) // Sender has read their own message
-                .status("DELIVERED")
+                .status("SENT")
                 .build();
+    }
 
-        ChatMessage savedMessage = chatMessageRepository.save(message);
+    /**
+     * Durably write an ordered batch of messages of one conversation: one store append,
+     * one lastMessage update for the newest message and one $inc per distinct unread delta.
+     */
+    public void persistBatch(String conversationId, List<ChatMessage> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        batch.forEach(message -> message.setStatus("DELIVERED"));
+        messageStore.append(conversationId, batch);
         
-        // Update conversation last message and unread counts
-        conversation.setLastMessage(request.getContent());
-        conversation.setLastMessageAt(LocalDateTime.now());
-        conversation.setUpdatedAt(LocalDateTime.now());
+        ChatMessage last = batch.get(batch.size() - 1);
+        chatConversationRepository.updateLastMessage(conversationId, last.getContent(), last.getCreatedAt());
+
+        Optional<ConversationMembershipCache.Members> members = conversationMembers.get(conversationId);
+        Set<String> participants = members
+                .map(ConversationMembershipCache.Members::participantIds)
+                .orElse(Set.of());
+        Map<String, Long> unreadDelta = new HashMap<>();
+        for (ChatMessage message : batch) {
+            for (String participantId : participants) {
+                if (!participantId.equals(message.getSenderId())) {
+                    unreadDelta.merge(participantId, 1L, Long::sum);
+                }
+            }
+        }
+        Map<Long, List<String>> recipientsByDelta = unreadDelta.entrySet().stream()
+                .collect(Collectors.groupingBy(Map.Entry::getValue,
+                        Collectors.mapping(Map.Entry::getKey, Collectors.toList())));
+        recipientsByDelta.forEach((delta, recipients) -> {
+            long incremented = membershipRepository.incrementUnreadCount(conversationId, recipients, delta);
+            if (incremented < recipients.size()) {
+                backfillMemberships(conversationId, recipients);
+            }
+        });
         
-        // Update unread counts for all participants except sender
-        for (String participantId : conversation.getParticipantIds()) {
-            if (!participantId.equals(senderId)) {
-                long unreadCount = chatMessageRepository.countByConversationIdAndReadByNotContaining(conversation.getId(), participantId);
-                // Update conversation unread count (this is a simplified approach)
-                // In a real implementation, you might want to track per-user unread counts
+        if (members.filter(conversation -> "DIRECT".equals(conversation.type())).isPresent()) {
+            try {
+                recentContacts.record(conversationId, participants, batch);
+            } catch (Exception e) {
+                log.warn("Failed to update recent contacts for conversation {}: {}", conversationId, e.getMessage());
             }
         }
         
-        chatConversationRepository.save(conversation);
+        try {
+            searchIndex.index(batch);
+        } catch (Exception e) {
+            // Backfilled by ChatSearchService.rebuild; the messages themselves are stored
+            log.warn("Failed to index messages for search in conversation {}: {}", conversationId, e.getMessage());
+        }
+        
+        try {
+            activityRollups.record(batch);
+        } catch (Exception e) {
+            // Analytics must never fail a write that already succeeded
+            log.warn("Failed to update chat activity rollups for conversation {}: {}", conversationId, e.getMessage());
+        }
         
-        log.debug("Message sent successfully: {}", savedMessage.getId());
-        return convertToMessageDTO(savedMessage);
+        log.debug("Persisted {} messages in conversation {}", batch.size(), conversationId);
+    }
+
+    public ChatMessageDTO toMessageDTO(ChatMessage message) {
+        return convertToMessageDTO(message, List.of());
     }
 
     /**
-     * Mark messages as read
+     * Mark messages as read by moving the member's read watermark to the newest message.
+     * Only the messages the watermark passes are taken off the unread counter, so
+     * messages counted while this runs stay unread.
      */
     public void markMessagesAsRead(String conversationId, String userId) {
         log.debug("Marking messages as read for user: {} in conversation: {}", userId, conversationId);
+        if (!conversationMembers.isParticipant(conversationId, userId)) {
+            throw new RuntimeException("User is not a participant in this conversation");
+        }
         
-        List<ChatMessage> unreadMessages = chatMessageRepository
-                .findByConversationIdAndReadByNotContaining(conversationId, userId);
-        
-        for (ChatMessage message : unreadMessages) {
-            if (!message.getReadBy().contains(userId)) {
-                message.getReadBy().add(userId);
-                if (message.getReadBy().size() == 2) { // All participants read
-                    message.setStatus("READ");
-                }
-                chatMessageRepository.save(message);
+        Optional<ChatMessage> latest = messageStore.findLatest(conversationId);
+        if (latest.isPresent()) {
+            advanceReadWatermark(conversationId, userId, latest.get());
+        }
+        if (conversationMembers.get(conversationId).filter(members -> "DIRECT".equals(members.type())).isPresent()) {
+            try {
+                recentContacts.markRead(userId, conversationId);
+            } catch (Exception e) {
+                log.warn("Failed to clear recent contact unread count for {}: {}", userId, e.getMessage());
             }
         }
     }
 
+    private void advanceReadWatermark(String conversationId, String userId, ChatMessage newest) {
+        for (int attempt = 0; attempt < MARK_READ_ATTEMPTS; attempt++) {
+            Optional<ConversationMembership> membership =
+                    membershipRepository.findByConversationIdAndUserId(conversationId, userId);
+            if (membership.isEmpty()) {
+                backfillMemberships(conversationId, List.of(userId));
+                membership = membershipRepository.findByConversationIdAndUserId(conversationId, userId);
+            }
+            LocalDateTime previous = membership.map(ConversationMembership::getLastReadMessageAt).orElse(null);
+            if (previous != null && !previous.isBefore(newest.getCreatedAt())) {
+                return;
+            }
+            long read = messageStore.countFromOthers(conversationId, userId, previous, newest.getCreatedAt());
+            if (membershipRepository.markRead(conversationId, userId, Instant.now(), newest.getId(),
+                    newest.getCreatedAt(), previous, read) > 0) {
+                return;
+            }
+        }
+        log.warn("Read watermark of {} in conversation {} kept moving, giving up", userId, conversationId);
+    }
+
+    /**
+     * Whether the user participates in the conversation, answered from the membership cache
+     */
+    public boolean isParticipant(String conversationId, String userId) {
+        return conversationMembers.isParticipant(conversationId, userId);
+    }
+
+    /**
+     * Add members to a group conversation
+     */
+    public ChatConversationDTO addMembers(AddMembersRequest request, String requesterId) {
+        String conversationId = request.getConversationId();
+        ChatConversation conversation = requireGroupParticipant(conversationId, requesterId);
+        
+        List<String> added = request.getUserIds().stream()
+                .filter(userId -> !conversation.getParticipantIds().contains(userId))
+                .distinct()
+                .toList();
+        if (!added.isEmpty()) {
+            chatConversationRepository.addParticipants(conversationId, added, LocalDateTime.now());
+            backfillMemberships(conversationId, added);
+        }
+        conversationMembers.invalidate(conversationId);
+        
+        return getConversationById(conversationId);
+    }
+
+    /**
+     * Remove a member from a group conversation
+     */
+    public void removeMember(String conversationId, String userId, String requesterId) {
+        requireGroupParticipant(conversationId, requesterId);
+        
+        chatConversationRepository.removeParticipant(conversationId, userId, LocalDateTime.now());
+        membershipRepository.deleteByConversationIdAndUserId(conversationId, userId);
+        conversationMembers.invalidate(conversationId);
+    }
+
+    /**
+     * Archive a conversation for all of its participants
+     */
+    public void archiveConversation(String conversationId, String requesterId) {
+        if (!conversationMembers.isParticipant(conversationId, requesterId)) {
+            throw new RuntimeException("User is not a participant in this conversation");
+        }
+        
+        chatConversationRepository.archive(conversationId, LocalDateTime.now());
+        conversationMembers.invalidate(conversationId);
+    }
+
+    /**
+     * Mute or unmute a conversation for one member; muted members get no personal
+     * queue deliveries for its messages
+     */
+    public void setMuted(String conversationId, String userId, boolean muted) {
+        if (!conversationMembers.isParticipant(conversationId, userId)) {
+            throw new RuntimeException("User is not a participant in this conversation");
+        }
+        
+        if (membershipRepository.setMuted(conversationId, userId, muted) == 0) {
+            backfillMemberships(conversationId, List.of(userId));
+            membershipRepository.setMuted(conversationId, userId, muted);
+        }
+        conversationMembers.invalidate(conversationId);
+    }
+
     /**
      * Get conversation by ID
      */
@@ -167,13 +396,33 @@ public class ChatService {
     }
 
     // Helper methods
+    private ChatMessage findCursor(String conversationId, String messageId) {
+        if (!ObjectId.isValid(messageId)) {
+            throw new IllegalArgumentException("Invalid message cursor: " + messageId);
+        }
+        return messageStore.findById(conversationId, messageId)
+                .orElseThrow(() -> new IllegalArgumentException("Message not found in conversation: " + messageId));
+    }
+
+    private ChatConversation requireGroupParticipant(String conversationId, String userId) {
+        ChatConversation conversation = chatConversationRepository.findById(conversationId)
+                .orElseThrow(() -> new RuntimeException("Conversation not found"));
+        if (!conversation.getParticipantIds().contains(userId)) {
+            throw new RuntimeException("User is not a participant in this conversation");
+        }
+        if (!"GROUP".equals(conversation.getType())) {
+            throw new RuntimeException("Members can only be changed in group conversations");
+        }
+        return conversation;
+    }
+
     private String generateDirectConversationTitle(String currentUserId, String otherUserId) {
         try {
-            var otherUser = userService.getById(otherUserId);
+            var otherUser = principalContext.resolve(otherUserId);
             
-            if (otherUser != null) {
+            if (otherUser.isPresent()) {
                 // Return the username of the other person
-                return otherUser.getUserName();
+                return otherUser.get().getUserName();
             }
         } catch (Exception e) {
             log.warn("Error generating conversation title: {}", e.getMessage());
@@ -182,7 +431,76 @@ public class ChatService {
         return "Direct Message";
     }
 
+    /**
+     * Convert conversations for one viewer, attaching that viewer's own unread counts
+     * from a single membership query.
+     */
+    private List<ChatConversationDTO> toConversationDTOFor(List<ChatConversation> conversations, String userId) {
+        if (conversations.isEmpty()) {
+            return List.of();
+        }
+        List<String> ids = conversations.stream().map(ChatConversation::getId).toList();
+        Map<String, Long> unread = membershipRepository.findByUserIdAndConversationIdIn(userId, ids).stream()
+                .collect(Collectors.toMap(ConversationMembership::getConversationId,
+                        ConversationMembership::getUnreadCount, (a, b) -> a));
+        List<ChatConversationDTO> result = new ArrayList<>(conversations.size());
+        for (ChatConversation conversation : conversations) {
+            Long count = unread.get(conversation.getId());
+            if (count == null) {
+                count = backfillMemberships(conversation.getId(), List.of(userId)).getOrDefault(userId, 0L);
+            }
+            result.add(convertToConversationDTO(conversation, count));
+        }
+        return result;
+    }
+
+    private void createMemberships(String conversationId, List<String> participantIds) {
+        Instant now = Instant.now();
+        membershipRepository.saveAll(participantIds.stream()
+                .map(participantId -> ConversationMembership.builder()
+                        .conversationId(conversationId)
+                        .userId(participantId)
+                        .role(ConversationMembership.MemberRole.MEMBER)
+                        .joinedAt(now)
+                        .lastReadAt(now)
+                        .build())
+                .toList());
+    }
+
+    /**
+     * Create missing membership rows for conversations that predate per-member counters.
+     * The starting count is taken from any legacy readBy data once; afterwards only the counter is used.
+     */
+    private Map<String, Long> backfillMemberships(String conversationId, List<String> userIds) {
+        Set<String> existing = membershipRepository.findByConversationId(conversationId).stream()
+                .map(ConversationMembership::getUserId)
+                .collect(Collectors.toSet());
+        Instant now = Instant.now();
+        List<ConversationMembership> missing = userIds.stream()
+                .filter(userId -> !existing.contains(userId))
+                .map(userId -> ConversationMembership.builder()
+                        .conversationId(conversationId)
+                        .userId(userId)
+                        .role(ConversationMembership.MemberRole.MEMBER)
+                        .joinedAt(now)
+                        .unreadCount(chatMessageRepository.countUnreadByLegacyReadBy(conversationId, userId))
+                        .build())
+                .toList();
+        try {
+            membershipRepository.saveAll(missing);
+        } catch (DuplicateKeyException e) {
+            // Created concurrently by another request; its counter is authoritative
+            log.debug("Membership already created for conversation {}", conversationId);
+        }
+        return missing.stream().collect(Collectors.toMap(ConversationMembership::getUserId,
+                ConversationMembership::getUnreadCount));
+    }
+
     private ChatConversationDTO convertToConversationDTO(ChatConversation conversation) {
+        return convertToConversationDTO(conversation, conversation.getUnreadCount());
+    }
+
+    private ChatConversationDTO convertToConversationDTO(ChatConversation conversation, long unreadCount) {
         return ChatConversationDTO.builder()
                 .id(conversation.getId())
                 .participantIds(conversation.getParticipantIds())
@@ -192,15 +510,34 @@ public class ChatService {
                 .lastMessageAt(conversation.getLastMessageAt())
                 .createdAt(conversation.getCreatedAt())
                 .updatedAt(conversation.getUpdatedAt())
-                .unreadCount(conversation.getUnreadCount())
+                .unreadCount((int) unreadCount)
                 .isActive(conversation.isActive())
                 .build();
     }
 
-    private ChatMessageDTO convertToMessageDTO(ChatMessage message) {
+    /**
+     * Convert a message, deriving readBy and the READ status from the members' watermarks
+     */
+    private ChatMessageDTO convertToMessageDTO(ChatMessage message, List<ConversationMembership> members) {
+        List<String> readBy = new ArrayList<>();
+        readBy.add(message.getSenderId()); // Sender has read their own message
+        int otherMembers = 0;
+        for (ConversationMembership member : members) {
+            if (member.getUserId().equals(message.getSenderId())) {
+                continue;
+            }
+            otherMembers++;
+            if (hasRead(member, message)
+                    || (message.getReadBy() != null && message.getReadBy().contains(member.getUserId()))) {
+                readBy.add(member.getUserId());
+            }
+        }
+        boolean readByAll = otherMembers > 0 && readBy.size() == otherMembers + 1;
+
         return ChatMessageDTO.builder()
                 .id(message.getId())
                 .conversationId(message.getConversationId())
+                .sequence(message.getSequence())
                 .senderId(message.getSenderId())
                 .senderUsername(message.getSenderUsername())
                 .content(message.getContent())
@@ -209,8 +546,25 @@ public class ChatService {
                 .updatedAt(message.getUpdatedAt())
                 .isEdited(message.isEdited())
                 .replyToMessageId(message.getReplyToMessageId())
-                .readBy(message.getReadBy())
-                .status(message.getStatus())
-                            .build();
+                .readBy(readBy)
+                .status(readByAll ? "READ" : message.getStatus())
+                .build();
+    }
+
+    /**
+     * A message is read when it sits at or before the member's watermark,
+     * ordered by creation time with the id as tie-breaker.
+     */
+    private static boolean hasRead(ConversationMembership member, ChatMessage message) {
+        LocalDateTime watermark = member.getLastReadMessageAt();
+        if (watermark == null || message.getCreatedAt() == null) {
+            return false;
+        }
+        int cmp = message.getCreatedAt().compareTo(watermark);
+        if (cmp != 0) {
+            return cmp < 0;
+        }
+        String watermarkId = member.getLastReadMessageId();
+        return watermarkId == null || message.getId() == null || message.getId().compareTo(watermarkId) <= 0;
     }
 }
\ No newline at end of file
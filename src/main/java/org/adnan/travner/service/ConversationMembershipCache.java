@@ -0,0 +1,112 @@
+package org.adnan.travner.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import jakarta.annotation.PostConstruct;
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.domain.conversation.ConversationMembershipRepository;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.repository.ChatConversationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Participant sets of chat conversations keyed by conversation id, so that
+ * authorization checks on send and read and message fan-out do not load the
+ * conversation document. ChatService invalidates an entry whenever members
+ * change, a member mutes or unmutes, or the conversation is archived; the
+ * invalidation is broadcast over {@link PresenceSync} so every node drops it.
+ * The TTL only bounds staleness when a broadcast is lost.
+ */
+@Component
+public class ConversationMembershipCache {
+
+    private final ChatConversationRepository chatConversationRepository;
+    private final ConversationMembershipRepository membershipRepository;
+    private final PresenceSync sync;
+    private final Cache<String, Members> membersById;
+
+    public ConversationMembershipCache(ChatConversationRepository chatConversationRepository,
+            ConversationMembershipRepository membershipRepository, PresenceSync sync,
+            @Value("${app.cache.conversation-members.max-size:100000}") long maxSize,
+            @Value("${app.cache.conversation-members.ttl-seconds:60}") long ttlSeconds) {
+        this.chatConversationRepository = chatConversationRepository;
+        this.membershipRepository = membershipRepository;
+        this.sync = sync;
+        this.membersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .build();
+    }
+
+    /**
+     * Get the members of a conversation, loading them on a miss. Unknown conversations are not cached.
+     */
+    public Optional<Members> get(String conversationId) {
+        if (conversationId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(membersById.get(conversationId, id -> chatConversationRepository.findById(id)
+                .map(conversation -> Members.from(conversation, membershipRepository.findByConversationIdAndMutedTrue(id)
+                        .stream()
+                        .map(ConversationMembership::getUserId)
+                        .collect(Collectors.toSet())))
+                .orElse(null)));
+    }
+
+    public boolean isParticipant(String conversationId, String userId) {
+        return get(conversationId).map(members -> members.contains(userId)).orElse(false);
+    }
+
+    /**
+     * Cache a conversation that was just created, so none of its members has muted it
+     */
+    public void put(ChatConversation conversation) {
+        membersById.put(conversation.getId(), Members.from(conversation, Set.of()));
+    }
+
+    @PostConstruct
+    public void start() {
+        sync.subscribe(event -> {
+            if (event.type() == PresenceSync.Type.MEMBERS_CHANGED && event.conversationIds() != null) {
+                membersById.invalidateAll(event.conversationIds());
+            }
+        });
+    }
+
+    /**
+     * Drop a conversation here and, through the sync channel, on every other node
+     */
+    public void invalidate(String conversationId) {
+        membersById.invalidate(conversationId);
+        sync.publish(new PresenceSync.Event(PresenceSync.Type.MEMBERS_CHANGED, null, List.of(),
+                List.of(conversationId)));
+    }
+
+    /**
+     * Immutable snapshot of a conversation's participants. Set.copyOf gives a
+     * compact open-addressing set with constant-time lookups.
+     */
+    public record Members(String type, Set<String> participantIds, boolean active, Set<String> mutedIds) {
+
+        static Members from(ChatConversation conversation, Set<String> mutedIds) {
+            Set<String> participants = conversation.getParticipantIds() != null
+                    ? Set.copyOf(conversation.getParticipantIds()) : Set.of();
+            return new Members(conversation.getType(), participants, conversation.isActive(), Set.copyOf(mutedIds));
+        }
+
+        public boolean contains(String userId) {
+            return userId != null && participantIds.contains(userId);
+        }
+
+        public boolean isMuted(String userId) {
+            return mutedIds.contains(userId);
+        }
+    }
+}
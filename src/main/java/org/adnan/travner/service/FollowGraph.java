@@ -0,0 +1,538 @@
+package org.adnan.travner.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.FollowEntry;
+import org.adnan.travner.repository.FollowRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory follow graph used for "people you may know" suggestions.
+ * User ObjectIds are mapped to dense ints and out-edges (follower -> following)
+ * are held in CSR arrays with sorted rows. Follow/unfollow events replace single
+ * rows with new arrays; once enough rows are patched they are folded back into
+ * fresh CSR arrays without touching the database. Patches are shared with other
+ * nodes over {@link PresenceSync}, and a periodic rebuild from the database repairs
+ * anything a node missed.
+ */
+@Component
+@Slf4j
+public class FollowGraph {
+
+    /** Rows with more first-hop edges than this are counted in parallel */
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int[] EMPTY = new int[0];
+
+    private final FollowRepository followRepository;
+    private final PresenceSync sync;
+    // Tags this graph's own patches so their echo from the sync channel is not applied twice
+    private final String originId = UUID.randomUUID().toString();
+    private final int compactThreshold;
+
+    private volatile Graph graph = Graph.empty();
+    private volatile boolean ready;
+    // Events received while a snapshot is being streamed, replayed on top of it
+    private List<Object[]> pendingDuringRebuild;
+
+    public FollowGraph(FollowRepository followRepository, PresenceSync sync,
+            @Value("${app.graph.follow.compact-threshold:10000}") int compactThreshold) {
+        this.followRepository = followRepository;
+        this.sync = sync;
+        this.compactThreshold = compactThreshold;
+    }
+
+    @PostConstruct
+    public void start() {
+        sync.subscribe(event -> {
+            boolean add = event.type() == PresenceSync.Type.FOLLOWED;
+            if ((add || event.type() == PresenceSync.Type.UNFOLLOWED) && !originId.equals(event.nodeId())
+                    && event.userIds() != null && event.userIds().size() == 2
+                    && ObjectId.isValid(event.userIds().get(0)) && ObjectId.isValid(event.userIds().get(1))) {
+                patch(new ObjectId(event.userIds().get(0)), new ObjectId(event.userIds().get(1)), add);
+            }
+        });
+    }
+
+    public record Suggestion(ObjectId userId, int mutualCount) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Follow graph not built, suggestions will be empty: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(initialDelayString = "${app.graph.follow.rebuild-minutes:30}",
+            fixedDelayString = "${app.graph.follow.rebuild-minutes:30}", timeUnit = TimeUnit.MINUTES)
+    public void scheduledRebuild() {
+        try {
+            rebuild();
+        } catch (Exception e) {
+            log.warn("Follow graph rebuild failed, keeping the current graph: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Rebuild from a streamed snapshot of the follows collection
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            pendingDuringRebuild = new ArrayList<>();
+        }
+        Builder builder = new Builder();
+        try (Stream<FollowEntry> edges = followRepository.streamEdges()) {
+            edges.forEach(edge -> builder.add(edge.getFollowerId(), edge.getFollowingId()));
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                pendingDuringRebuild = null;
+            }
+            throw e;
+        }
+        Graph built = builder.build();
+        synchronized (this) {
+            for (Object[] event : pendingDuringRebuild) {
+                built.apply((ObjectId) event[0], (ObjectId) event[1], (Boolean) event[2]);
+            }
+            pendingDuringRebuild = null;
+            graph = built;
+            ready = true;
+        }
+        log.info("Follow graph built: {} users, {} edges in {} ms",
+                built.nodeCount(), built.edges.length, System.currentTimeMillis() - start);
+    }
+
+    public void onFollow(ObjectId followerId, ObjectId followingId) {
+        patch(followerId, followingId, true);
+        publish(PresenceSync.Type.FOLLOWED, followerId, followingId);
+    }
+
+    public void onUnfollow(ObjectId followerId, ObjectId followingId) {
+        patch(followerId, followingId, false);
+        publish(PresenceSync.Type.UNFOLLOWED, followerId, followingId);
+    }
+
+    private void publish(PresenceSync.Type type, ObjectId followerId, ObjectId followingId) {
+        if (followerId != null && followingId != null) {
+            sync.publish(new PresenceSync.Event(type, originId,
+                    List.of(followerId.toHexString(), followingId.toHexString())));
+        }
+    }
+
+    private synchronized void patch(ObjectId from, ObjectId to, boolean add) {
+        if (pendingDuringRebuild != null) {
+            pendingDuringRebuild.add(new Object[]{from, to, add});
+        }
+        graph.apply(from, to, add);
+        if (graph.patchedRows.size() > compactThreshold) {
+            graph = graph.compact();
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Users followed by the people {@code userId} follows, excluding the user and
+     * anyone already followed, ranked by the number of mutual connections.
+     */
+    public List<Suggestion> suggest(ObjectId userId, int limit) {
+        return suggest(userId, limit, candidate -> true);
+    }
+
+    /**
+     * As {@link #suggest(ObjectId, int)}, skipping candidates {@code eligible}
+     * rejects before the limit is applied so they do not shorten the list.
+     */
+    public List<Suggestion> suggest(ObjectId userId, int limit, Predicate<ObjectId> eligible) {
+        Graph g = graph;
+        Integer source = g.indexOf(userId);
+        if (source == null || limit <= 0) {
+            return List.of();
+        }
+        int[] firstHop = g.row(source);
+        if (firstHop.length == 0) {
+            return List.of();
+        }
+
+        IntStream hops = IntStream.of(firstHop);
+        if (firstHop.length >= PARALLEL_THRESHOLD) {
+            hops = hops.parallel();
+        }
+        int self = source;
+        IntCounter counts = hops.collect(IntCounter::new, (counter, friend) -> g.forEachNeighbor(friend, candidate -> {
+            if (candidate != self && Arrays.binarySearch(firstHop, candidate) < 0) {
+                counter.increment(candidate);
+            }
+        }), IntCounter::merge);
+
+        // Take the best `limit` candidates; if some are ineligible, widen and look only at the new ones
+        List<Suggestion> suggestions = new ArrayList<>(Math.min(limit, counts.size()));
+        int k = limit;
+        int seen = 0;
+        while (true) {
+            List<int[]> top = counts.top(k);
+            for (int i = seen; i < top.size() && suggestions.size() < limit; i++) {
+                ObjectId candidate = g.idOf(top.get(i)[0]);
+                if (eligible.test(candidate)) {
+                    suggestions.add(new Suggestion(candidate, top.get(i)[1]));
+                }
+            }
+            if (suggestions.size() >= limit || top.size() < k) {
+                return suggestions;
+            }
+            seen = top.size();
+            k = (int) Math.min(Integer.MAX_VALUE, k * 2L);
+        }
+    }
+
+    /**
+     * CSR arrays from the last build plus patched rows and users first seen after it.
+     * Rows are immutable arrays; mutation happens only under the FollowGraph lock and
+     * is published through the concurrent maps and the volatile node array.
+     */
+    private static final class Graph {
+        final ConcurrentHashMap<ObjectId, Integer> index;
+        final int[] offsets;
+        final int[] edges;
+        final ConcurrentHashMap<Integer, int[]> patchedRows = new ConcurrentHashMap<>();
+        volatile ObjectId[] nodes;
+        volatile int nodeCount;
+
+        Graph(ConcurrentHashMap<ObjectId, Integer> index, ObjectId[] nodes, int nodeCount, int[] offsets, int[] edges) {
+            this.index = index;
+            this.nodes = nodes;
+            this.nodeCount = nodeCount;
+            this.offsets = offsets;
+            this.edges = edges;
+        }
+
+        static Graph empty() {
+            return new Graph(new ConcurrentHashMap<>(), new ObjectId[16], 0, new int[]{0}, EMPTY);
+        }
+
+        int nodeCount() {
+            return nodeCount;
+        }
+
+        Integer indexOf(ObjectId id) {
+            return index.get(id);
+        }
+
+        ObjectId idOf(int node) {
+            return nodes[node];
+        }
+
+        int[] row(int node) {
+            int[] patched = patchedRows.get(node);
+            if (patched != null) {
+                return patched;
+            }
+            if (node + 1 >= offsets.length) {
+                return EMPTY;
+            }
+            return Arrays.copyOfRange(edges, offsets[node], offsets[node + 1]);
+        }
+
+        void forEachNeighbor(int node, IntConsumer action) {
+            int[] patched = patchedRows.get(node);
+            if (patched != null) {
+                for (int neighbor : patched) {
+                    action.accept(neighbor);
+                }
+            } else if (node + 1 < offsets.length) {
+                for (int i = offsets[node]; i < offsets[node + 1]; i++) {
+                    action.accept(edges[i]);
+                }
+            }
+        }
+
+        /**
+         * Must be called with the FollowGraph lock held
+         */
+        void apply(ObjectId from, ObjectId to, boolean add) {
+            if (from == null || to == null || from.equals(to)) {
+                return;
+            }
+            Integer source = add ? intern(from) : index.get(from);
+            Integer target = add ? intern(to) : index.get(to);
+            if (source == null || target == null) {
+                return;
+            }
+            int[] current = row(source);
+            int pos = Arrays.binarySearch(current, target);
+            if (add && pos < 0) {
+                int insertAt = -pos - 1;
+                int[] updated = new int[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, insertAt);
+                updated[insertAt] = target;
+                System.arraycopy(current, insertAt, updated, insertAt + 1, current.length - insertAt);
+                patchedRows.put(source, updated);
+            } else if (!add && pos >= 0) {
+                int[] updated = new int[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, pos);
+                System.arraycopy(current, pos + 1, updated, pos, current.length - pos - 1);
+                patchedRows.put(source, updated);
+            }
+        }
+
+        private int intern(ObjectId id) {
+            Integer existing = index.get(id);
+            if (existing != null) {
+                return existing;
+            }
+            int node = nodeCount;
+            ObjectId[] array = nodes;
+            if (node == array.length) {
+                array = Arrays.copyOf(array, Math.max(16, node * 2));
+            }
+            array[node] = id;
+            nodes = array;
+            nodeCount = node + 1;
+            index.put(id, node);
+            return node;
+        }
+
+        /**
+         * Fold patched rows and new users back into plain CSR arrays
+         */
+        Graph compact() {
+            int n = nodeCount;
+            int[] newOffsets = new int[n + 1];
+            for (int node = 0; node < n; node++) {
+                newOffsets[node + 1] = newOffsets[node] + row(node).length;
+            }
+            int[] newEdges = new int[newOffsets[n]];
+            for (int node = 0; node < n; node++) {
+                int[] r = row(node);
+                System.arraycopy(r, 0, newEdges, newOffsets[node], r.length);
+            }
+            return new Graph(new ConcurrentHashMap<>(index), Arrays.copyOf(nodes, Math.max(16, n)), n,
+                    newOffsets, newEdges);
+        }
+    }
+
+    /**
+     * Collects streamed edges into growable primitive arrays, then sorts them into CSR
+     */
+    private static final class Builder {
+        private final ConcurrentHashMap<ObjectId, Integer> index = new ConcurrentHashMap<>();
+        private final List<ObjectId> nodes = new ArrayList<>();
+        private int[] from = new int[1024];
+        private int[] to = new int[1024];
+        private int size;
+
+        void add(ObjectId follower, ObjectId following) {
+            if (follower == null || following == null || follower.equals(following)) {
+                return;
+            }
+            if (size == from.length) {
+                from = Arrays.copyOf(from, size * 2);
+                to = Arrays.copyOf(to, size * 2);
+            }
+            from[size] = intern(follower);
+            to[size] = intern(following);
+            size++;
+        }
+
+        private int intern(ObjectId id) {
+            return index.computeIfAbsent(id, key -> {
+                nodes.add(key);
+                return nodes.size() - 1;
+            });
+        }
+
+        Graph build() {
+            int n = nodes.size();
+            int[] offsets = new int[n + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[from[i] + 1]++;
+            }
+            for (int node = 0; node < n; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] edges = new int[size];
+            int[] cursor = Arrays.copyOf(offsets, n);
+            for (int i = 0; i < size; i++) {
+                edges[cursor[from[i]]++] = to[i];
+            }
+            // Sorted, de-duplicated rows allow binary search membership tests
+            int[] compactOffsets = new int[n + 1];
+            int write = 0;
+            for (int node = 0; node < n; node++) {
+                int start = offsets[node];
+                int end = offsets[node + 1];
+                Arrays.sort(edges, start, end);
+                compactOffsets[node] = write;
+                for (int i = start; i < end; i++) {
+                    if (i == start || edges[i] != edges[i - 1]) {
+                        edges[write++] = edges[i];
+                    }
+                }
+            }
+            compactOffsets[n] = write;
+            ObjectId[] nodeArray = nodes.toArray(new ObjectId[Math.max(16, n)]);
+            return new Graph(index, nodeArray, n, compactOffsets, Arrays.copyOf(edges, write));
+        }
+    }
+
+    /**
+     * Open-addressing int -> count map used per worker while counting second-hop candidates
+     */
+    private static final class IntCounter {
+        private int[] keys = new int[64];
+        private int[] values = new int[64];
+        private boolean[] used = new boolean[64];
+        private int size;
+
+        void increment(int key) {
+            add(key, 1);
+        }
+
+        void add(int key, int delta) {
+            if (size * 2 >= keys.length) {
+                grow();
+            }
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (used[slot] && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                size++;
+            }
+            values[slot] += delta;
+        }
+
+        void merge(IntCounter other) {
+            for (int slot = 0; slot < other.keys.length; slot++) {
+                if (other.used[slot]) {
+                    add(other.keys[slot], other.values[slot]);
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * The k best entries, highest counts first, ties broken by dense id for a stable
+         * order. A bounded heap whose root is the worst kept entry makes this O(n log k).
+         */
+        List<int[]> top(int k) {
+            int capacity = Math.min(k, size);
+            int[] heapKeys = new int[capacity];
+            int[] heapValues = new int[capacity];
+            int heapSize = 0;
+            for (int slot = 0; slot < keys.length && capacity > 0; slot++) {
+                if (!used[slot]) {
+                    continue;
+                }
+                if (heapSize < capacity) {
+                    heapKeys[heapSize] = keys[slot];
+                    heapValues[heapSize] = values[slot];
+                    siftUp(heapKeys, heapValues, heapSize++);
+                } else if (ranksAbove(keys[slot], values[slot], heapKeys[0], heapValues[0])) {
+                    heapKeys[0] = keys[slot];
+                    heapValues[0] = values[slot];
+                    siftDown(heapKeys, heapValues, heapSize);
+                }
+            }
+            // Popping yields worst first, so fill from the back
+            int[][] ranked = new int[heapSize][];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ranked[i] = new int[]{heapKeys[0], heapValues[0]};
+                heapKeys[0] = heapKeys[i];
+                heapValues[0] = heapValues[i];
+                siftDown(heapKeys, heapValues, i);
+            }
+            return Arrays.asList(ranked);
+        }
+
+        private static boolean ranksAbove(int key, int value, int otherKey, int otherValue) {
+            return value != otherValue ? value > otherValue : key < otherKey;
+        }
+
+        private static void siftUp(int[] heapKeys, int[] heapValues, int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!ranksAbove(heapKeys[parent], heapValues[parent], heapKeys[i], heapValues[i])) {
+                    return;
+                }
+                swap(heapKeys, heapValues, parent, i);
+                i = parent;
+            }
+        }
+
+        private static void siftDown(int[] heapKeys, int[] heapValues, int heapSize) {
+            int i = 0;
+            while (true) {
+                int worst = 2 * i + 1;
+                if (worst >= heapSize) {
+                    return;
+                }
+                int right = worst + 1;
+                if (right < heapSize && ranksAbove(heapKeys[worst], heapValues[worst], heapKeys[right], heapValues[right])) {
+                    worst = right;
+                }
+                if (!ranksAbove(heapKeys[i], heapValues[i], heapKeys[worst], heapValues[worst])) {
+                    return;
+                }
+                swap(heapKeys, heapValues, i, worst);
+                i = worst;
+            }
+        }
+
+        private static void swap(int[] heapKeys, int[] heapValues, int a, int b) {
+            int key = heapKeys[a];
+            heapKeys[a] = heapKeys[b];
+            heapKeys[b] = key;
+            int value = heapValues[a];
+            heapValues[a] = heapValues[b];
+            heapValues[b] = value;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            int[] oldValues = values;
+            boolean[] oldUsed = used;
+            keys = new int[oldKeys.length * 2];
+            values = new int[oldKeys.length * 2];
+            used = new boolean[oldKeys.length * 2];
+            size = 0;
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    add(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+
+        private static int mix(int key) {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
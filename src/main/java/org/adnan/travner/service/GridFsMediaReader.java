@@ -0,0 +1,294 @@
+package org.adnan.travner.service;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Serves GridFS files whole or by byte range. A range is read by querying only the
+ * chunks that hold it, found from the file's chunk size, so seeking into a video
+ * never reads the chunks before the requested position. Range requests get 206
+ * with one part, or a multipart/byteranges body for several; If-Range falls back
+ * to the whole file when the client's validator is stale. Stored files never change,
+ * so they are cacheable for a year and revalidated by entity tag.
+ */
+@Component
+@Slf4j
+public class GridFsMediaReader {
+
+    /**
+     * Chunks fetched per cursor round trip, bounding memory per reader to a few chunks
+     */
+    static final int BATCH_CHUNKS = 4;
+    private static final String CHUNKS_COLLECTION = "fs.chunks";
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl PRIVATE = CacheControl.noCache().cachePrivate();
+
+    private final MongoTemplate mongoTemplate;
+
+    public GridFsMediaReader(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    /**
+     * The response for a GET of the file, honouring Range and If-Range
+     *
+     * @param headers response headers already decided by the caller, such as Content-Disposition
+     */
+    public ResponseEntity<InputStreamResource> serve(GridFSFile file, MediaType contentType, HttpHeaders headers,
+            HttpHeaders request) {
+        long length = file.getLength();
+        HttpHeaders response = new HttpHeaders();
+        response.addAll(headers);
+        response.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (response.getLastModified() < 0 && file.getUploadDate() != null) {
+            response.setLastModified(file.getUploadDate().toInstant());
+        }
+
+        String range = request.getFirst(HttpHeaders.RANGE);
+        if (range == null || length == 0 || !ifRangeMatches(request, response)) {
+            response.setContentType(contentType);
+            response.setContentLength(length);
+            return ResponseEntity.ok().headers(response).body(new InputStreamResource(open(file, 0, length - 1)));
+        }
+
+        List<long[]> ranges = new ArrayList<>();
+        try {
+            long total = 0;
+            for (HttpRange httpRange : HttpRange.parseRanges(range)) {
+                long start = httpRange.getRangeStart(length);
+                long end = httpRange.getRangeEnd(length);
+                if (start >= length) {
+                    throw new IllegalArgumentException("Range starts beyond the file");
+                }
+                ranges.add(new long[]{start, end});
+                total += end - start + 1;
+            }
+            // Overlapping ranges adding up to more than the file are refused rather than amplified
+            if (ranges.size() > 1 && total > length) {
+                throw new IllegalArgumentException("Ranges exceed the file length");
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("Unsatisfiable range {} for file of {} bytes: {}", range, length, e.getMessage());
+            response.set(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE).headers(response).build();
+        }
+
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            response.setContentType(contentType);
+            response.set(HttpHeaders.CONTENT_RANGE, contentRange(start, end, length));
+            response.setContentLength(end - start + 1);
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(response)
+                    .body(new InputStreamResource(open(file, start, end)));
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<InputStream> parts = new ArrayList<>();
+        long bodyLength = 0;
+        for (long[] part : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + contentType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": " + contentRange(part[0], part[1], length) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            parts.add(new ByteArrayInputStream(partHeader));
+            parts.add(open(file, part[0], part[1]));
+            bodyLength += partHeader.length + part[1] - part[0] + 1;
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        parts.add(new ByteArrayInputStream(closing));
+        bodyLength += closing.length;
+
+        response.set(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        response.setContentLength(bodyLength);
+        return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(response)
+                .body(new InputStreamResource(new SequenceInputStream(Collections.enumeration(parts))));
+    }
+
+    /**
+     * Validators and caching headers for a stored file
+     */
+    public HttpHeaders cacheHeaders(String etag, Instant lastModified) {
+        return cacheHeaders(etag, lastModified, IMMUTABLE);
+    }
+
+    /**
+     * Validators and caching headers for a file only some users may read: shared
+     * caches must not keep it, and the browser revalidates on every use so a
+     * revoked reader is refused instead of served from its cache
+     */
+    public HttpHeaders privateCacheHeaders(String etag, Instant lastModified) {
+        return cacheHeaders(etag, lastModified, PRIVATE);
+    }
+
+    private static HttpHeaders cacheHeaders(String etag, Instant lastModified, CacheControl cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(etag);
+        headers.setLastModified(lastModified);
+        headers.setCacheControl(cacheControl);
+        return headers;
+    }
+
+    /**
+     * Whether the client already holds this version: any If-None-Match tag matches by
+     * weak comparison, or, without If-None-Match, nothing changed since If-Modified-Since
+     */
+    public boolean isNotModified(HttpHeaders request, HttpHeaders headers) {
+        List<String> ifNoneMatch;
+        try {
+            ifNoneMatch = request.getIfNoneMatch();
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        String etag = headers.getETag();
+        if (!ifNoneMatch.isEmpty()) {
+            return etag != null && ifNoneMatch.stream()
+                    .anyMatch(tag -> "*".equals(tag) || opaqueTag(tag).equals(opaqueTag(etag)));
+        }
+        long since = request.getIfModifiedSince();
+        return since >= 0 && headers.getLastModified() >= 0 && headers.getLastModified() / 1000 <= since / 1000;
+    }
+
+    private static String opaqueTag(String tag) {
+        return tag.startsWith("W/") ? tag.substring(2) : tag;
+    }
+
+    /**
+     * Whether a Range request may be answered partially: there is no If-Range, or it
+     * names the representation being served. Only strong comparison applies.
+     */
+    private static boolean ifRangeMatches(HttpHeaders request, HttpHeaders response) {
+        String ifRange = request.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(response.getETag());
+        }
+        try {
+            long since = request.getFirstDate(HttpHeaders.IF_RANGE);
+            return since >= 0 && response.getLastModified() >= 0 && since / 1000 == response.getLastModified() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static String contentRange(long start, long end, long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * A stream of the file's bytes from start to end inclusive. Nothing is read until
+     * the first read; then only chunks start / chunkSize to end / chunkSize are queried.
+     */
+    public InputStream open(GridFSFile file, long start, long end) {
+        return new ChunkRangeStream(mongoTemplate.getCollection(CHUNKS_COLLECTION), file, start, end);
+    }
+
+    private static final class ChunkRangeStream extends InputStream {
+
+        private final MongoCollection<Document> chunks;
+        private final GridFSFile file;
+        private final long start;
+        private final long end;
+        private final int firstChunk;
+        private final int lastChunk;
+        private MongoCursor<Document> cursor;
+        private int nextChunk;
+        private byte[] data;
+        private int position;
+        private int limit;
+        private long remaining;
+
+        ChunkRangeStream(MongoCollection<Document> chunks, GridFSFile file, long start, long end) {
+            this.chunks = chunks;
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.firstChunk = (int) (start / file.getChunkSize());
+            this.lastChunk = (int) (end / file.getChunkSize());
+            this.nextChunk = firstChunk;
+            this.remaining = Math.max(0, end - start + 1);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int count) throws IOException {
+            if (count == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                return -1;
+            }
+            if (data == null || position == limit) {
+                nextChunk();
+            }
+            int n = (int) Math.min(Math.min(count, limit - position), remaining);
+            System.arraycopy(data, position, bytes, offset, n);
+            position += n;
+            remaining -= n;
+            return n;
+        }
+
+        private void nextChunk() throws IOException {
+            if (cursor == null) {
+                cursor = chunks.find(new Document("files_id", file.getId())
+                                .append("n", new Document("$gte", firstChunk).append("$lte", lastChunk)))
+                        .sort(Sorts.ascending("n"))
+                        .batchSize(BATCH_CHUNKS)
+                        .iterator();
+            }
+            Document chunk = cursor.hasNext() ? cursor.next() : null;
+            if (chunk == null || chunk.getInteger("n", -1) != nextChunk) {
+                throw new IOException("Missing chunk " + nextChunk + " of GridFS file " + file.getId());
+            }
+            long chunkStart = (long) nextChunk * file.getChunkSize();
+            data = chunk.get("data", Binary.class).getData();
+            if (data.length != Math.min(file.getChunkSize(), file.getLength() - chunkStart)) {
+                throw new IOException("Chunk " + nextChunk + " of GridFS file " + file.getId()
+                        + " has " + data.length + " bytes");
+            }
+            position = nextChunk == firstChunk ? (int) (start - chunkStart) : 0;
+            limit = nextChunk == lastChunk ? (int) (end - chunkStart + 1) : data.length;
+            nextChunk++;
+        }
+
+        @Override
+        public void close() {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+    }
+}
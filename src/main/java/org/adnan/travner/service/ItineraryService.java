@@ -8,7 +8,6 @@ import org.adnan.travner.dto.UserSummaryDTO;
 import org.adnan.travner.entry.ItineraryEntry;
 import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.ItineraryRepository;
-import org.adnan.travner.repository.UserRepository;
 import org.bson.types.ObjectId;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
@@ -29,11 +28,11 @@ import java.util.stream.Collectors;
 public class ItineraryService {
 
     private final ItineraryRepository itineraryRepository;
-    private final UserRepository userRepository;
+    private final PrincipalContext principalContext;
 
     @Transactional
     public ItineraryDTO createItinerary(String username, ItineraryRequest request) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -82,7 +81,7 @@ public class ItineraryService {
     }
 
     public Page<ItineraryDTO> getItinerariesByUser(String username, Pageable pageable) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -117,7 +116,7 @@ public class ItineraryService {
 
     @Transactional
     public ItineraryDTO updateItinerary(String id, String username, ItineraryRequest request) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -159,7 +158,7 @@ public class ItineraryService {
 
     @Transactional
     public void deleteItinerary(String id, String username) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -179,7 +178,7 @@ public class ItineraryService {
 
     @Transactional
     public ItineraryDTO likeItinerary(String id, String username) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -0,0 +1,33 @@
+package org.adnan.travner.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process presence channel for single-node deployments and tests. Events are
+ * delivered synchronously to every subscriber in this JVM.
+ */
+@Slf4j
+public class LocalPresenceSync implements PresenceSync {
+
+    private final List<Consumer<Event>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(Event event) {
+        for (Consumer<Event> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                log.warn("Presence listener failed on {}: {}", event.type(), e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<Event> listener) {
+        listeners.add(listener);
+    }
+}
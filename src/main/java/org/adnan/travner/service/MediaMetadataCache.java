@@ -0,0 +1,124 @@
+package org.adnan.travner.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.adnan.travner.entry.MediaEntry;
+import org.adnan.travner.repository.MediaRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Near cache of what serving a media file needs from its MediaEntry. Stored files
+ * never change, so a hit answers a conditional request without touching MongoDB.
+ * Code deleting MediaEntry documents must call invalidate.
+ */
+@Component
+public class MediaMetadataCache {
+
+    private final MediaRepository mediaRepository;
+    private final Cache<ObjectId, CachedMedia> mediaById;
+    private final Cache<String, ObjectId> idsByFilename;
+
+    public MediaMetadataCache(MediaRepository mediaRepository,
+            @Value("${app.cache.media.max-size:100000}") long maxSize,
+            @Value("${app.cache.media.ttl-seconds:3600}") long ttlSeconds) {
+        this.mediaRepository = mediaRepository;
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.mediaById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.idsByFilename = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Get a media file by id, loading it on a miss. Unknown media is not cached.
+     */
+    public Optional<CachedMedia> getById(String mediaId) {
+        if (mediaId == null || !ObjectId.isValid(mediaId)) {
+            return Optional.empty();
+        }
+        CachedMedia cached = mediaById.get(new ObjectId(mediaId), key -> mediaRepository.findById(key)
+                .map(CachedMedia::from)
+                .orElse(null));
+        if (cached != null) {
+            idsByFilename.put(cached.filename(), cached.id());
+        }
+        return Optional.ofNullable(cached);
+    }
+
+    /**
+     * Get a media file by its stored filename, loading it on a miss. Unknown
+     * filenames are not cached.
+     */
+    public Optional<CachedMedia> getByFilename(String filename) {
+        if (filename == null || filename.isBlank()) {
+            return Optional.empty();
+        }
+        ObjectId id = idsByFilename.getIfPresent(filename);
+        if (id != null) {
+            CachedMedia cached = mediaById.getIfPresent(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        return mediaRepository.findFirstByFilename(filename).map(media -> {
+            CachedMedia cached = CachedMedia.from(media);
+            mediaById.put(cached.id(), cached);
+            idsByFilename.put(cached.filename(), cached.id());
+            return cached;
+        });
+    }
+
+    public void invalidate(MediaEntry media) {
+        if (media == null || media.getId() == null) {
+            return;
+        }
+        mediaById.invalidate(media.getId());
+        if (media.getFilename() != null) {
+            idsByFilename.invalidate(media.getFilename());
+        }
+    }
+
+    /**
+     * The immutable part of a MediaEntry
+     */
+    public record CachedMedia(ObjectId id, String filename, String gridFsId, String contentType, String sha256,
+            String type, String entityId) {
+
+        static CachedMedia from(MediaEntry media) {
+            return new CachedMedia(media.getId(), media.getFilename(), media.getGridFsId(), media.getContentType(),
+                    media.getSha256(), media.getType(), media.getEntityId());
+        }
+
+        /**
+         * A chat attachment, readable only by participants of the conversation in entityId
+         */
+        public boolean isChat() {
+            return MediaService.CHAT_TYPE.equals(type);
+        }
+
+        /**
+         * Strong entity tag: the content hash when the upload recorded one, otherwise
+         * the GridFS file id, which is never reused for other content
+         */
+        public String etag() {
+            return "\"" + (sha256 != null ? sha256 : gridFsId) + "\"";
+        }
+
+        /**
+         * When the GridFS file was created, read from its id
+         */
+        public Instant lastModified() {
+            return new ObjectId(gridFsId).getDate().toInstant();
+        }
+    }
+}
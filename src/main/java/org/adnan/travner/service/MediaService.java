@@ -13,15 +13,16 @@ import org.adnan.travner.repository.PostRepository;
 import org.adnan.travner.repository.ProductRepository;
 import org.adnan.travner.repository.UserRepository;
 import org.adnan.travner.util.FileValidationUtil;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.InputStreamResource;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
-import org.springframework.data.mongodb.gridfs.GridFsOperations;
-import org.springframework.data.mongodb.gridfs.GridFsResource;
 import org.springframework.data.mongodb.gridfs.GridFsTemplate;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
@@ -29,6 +30,7 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.List;
@@ -42,6 +44,11 @@ import java.util.stream.Collectors;
 @Slf4j
 public class MediaService {
 
+    /**
+     * Upload type of chat attachments; their entityId is the conversation id
+     */
+    public static final String CHAT_TYPE = "chat";
+
     private final MediaRepository mediaRepository;
     private final UserRepository userRepository;
     private final PostRepository postRepository;
@@ -51,7 +58,22 @@ public class MediaService {
     private GridFsTemplate gridFsTemplate;
 
     @Autowired
-    private GridFsOperations gridFsOperations;
+    private StreamingGridFsUploader streamingUploader;
+
+    @Autowired
+    private GridFsMediaReader mediaReader;
+
+    @Autowired
+    private MediaMetadataCache mediaCache;
+
+    @Autowired
+    private ConversationMembershipCache conversationMembers;
+
+    @Value("${app.upload.stream.max-size-mb:200}")
+    private long maxStreamSizeMb;
+
+    @Value("${app.upload.stream.chat-max-size-mb:10}")
+    private long maxChatStreamSizeMb;
 
     /**
      * Upload a media file to GridFS with type-specific handling
@@ -74,6 +96,9 @@ public class MediaService {
         if ("post".equals(type) && entityId != null) {
             validatePostOwnership(entityId, user);
         }
+        if (CHAT_TYPE.equals(type)) {
+            validateChatParticipant(entityId, username);
+        }
         // For product uploads, no additional validation needed beyond authentication
 
         try {
@@ -112,78 +137,142 @@ public class MediaService {
                     .uploadedAt(LocalDateTime.now())
                     .build();
 
-            MediaEntry savedMedia = mediaRepository.save(mediaEntry);
+            return saveMediaEntry(mediaEntry, type, entityId);
 
-            // If this is a post media, associate it with the post
-            if ("post".equals(type) && entityId != null) {
-                try {
-                    ObjectId postObjectId = new ObjectId(entityId);
-                    savedMedia.setPostId(postObjectId);
-                    mediaRepository.save(savedMedia);
+        } catch (IOException e) {
+            log.error("Failed to upload file: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to upload file: " + e.getMessage(), e);
+        }
+    }
 
-                    // Also update the post's mediaUrls list
-                    Optional<PostEntry> postOptional = postRepository.findById(postObjectId);
-                    if (postOptional.isPresent()) {
-                        PostEntry post = postOptional.get();
-                        String mediaUrl = "/api/media/" + savedMedia.getId();
+    /**
+     * Upload a media file whose bytes arrive as the raw request body. Chunks go
+     * straight into GridFS as they are read, so nothing is buffered beyond one
+     * chunk; size and SHA-256 are measured on the way.
+     */
+    @Transactional
+    public MediaDTO uploadMediaStream(InputStream body, String originalFilename, String contentType,
+            long contentLength, String username, String type, String entityId) {
+        long maxStreamSize = (CHAT_TYPE.equals(type) ? maxChatStreamSizeMb : maxStreamSizeMb) * 1024 * 1024;
+        if (contentType != null) {
+            // Drop parameters such as charset; only the type itself is validated and stored
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            contentType = mediaType.getType() + "/" + mediaType.getSubtype();
+        }
+        FileValidationUtil.validateStreamedFile(originalFilename, contentType, contentLength, maxStreamSize);
+        if (username == null || username.trim().isEmpty()) {
+            throw new IllegalArgumentException("Username cannot be null or empty");
+        }
+        UserEntry user = userRepository.findByuserName(username);
+        if (user == null) {
+            throw new RuntimeException("User not found: " + username);
+        }
+        if ("post".equals(type) && entityId != null) {
+            validatePostOwnership(entityId, user);
+        }
+        if (CHAT_TYPE.equals(type)) {
+            validateChatParticipant(entityId, username);
+        }
 
-                        if (post.getMediaUrls() == null) {
-                            post.setMediaUrls(new java.util.ArrayList<>());
-                        }
+        String uniqueFilename = UUID.randomUUID() + "_" + FileValidationUtil.sanitizeFilename(originalFilename);
+        Document metadata = new Document("uploadedBy", username)
+                .append("uploadType", type)
+                .append("entityId", entityId)
+                .append("originalFilename", originalFilename)
+                .append("uploadedAt", LocalDateTime.now().toString());
+        try {
+            StreamingGridFsUploader.StoredFile stored = streamingUploader.store(body, uniqueFilename, contentType,
+                    metadata, maxStreamSize);
+            MediaEntry mediaEntry = MediaEntry.builder()
+                    .filename(uniqueFilename)
+                    .originalFilename(originalFilename)
+                    .contentType(contentType)
+                    .size(stored.size())
+                    .sha256(stored.sha256())
+                    .uploadedBy(user.getId().toString())
+                    .gridFsId(stored.id().toString())
+                    .type(type)
+                    .entityId(entityId)
+                    .uploadedAt(LocalDateTime.now())
+                    .build();
+            return saveMediaEntry(mediaEntry, type, entityId);
+        } catch (IOException e) {
+            log.error("Failed to stream upload {}: {}", originalFilename, e.getMessage());
+            throw new RuntimeException("Failed to upload file: " + e.getMessage(), e);
+        }
+    }
 
-                        post.getMediaUrls().add(mediaUrl);
-                        postRepository.save(post);
+    /**
+     * Save the media record, link it to its post or product and return its DTO
+     */
+    private MediaDTO saveMediaEntry(MediaEntry mediaEntry, String type, String entityId) {
+        MediaEntry savedMedia = mediaRepository.save(mediaEntry);
+
+        // If this is a post media, associate it with the post
+        if ("post".equals(type) && entityId != null) {
+            try {
+                ObjectId postObjectId = new ObjectId(entityId);
+                savedMedia.setPostId(postObjectId);
+                mediaRepository.save(savedMedia);
+
+                // Also update the post's mediaUrls list
+                Optional<PostEntry> postOptional = postRepository.findById(postObjectId);
+                if (postOptional.isPresent()) {
+                    PostEntry post = postOptional.get();
+                    String mediaUrl = "/api/media/" + savedMedia.getId();
+
+                    if (post.getMediaUrls() == null) {
+                        post.setMediaUrls(new java.util.ArrayList<>());
                     }
-                } catch (Exception e) {
-                    log.warn("Could not associate media with post {}: {}", entityId, e.getMessage());
+
+                    post.getMediaUrls().add(mediaUrl);
+                    postRepository.save(post);
                 }
+            } catch (Exception e) {
+                log.warn("Could not associate media with post {}: {}", entityId, e.getMessage());
             }
+        }
 
-            // If this is a product media, associate it with the product
-            if ("product".equals(type) && entityId != null) {
-                try {
-                    ObjectId productObjectId = new ObjectId(entityId);
-                    savedMedia.setProductId(productObjectId);
-                    mediaRepository.save(savedMedia);
-
-                    // Also update the product's images list
-                    Optional<ProductEntry> productOptional = productRepository.findById(productObjectId);
-                    if (productOptional.isPresent()) {
-                        ProductEntry product = productOptional.get();
-                        String mediaUrl = "/api/media/" + savedMedia.getId();
-
-                        if (product.getImages() == null) {
-                            product.setImages(new java.util.ArrayList<>());
-                        }
-
-                        product.getImages().add(mediaUrl);
-                        productRepository.save(product);
-                        log.info("Associated media {} with product {}", savedMedia.getId(), entityId);
+        // If this is a product media, associate it with the product
+        if ("product".equals(type) && entityId != null) {
+            try {
+                ObjectId productObjectId = new ObjectId(entityId);
+                savedMedia.setProductId(productObjectId);
+                mediaRepository.save(savedMedia);
+
+                // Also update the product's images list
+                Optional<ProductEntry> productOptional = productRepository.findById(productObjectId);
+                if (productOptional.isPresent()) {
+                    ProductEntry product = productOptional.get();
+                    String mediaUrl = "/api/media/" + savedMedia.getId();
+
+                    if (product.getImages() == null) {
+                        product.setImages(new java.util.ArrayList<>());
                     }
-                } catch (Exception e) {
-                    log.warn("Could not associate media with product {}: {}", entityId, e.getMessage());
+
+                    product.getImages().add(mediaUrl);
+                    productRepository.save(product);
+                    log.info("Associated media {} with product {}", savedMedia.getId(), entityId);
                 }
+            } catch (Exception e) {
+                log.warn("Could not associate media with product {}: {}", entityId, e.getMessage());
             }
-
-            // Return DTO with file URL
-            return MediaDTO.builder()
-                    .id(savedMedia.getId().toString())
-                    .filename(savedMedia.getFilename())
-                    .originalFilename(savedMedia.getOriginalFilename())
-                    .contentType(savedMedia.getContentType())
-                    .size(savedMedia.getSize())
-                    .uploadedBy(savedMedia.getUploadedBy())
-                    .type(savedMedia.getType()) // Fix: Change from uploadType to type
-                    .entityId(savedMedia.getEntityId())
-                    .uploadedAt(savedMedia.getUploadedAt())
-                    .downloadUrl("/api/media/files/" + savedMedia.getFilename())
-                    .gridFsId(savedMedia.getGridFsId())
-                    .build();
-
-        } catch (IOException e) {
-            log.error("Failed to upload file: {}", e.getMessage(), e);
-            throw new RuntimeException("Failed to upload file: " + e.getMessage(), e);
         }
+
+        // Return DTO with file URL
+        return MediaDTO.builder()
+                .id(savedMedia.getId().toString())
+                .filename(savedMedia.getFilename())
+                .originalFilename(savedMedia.getOriginalFilename())
+                .contentType(savedMedia.getContentType())
+                .size(savedMedia.getSize())
+                .uploadedBy(savedMedia.getUploadedBy())
+                .type(savedMedia.getType()) // Fix: Change from uploadType to type
+                .entityId(savedMedia.getEntityId())
+                .uploadedAt(savedMedia.getUploadedAt())
+                .downloadUrl("/api/media/files/" + savedMedia.getFilename())
+                .gridFsId(savedMedia.getGridFsId())
+                .build();
     }
 
     /**
@@ -194,6 +283,16 @@ public class MediaService {
         return uploadMedia(file, username, "post", postId);
     }
 
+    /**
+     * Only participants may attach files to a conversation; the attachment is then
+     * readable by exactly its participants
+     */
+    private void validateChatParticipant(String conversationId, String username) {
+        if (conversationId == null || !conversationMembers.isParticipant(conversationId, username)) {
+            throw new IllegalArgumentException("User is not a participant in this conversation");
+        }
+    }
+
     private void validatePostOwnership(String postId, UserEntry user) {
         ObjectId postObjectId;
         try {
@@ -215,30 +314,49 @@ public class MediaService {
     }
 
     /**
-     * Get media file by filename for serving
+     * Get media file by filename for serving, honouring Range and conditional requests.
+     * Chat attachments are served only to participants of their conversation.
      */
-    public ResponseEntity<InputStreamResource> getMediaFileByName(String filename) throws IOException {
+    public ResponseEntity<InputStreamResource> getMediaFileByName(String filename, HttpHeaders request,
+            String viewer) throws IOException {
+        Optional<MediaMetadataCache.CachedMedia> media = mediaCache.getByFilename(filename);
+        if (media.isPresent() && !canRead(media.get(), viewer)) {
+            return ResponseEntity.notFound().build();
+        }
+        HttpHeaders headers = media
+                .map(this::cacheHeaders)
+                .orElseGet(HttpHeaders::new);
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" + filename);
+        if (media.isPresent() && mediaReader.isNotModified(request, headers)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
+
         GridFSFile gridFSFile = gridFsTemplate.findOne(Query.query(Criteria.where("filename").is(filename)));
 
         if (gridFSFile == null) {
             throw new IOException("File not found: " + filename);
         }
-
-        GridFsResource resource = gridFsOperations.getResource(gridFSFile);
-
-        HttpHeaders headers = new HttpHeaders();
-        headers.add(HttpHeaders.CONTENT_DISPOSITION, "inline; filename=" + filename);
+        if (media.isEmpty()) {
+            if (gridFSFile.getMetadata() != null
+                    && CHAT_TYPE.equals(gridFSFile.getMetadata().getString("uploadType"))) {
+                // A chat attachment whose MediaEntry is gone has no conversation to check against
+                return ResponseEntity.notFound().build();
+            }
+            // Stored without a MediaEntry: validators come from the GridFS file itself
+            headers.addAll(mediaReader.cacheHeaders("\"" + gridFSFile.getObjectId().toHexString() + "\"",
+                    gridFSFile.getUploadDate().toInstant()));
+            if (mediaReader.isNotModified(request, headers)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+            }
+        }
 
         // Fix: Safe access to metadata to prevent NullPointerException
         String contentType = "application/octet-stream"; // default
         if (gridFSFile.getMetadata() != null && gridFSFile.getMetadata().containsKey("_contentType")) {
             contentType = gridFSFile.getMetadata().getString("_contentType");
         }
-        headers.setContentType(MediaType.parseMediaType(contentType));
 
-        return ResponseEntity.ok()
-                .headers(headers)
-                .body(new InputStreamResource(resource.getInputStream()));
+        return mediaReader.serve(gridFSFile, MediaType.parseMediaType(contentType), headers, request);
     }
 
     /**
@@ -257,7 +375,8 @@ public class MediaService {
     }
 
     /**
-     * Get a list of media files for a specific entity
+     * Get a list of media files for a specific entity. Chat attachments are never
+     * listed; they are reached through the messages that carry them.
      */
     public List<MediaDTO> getMediaForEntity(String entityId, String type) {
         List<MediaEntry> mediaEntries;
@@ -267,6 +386,7 @@ public class MediaService {
             mediaEntries = mediaRepository.findByEntityId(entityId);
         }
         return mediaEntries.stream()
+                .filter(media -> !CHAT_TYPE.equals(media.getType()))
                 .map(media -> {
                     MediaDTO dto = convertToDTO(media);
                     dto.setDownloadUrl("/api/media/" + media.getId());
@@ -276,36 +396,47 @@ public class MediaService {
     }
 
     /**
-     * Get a specific media file as a downloadable resource
+     * Get a specific media file as a downloadable resource, honouring Range and
+     * conditional requests. A revalidation is answered from cached metadata alone.
+     * Chat attachments are served only to participants of their conversation, so
+     * to anyone else they do not exist.
      */
-    public ResponseEntity<InputStreamResource> getMediaFile(String mediaId) throws IOException {
-        Optional<MediaEntry> mediaOptional = mediaRepository.findById(new ObjectId(mediaId));
-        if (mediaOptional.isEmpty()) {
+    public ResponseEntity<InputStreamResource> getMediaFile(String mediaId, HttpHeaders request, String viewer)
+            throws IOException {
+        Optional<MediaMetadataCache.CachedMedia> mediaOptional = mediaCache.getById(mediaId);
+        if (mediaOptional.isEmpty() || !canRead(mediaOptional.get(), viewer)) {
             return ResponseEntity.notFound().build();
         }
 
-        MediaEntry media = mediaOptional.get();
-        ObjectId gridFsId = new ObjectId(media.getGridFsId());
+        MediaMetadataCache.CachedMedia media = mediaOptional.get();
+        HttpHeaders headers = cacheHeaders(media);
+        headers.add(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + media.filename() + "\"");
+        if (mediaReader.isNotModified(request, headers)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(headers).build();
+        }
 
         // Find the file in GridFS
+        ObjectId gridFsId = new ObjectId(media.gridFsId());
         GridFSFile gridFSFile = gridFsTemplate.findOne(new Query(Criteria.where("_id").is(gridFsId)));
+        if (gridFSFile == null) {
+            throw new IOException("File not found: " + gridFsId);
+        }
+
+        return mediaReader.serve(gridFSFile, MediaType.parseMediaType(media.contentType()), headers, request);
+    }
+
+    private boolean canRead(MediaMetadataCache.CachedMedia media, String viewer) {
+        return !media.isChat() || (viewer != null && conversationMembers.isParticipant(media.entityId(), viewer));
+    }
 
-        // Get the file resource
-        GridFsResource resource = gridFsOperations.getResource(gridFSFile);
-
-        // Set the appropriate content type
-        MediaType mediaType = MediaType.parseMediaType(media.getContentType()); // Fix: Change from getFileType to
-                                                                                // getContentType
-
-        return ResponseEntity.ok()
-                .contentType(mediaType)
-                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + media.getFilename() + "\"") // Fix:
-                                                                                                                 // Change
-                                                                                                                 // from
-                                                                                                                 // getFileName
-                                                                                                                 // to
-                                                                                                                 // getFilename
-                .body(new InputStreamResource(resource.getInputStream()));
+    /**
+     * Chat attachments must not be kept by shared caches; everything else is public
+     * and immutable
+     */
+    private HttpHeaders cacheHeaders(MediaMetadataCache.CachedMedia media) {
+        return media.isChat()
+                ? mediaReader.privateCacheHeaders(media.etag(), media.lastModified())
+                : mediaReader.cacheHeaders(media.etag(), media.lastModified());
     }
 
     /**
@@ -357,6 +488,7 @@ public class MediaService {
         }
 
         mediaRepository.delete(media);
+        mediaCache.invalidate(media);
     }
 
     private MediaDTO convertToDTO(MediaEntry media) {
@@ -8,7 +8,6 @@ import org.adnan.travner.dto.OrderDTO;
 import org.adnan.travner.entry.OrderEntry;
 import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.OrderRepository;
-import org.adnan.travner.repository.UserRepository;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -27,7 +26,7 @@ import java.util.stream.Collectors;
 public class OrderService {
 
     private final OrderRepository orderRepository;
-    private final UserRepository userRepository;
+    private final PrincipalContext principalContext;
     private final CartService cartService;
 
     /**
@@ -38,7 +37,7 @@ public class OrderService {
         log.debug("Creating order for user: {}", username);
 
         // Get user
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -117,7 +116,7 @@ public class OrderService {
     public List<OrderDTO> getUserOrders(String username) {
         log.debug("Getting orders for user: {}", username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -134,7 +133,7 @@ public class OrderService {
     public OrderDTO getOrderById(String username, String orderId) {
         log.debug("Getting order {} for user: {}", orderId, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -151,7 +150,7 @@ public class OrderService {
     public OrderDTO getOrderByOrderNumber(String username, String orderNumber) {
         log.debug("Getting order {} for user: {}", orderNumber, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -174,7 +173,7 @@ public class OrderService {
     public OrderDTO cancelOrder(String username, String orderId) {
         log.debug("Cancelling order {} for user: {}", orderId, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -269,7 +268,7 @@ public class OrderService {
     public OrderDTO payOrder(String username, String orderId) {
         log.debug("Paying order {} for user: {}", orderId, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -302,7 +301,7 @@ public class OrderService {
     public OrderDTO fulfillOrder(String username, String orderId) {
         log.debug("Fulfilling order {} for user: {}", orderId, username);
 
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found: " + username);
         }
@@ -341,7 +340,7 @@ public class OrderService {
     public OrderDTO adminCancelOrder(String adminUsername, String orderId) {
         log.debug("Admin cancelling order {} by user: {}", orderId, adminUsername);
 
-        UserEntry admin = userRepository.findByuserName(adminUsername);
+        UserEntry admin = principalContext.findUser(adminUsername);
         if (admin == null) {
             throw new RuntimeException("Admin user not found: " + adminUsername);
         }
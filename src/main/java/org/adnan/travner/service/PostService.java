@@ -11,7 +11,6 @@ import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.CommentRepository;
 import org.adnan.travner.repository.PostRepository;
 import org.adnan.travner.repository.PostVoteRepository;
-import org.adnan.travner.repository.UserRepository;
 import org.adnan.travner.entry.MediaEntry;
 import org.adnan.travner.repository.MediaRepository;
 import org.bson.types.ObjectId;
@@ -31,14 +30,15 @@ import java.util.Optional;
 public class PostService {
 
     private final PostRepository postRepository;
-    private final UserRepository userRepository;
+    private final PrincipalContext principalContext;
     private final CommentRepository commentRepository;
     private final PostVoteRepository postVoteRepository;
     private final MediaRepository mediaRepository;
+    private final MediaMetadataCache mediaCache;
 
     @Transactional
     public PostDTO createPost(String username, PostRequest postRequest) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -91,7 +91,7 @@ public class PostService {
     }
 
     public Page<PostDTO> getPostsByUser(String username, Pageable pageable) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -129,7 +129,7 @@ public class PostService {
 
     @Transactional
     public PostDTO updatePost(String postId, String username, PostRequest postRequest) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -174,7 +174,7 @@ public class PostService {
 
     @Transactional
     public void deletePost(String id, String username) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -199,6 +199,7 @@ public class PostService {
         for (MediaEntry media : postMedia) {
             try {
                 mediaRepository.delete(media);
+                mediaCache.invalidate(media);
             } catch (Exception e) {
                 log.error("Error deleting media {}: {}", media.getId(), e.getMessage());
             }
@@ -230,7 +231,7 @@ public class PostService {
 
     @Transactional
     public PostDTO updateVote(String id, String username, boolean isUpvote) {
-        UserEntry user = userRepository.findByuserName(username);
+        UserEntry user = principalContext.findUser(username);
         if (user == null) {
             throw new RuntimeException("User not found");
         }
@@ -0,0 +1,477 @@
+package org.adnan.travner.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.chat.UserPresenceDTO;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.repository.ChatConversationRepository;
+import org.adnan.travner.util.HashedTimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Tracks which users are connected over STOMP. Sessions connected to this node live
+ * in a sharded map and expire on a timing wheel when their heartbeats stop; other
+ * nodes' users arrive through {@link PresenceSync} as snapshots and deltas, and a
+ * node that stops announcing itself is dropped. Online/offline changes are published
+ * to /topic/conversation/{id}/presence for the user's conversations that have
+ * another participant online.
+ */
+@Service
+@Slf4j
+public class PresenceService {
+
+    private static final int WHEEL_SIZE = 512;
+    private static final long WHEEL_TICK_MS = 100;
+    /** A node is considered gone after this many missed heartbeats */
+    private static final int NODE_EXPIRY_HEARTBEATS = 3;
+    /** Full snapshots repair lost deltas; sent on every n-th heartbeat */
+    private static final int SNAPSHOT_EVERY_HEARTBEATS = 6;
+
+    private final PresenceSync sync;
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final ChatConversationRepository conversationRepository;
+    private final String nodeId;
+    private final long sessionTimeoutMillis;
+    private final long nodeHeartbeatMillis;
+    private final boolean sharedBroker;
+    private final HashedTimingWheel wheel;
+    private final LongSupplier clock;
+    private final Executor notifier;
+    private final Shard[] shards;
+    private final Map<String, LocalSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, NodeView> nodes = new ConcurrentHashMap<>();
+    private long heartbeats;
+
+    @Autowired
+    public PresenceService(PresenceSync sync, SimpMessageSendingOperations messagingTemplate,
+            ChatConversationRepository conversationRepository,
+            @Value("${app.chat.presence.node-id:}") String nodeId,
+            @Value("${app.chat.presence.shards:64}") int shardCount,
+            @Value("${app.chat.presence.session-timeout-seconds:30}") long sessionTimeoutSeconds,
+            @Value("${app.chat.presence.node-heartbeat-seconds:10}") long nodeHeartbeatSeconds,
+            @Value("${app.chat.broker.type:simple}") String brokerType) {
+        this(sync, messagingTemplate, conversationRepository,
+                nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId,
+                shardCount, sessionTimeoutSeconds * 1000, nodeHeartbeatSeconds * 1000,
+                "external".equalsIgnoreCase(brokerType),
+                new HashedTimingWheel("presence-wheel", WHEEL_TICK_MS, WHEEL_SIZE, System::currentTimeMillis),
+                System::currentTimeMillis, Executors.newVirtualThreadPerTaskExecutor());
+        wheel.start();
+    }
+
+    PresenceService(PresenceSync sync, SimpMessageSendingOperations messagingTemplate,
+            ChatConversationRepository conversationRepository, String nodeId, int shardCount,
+            long sessionTimeoutMillis, long nodeHeartbeatMillis, boolean sharedBroker,
+            HashedTimingWheel wheel, LongSupplier clock, Executor notifier) {
+        this.sync = sync;
+        this.messagingTemplate = messagingTemplate;
+        this.conversationRepository = conversationRepository;
+        this.nodeId = nodeId;
+        this.sessionTimeoutMillis = sessionTimeoutMillis;
+        this.nodeHeartbeatMillis = nodeHeartbeatMillis;
+        this.sharedBroker = sharedBroker;
+        this.wheel = wheel;
+        this.clock = clock;
+        this.notifier = notifier;
+        int size = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+        this.shards = new Shard[size];
+        for (int i = 0; i < size; i++) {
+            shards[i] = new Shard();
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        sync.subscribe(this::onSyncEvent);
+        sync.publish(new PresenceSync.Event(PresenceSync.Type.HELLO, nodeId, List.of()));
+        publishSnapshot();
+        wheel.schedule(this::heartbeat, nodeHeartbeatMillis);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        sync.publish(new PresenceSync.Event(PresenceSync.Type.GOODBYE, nodeId, List.of()));
+        wheel.close();
+    }
+
+    @EventListener
+    public void onSessionConnected(SessionConnectedEvent event) {
+        Principal user = event.getUser();
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(event.getMessage().getHeaders());
+        if (user != null && sessionId != null) {
+            connect(sessionId, user.getName());
+        }
+    }
+
+    @EventListener
+    public void onSessionDisconnect(SessionDisconnectEvent event) {
+        disconnect(event.getSessionId());
+    }
+
+    /**
+     * Register a STOMP session for a user
+     */
+    public void connect(String sessionId, String userId) {
+        long now = clock.getAsLong();
+        LocalSession session = new LocalSession(sessionId, userId, now);
+        boolean cameOnline;
+        boolean wasOnlineElsewhere = isOnlineRemotely(userId);
+        armExpiry(session, sessionTimeoutMillis);
+        Shard shard = shardFor(userId);
+        synchronized (shard) {
+            LocalUser local = shard.users.computeIfAbsent(userId, id -> new LocalUser());
+            cameOnline = local.sessions.isEmpty();
+            local.sessions.put(sessionId, session);
+            local.lastSeenMillis = now;
+        }
+        sessions.put(sessionId, session);
+        if (cameOnline) {
+            sync.publish(new PresenceSync.Event(PresenceSync.Type.ONLINE, nodeId, List.of(userId)));
+            if (!wasOnlineElsewhere) {
+                notifyChange(userId, UserPresenceDTO.Status.ONLINE, now);
+            }
+        }
+    }
+
+    /**
+     * Drop a STOMP session; the user goes offline when it was their last one anywhere
+     */
+    public void disconnect(String sessionId) {
+        LocalSession session = sessions.remove(sessionId);
+        if (session != null) {
+            session.expiry.cancel();
+            removeLocal(session);
+        }
+    }
+
+    /**
+     * Note activity on a session. Called for every inbound frame, heartbeats included.
+     */
+    public void touch(String sessionId) {
+        LocalSession session = sessions.get(sessionId);
+        if (session != null) {
+            session.lastSeenMillis = clock.getAsLong();
+        }
+    }
+
+    public boolean isOnline(String userId) {
+        return isOnlineLocally(userId) || isOnlineRemotely(userId);
+    }
+
+    /**
+     * Everyone this user shares an active conversation with who is online right now
+     */
+    public List<UserPresenceDTO> getOnlineContacts(String userId) {
+        Set<String> contacts = new LinkedHashSet<>();
+        for (ChatConversation conversation : conversationRepository.findByParticipantIdsContainingAndIsActiveTrue(userId)) {
+            if (conversation.getParticipantIds() != null) {
+                contacts.addAll(conversation.getParticipantIds());
+            }
+        }
+        contacts.remove(userId);
+
+        List<UserPresenceDTO> online = new ArrayList<>();
+        for (String contact : contacts) {
+            if (isOnlineLocally(contact)) {
+                online.add(presence(contact, UserPresenceDTO.Status.ONLINE, localLastSeen(contact)));
+            } else if (isOnlineRemotely(contact)) {
+                online.add(presence(contact, UserPresenceDTO.Status.ONLINE, null));
+            }
+        }
+        return online;
+    }
+
+    private void removeLocal(LocalSession session) {
+        long now = clock.getAsLong();
+        boolean wentOffline = false;
+        Shard shard = shardFor(session.userId);
+        synchronized (shard) {
+            LocalUser local = shard.users.get(session.userId);
+            if (local != null && local.sessions.remove(session.sessionId) != null) {
+                local.lastSeenMillis = now;
+                if (local.sessions.isEmpty()) {
+                    shard.users.remove(session.userId);
+                    wentOffline = true;
+                }
+            }
+        }
+        if (wentOffline) {
+            sync.publish(new PresenceSync.Event(PresenceSync.Type.OFFLINE, nodeId, List.of(session.userId)));
+            if (!isOnlineRemotely(session.userId)) {
+                notifyChange(session.userId, UserPresenceDTO.Status.OFFLINE, now);
+            }
+        }
+    }
+
+    private void armExpiry(LocalSession session, long delayMillis) {
+        session.expiry = wheel.schedule(() -> expireSession(session), delayMillis);
+    }
+
+    private void expireSession(LocalSession session) {
+        if (sessions.get(session.sessionId) != session) {
+            return;
+        }
+        long idle = clock.getAsLong() - session.lastSeenMillis;
+        if (idle < sessionTimeoutMillis) {
+            armExpiry(session, sessionTimeoutMillis - idle);
+            return;
+        }
+        log.debug("Presence session {} for {} timed out", session.sessionId, session.userId);
+        if (sessions.remove(session.sessionId, session)) {
+            removeLocal(session);
+        }
+    }
+
+    private void heartbeat() {
+        heartbeats++;
+        if (heartbeats % SNAPSHOT_EVERY_HEARTBEATS == 0) {
+            publishSnapshot();
+        } else {
+            sync.publish(new PresenceSync.Event(PresenceSync.Type.ALIVE, nodeId, List.of()));
+        }
+        wheel.schedule(this::heartbeat, nodeHeartbeatMillis);
+    }
+
+    private void publishSnapshot() {
+        List<String> users = new ArrayList<>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                users.addAll(shard.users.keySet());
+            }
+        }
+        sync.publish(new PresenceSync.Event(PresenceSync.Type.SNAPSHOT, nodeId, users));
+    }
+
+    private void onSyncEvent(PresenceSync.Event event) {
+        if (nodeId.equals(event.nodeId())) {
+            return;
+        }
+        switch (event.type()) {
+            case HELLO -> {
+                nodeView(event.nodeId());
+                publishSnapshot();
+            }
+            case SNAPSHOT -> updateRemote(event.nodeId(), users -> Set.copyOf(event.userIds()));
+            case ONLINE -> updateRemote(event.nodeId(), users -> {
+                Set<String> updated = new HashSet<>(users);
+                updated.addAll(event.userIds());
+                return updated;
+            });
+            case OFFLINE -> updateRemote(event.nodeId(), users -> {
+                Set<String> updated = new HashSet<>(users);
+                event.userIds().forEach(updated::remove);
+                return updated;
+            });
+            case ALIVE -> nodeView(event.nodeId());
+            case GOODBYE -> dropNode(event.nodeId());
+        }
+    }
+
+    /**
+     * Replace a node's user set and announce anyone whose overall status changed
+     */
+    private void updateRemote(String remoteNodeId, UnaryOperator<Set<String>> update) {
+        NodeView view = nodeView(remoteNodeId);
+        Map<String, Boolean> before = new HashMap<>();
+        synchronized (view) {
+            Set<String> users = Set.copyOf(update.apply(view.users));
+            for (String user : view.users) {
+                if (!users.contains(user)) {
+                    before.put(user, isOnline(user));
+                }
+            }
+            for (String user : users) {
+                if (!view.users.contains(user)) {
+                    before.put(user, isOnline(user));
+                }
+            }
+            view.users = users;
+        }
+        announceRemoteChanges(before);
+    }
+
+    private void dropNode(String remoteNodeId) {
+        NodeView view = nodes.remove(remoteNodeId);
+        if (view == null) {
+            return;
+        }
+        view.expiry.cancel();
+        Map<String, Boolean> before = new HashMap<>();
+        synchronized (view) {
+            view.users.forEach(user -> before.put(user, true));
+            view.users = Set.of();
+        }
+        announceRemoteChanges(before);
+    }
+
+    private void announceRemoteChanges(Map<String, Boolean> before) {
+        // With a shared broker the originating node has already told every subscriber
+        if (sharedBroker || before.isEmpty()) {
+            return;
+        }
+        long now = clock.getAsLong();
+        before.forEach((user, wasOnline) -> {
+            boolean online = isOnline(user);
+            if (online != wasOnline) {
+                notifyChange(user, online ? UserPresenceDTO.Status.ONLINE : UserPresenceDTO.Status.OFFLINE, now);
+            }
+        });
+    }
+
+    private NodeView nodeView(String remoteNodeId) {
+        long now = clock.getAsLong();
+        NodeView view = nodes.computeIfAbsent(remoteNodeId, id -> {
+            NodeView created = new NodeView(id, now);
+            armNodeExpiry(created, nodeHeartbeatMillis * NODE_EXPIRY_HEARTBEATS);
+            return created;
+        });
+        view.lastSeenMillis = now;
+        return view;
+    }
+
+    private void armNodeExpiry(NodeView view, long delayMillis) {
+        view.expiry = wheel.schedule(() -> expireNode(view), delayMillis);
+    }
+
+    private void expireNode(NodeView view) {
+        if (nodes.get(view.nodeId) != view) {
+            return;
+        }
+        long timeout = nodeHeartbeatMillis * NODE_EXPIRY_HEARTBEATS;
+        long idle = clock.getAsLong() - view.lastSeenMillis;
+        if (idle < timeout) {
+            armNodeExpiry(view, timeout - idle);
+            return;
+        }
+        log.info("Presence node {} stopped announcing itself; dropping its {} users", view.nodeId, view.users.size());
+        dropNode(view.nodeId);
+    }
+
+    /**
+     * Publish a status change to the user's conversations where someone else is online
+     */
+    private void notifyChange(String userId, UserPresenceDTO.Status status, long atMillis) {
+        UserPresenceDTO presence = presence(userId, status, Instant.ofEpochMilli(atMillis));
+        notifier.execute(() -> {
+            try {
+                for (ChatConversation conversation
+                        : conversationRepository.findByParticipantIdsContainingAndIsActiveTrue(userId)) {
+                    if (hasOtherParticipantOnline(conversation, userId)) {
+                        messagingTemplate.convertAndSend(
+                                "/topic/conversation/" + conversation.getId() + "/presence", presence);
+                    }
+                }
+            } catch (Exception e) {
+                log.warn("Failed to publish presence change for {}: {}", userId, e.getMessage());
+            }
+        });
+    }
+
+    private boolean hasOtherParticipantOnline(ChatConversation conversation, String userId) {
+        if (conversation.getParticipantIds() == null) {
+            return false;
+        }
+        for (String participant : conversation.getParticipantIds()) {
+            if (!participant.equals(userId) && isOnline(participant)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isOnlineLocally(String userId) {
+        Shard shard = shardFor(userId);
+        synchronized (shard) {
+            return shard.users.containsKey(userId);
+        }
+    }
+
+    private boolean isOnlineRemotely(String userId) {
+        for (NodeView view : nodes.values()) {
+            if (view.users.contains(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Instant localLastSeen(String userId) {
+        Shard shard = shardFor(userId);
+        synchronized (shard) {
+            LocalUser local = shard.users.get(userId);
+            return local == null ? null : Instant.ofEpochMilli(local.lastSeenMillis);
+        }
+    }
+
+    private static UserPresenceDTO presence(String userId, UserPresenceDTO.Status status, Instant lastSeen) {
+        return UserPresenceDTO.builder()
+                .userId(userId)
+                .userName(userId)
+                .status(status)
+                .lastSeen(lastSeen)
+                .build();
+    }
+
+    private Shard shardFor(String userId) {
+        int hash = userId.hashCode();
+        return shards[(hash ^ (hash >>> 16)) & (shards.length - 1)];
+    }
+
+    private static final class Shard {
+        private final Map<String, LocalUser> users = new HashMap<>();
+    }
+
+    private static final class LocalUser {
+        private final Map<String, LocalSession> sessions = new HashMap<>(2);
+        private long lastSeenMillis;
+    }
+
+    private static final class LocalSession {
+        private final String sessionId;
+        private final String userId;
+        private volatile long lastSeenMillis;
+        private volatile HashedTimingWheel.Timeout expiry;
+
+        LocalSession(String sessionId, String userId, long lastSeenMillis) {
+            this.sessionId = sessionId;
+            this.userId = userId;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+
+    private static final class NodeView {
+        private final String nodeId;
+        private volatile Set<String> users = Set.of();
+        private volatile long lastSeenMillis;
+        private volatile HashedTimingWheel.Timeout expiry;
+
+        NodeView(String nodeId, long lastSeenMillis) {
+            this.nodeId = nodeId;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+}
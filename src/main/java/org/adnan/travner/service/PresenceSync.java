@@ -0,0 +1,46 @@
+package org.adnan.travner.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Channel that keeps presence in step across application nodes. Every node
+ * publishes its own changes and receives everyone's, including its own. It also
+ * carries conversation membership changes, so each node can drop what it cached,
+ * new usernames and emails, so every node's identity filter stays a superset, and
+ * follow graph patches.
+ */
+public interface PresenceSync {
+
+    enum Type {
+        /** A node started and wants everyone's snapshot */
+        HELLO,
+        /** Complete set of users connected to the sending node */
+        SNAPSHOT,
+        ONLINE,
+        OFFLINE,
+        /** Keeps the sending node's view alive between snapshots */
+        ALIVE,
+        /** The sending node is shutting down */
+        GOODBYE,
+        /** Members of the listed conversations changed */
+        MEMBERS_CHANGED,
+        /** Identity filter keys (in userIds) of users registered or updated on the sending node */
+        IDENTITIES_ADDED,
+        /** userIds holds [follower, following] of a new follow edge */
+        FOLLOWED,
+        /** userIds holds [follower, following] of a removed follow edge */
+        UNFOLLOWED
+    }
+
+    record Event(Type type, String nodeId, List<String> userIds, List<String> conversationIds) {
+
+        public Event(Type type, String nodeId, List<String> userIds) {
+            this(type, nodeId, userIds, List.of());
+        }
+    }
+
+    void publish(Event event);
+
+    void subscribe(Consumer<Event> listener);
+}
@@ -0,0 +1,162 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.UserEntry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpAttributes;
+import org.springframework.messaging.simp.SimpAttributesContextHolder;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Resolves the authenticated user once per HTTP request (or once per STOMP
+ * session) and hands the same snapshot to every service that asks for it.
+ * Lookups for any other user fall through to the shared UserSummaryCache.
+ *
+ * The STOMP snapshot is only trusted for a bounded time; after that the next
+ * frame re-reads the user, so role changes and deactivations reach sessions
+ * that stay connected for hours.
+ */
+@Component
+public class PrincipalContext {
+
+    static final String ATTRIBUTE = PrincipalContext.class.getName() + ".principal";
+    static final String BOUND_AT = ATTRIBUTE + ".boundAt";
+
+    private final UserSummaryCache userSummaryCache;
+    private final long sessionTtlMillis;
+
+    public PrincipalContext(UserSummaryCache userSummaryCache,
+                            @Value("${app.chat.websocket.principal-ttl-seconds:60}") long sessionTtlSeconds) {
+        this.userSummaryCache = userSummaryCache;
+        this.sessionTtlMillis = sessionTtlSeconds * 1000;
+    }
+
+    /**
+     * Record a user that was just loaded (e.g. during authentication) as the
+     * principal of the current request so nothing needs to load it again.
+     */
+    public UserSummaryCache.CachedUser seed(UserEntry user) {
+        UserSummaryCache.CachedUser principal = userSummaryCache.put(user);
+        store(principal);
+        return principal;
+    }
+
+    /**
+     * Bind the principal for a STOMP session, typically on CONNECT
+     */
+    public void bindSession(String username, Map<String, Object> sessionAttributes) {
+        if (sessionAttributes == null) {
+            return;
+        }
+        userSummaryCache.getByUsername(username)
+                .filter(UserSummaryCache.CachedUser::isActive)
+                .ifPresent(principal -> bind(principal, sessionAttributes));
+    }
+
+    /**
+     * Re-read the principal of a STOMP session once its snapshot has expired.
+     * Returns false, and unbinds it, when the user is gone or deactivated.
+     */
+    public boolean revalidateSession(Map<String, Object> sessionAttributes) {
+        if (sessionAttributes == null
+                || !(sessionAttributes.get(ATTRIBUTE) instanceof UserSummaryCache.CachedUser principal)) {
+            return true;
+        }
+        if (sessionAttributes.get(BOUND_AT) instanceof Long boundAt
+                && System.currentTimeMillis() - boundAt < sessionTtlMillis) {
+            return true;
+        }
+        Optional<UserSummaryCache.CachedUser> fresh = userSummaryCache.getByUsername(principal.getUserName())
+                .filter(UserSummaryCache.CachedUser::isActive);
+        if (fresh.isEmpty()) {
+            sessionAttributes.remove(ATTRIBUTE);
+            sessionAttributes.remove(BOUND_AT);
+            return false;
+        }
+        bind(fresh.get(), sessionAttributes);
+        return true;
+    }
+
+    private static void bind(UserSummaryCache.CachedUser principal, Map<String, Object> sessionAttributes) {
+        sessionAttributes.put(ATTRIBUTE, principal);
+        sessionAttributes.put(BOUND_AT, System.currentTimeMillis());
+    }
+
+    /**
+     * The principal bound to the current request or STOMP session, if any
+     */
+    public Optional<UserSummaryCache.CachedUser> current() {
+        Object stored = load();
+        if (stored instanceof UserSummaryCache.CachedUser principal) {
+            return Optional.of(principal);
+        }
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated() || !hasScope()) {
+            return Optional.empty();
+        }
+        Optional<UserSummaryCache.CachedUser> resolved = userSummaryCache.getByUsername(authentication.getName());
+        resolved.ifPresent(this::store);
+        return resolved;
+    }
+
+    /**
+     * Resolve a user given either an id or a username, preferring the bound
+     * principal and falling back to the shared cache.
+     */
+    public Optional<UserSummaryCache.CachedUser> resolve(String idOrUsername) {
+        if (idOrUsername == null) {
+            return Optional.empty();
+        }
+        Optional<UserSummaryCache.CachedUser> principal = current();
+        if (principal.isPresent() && matches(principal.get(), idOrUsername)) {
+            return principal;
+        }
+        return userSummaryCache.resolve(idOrUsername);
+    }
+
+    /**
+     * Detached, password-free UserEntry for services that work with entities,
+     * or null if the user does not exist.
+     */
+    public UserEntry findUser(String username) {
+        return resolve(username).map(UserSummaryCache.CachedUser::toUserEntry).orElse(null);
+    }
+
+    private static boolean matches(UserSummaryCache.CachedUser principal, String idOrUsername) {
+        return idOrUsername.equals(principal.getUserName())
+                || idOrUsername.equals(principal.getId().toHexString());
+    }
+
+    private boolean hasScope() {
+        return RequestContextHolder.getRequestAttributes() != null
+                || SimpAttributesContextHolder.getAttributes() != null;
+    }
+
+    private Object load() {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            return request.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        }
+        SimpAttributes session = SimpAttributesContextHolder.getAttributes();
+        return session != null ? session.getAttribute(ATTRIBUTE) : null;
+    }
+
+    private void store(UserSummaryCache.CachedUser principal) {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null) {
+            request.setAttribute(ATTRIBUTE, principal, RequestAttributes.SCOPE_REQUEST);
+            return;
+        }
+        SimpAttributes session = SimpAttributesContextHolder.getAttributes();
+        if (session != null) {
+            session.setAttribute(ATTRIBUTE, principal);
+            session.setAttribute(BOUND_AT, System.currentTimeMillis());
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package org.adnan.travner.service;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Copies an upload body into GridFS as it arrives. The body is read one chunk at
+ * a time and each chunk is written out before the next is read, so memory per
+ * upload is one chunk whatever the file size. Size and SHA-256 are computed on the
+ * way through; a body over the limit, or one that fails mid-way, aborts the upload
+ * and its chunks are removed.
+ */
+@Component
+@Slf4j
+public class StreamingGridFsUploader {
+
+    /**
+     * Spring Data GridFS keeps the content type here, so GridFsResource finds it
+     */
+    static final String CONTENT_TYPE_KEY = "_contentType";
+
+    private final GridFSBucket bucket;
+    private final int chunkSize;
+
+    public StreamingGridFsUploader(GridFSBucket bucket,
+            @Value("${app.upload.stream.chunk-size-kb:255}") int chunkSizeKb) {
+        this.bucket = bucket;
+        this.chunkSize = chunkSizeKb * 1024;
+    }
+
+    /**
+     * Store the stream, reading it to its end
+     *
+     * @throws IllegalArgumentException when the stream is empty or longer than maxBytes
+     */
+    public StoredFile store(InputStream body, String filename, String contentType, Document metadata, long maxBytes)
+            throws IOException {
+        Document fileMetadata = new Document(metadata);
+        if (contentType != null) {
+            fileMetadata.put(CONTENT_TYPE_KEY, contentType);
+        }
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[chunkSize];
+        long size = 0;
+
+        GridFSUploadStream upload = bucket.openUploadStream(filename,
+                new GridFSUploadOptions().chunkSizeBytes(chunkSize).metadata(fileMetadata));
+        try {
+            int read;
+            while ((read = body.readNBytes(buffer, 0, buffer.length)) > 0) {
+                size += read;
+                if (size > maxBytes) {
+                    throw new IllegalArgumentException("File size exceeds maximum limit of " + maxBytes + " bytes");
+                }
+                digest.update(buffer, 0, read);
+                upload.write(buffer, 0, read);
+            }
+            if (size == 0) {
+                throw new IllegalArgumentException("File cannot be null or empty");
+            }
+        } catch (IOException | RuntimeException e) {
+            upload.abort();
+            log.debug("Aborted streaming upload of {} after {} bytes: {}", filename, size, e.getMessage());
+            throw e;
+        }
+        upload.close();
+        return new StoredFile(upload.getObjectId(), size, HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * A file written to GridFS with what was measured while writing it
+     */
+    public record StoredFile(ObjectId id, long size, String sha256) {
+    }
+}
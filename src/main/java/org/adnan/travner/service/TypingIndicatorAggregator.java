@@ -0,0 +1,226 @@
+package org.adnan.travner.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.TypingStateDTO;
+import org.adnan.travner.util.HashedTimingWheel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Coalesces typing indicators per conversation. Clients send a frame per keystroke
+ * burst; instead of rebroadcasting each one, the aggregator tracks who is typing and
+ * publishes at most one {@link TypingStateDTO} per conversation per cooldown
+ * interval. A typist who goes quiet for the expiry period is dropped by a timer on a
+ * hashed timing wheel and reported as stopped in the next frame.
+ *
+ * State is per node: with a shared broker every node publishes frames for its own
+ * typists, tagged with its node id, and clients merge them (see {@link TypingStateDTO}).
+ */
+@Service
+@Slf4j
+public class TypingIndicatorAggregator {
+
+    private static final int WHEEL_SIZE = 512;
+
+    private final SimpMessageSendingOperations messagingTemplate;
+    private final String nodeId;
+    private final long cooldownMillis;
+    private final long expiryMillis;
+    private final HashedTimingWheel wheel;
+    private final LongSupplier clock;
+    private final Map<String, ConversationTyping> conversations = new ConcurrentHashMap<>();
+
+    @Autowired
+    public TypingIndicatorAggregator(SimpMessageSendingOperations messagingTemplate,
+            @Value("${app.chat.presence.node-id:}") String nodeId,
+            @Value("${app.chat.rate-limit.typing-cooldown-seconds:2}") long cooldownSeconds,
+            @Value("${app.chat.typing.expiry-seconds:5}") long expirySeconds,
+            @Value("${app.chat.typing.wheel-tick-ms:100}") long wheelTickMillis) {
+        this(messagingTemplate, nodeId == null || nodeId.isBlank() ? UUID.randomUUID().toString() : nodeId,
+                cooldownSeconds * 1000, expirySeconds * 1000,
+                new HashedTimingWheel("typing-wheel", wheelTickMillis, WHEEL_SIZE, System::currentTimeMillis),
+                System::currentTimeMillis);
+        wheel.start();
+    }
+
+    TypingIndicatorAggregator(SimpMessageSendingOperations messagingTemplate, String nodeId, long cooldownMillis,
+            long expiryMillis, HashedTimingWheel wheel, LongSupplier clock) {
+        this.messagingTemplate = messagingTemplate;
+        this.nodeId = nodeId;
+        this.cooldownMillis = cooldownMillis;
+        this.expiryMillis = expiryMillis;
+        this.wheel = wheel;
+        this.clock = clock;
+    }
+
+    /**
+     * Record a typing start or stop from a conversation participant
+     */
+    public void onTyping(String conversationId, String userId, String username, boolean typing) {
+        while (true) {
+            ConversationTyping state = conversations.computeIfAbsent(conversationId, ConversationTyping::new);
+            TypingStateDTO frame;
+            synchronized (state) {
+                if (state.retired) {
+                    continue;
+                }
+                long now = clock.getAsLong();
+                Typist typist = state.typists.get(userId);
+                if (typing) {
+                    if (typist != null) {
+                        // Keep the existing timer; it re-arms itself if the typist is still active
+                        typist.lastSeenMillis = now;
+                        return;
+                    }
+                    typist = new Typist(username, now);
+                    state.typists.put(userId, typist);
+                    state.stopped.remove(userId);
+                    armExpiry(state, userId, typist, expiryMillis);
+                } else {
+                    if (typist == null) {
+                        return;
+                    }
+                    typist.expiry.cancel();
+                    state.typists.remove(userId);
+                    state.stopped.add(userId);
+                }
+                state.changed = true;
+                frame = requestFlush(state, now);
+            }
+            publish(frame);
+            return;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        wheel.close();
+    }
+
+    private void armExpiry(ConversationTyping state, String userId, Typist typist, long delayMillis) {
+        typist.expiry = wheel.schedule(() -> expire(state, userId, typist), delayMillis);
+    }
+
+    private void expire(ConversationTyping state, String userId, Typist typist) {
+        TypingStateDTO frame;
+        synchronized (state) {
+            if (state.typists.get(userId) != typist) {
+                return;
+            }
+            long now = clock.getAsLong();
+            long idle = now - typist.lastSeenMillis;
+            if (idle < expiryMillis) {
+                armExpiry(state, userId, typist, expiryMillis - idle);
+                return;
+            }
+            state.typists.remove(userId);
+            state.stopped.add(userId);
+            state.changed = true;
+            frame = requestFlush(state, now);
+        }
+        publish(frame);
+    }
+
+    /**
+     * Emit now if the conversation's cooldown has passed, otherwise make sure one flush
+     * is pending for when it does. Called with the state lock held.
+     */
+    private TypingStateDTO requestFlush(ConversationTyping state, long now) {
+        if (state.flushPending) {
+            return null;
+        }
+        long wait = state.lastEmitMillis + cooldownMillis - now;
+        if (wait > 0) {
+            scheduleFlush(state, wait);
+            return null;
+        }
+        return emit(state, now);
+    }
+
+    private void scheduleFlush(ConversationTyping state, long delayMillis) {
+        state.flushPending = true;
+        wheel.schedule(() -> flush(state), delayMillis);
+    }
+
+    private void flush(ConversationTyping state) {
+        TypingStateDTO frame = null;
+        synchronized (state) {
+            state.flushPending = false;
+            if (state.changed) {
+                frame = emit(state, clock.getAsLong());
+            } else if (state.typists.isEmpty()) {
+                // Quiet for a full cooldown; a new typist starts from a fresh state
+                state.retired = true;
+                conversations.remove(state.conversationId, state);
+            }
+        }
+        publish(frame);
+    }
+
+    private TypingStateDTO emit(ConversationTyping state, long now) {
+        List<TypingStateDTO.TypingUser> typing = new ArrayList<>(state.typists.size());
+        state.typists.forEach((userId, typist) -> typing.add(new TypingStateDTO.TypingUser(userId, typist.username)));
+        TypingStateDTO frame = TypingStateDTO.builder()
+                .conversationId(state.conversationId)
+                .nodeId(nodeId)
+                .typing(typing)
+                .stoppedUserIds(List.copyOf(state.stopped))
+                .timestamp(now)
+                .build();
+        state.stopped.clear();
+        state.changed = false;
+        state.lastEmitMillis = now;
+        // Closes the cooldown window: picks up later changes, or retires an idle conversation
+        scheduleFlush(state, cooldownMillis);
+        return frame;
+    }
+
+    private void publish(TypingStateDTO frame) {
+        if (frame == null) {
+            return;
+        }
+        try {
+            messagingTemplate.convertAndSend("/topic/conversation/" + frame.getConversationId() + "/typing", frame);
+        } catch (Exception e) {
+            log.warn("Failed to publish typing state for conversation {}: {}", frame.getConversationId(), e.getMessage());
+        }
+    }
+
+    private static final class ConversationTyping {
+        private final String conversationId;
+        private final Map<String, Typist> typists = new LinkedHashMap<>();
+        private final Set<String> stopped = new LinkedHashSet<>();
+        private long lastEmitMillis = Long.MIN_VALUE / 2;
+        private boolean changed;
+        private boolean flushPending;
+        private boolean retired;
+
+        ConversationTyping(String conversationId) {
+            this.conversationId = conversationId;
+        }
+    }
+
+    private static final class Typist {
+        private final String username;
+        private long lastSeenMillis;
+        private HashedTimingWheel.Timeout expiry;
+
+        Typist(String username, long lastSeenMillis) {
+            this.username = username;
+            this.lastSeenMillis = lastSeenMillis;
+        }
+    }
+}
@@ -17,13 +17,19 @@ public class UserDetailsServiceImpl implements UserDetailsService {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private PrincipalContext principalContext;
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         UserEntry user = userRepository.findByuserName(username);
         if (user != null && user.isActive()) {
+            // The user is already loaded; services in this request reuse it instead of querying again
+            principalContext.seed(user);
+
             // Update last login time (async to not slow down authentication)
             try {
-                userService.updateLastLogin(username);
+                userService.updateLastLogin(user);
             } catch (Exception e) {
                 // Don't fail authentication if logging fails
             }
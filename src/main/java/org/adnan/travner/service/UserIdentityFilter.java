@@ -0,0 +1,173 @@
+package org.adnan.travner.service;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.UserRepository;
+import org.adnan.travner.util.BloomFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * In-memory Bloom filter over normalized usernames and emails.
+ * A negative answer means no user can hold the name or email, so availability
+ * checks skip the database; a positive answer must still be confirmed by a query.
+ * Until the startup build finishes every lookup answers "maybe".
+ * Additions are published over {@link PresenceSync} so registrations on other nodes
+ * show up here too; a periodic rebuild catches anything this node missed while the
+ * channel was down.
+ */
+@Component
+@Slf4j
+public class UserIdentityFilter {
+
+    private static final String USERNAME_PREFIX = "u:";
+    private static final String EMAIL_PREFIX = "e:";
+
+    private final UserRepository userRepository;
+    private final PresenceSync sync;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private volatile BloomFilter filter;
+    // Filter being streamed by a rebuild; additions go into it as well so none are lost on the swap
+    private volatile BloomFilter rebuilding;
+    private volatile boolean ready;
+
+    public UserIdentityFilter(UserRepository userRepository, PresenceSync sync,
+            @Value("${app.cache.identity-filter.expected-users:1000000}") long expectedUsers,
+            @Value("${app.cache.identity-filter.false-positive-rate:0.01}") double falsePositiveRate) {
+        this.userRepository = userRepository;
+        this.sync = sync;
+        // Every user contributes a username and usually an email
+        this.expectedInsertions = expectedUsers * 2;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = new BloomFilter(expectedInsertions, falsePositiveRate);
+    }
+
+    @PostConstruct
+    public void start() {
+        sync.subscribe(event -> {
+            if (event.type() == PresenceSync.Type.IDENTITIES_ADDED && event.userIds() != null) {
+                event.userIds().forEach(this::put);
+            }
+        });
+    }
+
+    /**
+     * Populate the filter once all startup runners (including seeders) have written their users
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void build() {
+        rebuild();
+    }
+
+    /**
+     * Stream every identity into a fresh filter and swap it in. Additions arriving
+     * meanwhile are put into both filters.
+     */
+    @Scheduled(initialDelayString = "${app.cache.identity-filter.rebuild-minutes:60}",
+            fixedDelayString = "${app.cache.identity-filter.rebuild-minutes:60}", timeUnit = TimeUnit.MINUTES)
+    public synchronized void rebuild() {
+        long start = System.currentTimeMillis();
+        long count = 0;
+        BloomFilter next = new BloomFilter(expectedInsertions, falsePositiveRate);
+        rebuilding = next;
+        try (Stream<UserEntry> users = userRepository.streamIdentities()) {
+            for (UserEntry user : (Iterable<UserEntry>) users::iterator) {
+                keys(user).forEach(next::put);
+                count++;
+            }
+            filter = next;
+            ready = true;
+            log.info("User identity filter built from {} users in {} ms ({} bits)",
+                    count, System.currentTimeMillis() - start, next.bitSize());
+        } catch (Exception e) {
+            log.warn(ready ? "User identity filter rebuild failed, keeping the previous one: {}"
+                    : "User identity filter not built, availability checks will query MongoDB: {}", e.getMessage());
+        } finally {
+            rebuilding = null;
+        }
+    }
+
+    public void add(UserEntry user) {
+        if (user != null) {
+            publish(keys(user));
+        }
+    }
+
+    public void addUsername(String username) {
+        if (username != null) {
+            publish(List.of(USERNAME_PREFIX + normalize(username)));
+        }
+    }
+
+    public void addEmail(String email) {
+        if (email != null) {
+            publish(List.of(EMAIL_PREFIX + normalize(email)));
+        }
+    }
+
+    /**
+     * False only if the username is definitely not taken
+     */
+    public boolean mightContainUsername(String username) {
+        return username == null || !ready || filter.mightContain(USERNAME_PREFIX + normalize(username));
+    }
+
+    /**
+     * False only if the email is definitely not registered
+     */
+    public boolean mightContainEmail(String email) {
+        return email == null || !ready || filter.mightContain(EMAIL_PREFIX + normalize(email));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Apply locally first so this node's next check sees the addition, then tell the other nodes
+     */
+    private void publish(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(this::put);
+        sync.publish(new PresenceSync.Event(PresenceSync.Type.IDENTITIES_ADDED, null, keys));
+    }
+
+    private void put(String key) {
+        filter.put(key);
+        BloomFilter next = rebuilding;
+        if (next != null) {
+            next.put(key);
+        }
+    }
+
+    private static List<String> keys(UserEntry user) {
+        List<String> keys = new ArrayList<>(2);
+        if (user.getUserName() != null) {
+            keys.add(USERNAME_PREFIX + normalize(user.getUserName()));
+        }
+        if (user.getEmail() != null) {
+            keys.add(EMAIL_PREFIX + normalize(user.getEmail()));
+        }
+        return keys;
+    }
+
+    /**
+     * Case-folded so the filter stays a superset of exact-match lookups
+     */
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+}
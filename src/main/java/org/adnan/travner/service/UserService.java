@@ -1,6 +1,7 @@
 package org.adnan.travner.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.config.MongoIndexInitializer;
 import org.adnan.travner.dto.user.ProfileUpdateRequest;
 import org.adnan.travner.dto.user.UserStatsDTO;
 import org.adnan.travner.entry.FollowEntry;
@@ -10,15 +11,19 @@ import org.adnan.travner.repository.FollowRepository;
 import org.adnan.travner.repository.PostRepository;
 import org.adnan.travner.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.bson.types.ObjectId;
 import java.util.UUID;
 import org.springframework.data.domain.Page;
@@ -47,12 +52,22 @@ public class UserService {
     @Autowired
     private CommentRepository commentRepository;
 
+    @Autowired
+    private UserSummaryCache userSummaryCache;
+
+    @Autowired
+    private UserIdentityFilter userIdentityFilter;
+
+    @Autowired
+    private MongoIndexInitializer mongoIndexInitializer;
+
+    @Autowired
+    private FollowGraph followGraph;
+
 
-    public List<UserEntry> getAll() {
-        List<UserEntry> users = userRepository.findAll();
-        // Remove passwords for security
-        users.forEach(user -> user.setPassword(""));
-        return users;
+    public Page<UserEntry> getAll(Pageable pageable) {
+        // Password is excluded by the query projection
+        return userRepository.findAllWithoutPassword(pageable);
     }
 
     @Transactional
@@ -63,21 +78,23 @@ public class UserService {
                 throw new IllegalArgumentException("User data is incomplete");
             }
             
-            // Check if username already exists
-            if (!isUsernameAvailable(user.getUserName())) {
-                throw new IllegalArgumentException("Username already exists");
-            }
-            
-            // Check if email already exists
-            if (user.getEmail() != null && getUserByEmail(user.getEmail()) != null) {
-                throw new IllegalArgumentException("Email already exists");
-            }
-            
             user.setPassword(passwordEncoder.encode(user.getPassword()));
             user.setRoles(List.of("USER"));
             user.setCreatedAt(java.time.LocalDateTime.now());
             user.setActive(true);
-            userRepository.save(user);
+            // Unique indexes on userName and email reject duplicates, no pre-check reads
+            if (!mongoIndexInitializer.hasUniqueUserIndexes()) {
+                checkNotRegistered(user);
+            }
+            try {
+                userRepository.save(user);
+            } catch (DuplicateKeyException e) {
+                throw new IllegalArgumentException(duplicateField(e) + " already exists");
+            }
+            userSummaryCache.invalidate(user);
+            userIdentityFilter.add(user);
+        } catch (IllegalArgumentException e) {
+            throw e;
         } catch (Exception e) {
             throw new RuntimeException("Failed to save user: " + e.getMessage(), e);
         }
@@ -89,6 +106,8 @@ public class UserService {
             user.setPassword(passwordEncoder.encode(user.getPassword()));
         }
         userRepository.save(user);
+        userSummaryCache.invalidate(user);
+        userIdentityFilter.add(user);
     }
 
     public UserEntry getByUsername(String username) {
@@ -110,6 +129,7 @@ public class UserService {
         }
         try {
             userRepository.delete(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -124,6 +144,7 @@ public class UserService {
             }
             ObjectId objectId = new ObjectId(userId);
             userRepository.deleteById(objectId);
+            userSummaryCache.invalidate(objectId);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -143,7 +164,31 @@ public class UserService {
     }
 
     public boolean isUsernameAvailable(String username) {
-        return getByUsername(username) == null;
+        if (!userIdentityFilter.mightContainUsername(username)) {
+            return true;
+        }
+        return !userRepository.existsByuserName(username);
+    }
+
+    /**
+     * Duplicate check for when the unique user indexes could not be built
+     */
+    private void checkNotRegistered(UserEntry user) {
+        if (!isUsernameAvailable(user.getUserName())) {
+            throw new IllegalArgumentException("Username already exists");
+        }
+        String email = user.getEmail();
+        if (email != null && userIdentityFilter.mightContainEmail(email) && userRepository.existsByEmail(email)) {
+            throw new IllegalArgumentException("Email already exists");
+        }
+    }
+
+    /**
+     * Map a duplicate key error from the unique user indexes to the offending field
+     */
+    private static String duplicateField(DuplicateKeyException e) {
+        String message = e.getMessage();
+        return message != null && message.contains("index: email ") ? "Email" : "Username";
     }
 
     public UserEntry getUserByEmail(String email) {
@@ -153,13 +198,21 @@ public class UserService {
     public void updateLastLogin(String username) {
         UserEntry user = getByUsername(username);
         if (user != null) {
-            user.setLastLoginAt(java.time.LocalDateTime.now());
-            userRepository.save(user);
+            updateLastLogin(user);
         }
     }
 
+    /**
+     * Update last login on an entity the caller already loaded, saving a lookup
+     */
+    public void updateLastLogin(UserEntry user) {
+        user.setLastLoginAt(java.time.LocalDateTime.now());
+        // lastLoginAt is not cached; invalidating here would evict on every authentication
+        userRepository.save(user);
+    }
+
     public Page<UserEntry> getAllUsers(Pageable pageable) {
-        return userRepository.findAll(pageable);
+        return userRepository.findAllWithoutPassword(pageable);
     }
 
     public List<UserEntry> searchUsers(String query) {
@@ -174,6 +227,7 @@ public class UserService {
             }
             user.setRoles(roles);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -188,6 +242,7 @@ public class UserService {
             }
             user.setPassword(passwordEncoder.encode(newPassword));
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -198,13 +253,27 @@ public class UserService {
         return userRepository.count();
     }
 
-    public List<UserEntry> getUsersByRole(String role) {
-        List<UserEntry> users = userRepository.findAll().stream()
-                .filter(user -> user.getRoles() != null && user.getRoles().contains(role))
-                .toList();
-        // Remove passwords for security
-        users.forEach(user -> user.setPassword(""));
-        return users;
+    public Page<UserEntry> getUsersByRole(String role, Pageable pageable) {
+        // Served by the multikey index on roles; password is excluded by projection
+        return userRepository.findByRoleWithoutPassword(role, pageable);
+    }
+
+    /**
+     * Visit every user (optionally filtered by role) from a Mongo cursor.
+     * Only one document is held at a time, so memory stays flat for exports.
+     */
+    public long forEachUser(String role, Consumer<UserEntry> consumer) {
+        long count = 0;
+        try (Stream<UserEntry> users = role == null || role.isBlank()
+                ? userRepository.streamAllWithoutPassword()
+                : userRepository.streamByRoleWithoutPassword(role)) {
+            Iterator<UserEntry> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                consumer.accept(iterator.next());
+                count++;
+            }
+        }
+        return count;
     }
 
     public boolean promoteUserToAdmin(String username) {
@@ -223,6 +292,7 @@ public class UserService {
             }
             user.setRoles(roles);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -243,6 +313,8 @@ public class UserService {
             if (email != null)
                 user.setEmail(email);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
+            userIdentityFilter.addEmail(user.getEmail());
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -268,6 +340,8 @@ public class UserService {
             if (location != null)
                 user.setLocation(location);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
+            userIdentityFilter.addEmail(user.getEmail());
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -298,6 +372,7 @@ public class UserService {
             // Update with new password
             user.setPassword(passwordEncoder.encode(newPassword));
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (Exception e) {
             throw new RuntimeException("Failed to change password: " + e.getMessage(), e);
@@ -344,6 +419,8 @@ public class UserService {
             });
 
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
+            userIdentityFilter.addEmail(user.getEmail());
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -394,6 +471,7 @@ public class UserService {
             }
             user.setActive(active);
             userRepository.save(user);
+            userSummaryCache.invalidate(user);
             return true;
         } catch (RuntimeException e) {
             return false;
@@ -451,8 +529,9 @@ public class UserService {
      */
     public UserSummaryDTO getUserById(String userId) {
         try {
-            UserEntry user = userRepository.findById(new ObjectId(userId)).orElse(null);
-            return user != null ? convertToUserSummaryDTO(user) : null;
+            return userSummaryCache.getById(new ObjectId(userId))
+                    .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                    .orElse(null);
         } catch (Exception e) {
             return null;
         }
@@ -463,8 +542,9 @@ public class UserService {
      */
     public UserSummaryDTO getUserByUsername(String username) {
         try {
-            UserEntry user = userRepository.findByuserName(username);
-            return user != null ? convertToUserSummaryDTO(user) : null;
+            return userSummaryCache.getByUsername(username)
+                    .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                    .orElse(null);
         } catch (Exception e) {
             return null;
         }
@@ -479,10 +559,9 @@ public class UserService {
             Page<FollowEntry> followEntries = followRepository.findByFollowingId(userObjectId, pageable);
             
             List<UserSummaryDTO> followers = followEntries.getContent().stream()
-                .map(follow -> {
-                    Optional<UserEntry> follower = userRepository.findById(follow.getFollowerId());
-                    return follower.map(this::convertToUserSummaryDTO).orElse(null);
-                })
+                .map(follow -> userSummaryCache.getById(follow.getFollowerId())
+                    .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                    .orElse(null))
                 .filter(user -> user != null)
                 .collect(Collectors.toList());
             
@@ -502,10 +581,9 @@ public class UserService {
             Page<FollowEntry> followEntries = followRepository.findByFollowerId(userObjectId, pageable);
             
             List<UserSummaryDTO> following = followEntries.getContent().stream()
-                .map(follow -> {
-                    Optional<UserEntry> followedUser = userRepository.findById(follow.getFollowingId());
-                    return followedUser.map(this::convertToUserSummaryDTO).orElse(null);
-                })
+                .map(follow -> userSummaryCache.getById(follow.getFollowingId())
+                    .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                    .orElse(null))
                 .filter(user -> user != null)
                 .collect(Collectors.toList());
             
@@ -522,7 +600,7 @@ public class UserService {
     @Transactional
     public void followUser(String followerId, String userId) {
         try {
-            ObjectId followerObjectId = new ObjectId(followerId);
+            ObjectId followerObjectId = resolveUserId(followerId);
             ObjectId userObjectId = new ObjectId(userId);
             
             // Don't allow self-following
@@ -549,6 +627,7 @@ public class UserService {
                 .build();
             
             followRepository.save(followEntry);
+            followGraph.onFollow(followerObjectId, userObjectId);
             log.info("User {} now follows user {}", followerId, userId);
         } catch (Exception e) {
             log.error("Error following user: {}", userId, e);
@@ -562,10 +641,11 @@ public class UserService {
     @Transactional
     public void unfollowUser(String followerId, String userId) {
         try {
-            ObjectId followerObjectId = new ObjectId(followerId);
+            ObjectId followerObjectId = resolveUserId(followerId);
             ObjectId userObjectId = new ObjectId(userId);
             
             followRepository.deleteByFollowerIdAndFollowingId(followerObjectId, userObjectId);
+            followGraph.onUnfollow(followerObjectId, userObjectId);
             log.info("User {} unfollowed user {}", followerId, userId);
         } catch (Exception e) {
             log.error("Error unfollowing user: {}", userId, e);
@@ -578,7 +658,7 @@ public class UserService {
      */
     public boolean isFollowing(String followerId, String userId) {
         try {
-            ObjectId followerObjectId = new ObjectId(followerId);
+            ObjectId followerObjectId = resolveUserId(followerId);
             ObjectId userObjectId = new ObjectId(userId);
             return followRepository.existsByFollowerIdAndFollowingId(followerObjectId, userObjectId);
         } catch (Exception e) {
@@ -587,6 +667,32 @@ public class UserService {
         }
     }
 
+    /**
+     * People the user may know: followed by the users they follow, most mutual connections first
+     */
+    public List<UserSummaryDTO> getSuggestions(String idOrUsername, int limit) {
+        ObjectId userId = resolveUserId(idOrUsername);
+        // Inactive users are skipped while ranking, so they do not take slots from the limit
+        return followGraph.suggest(userId, limit, candidate -> userSummaryCache.getById(candidate)
+                        .filter(UserSummaryCache.CachedUser::isActive).isPresent()).stream()
+                .map(suggestion -> userSummaryCache.getById(suggestion.userId()))
+                .flatMap(Optional::stream)
+                .map(UserSummaryCache.CachedUser::toSummaryDTO)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Controllers pass the authenticated username where an id is expected
+     */
+    private ObjectId resolveUserId(String idOrUsername) {
+        if (ObjectId.isValid(idOrUsername)) {
+            return new ObjectId(idOrUsername);
+        }
+        return userSummaryCache.getByUsername(idOrUsername)
+                .map(UserSummaryCache.CachedUser::getId)
+                .orElseThrow(() -> new IllegalArgumentException("User not found: " + idOrUsername));
+    }
+
     /**
      * Get user statistics
      */
@@ -658,6 +764,7 @@ public class UserService {
             }
             
             UserEntry updatedUser = userRepository.save(user);
+            userSummaryCache.invalidate(updatedUser);
             log.info("Profile updated for user: {}", username);
             return convertToUserSummaryDTO(updatedUser);
         } catch (Exception e) {
@@ -680,6 +787,7 @@ public class UserService {
             
             user.setProfileImageUrl(imageUrl);
             UserEntry updatedUser = userRepository.save(user);
+            userSummaryCache.invalidate(updatedUser);
             log.info("Profile image updated for user: {}", username);
             return convertToUserSummaryDTO(updatedUser);
         } catch (Exception e) {
@@ -0,0 +1,219 @@
+package org.adnan.travner.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.Builder;
+import lombok.extern.slf4j.Slf4j;
+import org.adnan.travner.dto.UserSummaryDTO;
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bounded, time-limited near cache of user summaries shared by all services.
+ * Holds what is needed for id/username resolution and UserSummaryDTO, never the
+ * password. UserService (and any other code writing to the users collection)
+ * must call one of the invalidate methods after a mutation.
+ */
+@Component
+@Slf4j
+public class UserSummaryCache {
+
+    private final UserRepository userRepository;
+    private final Cache<ObjectId, CachedUser> usersById;
+    private final Cache<String, ObjectId> idsByUsername;
+
+    public UserSummaryCache(UserRepository userRepository,
+            @Value("${app.cache.user-summary.max-size:50000}") long maxSize,
+            @Value("${app.cache.user-summary.ttl-seconds:300}") long ttlSeconds) {
+        this.userRepository = userRepository;
+        Duration ttl = Duration.ofSeconds(ttlSeconds);
+        this.usersById = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.idsByUsername = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .build();
+    }
+
+    /**
+     * Get a user by id, loading it on a miss. Unknown users are not cached.
+     */
+    public Optional<CachedUser> getById(ObjectId id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        CachedUser cached = usersById.get(id, key -> userRepository.findById(key)
+                .map(CachedUser::from)
+                .orElse(null));
+        if (cached != null) {
+            idsByUsername.put(cached.getUserName(), cached.getId());
+        }
+        return Optional.ofNullable(cached);
+    }
+
+    /**
+     * Get a user by username, loading it on a miss. Unknown users are not cached.
+     */
+    public Optional<CachedUser> getByUsername(String username) {
+        if (username == null || username.isBlank()) {
+            return Optional.empty();
+        }
+        ObjectId id = idsByUsername.getIfPresent(username);
+        if (id != null) {
+            CachedUser cached = usersById.getIfPresent(id);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+        UserEntry user = userRepository.findByuserName(username);
+        if (user == null) {
+            return Optional.empty();
+        }
+        return Optional.of(put(user));
+    }
+
+    /**
+     * Resolve a reference that may be either an ObjectId string or a username.
+     * Chat code receives both forms depending on the entry point.
+     */
+    public Optional<CachedUser> resolve(String idOrUsername) {
+        if (idOrUsername == null || idOrUsername.isBlank()) {
+            return Optional.empty();
+        }
+        if (ObjectId.isValid(idOrUsername)) {
+            Optional<CachedUser> byId = getById(new ObjectId(idOrUsername));
+            if (byId.isPresent()) {
+                return byId;
+            }
+        }
+        return getByUsername(idOrUsername);
+    }
+
+    /**
+     * Convenience for services that still work with UserEntry: returns a detached,
+     * password-free copy, or null if the user does not exist.
+     */
+    public UserEntry findByUsername(String username) {
+        return getByUsername(username).map(CachedUser::toUserEntry).orElse(null);
+    }
+
+    /**
+     * Seed or refresh the cache from an already loaded entity.
+     */
+    public CachedUser put(UserEntry user) {
+        CachedUser cached = CachedUser.from(user);
+        usersById.put(cached.getId(), cached);
+        idsByUsername.put(cached.getUserName(), cached.getId());
+        return cached;
+    }
+
+    public void invalidate(UserEntry user) {
+        if (user == null) {
+            return;
+        }
+        if (user.getId() != null) {
+            invalidate(user.getId());
+        }
+        if (user.getUserName() != null) {
+            invalidateUsername(user.getUserName());
+        }
+    }
+
+    public void invalidate(ObjectId id) {
+        CachedUser cached = usersById.getIfPresent(id);
+        usersById.invalidate(id);
+        if (cached != null) {
+            idsByUsername.invalidate(cached.getUserName());
+        }
+    }
+
+    public void invalidateUsername(String username) {
+        ObjectId id = idsByUsername.getIfPresent(username);
+        idsByUsername.invalidate(username);
+        if (id != null) {
+            usersById.invalidate(id);
+        }
+    }
+
+    public void invalidateAll() {
+        usersById.invalidateAll();
+        idsByUsername.invalidateAll();
+        log.debug("User summary cache cleared");
+    }
+
+    /**
+     * Immutable snapshot of the cached user fields
+     */
+    @lombok.Value
+    @Builder
+    public static class CachedUser {
+        ObjectId id;
+        String userName;
+        String firstName;
+        String lastName;
+        String email;
+        String bio;
+        String location;
+        String profileImageUrl;
+        List<String> roles;
+        boolean active;
+
+        static CachedUser from(UserEntry user) {
+            return CachedUser.builder()
+                    .id(user.getId())
+                    .userName(user.getUserName())
+                    .firstName(user.getFirstName())
+                    .lastName(user.getLastName())
+                    .email(user.getEmail())
+                    .bio(user.getBio())
+                    .location(user.getLocation())
+                    .profileImageUrl(user.getProfileImageUrl())
+                    .roles(user.getRoles() != null ? List.copyOf(user.getRoles()) : List.of())
+                    .active(user.isActive())
+                    .build();
+        }
+
+        public boolean hasRole(String role) {
+            return roles.contains(role);
+        }
+
+        public UserSummaryDTO toSummaryDTO() {
+            return UserSummaryDTO.builder()
+                    .id(id.toString())
+                    .userName(userName)
+                    .firstName(firstName)
+                    .lastName(lastName)
+                    .email(email)
+                    .bio(bio)
+                    .location(location)
+                    .profileImageUrl(profileImageUrl)
+                    .roles(roles)
+                    .build();
+        }
+
+        public UserEntry toUserEntry() {
+            return UserEntry.builder()
+                    .id(id)
+                    .userName(userName)
+                    .firstName(firstName)
+                    .lastName(lastName)
+                    .email(email)
+                    .bio(bio)
+                    .location(location)
+                    .profileImageUrl(profileImageUrl)
+                    .roles(new ArrayList<>(roles))
+                    .active(active)
+                    .build();
+        }
+    }
+}
@@ -47,10 +47,28 @@ public class FileValidationUtil {
             throw new IllegalArgumentException("File size exceeds maximum limit of 20MB");
         }
 
-        // Get file info
-        String originalFilename = file.getOriginalFilename();
-        String contentType = file.getContentType();
+        validateNameAndType(file.getOriginalFilename(), file.getContentType());
+    }
+
+    /**
+     * Validates a file that is streamed rather than uploaded as multipart. Its size
+     * may not be known up front; the caller enforces the limit while reading.
+     */
+    public static void validateStreamedFile(String originalFilename, String contentType, long contentLength,
+            long maxSize) {
+        if (originalFilename == null || originalFilename.isBlank()) {
+            throw new IllegalArgumentException("File name is required");
+        }
+        if (contentLength == 0) {
+            throw new IllegalArgumentException("File cannot be null or empty");
+        }
+        if (contentLength > maxSize) {
+            throw new IllegalArgumentException("File size exceeds maximum limit of " + maxSize + " bytes");
+        }
+        validateNameAndType(originalFilename, contentType);
+    }
 
+    private static void validateNameAndType(String originalFilename, String contentType) {
         // Check for dangerous file extensions
         if (originalFilename != null) {
             String lowerFilename = originalFilename.toLowerCase();
@@ -0,0 +1,175 @@
+package org.adnan.travner.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel for large numbers of short, frequently cancelled timeouts.
+ * Scheduling and cancelling are O(1); each tick only visits one bucket. A task runs
+ * on the wheel's thread no earlier than its deadline and at most one tick late, so
+ * tasks must be short and must not block.
+ * <p>
+ * {@link #start()} drives the wheel from a daemon thread; without it the owner
+ * advances time explicitly with {@link #advanceTo(long)}.
+ */
+@Slf4j
+public class HashedTimingWheel implements AutoCloseable {
+
+    private final String name;
+    private final long tickMillis;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+    private final LongSupplier clock;
+    private final long startMillis;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private long currentTick;
+    private volatile Thread worker;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(String name, long tickMillis, int wheelSize, LongSupplier clock) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 20) {
+            throw new IllegalArgumentException("Wheel size must be between 1 and 2^20");
+        }
+        int size = wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1;
+        this.name = name;
+        this.tickMillis = tickMillis;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.clock = clock;
+        this.startMillis = clock.getAsLong();
+    }
+
+    /**
+     * Run {@code task} once {@code delayMillis} have elapsed unless it is cancelled first
+     */
+    public Timeout schedule(Runnable task, long delayMillis) {
+        Timeout timeout = new Timeout(task, clock.getAsLong() - startMillis + Math.max(0, delayMillis));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Expire every tick up to {@code nowMillis} on the calling thread
+     */
+    public synchronized void advanceTo(long nowMillis) {
+        long targetTick = (nowMillis - startMillis) / tickMillis;
+        while (currentTick <= targetTick) {
+            transferPending();
+            expire(buckets[(int) (currentTick & mask)]);
+            currentTick++;
+        }
+    }
+
+    public synchronized void start() {
+        if (worker != null) {
+            return;
+        }
+        Thread thread = new Thread(this::run, name);
+        thread.setDaemon(true);
+        worker = thread;
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        Thread thread = worker;
+        worker = null;
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    private void run() {
+        Thread self = Thread.currentThread();
+        while (worker == self) {
+            long next;
+            synchronized (this) {
+                next = startMillis + currentTick * tickMillis;
+            }
+            long sleep = next - clock.getAsLong();
+            if (sleep > 0) {
+                try {
+                    Thread.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            advanceTo(clock.getAsLong());
+        }
+    }
+
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            // Round up so a task never fires before its deadline
+            long deadlineTick = Math.max(currentTick, (timeout.deadlineMillis + tickMillis - 1) / tickMillis);
+            timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+            buckets[(int) (deadlineTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timeout> due = new ArrayList<>();
+        bucket.removeIf(timeout -> {
+            if (timeout.cancelled) {
+                return true;
+            }
+            if (timeout.remainingRounds <= 0) {
+                due.add(timeout);
+                return true;
+            }
+            timeout.remainingRounds--;
+            return false;
+        });
+        for (Timeout timeout : due) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                log.error("Timing wheel {} task failed: {}", name, e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Handle to a scheduled task
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineMillis;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadlineMillis) {
+            this.task = task;
+            this.deadlineMillis = deadlineMillis;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
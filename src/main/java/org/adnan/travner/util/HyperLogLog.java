@@ -0,0 +1,104 @@
+package org.adnan.travner.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HyperLogLog distinct-count sketch. Registers only ever grow, so sketches merge by
+ * taking the per-register maximum, which also makes them safe to maintain in MongoDB
+ * with $max on the sparse register map. With precision p the standard error is
+ * about 1.04 / sqrt(2^p).
+ */
+public class HyperLogLog {
+
+    private final int precision;
+    private final byte[] registers;
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("Precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void add(String value) {
+        long hash = hash(value);
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Fold in a sketch stored as register index to value; out-of-range entries are ignored
+     */
+    public void merge(Map<String, Integer> sparse) {
+        if (sparse == null) {
+            return;
+        }
+        sparse.forEach((key, value) -> {
+            int index = Integer.parseInt(key);
+            if (index >= 0 && index < registers.length && value != null && value > registers[index]) {
+                registers[index] = (byte) Math.min(value, 64);
+            }
+        });
+    }
+
+    /**
+     * Non-zero registers keyed by index, the form stored in documents
+     */
+    public Map<String, Integer> toSparse() {
+        Map<String, Integer> sparse = new HashMap<>();
+        for (int i = 0; i < registers.length; i++) {
+            if (registers[i] != 0) {
+                sparse.put(Integer.toString(i), (int) registers[i]);
+            }
+        }
+        return sparse;
+    }
+
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // Linear counting is more accurate while many registers are still empty
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    private static double alpha(int m) {
+        return switch (m) {
+            case 16 -> 0.673;
+            case 32 -> 0.697;
+            case 64 -> 0.709;
+            default -> 0.7213 / (1 + 1.079 / m);
+        };
+    }
+
+    private static long hash(String value) {
+        // FNV-1a followed by the murmur3 finalizer to spread entropy into the high bits
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
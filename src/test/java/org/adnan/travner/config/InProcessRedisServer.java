@@ -0,0 +1,235 @@
+package org.adnan.travner.config;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal RESP2 server stand-in for presence sync tests: AUTH, PING, SUBSCRIBE and
+ * PUBLISH on exact channel names. Tests can drop every connection or write raw
+ * bytes to subscribers to exercise reconnects and malformed replies.
+ */
+class InProcessRedisServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final String password;
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final List<byte[]> published = new CopyOnWriteArrayList<>();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    InProcessRedisServer(String password) throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        this.password = password;
+        Thread.ofVirtual().name("redis-stand-in-accept").start(this::acceptLoop);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Connections accepted so far, including ones since closed
+     */
+    int connectionCount() {
+        return connections.get();
+    }
+
+    long subscriberCount(String channel) {
+        return clients.stream().filter(client -> client.channels.contains(channel)).count();
+    }
+
+    List<byte[]> published() {
+        return published;
+    }
+
+    /**
+     * Close every client connection, as a Redis restart or network cut would
+     */
+    void dropConnections() {
+        clients.forEach(Client::close);
+    }
+
+    /**
+     * Write bytes as they are to every subscriber of the channel
+     */
+    void sendRaw(String channel, byte[] bytes) {
+        for (Client client : clients) {
+            if (client.channels.contains(channel)) {
+                client.write(bytes);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void acceptLoop() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                Client client = new Client(socket);
+                clients.add(client);
+                Thread.ofVirtual().name("redis-stand-in-client").start(() -> serve(client));
+            }
+        } catch (IOException ignored) {
+            // Server closed
+        }
+    }
+
+    private void serve(Client client) {
+        try {
+            InputStream in = new BufferedInputStream(client.socket.getInputStream());
+            boolean authenticated = password == null;
+            while (true) {
+                List<byte[]> command = readCommand(in);
+                if (command == null) {
+                    return;
+                }
+                String name = new String(command.get(0), StandardCharsets.US_ASCII).toUpperCase();
+                if (name.equals("AUTH")) {
+                    authenticated = password != null
+                            && password.equals(new String(command.get(1), StandardCharsets.UTF_8));
+                    client.write(authenticated ? simple("+OK") : simple("-WRONGPASS invalid password"));
+                } else if (!authenticated) {
+                    client.write(simple("-NOAUTH Authentication required."));
+                } else if (name.equals("PING")) {
+                    client.write(simple("+PONG"));
+                } else if (name.equals("SUBSCRIBE")) {
+                    for (int i = 1; i < command.size(); i++) {
+                        String channel = new String(command.get(i), StandardCharsets.UTF_8);
+                        client.channels.add(channel);
+                        client.write(array(bulk("subscribe"), bulk(channel), integer(client.channels.size())));
+                    }
+                } else if (name.equals("PUBLISH")) {
+                    String channel = new String(command.get(1), StandardCharsets.UTF_8);
+                    published.add(command.get(2));
+                    long receivers = 0;
+                    for (Client subscriber : clients) {
+                        if (subscriber.channels.contains(channel)) {
+                            subscriber.write(array(bulk("message"), bulk(channel), bulk(command.get(2))));
+                            receivers++;
+                        }
+                    }
+                    client.write(integer(receivers));
+                } else {
+                    client.write(simple("-ERR unknown command '" + name + "'"));
+                }
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        } finally {
+            client.close();
+        }
+    }
+
+    /**
+     * One command sent as a RESP array of bulk strings, or null at end of stream
+     */
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Expected a command array");
+        }
+        int count = Integer.parseInt(readLine(in));
+        List<byte[]> args = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            int length = Integer.parseInt(readLine(in));
+            args.add(in.readNBytes(length));
+            in.readNBytes(2);
+        }
+        return args;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\r') {
+            if (c == -1) {
+                throw new IOException("Connection closed");
+            }
+            line.append((char) c);
+        }
+        in.read();
+        return line.toString();
+    }
+
+    private static byte[] simple(String line) {
+        return (line + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] integer(long value) {
+        return simple(":" + value);
+    }
+
+    private static byte[] bulk(String value) {
+        return bulk(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] bulk(byte[] value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(simple("$" + value.length));
+        out.writeBytes(value);
+        out.writeBytes(new byte[] { '\r', '\n' });
+        return out.toByteArray();
+    }
+
+    private static byte[] array(byte[]... items) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(simple("*" + items.length));
+        for (byte[] item : items) {
+            out.writeBytes(item);
+        }
+        return out.toByteArray();
+    }
+
+    private final class Client {
+        private final Socket socket;
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        void write(byte[] bytes) {
+            try {
+                OutputStream out = socket.getOutputStream();
+                synchronized (this) {
+                    out.write(bytes);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void close() {
+            clients.remove(this);
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // Already gone
+            }
+        }
+    }
+}
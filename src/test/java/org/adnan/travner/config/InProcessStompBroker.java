@@ -0,0 +1,168 @@
+package org.adnan.travner.config;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal STOMP 1.2 broker stand-in for relay tests: CONNECT, SUBSCRIBE,
+ * UNSUBSCRIBE, SEND and DISCONNECT with exact-match destinations and no heartbeats.
+ */
+class InProcessStompBroker implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<Client, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong messageIds = new AtomicLong();
+
+    InProcessStompBroker() throws IOException {
+        this.serverSocket = new ServerSocket(0);
+        Thread.ofVirtual().name("stomp-stand-in-accept").start(this::acceptLoop);
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    long subscriptionCount(String destination) {
+        return subscriptions.values().stream()
+                .mapToLong(byId -> byId.values().stream().filter(destination::equals).count())
+                .sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Client client : subscriptions.keySet()) {
+            client.socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        try {
+            while (!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                Client client = new Client(socket);
+                subscriptions.put(client, new ConcurrentHashMap<>());
+                Thread.ofVirtual().name("stomp-stand-in-client").start(() -> serve(client));
+            }
+        } catch (IOException ignored) {
+            // Broker closed
+        }
+    }
+
+    private void serve(Client client) {
+        StompDecoder decoder = new StompDecoder();
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        byte[] chunk = new byte[8192];
+        try (Socket socket = client.socket) {
+            InputStream in = socket.getInputStream();
+            int read;
+            while ((read = in.read(chunk)) != -1) {
+                buffer.put(chunk, 0, read);
+                buffer.flip();
+                for (Message<byte[]> frame : decoder.decode(buffer)) {
+                    if (!handle(client, frame)) {
+                        return;
+                    }
+                }
+                buffer.compact();
+            }
+        } catch (IOException ignored) {
+            // Client went away
+        } finally {
+            subscriptions.remove(client);
+        }
+    }
+
+    private boolean handle(Client client, Message<byte[]> frame) throws IOException {
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(frame);
+        if (headers.getMessageType() == SimpMessageType.HEARTBEAT || headers.getCommand() == null) {
+            return true;
+        }
+        switch (headers.getCommand()) {
+            case CONNECT, STOMP -> {
+                StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+                connected.setVersion("1.2");
+                connected.setHeartbeat(0, 0);
+                client.send(connected, new byte[0]);
+            }
+            case SUBSCRIBE -> subscriptions.get(client).put(headers.getSubscriptionId(), headers.getDestination());
+            case UNSUBSCRIBE -> subscriptions.get(client).remove(headers.getSubscriptionId());
+            case SEND -> deliver(headers, frame.getPayload());
+            case DISCONNECT -> {
+                if (headers.getReceipt() != null) {
+                    StompHeaderAccessor receipt = StompHeaderAccessor.create(StompCommand.RECEIPT);
+                    receipt.setReceiptId(headers.getReceipt());
+                    client.send(receipt, new byte[0]);
+                }
+                return false;
+            }
+            default -> {
+                // Transactions and acks are not needed by the relay tests
+            }
+        }
+        return true;
+    }
+
+    private void deliver(StompHeaderAccessor send, byte[] payload) {
+        String destination = send.getDestination();
+        subscriptions.forEach((client, byId) -> byId.forEach((subscriptionId, subscribed) -> {
+            if (!subscribed.equals(destination)) {
+                return;
+            }
+            StompHeaderAccessor message = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            message.setDestination(destination);
+            message.setSubscriptionId(subscriptionId);
+            message.setMessageId(String.valueOf(messageIds.incrementAndGet()));
+            if (send.getContentType() != null) {
+                message.setContentType(send.getContentType());
+            }
+            for (Map.Entry<String, List<String>> header : send.toNativeHeaderMap().entrySet()) {
+                if (message.getFirstNativeHeader(header.getKey()) == null
+                        && !header.getKey().equals("content-length") && !header.getKey().equals("receipt")) {
+                    message.setNativeHeaderValues(header.getKey(), header.getValue());
+                }
+            }
+            try {
+                client.send(message, payload);
+            } catch (IOException ignored) {
+                // Subscriber went away
+            }
+        }));
+    }
+
+    private static final class Client {
+        private final Socket socket;
+        private final OutputStream out;
+        private final StompEncoder encoder = new StompEncoder();
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        void send(StompHeaderAccessor headers, byte[] payload) throws IOException {
+            headers.setLeaveMutable(true);
+            byte[] frame = encoder.encode(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+            synchronized (out) {
+                out.write(frame);
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package org.adnan.travner.config;
+
+import org.adnan.travner.service.LocalPresenceSync;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PresenceSyncConfigTest {
+
+    private final PresenceSyncConfig config = new PresenceSyncConfig();
+
+    @Test
+    void testLocalSyncWithSimpleBroker() {
+        assertInstanceOf(LocalPresenceSync.class, config.localPresenceSync("simple", false));
+    }
+
+    @Test
+    void testLocalSyncWithExternalBrokerFailsStartup() {
+        // When
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> config.localPresenceSync("external", false));
+
+        // Then
+        assertTrue(error.getMessage().contains("app.chat.presence.sync=redis"));
+    }
+
+    @Test
+    void testLocalSyncWithExternalBrokerAllowedForSingleNode() {
+        assertInstanceOf(LocalPresenceSync.class, config.localPresenceSync("external", true));
+    }
+}
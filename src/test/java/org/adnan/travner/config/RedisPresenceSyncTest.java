@@ -0,0 +1,153 @@
+package org.adnan.travner.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.adnan.travner.service.PresenceSync;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RedisPresenceSyncTest {
+
+    private static final String CHANNEL = "travner:presence";
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<RedisPresenceSync> syncs = new ArrayList<>();
+    private final List<PresenceSync.Event> received = new CopyOnWriteArrayList<>();
+    private InProcessRedisServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new InProcessRedisServer("secret");
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        syncs.forEach(RedisPresenceSync::close);
+        server.close();
+    }
+
+    @Test
+    void testEventPublishedOnOneNodeReachesAnother() {
+        // Given
+        RedisPresenceSync nodeA = sync("secret", 30_000);
+        RedisPresenceSync nodeB = subscribed(sync("secret", 30_000));
+
+        // When
+        PresenceSync.Event event = new PresenceSync.Event(PresenceSync.Type.MEMBERS_CHANGED, "node-a", List.of(),
+                List.of("conv1", "conv2"));
+        nodeA.publish(event);
+
+        // Then
+        await().atMost(TIMEOUT).until(() -> received.contains(event));
+        assertEquals(1, server.published().size());
+        assertNotNull(nodeB);
+    }
+
+    @Test
+    void testEventsPublishedWhileDisconnectedArriveAfterReconnect() {
+        // Given
+        RedisPresenceSync node = subscribed(sync("secret", 30_000));
+        node.publish(new PresenceSync.Event(PresenceSync.Type.ALIVE, "node-a", List.of()));
+        await().atMost(TIMEOUT).until(() -> received.size() == 1);
+
+        // When: every connection is cut, then events are published before the reconnect
+        server.dropConnections();
+        PresenceSync.Event online = new PresenceSync.Event(PresenceSync.Type.ONLINE, "node-a", List.of("alice"));
+        node.publish(online);
+
+        // Then: both connections come back and the queued event is delivered
+        await().atMost(TIMEOUT).until(() -> received.contains(online));
+        assertEquals(1, server.subscriberCount(CHANNEL));
+        assertTrue(server.connectionCount() >= 4);
+    }
+
+    @Test
+    void testMalformedReplyReplacesTheConnection() {
+        // Given
+        RedisPresenceSync node = subscribed(sync("secret", 30_000));
+        int connections = server.connectionCount();
+
+        // When: a length that is not a number
+        server.sendRaw(CHANNEL, "*3\r\n$abc\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        // Then: the subscriber reconnects rather than its thread dying
+        await().atMost(TIMEOUT).until(() -> server.connectionCount() > connections
+                && server.subscriberCount(CHANNEL) == 1);
+        PresenceSync.Event event = new PresenceSync.Event(PresenceSync.Type.OFFLINE, "node-a", List.of("bob"));
+        node.publish(event);
+        await().atMost(TIMEOUT).until(() -> received.contains(event));
+    }
+
+    @Test
+    void testUnreadablePayloadIsSkipped() {
+        // Given
+        RedisPresenceSync node = subscribed(sync("secret", 30_000));
+        int connections = server.connectionCount();
+
+        // When: a well-formed message whose payload is not an event, then a real one
+        byte[] garbage = "not json".getBytes(StandardCharsets.UTF_8);
+        server.sendRaw(CHANNEL, ("*3\r\n$7\r\nmessage\r\n$" + CHANNEL.length() + "\r\n" + CHANNEL + "\r\n$"
+                + garbage.length + "\r\nnot json\r\n").getBytes(StandardCharsets.UTF_8));
+        PresenceSync.Event event = new PresenceSync.Event(PresenceSync.Type.HELLO, "node-a", List.of());
+        node.publish(event);
+
+        // Then: delivered on the same connection
+        await().atMost(TIMEOUT).until(() -> received.contains(event));
+        assertEquals(1, received.size());
+        assertEquals(connections, server.connectionCount());
+    }
+
+    @Test
+    void testSilentSubscriptionIsReopenedAfterTheIdleTimeout() {
+        // Given: a subscription that may stay silent for 300 ms
+        RedisPresenceSync node = subscribed(sync("secret", 300));
+        int connections = server.connectionCount();
+
+        // When / Then: with no traffic the subscriber reconnects and resubscribes
+        await().atMost(TIMEOUT).until(() -> server.connectionCount() > connections
+                && server.subscriberCount(CHANNEL) == 1);
+        PresenceSync.Event event = new PresenceSync.Event(PresenceSync.Type.ALIVE, "node-a", List.of());
+        node.publish(event);
+        await().atMost(TIMEOUT).until(() -> received.contains(event));
+    }
+
+    @Test
+    void testWrongPasswordNeverSubscribes() throws Exception {
+        // Given
+        RedisPresenceSync node = sync("wrong", 30_000);
+
+        // When
+        node.subscribe(received::add);
+        node.publish(new PresenceSync.Event(PresenceSync.Type.ALIVE, "node-a", List.of()));
+
+        // Then: both connections are refused and retried, nothing gets through
+        await().atMost(TIMEOUT).until(() -> server.connectionCount() >= 2);
+        Thread.sleep(200);
+        assertEquals(0, server.subscriberCount(CHANNEL));
+        assertTrue(server.published().isEmpty());
+        assertTrue(received.isEmpty());
+    }
+
+    private RedisPresenceSync sync(String password, int idleMillis) {
+        RedisPresenceSync sync = new RedisPresenceSync("127.0.0.1", server.getPort(), password, 2000, idleMillis,
+                objectMapper);
+        syncs.add(sync);
+        return sync;
+    }
+
+    private RedisPresenceSync subscribed(RedisPresenceSync sync) {
+        sync.subscribe(received::add);
+        await().atMost(TIMEOUT).until(() -> server.subscriberCount(CHANNEL) == 1);
+        return sync;
+    }
+}
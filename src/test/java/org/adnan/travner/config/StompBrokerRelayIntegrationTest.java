@@ -0,0 +1,194 @@
+package org.adnan.travner.config;
+
+import org.adnan.travner.service.PresenceService;
+import org.adnan.travner.service.PrincipalContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompBrokerRelayMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two STOMP nodes relaying to one in-process broker: a message published on one
+ * node must reach a client connected to the other.
+ */
+class StompBrokerRelayIntegrationTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private InProcessStompBroker broker;
+    private AnnotationConfigApplicationContext nodeA;
+    private AnnotationConfigApplicationContext nodeB;
+    private final List<Message<?>> deliveredOnB = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new InProcessStompBroker();
+        nodeA = startNode(broker.getPort());
+        nodeB = startNode(broker.getPort());
+        nodeB.getBean("clientOutboundChannel", SubscribableChannel.class).subscribe(deliveredOnB::add);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        broker.close();
+    }
+
+    @Test
+    void testTopicMessageReachesSubscriberOnOtherNode() {
+        // Given: bob is connected to node B and subscribed to a conversation topic
+        connect(nodeB, "b-session", "bob");
+        subscribe(nodeB, "b-session", "bob", "/topic/conversation/c1");
+        await().atMost(TIMEOUT).until(() -> broker.subscriptionCount("/topic/conversation/c1") == 1);
+
+        // When: node A broadcasts to the topic
+        nodeA.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class)
+                .convertAndSend("/topic/conversation/c1", "hello from A");
+
+        // Then
+        Message<?> delivered = awaitMessage("b-session", "hello from A");
+        assertEquals("/topic/conversation/c1", StompHeaderAccessor.wrap(delivered).getDestination());
+    }
+
+    @Test
+    void testUserQueueMessageReachesUserOnOtherNode() {
+        // Given: bob is connected to node B only, so node A cannot resolve him locally
+        connect(nodeB, "b-session", "bob");
+        subscribe(nodeB, "b-session", "bob", "/user/queue/messages");
+        await().atMost(TIMEOUT).until(() -> broker.subscriptionCount("/queue/messages-userb-session") == 1
+                && broker.subscriptionCount("/topic/unresolved-user-destination") == 2);
+
+        // When
+        nodeA.getBean("brokerMessagingTemplate", SimpMessagingTemplate.class)
+                .convertAndSendToUser("bob", "/queue/messages", "direct from A");
+
+        // Then
+        awaitMessage("b-session", "direct from A");
+    }
+
+    private AnnotationConfigApplicationContext startNode(int brokerPort) {
+        AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("app.chat.broker.type", "external");
+        properties.put("app.chat.broker.relay-host", "127.0.0.1");
+        properties.put("app.chat.broker.relay-port", brokerPort);
+        context.getEnvironment().getPropertySources().addFirst(new MapPropertySource("relay", properties));
+        context.register(NodeConfig.class);
+        context.refresh();
+
+        StompBrokerRelayMessageHandler relay = context.getBean(StompBrokerRelayMessageHandler.class);
+        await().atMost(TIMEOUT).until(relay::isBrokerAvailable);
+        return context;
+    }
+
+    private void connect(AnnotationConfigApplicationContext node, String sessionId, String username) {
+        Principal user = () -> username;
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setUser(user);
+        connect.setSessionAttributes(new HashMap<>());
+        connect.setAcceptVersion("1.2");
+        connect.setHeartbeat(0, 0);
+        send(node, connect);
+        awaitFrame(sessionId, StompCommand.CONNECTED);
+
+        // What the WebSocket layer publishes once the session is established; feeds the user registry
+        StompHeaderAccessor connected = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        connected.setSessionId(sessionId);
+        connected.setUser(user);
+        node.publishEvent(new SessionConnectedEvent(this,
+                MessageBuilder.createMessage(new byte[0], connected.getMessageHeaders()), user));
+    }
+
+    private void subscribe(AnnotationConfigApplicationContext node, String sessionId, String username,
+            String destination) {
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setUser(() -> username);
+        subscribe.setSessionAttributes(new HashMap<>());
+        subscribe.setSubscriptionId("sub-" + destination);
+        subscribe.setDestination(destination);
+        send(node, subscribe);
+    }
+
+    private void send(AnnotationConfigApplicationContext node, StompHeaderAccessor headers) {
+        node.getBean("clientInboundChannel", MessageChannel.class)
+                .send(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    private void awaitFrame(String sessionId, StompCommand command) {
+        await().atMost(TIMEOUT).until(() -> deliveredOnB.stream()
+                .map(StompHeaderAccessor::wrap)
+                .anyMatch(headers -> command == headers.getCommand() && sessionId.equals(headers.getSessionId())));
+    }
+
+    private Message<?> awaitMessage(String sessionId, String payload) {
+        await().atMost(TIMEOUT).until(() -> findMessage(sessionId, payload) != null);
+        return findMessage(sessionId, payload);
+    }
+
+    private Message<?> findMessage(String sessionId, String payload) {
+        return deliveredOnB.stream()
+                .filter(message -> {
+                    StompHeaderAccessor headers = StompHeaderAccessor.wrap(message);
+                    return StompCommand.MESSAGE == headers.getCommand() && sessionId.equals(headers.getSessionId())
+                            && payload.equals(new String((byte[]) message.getPayload(), StandardCharsets.UTF_8));
+                })
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Configuration
+    @Import(WebSocketConfig.class)
+    static class NodeConfig {
+
+        @Bean
+        StompPrincipalInterceptor stompPrincipalInterceptor() {
+            PrincipalContext principalContext = mock(PrincipalContext.class);
+            when(principalContext.revalidateSession(any())).thenReturn(true);
+            return new StompPrincipalInterceptor(principalContext);
+        }
+
+        @Bean
+        PresenceChannelInterceptor presenceChannelInterceptor() {
+            return new PresenceChannelInterceptor(mock(PresenceService.class));
+        }
+
+        @Bean
+        StompPayloadFormatInterceptor payloadFormatInterceptor() {
+            return new StompPayloadFormatInterceptor(true);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.adnan.travner.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.adnan.travner.dto.ChatMessageDTO;
+import org.adnan.travner.dto.SendMessageDTO;
+import org.adnan.travner.dto.TypingIndicatorDTO;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class StompPayloadFormatInterceptorTest {
+
+    private final ObjectMapper json = Jackson2ObjectMapperBuilder.json().build();
+    private final ObjectMapper cbor = Jackson2ObjectMapperBuilder.cbor().build();
+    private final AtomicInteger transcodes = new AtomicInteger();
+    private final StompPayloadFormatInterceptor interceptor = new StompPayloadFormatInterceptor(true) {
+        @Override
+        byte[] transcode(byte[] body) {
+            transcodes.incrementAndGet();
+            return super.transcode(body);
+        }
+    };
+
+    @Test
+    void testNegotiatedSessionReceivesCborInBinaryFrames() throws Exception {
+        // Given
+        interceptor.preSend(connect("s1", "cbor"), null);
+        byte[] body = json.writeValueAsBytes(chatMessage(1));
+
+        // When
+        Message<?> sent = interceptor.preSend(outbound("s1", body), null);
+
+        // Then
+        StompHeaderAccessor headers = StompHeaderAccessor.wrap(sent);
+        assertEquals(MimeTypeUtils.APPLICATION_OCTET_STREAM, headers.getContentType());
+        assertEquals("cbor", headers.getFirstNativeHeader(StompPayloadFormatInterceptor.FORMAT_HEADER));
+        assertEquals(json.readTree(body), cbor.readTree((byte[]) sent.getPayload()));
+    }
+
+    @Test
+    void testOtherSessionsAndInboundFramesKeepJson() throws Exception {
+        // Given
+        interceptor.preSend(connect("s1", "cbor"), null);
+        interceptor.preSend(connect("s2", null), null);
+        byte[] body = json.writeValueAsBytes(chatMessage(1));
+        SimpMessageHeaderAccessor send = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        send.setSessionId("s1");
+        send.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<byte[]> inbound = MessageBuilder.createMessage(body, send.getMessageHeaders());
+        Message<byte[]> toJsonClient = outbound("s2", body);
+
+        // When / Then
+        assertSame(toJsonClient, interceptor.preSend(toJsonClient, null));
+        assertSame(inbound, interceptor.preSend(inbound, null));
+    }
+
+    @Test
+    void testFanOutTranscodesEachBodyOnce() throws Exception {
+        // Given: 100 CBOR sessions subscribed to one conversation
+        byte[] body = json.writeValueAsBytes(chatMessage(1));
+        for (int i = 0; i < 100; i++) {
+            interceptor.preSend(connect("s" + i, "cbor"), null);
+        }
+
+        // When
+        for (int i = 0; i < 100; i++) {
+            interceptor.preSend(outbound("s" + i, body), null);
+        }
+
+        // Then
+        assertEquals(1, transcodes.get());
+    }
+
+    @Test
+    void testDisconnectForgetsTheSession() throws Exception {
+        // Given
+        interceptor.preSend(connect("s1", "cbor"), null);
+        StompHeaderAccessor disconnect = StompHeaderAccessor.create(StompCommand.DISCONNECT);
+        disconnect.setSessionId("s1");
+        interceptor.preSend(MessageBuilder.createMessage(new byte[0], disconnect.getMessageHeaders()), null);
+        Message<byte[]> message = outbound("s1", json.writeValueAsBytes(chatMessage(1)));
+
+        // When / Then
+        assertSame(message, interceptor.preSend(message, null));
+    }
+
+    @Test
+    void testClientsCanSendCborFrames() throws Exception {
+        // Given: the converters the STOMP configuration registers
+        WebSocketConfig config = new WebSocketConfig(mock(StompPrincipalInterceptor.class),
+                mock(PresenceChannelInterceptor.class), interceptor);
+        List<MessageConverter> converters = new ArrayList<>();
+        config.configureMessageConverters(converters);
+        SendMessageDTO request = new SendMessageDTO();
+        request.setConversationId("c1");
+        request.setContent("hello");
+        SimpMessageHeaderAccessor send = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        send.setContentType(StompPayloadFormatInterceptor.APPLICATION_CBOR);
+
+        // When
+        Object read = converters.get(0).fromMessage(
+                MessageBuilder.createMessage(cbor.writeValueAsBytes(request), send.getMessageHeaders()),
+                SendMessageDTO.class);
+        Message<?> written = converters.get(0).toMessage(request, null);
+
+        // Then: CBOR is read when declared, never chosen for sending by default
+        assertEquals("hello", ((SendMessageDTO) read).getContent());
+        assertNull(written);
+    }
+
+    @Test
+    @Tag("load")
+    void testBenchmarkEncodingCostAndFrameSize() throws Exception {
+        // Typical frames: a chat message with a reply and read receipts, and a typing indicator
+        List<Object> payloads = List.of(chatMessage(1), TypingIndicatorDTO.builder().conversationId(
+                "65f1c0a4e13b2a6d9c8b4567").userId("traveller_anna").username("traveller_anna").isTyping(true)
+                .timestamp(1_741_600_000_000L).build());
+        for (Object payload : payloads) {
+            byte[] jsonBody = json.writeValueAsBytes(payload);
+            byte[] cborBody = cbor.writeValueAsBytes(payload);
+
+            assertTrue(cborBody.length < jsonBody.length);
+            assertEquals(cbor.readTree(cborBody), cbor.readTree(interceptor.transcode(jsonBody)));
+        }
+    }
+
+    private static Message<byte[]> connect(String sessionId, String format) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.setSessionId(sessionId);
+        if (format != null) {
+            accessor.setNativeHeader(StompPayloadFormatInterceptor.FORMAT_HEADER, format);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> outbound(String sessionId, byte[] body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-0");
+        accessor.setDestination("/topic/conversation/c1");
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    private static ChatMessageDTO chatMessage(long sequence) {
+        LocalDateTime at = LocalDateTime.of(2025, 3, 10, 18, 42, 7, 123_000_000);
+        return ChatMessageDTO.builder()
+                .id("65f1c2b9e13b2a6d9c8b4f01")
+                .conversationId("65f1c0a4e13b2a6d9c8b4567")
+                .sequence(sequence)
+                .senderId("traveller_anna")
+                .senderUsername("traveller_anna")
+                .content("Landed in Lisbon! Meet at the Time Out Market at 8?")
+                .messageType("TEXT")
+                .createdAt(at)
+                .updatedAt(at)
+                .replyToMessageId("65f1c2a0e13b2a6d9c8b4ef9")
+                .readBy(List.of("traveller_anna", "marco.rossi"))
+                .status("DELIVERED")
+                .build();
+    }
+}
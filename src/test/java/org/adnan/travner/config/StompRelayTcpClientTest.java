@@ -0,0 +1,137 @@
+package org.adnan.travner.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.tcp.TcpConnection;
+import org.springframework.messaging.tcp.TcpConnectionHandler;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+
+class StompRelayTcpClientTest {
+
+    private static final String REGISTRY = "/topic/user-registry";
+    private static final int FRAME_PAYLOAD = 200 * 1024;
+
+    private InProcessStompBroker broker;
+    private StompRelayTcpClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new InProcessStompBroker();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (client != null) {
+            client.shutdownAsync();
+        }
+        broker.close();
+    }
+
+    @Test
+    void testFrameWithinTheRelayLimitIsDelivered() throws Exception {
+        // Given: a registry broadcast larger than the client message limit but within the relay's
+        Handler handler = connect(512 * 1024);
+
+        // When
+        publish(handler.connection, FRAME_PAYLOAD);
+
+        // Then
+        await().atMost(Duration.ofSeconds(10)).until(() -> handler.registryFrame() != null);
+        assertEquals(FRAME_PAYLOAD, handler.registryFrame().getPayload().length);
+        assertTrue(handler.failures.isEmpty());
+    }
+
+    @Test
+    void testFrameOverTheRelayLimitFailsTheConnection() throws Exception {
+        // Given
+        Handler handler = connect(128 * 1024);
+
+        // When
+        publish(handler.connection, FRAME_PAYLOAD);
+
+        // Then: the relay is told why, and the frame is never handed on
+        await().atMost(Duration.ofSeconds(10)).until(() -> !handler.failures.isEmpty());
+        assertTrue(handler.failures.get(0).getMessage().contains("exceeds " + 128 * 1024 + " bytes"));
+        assertNull(handler.registryFrame());
+    }
+
+    private Handler connect(int maxFrameSize) throws Exception {
+        client = new StompRelayTcpClient("127.0.0.1", broker.getPort(), 2000, maxFrameSize);
+        Handler handler = new Handler();
+        client.connectAsync(handler).get(5, TimeUnit.SECONDS);
+        TcpConnection<byte[]> connection = handler.connected.get(5, TimeUnit.SECONDS);
+
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setAcceptVersion("1.2");
+        connect.setHost("127.0.0.1");
+        send(connection, connect, new byte[0]);
+        StompHeaderAccessor subscribe = StompHeaderAccessor.create(StompCommand.SUBSCRIBE);
+        subscribe.setDestination(REGISTRY);
+        subscribe.setSubscriptionId("registry");
+        send(connection, subscribe, new byte[0]);
+        await().atMost(Duration.ofSeconds(10)).until(() -> broker.subscriptionCount(REGISTRY) == 1);
+        return handler;
+    }
+
+    private static void publish(TcpConnection<byte[]> connection, int size) throws Exception {
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setDestination(REGISTRY);
+        send(connection, send, new byte[size]);
+    }
+
+    private static void send(TcpConnection<byte[]> connection, StompHeaderAccessor headers, byte[] payload)
+            throws Exception {
+        connection.sendAsync(MessageBuilder.createMessage(payload, headers.getMessageHeaders())).get(5, TimeUnit.SECONDS);
+    }
+
+    private static final class Handler implements TcpConnectionHandler<byte[]> {
+        private final CompletableFuture<TcpConnection<byte[]>> connected = new CompletableFuture<>();
+        private final List<Message<byte[]>> messages = new CopyOnWriteArrayList<>();
+        private final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        private TcpConnection<byte[]> connection;
+
+        @Override
+        public void afterConnected(TcpConnection<byte[]> connection) {
+            this.connection = connection;
+            connected.complete(connection);
+        }
+
+        @Override
+        public void afterConnectFailure(Throwable ex) {
+            connected.completeExceptionally(ex);
+        }
+
+        @Override
+        public void handleMessage(Message<byte[]> message) {
+            messages.add(message);
+        }
+
+        @Override
+        public void handleFailure(Throwable ex) {
+            failures.add(ex);
+        }
+
+        @Override
+        public void afterConnectionClosed() {
+        }
+
+        Message<byte[]> registryFrame() {
+            return messages.stream()
+                    .filter(message -> StompHeaderAccessor.wrap(message).getCommand() == StompCommand.MESSAGE)
+                    .findFirst().orElse(null);
+        }
+    }
+}
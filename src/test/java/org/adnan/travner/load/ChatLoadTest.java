@@ -0,0 +1,426 @@
+package org.adnan.travner.load;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.adnan.travner.TravnerApplication;
+import org.adnan.travner.dto.ChatConversationDTO;
+import org.adnan.travner.dto.SendMessageDTO;
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.UserRepository;
+import org.adnan.travner.service.ChatService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Chat capacity harness. Boots the application on a random port against an embedded
+ * MongoDB, connects simulated users over STOMP on /ws and has each one send to
+ * /app/chat.sendMessage at a fixed rate, round robin across its direct conversations.
+ * Reports delivered messages per second, end-to-end latency percentiles for peer
+ * delivery and for the sender's acknowledgement, and server allocation rate.
+ * <p>
+ * Excluded from the default build; run with {@code mvn test -Pload}. Shape the load
+ * with -Dload.clients, -Dload.peers (conversations per client), -Dload.rate (messages
+ * per second per client), -Dload.seconds and -Dload.warmup-seconds. Each run writes
+ * a report to target/load-reports and is compared with the recorded baseline of the
+ * same shape; -Dload.record-baseline=true replaces that baseline. Where no embedded
+ * MongoDB build exists for the platform, -Dload.mongo-uri points the run at a server.
+ */
+@Tag("load")
+@SpringBootTest(classes = TravnerApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "logging.level.org.adnan.travner=WARN",
+                "spring.data.mongodb.auto-index-creation=true"
+        })
+@ActiveProfiles("test")
+class ChatLoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final String CLIENT_THREAD_PREFIX = "load-client";
+
+    private static final int CLIENTS = Integer.getInteger("load.clients", 200);
+    private static final int PEERS = Integer.getInteger("load.peers", 3);
+    private static final int RATE = Integer.getInteger("load.rate", 5);
+    private static final int SECONDS = Integer.getInteger("load.seconds", 30);
+    private static final int WARMUP_SECONDS = Integer.getInteger("load.warmup-seconds", 10);
+    private static final int CONTENT_LENGTH = Integer.getInteger("load.content-length", 120);
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("load.tolerance", "0.25"));
+    private static final Path BASELINE = Path.of(System.getProperty("load.baseline",
+            "src/test/resources/load/chat-baseline.json"));
+    private static final Path REPORTS = Path.of("target", "load-reports");
+
+    private static MongodExecutable mongod;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+    private final LatencyRecorder deliveries = new LatencyRecorder();
+    private final LatencyRecorder acks = new LatencyRecorder();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicInteger errors = new AtomicInteger();
+    private volatile boolean measuring;
+
+    @DynamicPropertySource
+    static void mongo(DynamicPropertyRegistry registry) throws IOException {
+        // A database of its own, dropped afterwards, so runs against a shared server start empty
+        registry.add("spring.data.mongodb.database", () -> "travner_load_" + ProcessHandle.current().pid());
+        String uri = System.getProperty("load.mongo-uri");
+        if (uri != null) {
+            registry.add("spring.data.mongodb.uri", () -> uri);
+            return;
+        }
+        int mongoPort = Network.freeServerPort(Network.getLocalHost());
+        mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                .version(Version.Main.V6_0)
+                .net(new Net(mongoPort, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+        registry.add("spring.data.mongodb.uri", () -> "mongodb://localhost:" + mongoPort);
+    }
+
+    @AfterAll
+    static void stopMongo() {
+        if (mongod != null) {
+            mongod.stop();
+        }
+    }
+
+    @Test
+    void measureChatThroughputAndLatency() throws Exception {
+        List<String> users = createUsers();
+        List<List<String>> conversations = createConversations(users);
+
+        List<StompSession> sessions = new ArrayList<>();
+        ScheduledExecutorService senders = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+                Thread.ofPlatform().name(CLIENT_THREAD_PREFIX + "-sender-", 0).factory());
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new MappingJackson2MessageConverter());
+        stompClient.setInboundMessageSizeLimit(256 * 1024);
+        try {
+            for (int i = 0; i < users.size(); i++) {
+                sessions.add(connect(stompClient, users.get(i)));
+            }
+            long periodMicros = 1_000_000L / RATE;
+            for (int i = 0; i < sessions.size(); i++) {
+                StompSession session = sessions.get(i);
+                List<String> own = conversations.get(i);
+                AtomicInteger next = new AtomicInteger();
+                senders.scheduleAtFixedRate(() -> send(session, own.get(next.getAndIncrement() % own.size())),
+                        periodMicros * i / sessions.size(), periodMicros, TimeUnit.MICROSECONDS);
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(WARMUP_SECONDS));
+            Snapshot start = Snapshot.take();
+            measuring = true;
+            Thread.sleep(TimeUnit.SECONDS.toMillis(SECONDS));
+            measuring = false;
+            Snapshot end = Snapshot.take();
+
+            ObjectNode report = report(conversations, start, end);
+            System.out.println(objectMapper.writeValueAsString(report));
+            Files.createDirectories(REPORTS);
+            Files.writeString(REPORTS.resolve("chat-load-" + Instant.now().toEpochMilli() + ".json"),
+                    objectMapper.writeValueAsString(report));
+
+            assertEquals(0, errors.get(), "client errors");
+            assertTrue(deliveries.count() > 0, "no message was delivered to a peer");
+            compareWithBaseline(report);
+        } finally {
+            senders.shutdownNow();
+            sessions.forEach(StompSession::disconnect);
+            stompClient.stop();
+            mongoTemplate.getDb().drop();
+        }
+    }
+
+    private List<String> createUsers() {
+        // One hash for every user: authentication cost stays per connection, not per user
+        String hash = new BCryptPasswordEncoder().encode(PASSWORD);
+        List<UserEntry> entries = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            UserEntry user = new UserEntry();
+            user.setUserName("load_user_" + i);
+            user.setFirstName("Load");
+            user.setLastName("User " + i);
+            user.setEmail("load_user_" + i + "@example.com");
+            user.setPassword(hash);
+            user.setRoles(List.of("USER"));
+            entries.add(user);
+        }
+        return userRepository.saveAll(entries).stream().map(UserEntry::getUserName).toList();
+    }
+
+    /**
+     * Client i talks to clients i+1..i+peers, so each client is in 2 * peers direct conversations
+     */
+    private List<List<String>> createConversations(List<String> users) {
+        List<List<String>> byClient = new ArrayList<>();
+        users.forEach(user -> byClient.add(new ArrayList<>()));
+        for (int i = 0; i < users.size(); i++) {
+            for (int d = 1; d <= PEERS; d++) {
+                int peer = (i + d) % users.size();
+                ChatConversationDTO conversation = chatService.getOrCreateDirectConversation(users.get(i),
+                        users.get(peer));
+                byClient.get(i).add(conversation.getId());
+                byClient.get(peer).add(conversation.getId());
+            }
+        }
+        return byClient;
+    }
+
+    private StompSession connect(WebSocketStompClient stompClient, String username) throws Exception {
+        WebSocketHttpHeaders handshake = new WebSocketHttpHeaders();
+        handshake.set("Authorization", "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + PASSWORD).getBytes(StandardCharsets.UTF_8)));
+        StompSession session = stompClient.connectAsync("ws://localhost:" + port + "/ws/websocket", handshake,
+                new StompHeaders(), new StompSessionHandlerAdapter() {
+                    @Override
+                    public void handleException(StompSession session, StompCommand command, StompHeaders headers,
+                            byte[] payload, Throwable exception) {
+                        errors.incrementAndGet();
+                    }
+
+                    @Override
+                    public void handleTransportError(StompSession session, Throwable exception) {
+                        errors.incrementAndGet();
+                    }
+                }).get(30, TimeUnit.SECONDS);
+        session.subscribe("/user/queue/messages", new StompFrameHandler() {
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return JsonNode.class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                received(username, (JsonNode) payload);
+            }
+        });
+        return session;
+    }
+
+    private void send(StompSession session, String conversationId) {
+        SendMessageDTO request = new SendMessageDTO();
+        request.setConversationId(conversationId);
+        request.setContent(content(System.nanoTime()));
+        try {
+            session.send("/app/chat.sendMessage", request);
+            if (measuring) {
+                sent.incrementAndGet();
+            }
+        } catch (Exception e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * The send time leads the content; clients share the server's clock
+     */
+    private static String content(long sentAt) {
+        StringBuilder content = new StringBuilder().append(sentAt).append(' ');
+        while (content.length() < CONTENT_LENGTH) {
+            content.append("lorem ipsum ");
+        }
+        return content.substring(0, Math.max(CONTENT_LENGTH, content.indexOf(" ") + 1));
+    }
+
+    private void received(String username, JsonNode message) {
+        long now = System.nanoTime();
+        if (!measuring) {
+            return;
+        }
+        try {
+            String content = message.path("content").asText();
+            long sentAt = Long.parseLong(content.substring(0, content.indexOf(' ')));
+            // Peers receive the fan-out; the sender's own copy is its acknowledgement
+            (username.equals(message.path("senderId").asText()) ? acks : deliveries).record(now - sentAt);
+        } catch (RuntimeException e) {
+            errors.incrementAndGet();
+        }
+    }
+
+    private ObjectNode report(List<List<String>> conversations, Snapshot start, Snapshot end) {
+        double seconds = (end.nanos - start.nanos) / 1e9;
+        long serverBytes = (end.totalAllocated - end.clientAllocated) - (start.totalAllocated - start.clientAllocated);
+        long delivered = deliveries.count();
+
+        ObjectNode report = objectMapper.createObjectNode();
+        report.put("recordedAt", Instant.now().toString());
+        report.put("cpus", Runtime.getRuntime().availableProcessors());
+        ObjectNode shape = report.putObject("shape");
+        shape.put("clients", CLIENTS);
+        shape.put("conversations", conversations.stream().mapToInt(List::size).sum() / 2);
+        shape.put("ratePerClient", RATE);
+        shape.put("seconds", SECONDS);
+        shape.put("contentLength", CONTENT_LENGTH);
+        report.put("sent", sent.get());
+        report.put("delivered", delivered);
+        report.put("acknowledged", acks.count());
+        report.put("sentPerSecond", Math.round(sent.get() / seconds));
+        report.put("deliveredPerSecond", Math.round(delivered / seconds));
+        report.set("deliveryLatencyMs", deliveries.percentiles(objectMapper));
+        report.set("ackLatencyMs", acks.percentiles(objectMapper));
+        report.put("serverAllocatedMbPerSecond", Math.round(serverBytes / seconds / (1 << 20)));
+        report.put("serverAllocatedKbPerMessage", delivered == 0 ? 0 : Math.round(serverBytes / 1024.0 / delivered));
+        report.put("gcCount", end.gcCount - start.gcCount);
+        report.put("gcTimeMs", end.gcMillis - start.gcMillis);
+        return report;
+    }
+
+    private void compareWithBaseline(ObjectNode report) throws IOException {
+        if (Boolean.getBoolean("load.record-baseline")) {
+            Files.createDirectories(BASELINE.toAbsolutePath().getParent());
+            Files.writeString(BASELINE, objectMapper.writeValueAsString(report));
+            System.out.println("Recorded baseline " + BASELINE);
+            return;
+        }
+        if (!Files.exists(BASELINE)) {
+            System.out.println("No baseline at " + BASELINE + "; record one with -Dload.record-baseline=true");
+            return;
+        }
+        JsonNode baseline = objectMapper.readTree(BASELINE.toFile());
+        if (!baseline.path("shape").equals(report.path("shape"))) {
+            System.out.println("Baseline " + BASELINE + " was recorded for " + baseline.path("shape")
+                    + "; not comparable with " + report.path("shape"));
+            return;
+        }
+        long throughput = report.path("deliveredPerSecond").asLong();
+        long baselineThroughput = baseline.path("deliveredPerSecond").asLong();
+        double p99 = report.path("deliveryLatencyMs").path("p99").asDouble();
+        double baselineP99 = baseline.path("deliveryLatencyMs").path("p99").asDouble();
+        System.out.printf("Against baseline: delivered/s %d vs %d, delivery p99 %.2f ms vs %.2f ms%n",
+                throughput, baselineThroughput, p99, baselineP99);
+        assertTrue(throughput >= baselineThroughput * (1 - TOLERANCE), "throughput regressed beyond tolerance");
+        // Sub-millisecond p99s are scheduling noise; only compare once they are measurable
+        assertTrue(p99 <= Math.max(1, baselineP99) * (1 + TOLERANCE), "delivery p99 regressed beyond tolerance");
+    }
+
+    /**
+     * Every latency sample of the measured window, in nanoseconds
+     */
+    private static final class LatencyRecorder {
+
+        private final ConcurrentLinkedQueue<long[]> chunks = new ConcurrentLinkedQueue<>();
+        private final ThreadLocal<long[]> current = new ThreadLocal<>();
+        private final ThreadLocal<int[]> position = ThreadLocal.withInitial(() -> new int[1]);
+        private final AtomicLong count = new AtomicLong();
+
+        void record(long nanos) {
+            long[] chunk = current.get();
+            int[] at = position.get();
+            if (chunk == null || at[0] == chunk.length) {
+                chunk = new long[8192];
+                Arrays.fill(chunk, -1);
+                chunks.add(chunk);
+                current.set(chunk);
+                at[0] = 0;
+            }
+            chunk[at[0]++] = nanos;
+            count.incrementAndGet();
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        ObjectNode percentiles(ObjectMapper mapper) {
+            long[] samples = chunks.stream().flatMapToLong(Arrays::stream).filter(nanos -> nanos >= 0).sorted()
+                    .toArray();
+            ObjectNode node = mapper.createObjectNode();
+            node.put("p50", millis(samples, 0.50));
+            node.put("p99", millis(samples, 0.99));
+            node.put("p999", millis(samples, 0.999));
+            node.put("max", samples.length == 0 ? 0 : samples[samples.length - 1] / 1e6);
+            return node;
+        }
+
+        private static double millis(long[] sorted, double quantile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.ceil(quantile * sorted.length) - 1;
+            return Math.round(sorted[Math.max(0, index)] / 1e3) / 1e3;
+        }
+    }
+
+    /**
+     * JVM counters at one instant. The clients run in this JVM, so their threads'
+     * allocations are taken out of the total to leave the server's share.
+     */
+    private record Snapshot(long nanos, long totalAllocated, long clientAllocated, long gcCount, long gcMillis) {
+
+        static Snapshot take() {
+            com.sun.management.ThreadMXBean threads =
+                    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            long client = Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().startsWith(CLIENT_THREAD_PREFIX)
+                            || thread.getName().startsWith("WebSocketClient"))
+                    .mapToLong(thread -> Math.max(0, threads.getThreadAllocatedBytes(thread.threadId())))
+                    .sum();
+            long gcCount = 0;
+            long gcMillis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                gcCount += Math.max(0, gc.getCollectionCount());
+                gcMillis += Math.max(0, gc.getCollectionTime());
+            }
+            return new Snapshot(System.nanoTime(), threads.getTotalThreadAllocatedBytes(), client, gcCount, gcMillis);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.adnan.travner.repository;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatMessageBucket;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.repository.support.MongoRepositoryFactory;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BucketedChatMessageStoreTest {
+
+    private static final int BUCKET_SIZE = 100;
+    private static final LocalDateTime START = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private BucketedChatMessageStore store;
+
+    @BeforeEach
+    void setUp() {
+        store = new BucketedChatMessageStore(mongoTemplate, BUCKET_SIZE);
+    }
+
+    @Test
+    void testAppendIsOneUpsertPerBucketTouched() {
+        // Given: a batch that crosses from bucket 0 into bucket 1
+        List<ChatMessage> batch = LongStream.rangeClosed(99, 102).mapToObj(sequence -> message("c1", sequence)).toList();
+        batch.forEach(message -> message.setId(null));
+
+        // When
+        store.append("c1", batch);
+
+        // Then
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).upsert(queries.capture(), updates.capture(), eq(ChatMessageBucket.class));
+        assertEquals(List.of("c1:0", "c1:1"),
+                queries.getAllValues().stream().map(query -> query.getQueryObject().getString("_id")).toList());
+        assertEquals(List.of(100L, 102L), updates.getAllValues().stream()
+                .map(update -> update.getUpdateObject().get("$max", Document.class).get("lastSequence")).toList());
+        for (Update update : updates.getAllValues()) {
+            assertTrue(update.getUpdateObject().get("$push", Document.class).containsKey("messages"));
+            assertEquals(2, update.getUpdateObject().get("$inc", Document.class).get("count"));
+        }
+        assertTrue(batch.stream().allMatch(message -> ObjectId.isValid(message.getId())));
+    }
+
+    @Test
+    void testNewestPageReadsAtMostTwoBuckets() {
+        // Given: 1030 messages, so the newest bucket holds only 30
+        AtomicInteger reads = new AtomicInteger();
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.stream(query.capture(), eq(ChatMessageBucket.class)))
+                .thenAnswer(invocation -> newestFirst(1030).peek(bucket -> reads.incrementAndGet()));
+
+        // When
+        List<ChatMessage> page = store.findNewest("c1", 51);
+
+        // Then
+        assertEquals(51, page.size());
+        assertEquals(1030L, page.get(0).getSequence());
+        assertEquals(980L, page.get(50).getSequence());
+        assertEquals(2, reads.get());
+        assertEquals(2, query.getValue().getMeta().getCursorBatchSize());
+    }
+
+    @Test
+    void testBeforeCursorStartsInsideTheCursorsBucket() {
+        // Given
+        AtomicInteger reads = new AtomicInteger();
+        when(mongoTemplate.stream(any(Query.class), eq(ChatMessageBucket.class)))
+                .thenAnswer(invocation -> newestFirst(300).peek(bucket -> reads.incrementAndGet()));
+
+        // When
+        List<ChatMessage> older = store.findBefore(message("c1", 205), 10);
+
+        // Then: 204..201 from the cursor's bucket, then 200..195
+        assertEquals(LongStream.rangeClosed(195, 204).boxed().sorted((a, b) -> Long.compare(b, a)).toList(),
+                older.stream().map(ChatMessage::getSequence).toList());
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    void testPageReadsOnlyTheBucketsItCovers() {
+        // Given: buckets of 30, 100 and 100 messages, newest first
+        List<ChatMessageBucket> all = newestFirst(230).toList();
+        List<ChatMessageBucket> headers = all.stream().map(bucket -> ChatMessageBucket.builder()
+                .id(bucket.getId()).count(bucket.getCount()).build()).toList();
+        when(mongoTemplate.find(any(Query.class), eq(ChatMessageBucket.class)))
+                .thenReturn(headers, List.of(all.get(1)));
+
+        // When: second page of 50, newest first
+        Page<ChatMessage> page = store.findPage("c1", PageRequest.of(1, 50));
+
+        // Then
+        assertEquals(230, page.getTotalElements());
+        assertEquals(50, page.getContent().size());
+        assertEquals(180L, page.getContent().get(0).getSequence());
+        assertEquals(131L, page.getContent().get(49).getSequence());
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).find(queries.capture(), eq(ChatMessageBucket.class));
+        assertEquals(List.of("c1:1"), queries.getAllValues().get(1).getQueryObject()
+                .get("_id", Document.class).getList("$in", String.class));
+    }
+
+    @Test
+    void testEmbeddedMessageIdsAreStoredAsObjectIds() {
+        // Given: the id lookup and its index address messages._id
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        ChatMessageBucket bucket = newestFirst(1).findFirst().orElseThrow();
+
+        // When
+        Document written = new Document();
+        converter.write(bucket, written);
+
+        // Then
+        Document first = written.getList("messages", Document.class).get(0);
+        assertEquals(new ObjectId(bucket.getMessages().get(0).getId()), first.get("_id"));
+    }
+
+    /**
+     * History read latency of both layouts against a real MongoDB; run with
+     * -Dbenchmark.mongo.uri=mongodb://localhost:27017
+     */
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark.mongo.uri", matches = ".+")
+    void testBenchmarkHistoryReadLatency() {
+        int messages = 20_000;
+        int pageSize = 50;
+        int reads = 500;
+        try (MongoClient client = MongoClients.create(System.getProperty("benchmark.mongo.uri"))) {
+            MongoTemplate template = new MongoTemplate(client, "travner_bucket_benchmark");
+            template.getDb().drop();
+            template.indexOps(ChatMessage.class).createIndex(new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("createdAt", Sort.Direction.DESC).on("_id", Sort.Direction.DESC));
+            template.indexOps(ChatMessageBucket.class).createIndex(new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("bucket", Sort.Direction.DESC));
+            template.indexOps(ChatMessageBucket.class).createIndex(new Index().on("conversationId", Sort.Direction.ASC)
+                    .on("messages._id", Sort.Direction.ASC));
+
+            ChatMessageStore documents = new DocumentChatMessageStore(
+                    new MongoRepositoryFactory(template).getRepository(ChatMessageRepository.class), template);
+            ChatMessageStore buckets = new BucketedChatMessageStore(template, BUCKET_SIZE);
+            List<ChatMessage> history = LongStream.rangeClosed(1, messages)
+                    .mapToObj(sequence -> message("bench", sequence)).toList();
+            for (int from = 0; from < messages; from += 200) {
+                List<ChatMessage> batch = history.subList(from, Math.min(messages, from + 200));
+                documents.append("bench", batch);
+                buckets.append("bench", batch);
+            }
+
+            for (ChatMessageStore layout : List.of(documents, buckets)) {
+                long newest = time(reads, i -> layout.findNewest("bench", pageSize + 1));
+                Random random = new Random(42);
+                long scrollBack = time(reads, i -> layout.findBefore(
+                        history.get(pageSize + random.nextInt(messages - pageSize)), pageSize + 1));
+                System.out.printf("history reads, %s, %d messages: newest page %d us, scroll-back page %d us%n",
+                        layout.getClass().getSimpleName(), messages, newest / reads / 1000, scrollBack / reads / 1000);
+            }
+            template.getDb().drop();
+        }
+    }
+
+    private static long time(int iterations, Consumer<Integer> read) {
+        for (int i = 0; i < iterations / 5; i++) {
+            read.accept(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            read.accept(i);
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Buckets of a conversation with the given number of messages, newest first
+     */
+    private static Stream<ChatMessageBucket> newestFirst(int messages) {
+        List<ChatMessageBucket> buckets = new ArrayList<>();
+        for (long bucket = (messages - 1) / BUCKET_SIZE; bucket >= 0; bucket--) {
+            long first = bucket * BUCKET_SIZE + 1;
+            long last = Math.min(messages, first + BUCKET_SIZE - 1);
+            List<ChatMessage> content = LongStream.rangeClosed(first, last).mapToObj(sequence -> message("c1", sequence))
+                    .toList();
+            buckets.add(ChatMessageBucket.builder().id(ChatMessageBucket.idOf("c1", bucket)).conversationId("c1")
+                    .bucket(bucket).count(content.size()).firstSequence(first).lastSequence(last)
+                    .messages(content).build());
+        }
+        return buckets.stream();
+    }
+
+    private static ChatMessage message(String conversationId, long sequence) {
+        return ChatMessage.builder().id(new ObjectId().toHexString()).conversationId(conversationId)
+                .sequence(sequence).senderId("user" + sequence % 7).content("message " + sequence)
+                .messageType("TEXT").createdAt(START.plusSeconds(sequence)).status("DELIVERED").build();
+    }
+}
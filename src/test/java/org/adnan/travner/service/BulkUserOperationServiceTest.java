@@ -0,0 +1,131 @@
+package org.adnan.travner.service;
+
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.client.result.UpdateResult;
+import org.adnan.travner.entry.UserEntry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BulkUserOperationServiceTest {
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    private BulkUserOperationService bulkUserOperationService;
+
+    @BeforeEach
+    void setUp() {
+        bulkUserOperationService = new BulkUserOperationService(mongoTemplate, userSummaryCache, 2, 3, 5);
+    }
+
+    @Test
+    void testDeactivate_OneLookupAndOneWritePerChunk() {
+        // Given: four users in chunks of two, one of them unknown and one listed twice
+        when(mongoTemplate.find(any(Query.class), eq(UserEntry.class)))
+                .thenReturn(List.of(user("alice", "USER"), user("bob", "USER")))
+                .thenReturn(List.of(user("carol", "USER")));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(UserEntry.class)))
+                .thenReturn(UpdateResult.acknowledged(2, 2L, null))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // When
+        BulkUserOperationService.BulkJob job = bulkUserOperationService.execute("deactivate",
+                List.of("alice", "bob", "carol", "bob", "ghost"), null);
+
+        // Then
+        assertEquals(BulkUserOperationService.JobStatus.COMPLETED, job.getStatus());
+        assertEquals(4, job.getTotal());
+        assertEquals(4, job.getProcessed().get());
+        assertEquals(3, job.getSuccess().get());
+        assertEquals(1, job.getFailureCount().get());
+        assertEquals(List.of("User ghost not found"), job.getErrors());
+        verify(mongoTemplate, times(2)).find(any(Query.class), eq(UserEntry.class));
+        verify(mongoTemplate, times(2)).updateMulti(any(Query.class), any(Update.class), eq(UserEntry.class));
+        verify(mongoTemplate, never()).save(any());
+        verify(userSummaryCache, times(3)).invalidate(any(ObjectId.class));
+    }
+
+    @Test
+    void testDelete_AdminsAreProtected() {
+        // Given
+        when(mongoTemplate.find(any(Query.class), eq(UserEntry.class)))
+                .thenReturn(List.of(user("spam1", "USER"), user("root", "USER", "ADMIN")));
+        when(mongoTemplate.remove(any(Query.class), eq(UserEntry.class))).thenReturn(DeleteResult.acknowledged(1));
+
+        // When
+        BulkUserOperationService.BulkJob job = bulkUserOperationService.execute("delete", List.of("spam1", "root"), null);
+
+        // Then
+        assertEquals(1, job.getSuccess().get());
+        assertEquals(List.of("Cannot delete admin user root"), job.getErrors());
+        ArgumentCaptor<Query> write = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).remove(write.capture(), eq(UserEntry.class));
+        assertEquals(Map.of("$ne", "ADMIN"), write.getValue().getQueryObject().get("roles"));
+    }
+
+    @Test
+    void testRoles_SetInBulkWithoutDemotingAdmins() {
+        // Given
+        when(mongoTemplate.find(any(Query.class), eq(UserEntry.class)))
+                .thenReturn(List.of(user("guide", "USER"), user("root", "ADMIN")));
+        when(mongoTemplate.updateMulti(any(Query.class), any(Update.class), eq(UserEntry.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        // When
+        BulkUserOperationService.BulkJob job = bulkUserOperationService.execute("roles",
+                List.of("guide", "root"), List.of("USER", "LOCAL_GUIDE"));
+
+        // Then
+        assertEquals(1, job.getSuccess().get());
+        assertEquals(List.of("Cannot remove admin role from root"), job.getErrors());
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateMulti(any(Query.class), update.capture(), eq(UserEntry.class));
+        assertEquals(List.of("USER", "LOCAL_GUIDE"), update.getValue().getUpdateObject().get("$set", Map.class).get("roles"));
+    }
+
+    @Test
+    void testSubmit_LargeInputRunsAsPollableJob() throws Exception {
+        // Given
+        List<String> usernames = IntStream.range(0, 5).mapToObj(i -> "user" + i).toList();
+        when(mongoTemplate.find(any(Query.class), eq(UserEntry.class))).thenReturn(List.of());
+        assertTrue(bulkUserOperationService.shouldRunAsync(usernames.size()));
+
+        // When
+        BulkUserOperationService.BulkJob job = bulkUserOperationService.submit("activate", usernames, null);
+
+        // Then
+        for (int i = 0; i < 100 && !job.isDone(); i++) {
+            Thread.sleep(20);
+        }
+        BulkUserOperationService.BulkJob polled = bulkUserOperationService.getJob(job.getId()).orElseThrow();
+        assertEquals(BulkUserOperationService.JobStatus.COMPLETED, polled.getStatus());
+        assertEquals(5, polled.getProcessed().get());
+        assertEquals(5, polled.getFailureCount().get());
+        verify(mongoTemplate, never()).updateMulti(any(Query.class), any(Update.class), eq(UserEntry.class));
+    }
+
+    private static UserEntry user(String username, String... roles) {
+        return UserEntry.builder().id(new ObjectId()).userName(username).roles(List.of(roles)).build();
+    }
+}
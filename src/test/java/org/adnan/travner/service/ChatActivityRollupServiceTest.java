@@ -0,0 +1,137 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.ChatActivityRollup;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.util.HyperLogLog;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatActivityRollupServiceTest {
+
+    private static final LocalDateTime NINE = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ChatMessageStore messageStore;
+
+    private ChatActivityRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = new ChatActivityRollupService(mongoTemplate, messageStore, 11);
+    }
+
+    @Test
+    void testRecordUpsertsOncePerHour() {
+        // Given: two messages at 09:xx and one at 10:xx
+        List<ChatMessage> batch = List.of(
+                message("conv1", "alice", NINE.plusMinutes(5)),
+                message("conv1", "bob", NINE.plusMinutes(59)),
+                message("conv1", "alice", NINE.plusHours(1)));
+
+        // When
+        rollupService.record(batch);
+
+        // Then
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> updates = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(2)).upsert(queries.capture(), updates.capture(), eq(ChatActivityRollup.class));
+        int nine = queries.getAllValues().get(0).getQueryObject().get("_id").equals(NINE) ? 0 : 1;
+        Document update = updates.getAllValues().get(nine).getUpdateObject();
+        assertEquals(2, update.get("$inc", Document.class).get("messageCount"));
+        Document max = update.get("$max", Document.class);
+        assertEquals(1, max.keySet().stream().filter(key -> key.startsWith("conversations.")).count());
+        assertEquals(2, max.keySet().stream().filter(key -> key.startsWith("senders.")).count());
+    }
+
+    @Test
+    void testSummarizeMergesHoursWithoutDoubleCounting() {
+        // Given: the same 1000 conversations active in each of three hours, 9:00 twice on different days
+        List<ChatActivityRollup> rollups = new ArrayList<>();
+        for (LocalDateTime hour : List.of(NINE, NINE.plusHours(1), NINE.plusDays(1))) {
+            HyperLogLog conversations = new HyperLogLog(11);
+            HyperLogLog senders = new HyperLogLog(11);
+            IntStream.range(0, 1000).forEach(i -> conversations.add("conv-" + i));
+            IntStream.range(0, 50).forEach(i -> senders.add("user-" + i));
+            rollups.add(ChatActivityRollup.builder().hour(hour).messageCount(100)
+                    .conversations(conversations.toSparse()).senders(senders.toSparse()).build());
+        }
+        when(mongoTemplate.stream(any(Query.class), eq(ChatActivityRollup.class))).thenReturn(rollups.stream());
+
+        // When
+        ChatActivityRollupService.Summary summary = rollupService.summarize(NINE.minusMinutes(30));
+
+        // Then
+        assertEquals(300, summary.totalMessages());
+        assertEquals(1000, summary.uniqueConversations(), 1000 * 0.05);
+        assertEquals(50, summary.activeSenders(), 2);
+        assertEquals(200L, summary.messagesByHour().get(9));
+        assertEquals(100L, summary.messagesByHour().get(10));
+    }
+
+    @Test
+    void testBackfillWritesOneRollupPerHourFromTheStore() {
+        // Given: the store's rows for two hours, sorted by hour
+        LocalDateTime until = NINE.plusHours(2);
+        when(messageStore.streamHourlyActivity(NINE, until)).thenReturn(Stream.of(
+                new ChatMessageStore.HourlyActivity(NINE, "conv1", "alice", 3),
+                new ChatMessageStore.HourlyActivity(NINE, "conv2", "alice", 2),
+                new ChatMessageStore.HourlyActivity(NINE.plusHours(1), "conv1", "bob", 1)));
+
+        // When
+        int hours = rollupService.backfill(NINE, until);
+
+        // Then
+        assertEquals(2, hours);
+        ArgumentCaptor<ChatActivityRollup> saved = ArgumentCaptor.forClass(ChatActivityRollup.class);
+        verify(mongoTemplate, times(2)).save(saved.capture());
+        ChatActivityRollup nine = saved.getAllValues().get(0);
+        assertEquals(NINE, nine.getHour());
+        assertEquals(5, nine.getMessageCount());
+        assertEquals(2, nine.getConversations().size());
+        assertEquals(1, nine.getSenders().size());
+        assertEquals(1, saved.getAllValues().get(1).getMessageCount());
+    }
+
+    @Test
+    void testHyperLogLogAccuracyAtScale() {
+        // Given
+        HyperLogLog sketch = new HyperLogLog(11);
+        HyperLogLog half = new HyperLogLog(11);
+
+        // When
+        IntStream.range(0, 200_000).forEach(i -> sketch.add("conversation-" + i));
+        IntStream.range(100_000, 300_000).forEach(i -> half.add("conversation-" + i));
+        sketch.merge(half.toSparse());
+
+        // Then: within four standard errors of the 300k true union
+        assertEquals(300_000, sketch.estimate(), 300_000 * 0.092);
+    }
+
+    private static ChatMessage message(String conversationId, String senderId, LocalDateTime createdAt) {
+        return ChatMessage.builder().conversationId(conversationId).senderId(senderId).createdAt(createdAt).build();
+    }
+}
@@ -0,0 +1,206 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.ChatMessageDTO;
+import org.adnan.travner.repository.ChatConversationRepository;
+import org.adnan.travner.util.HashedTimingWheel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+class ChatFanOutServiceTest {
+
+    private final Queue<Message<?>> sent = new ConcurrentLinkedQueue<>();
+    private final AtomicLong conversions = new AtomicLong();
+    private SimpMessagingTemplate messagingTemplate;
+    private ConversationMembershipCache conversationMembers;
+    private PresenceService presence;
+
+    @BeforeEach
+    void setUp() {
+        MessageChannel channel = (message, timeout) -> sent.add(message);
+        messagingTemplate = new SimpMessagingTemplate(channel);
+        messagingTemplate.setMessageConverter(new MappingJackson2MessageConverter() {
+            @Override
+            protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+                conversions.incrementAndGet();
+                return super.convertToInternal(payload, headers, conversionHint);
+            }
+        });
+        conversationMembers = mock(ConversationMembershipCache.class);
+        presence = mock(PresenceService.class);
+    }
+
+    @Test
+    void testSkipsSenderMutedAndOfflineMembers() {
+        // Given: carol muted the conversation and dave is offline
+        group("g1", Set.of("alice", "bob", "carol", "dave"), Set.of("carol"));
+        when(presence.isOnline(anyString())).thenAnswer(invocation -> !"dave".equals(invocation.getArgument(0)));
+        ChatFanOutService fanOut = new ChatFanOutService(messagingTemplate, conversationMembers, presence, direct(4));
+
+        // When
+        int recipients = fanOut.publish("g1", "alice", message("hello"));
+
+        // Then
+        assertEquals(1, recipients);
+        assertEquals(Set.of("/topic/conversation/g1", "/user/bob/queue/messages"), destinations());
+    }
+
+    @Test
+    void testPayloadConvertedOnceForAllRecipients() {
+        // Given
+        group("g1", Set.of("alice", "bob", "carol", "dave"), Set.of());
+        when(presence.isOnline(anyString())).thenReturn(true);
+        ChatFanOutService fanOut = new ChatFanOutService(messagingTemplate, conversationMembers, presence, direct(4));
+
+        // When
+        fanOut.publish("g1", "alice", message("hello"));
+
+        // Then
+        assertEquals(1, conversions.get());
+        assertEquals(4, sent.size());
+        Object payload = sent.peek().getPayload();
+        assertTrue(sent.stream().allMatch(message -> message.getPayload() == payload));
+    }
+
+    @Test
+    void testDeliveriesGroupedIntoOneTaskPerWorker() {
+        // Given: 40 online members and 4 workers that record their tasks
+        Set<String> users = IntStream.range(0, 40).mapToObj(i -> "user-" + i).collect(Collectors.toSet());
+        group("g1", users, Set.of());
+        when(presence.isOnline(anyString())).thenReturn(true);
+        List<List<Runnable>> tasks = new ArrayList<>();
+        List<Executor> workers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            List<Runnable> queue = new ArrayList<>();
+            tasks.add(queue);
+            workers.add(queue::add);
+        }
+        ChatFanOutService fanOut = new ChatFanOutService(messagingTemplate, conversationMembers, presence, workers);
+
+        // When
+        fanOut.publish("g1", "user-0", message("one"));
+        fanOut.publish("g1", "user-0", message("two"));
+
+        // Then: at most one task per worker per publish, and a member is always served by the same worker
+        assertTrue(tasks.stream().allMatch(queue -> queue.size() <= 2));
+        List<Set<String>> recipientsByWorker = new ArrayList<>();
+        for (List<Runnable> queue : tasks) {
+            Set<String> recipients = new HashSet<>();
+            for (Runnable task : queue) {
+                sent.clear();
+                task.run();
+                sent.forEach(message -> recipients.add(destination(message)));
+            }
+            recipientsByWorker.add(recipients);
+        }
+        assertEquals(39, recipientsByWorker.stream().mapToInt(Set::size).sum());
+    }
+
+    @Test
+    @Tag("load")
+    void testLoadFiveHundredMemberGroupThroughput() {
+        // Given: a 500-member group with everyone connected and real worker threads
+        int members = 500;
+        int messages = 200;
+        Set<String> users = IntStream.range(0, members).mapToObj(i -> "user-" + i).collect(Collectors.toSet());
+        group("g1", users, Set.of());
+        PresenceService connected = new PresenceService(new LocalPresenceSync(),
+                mock(SimpMessagingTemplate.class), mock(ChatConversationRepository.class), "load", 64, 30_000, 10_000,
+                false, new HashedTimingWheel("load", 100, 64, () -> 0L), () -> 0L, Runnable::run);
+        users.forEach(user -> connected.connect("s-" + user, user));
+        ChatFanOutService fanOut = new ChatFanOutService(messagingTemplate, conversationMembers, connected, 4);
+        List<ChatMessageDTO> payloads = IntStream.range(0, messages)
+                .mapToObj(i -> message("Meet at the north gate of the old town at nine, bring the tickets #" + i))
+                .toList();
+        perRecipient(payloads.subList(0, 20), users);
+        payloads.subList(0, 20).forEach(payload -> fanOut.publish("g1", "user-0", payload));
+        awaitDeliveries(20L * members);
+
+        // When: the per-recipient convertAndSendToUser baseline
+        reset();
+        perRecipient(payloads, users);
+        long beforeConversions = conversions.get();
+        long beforeDeliveries = sent.size();
+
+        // And: the fan-out service
+        reset();
+        payloads.forEach(payload -> fanOut.publish("g1", "user-0", payload));
+        awaitDeliveries(beforeDeliveries);
+        fanOut.shutdown();
+
+        // Then: the same deliveries from one conversion per message
+        assertEquals(beforeDeliveries, sent.size());
+        assertEquals((long) messages * members, beforeConversions);
+        assertEquals(messages, conversions.get());
+    }
+
+    private void perRecipient(List<ChatMessageDTO> payloads, Set<String> users) {
+        for (ChatMessageDTO payload : payloads) {
+            messagingTemplate.convertAndSend("/topic/conversation/g1", payload);
+            for (String user : users) {
+                if (!user.equals("user-0")) {
+                    messagingTemplate.convertAndSendToUser(user, "/queue/messages", payload);
+                }
+            }
+        }
+    }
+
+    private void awaitDeliveries(long expected) {
+        await().atMost(Duration.ofSeconds(30)).until(() -> sent.size() >= expected);
+    }
+
+    private void reset() {
+        sent.clear();
+        conversions.set(0);
+    }
+
+    private void group(String conversationId, Set<String> participants, Set<String> muted) {
+        when(conversationMembers.get(conversationId)).thenReturn(Optional.of(
+                new ConversationMembershipCache.Members("GROUP", participants, true, muted)));
+    }
+
+    private Set<String> destinations() {
+        return sent.stream().map(ChatFanOutServiceTest::destination).collect(Collectors.toSet());
+    }
+
+    private static String destination(Message<?> message) {
+        return SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+    }
+
+    private static List<Executor> direct(int workers) {
+        List<Executor> executors = new ArrayList<>();
+        for (int i = 0; i < workers; i++) {
+            executors.add(Runnable::run);
+        }
+        return executors;
+    }
+
+    private static ChatMessageDTO message(String content) {
+        return ChatMessageDTO.builder().id("m-" + content.hashCode()).conversationId("g1").senderId("user-0")
+                .content(content).build();
+    }
+}
@@ -0,0 +1,183 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.ChatMessageDTO;
+import org.adnan.travner.dto.SendMessageDTO;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.adnan.travner.repository.ChatSequenceCounter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatMessagePipelineTest {
+
+    @Mock
+    private ChatService chatService;
+
+    @Mock
+    private ChatMessageStore messageStore;
+
+    @Mock
+    private ChatSequenceCounter sequences;
+
+    private final Map<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private ChatMessagePipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        pipeline = new ChatMessagePipeline(chatService, messageStore, sequences, 50, "persist", 10);
+        // Stands in for the shared counter document each node increments
+        lenient().doAnswer(invocation -> {
+            counters.computeIfAbsent(invocation.getArgument(0), id -> new AtomicLong())
+                    .accumulateAndGet(invocation.getArgument(1), Math::max);
+            return null;
+        }).when(sequences).seed(anyString(), anyLong());
+        lenient().when(sequences.reserve(anyString(), anyInt())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(1);
+            return counters.computeIfAbsent(invocation.getArgument(0), id -> new AtomicLong()).addAndGet(count)
+                    - count + 1;
+        });
+        when(chatService.prepareMessage(any(SendMessageDTO.class), anyString())).thenAnswer(invocation -> {
+            SendMessageDTO request = invocation.getArgument(0);
+            return ChatMessage.builder().conversationId(request.getConversationId())
+                    .senderId(invocation.getArgument(1)).content(request.getContent()).status("SENT").build();
+        });
+        when(chatService.toMessageDTO(any(ChatMessage.class))).thenAnswer(invocation -> {
+            ChatMessage message = invocation.getArgument(0);
+            return ChatMessageDTO.builder().id(message.getId()).sequence(message.getSequence())
+                    .content(message.getContent()).status(message.getStatus()).build();
+        });
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Test
+    void testSubmit_AssignsIdNowAndSequenceWhenDrained() throws Exception {
+        // Given: the conversation already holds messages up to sequence 41
+        when(messageStore.findLastSequence("conv1")).thenReturn(41L);
+
+        // When
+        ChatMessagePipeline.Accepted first = pipeline.submit(request("conv1", "one"), "alice");
+        ChatMessagePipeline.Accepted second = pipeline.submit(request("conv1", "two"), "bob");
+
+        // Then
+        assertNotNull(first.message().getId());
+        assertEquals(42L, first.persisted().get(5, TimeUnit.SECONDS).getSequence());
+        ChatMessageDTO persisted = second.persisted().get(5, TimeUnit.SECONDS);
+        assertEquals(43L, persisted.getSequence());
+        assertEquals("two", persisted.getContent());
+        verify(messageStore, times(1)).findLastSequence("conv1");
+    }
+
+    @Test
+    void testSubmitNeverWaitsOnTheCounter() throws Exception {
+        // Given: a counter round trip that does not return until released
+        CountDownLatch release = new CountDownLatch(1);
+        when(sequences.reserve(eq("conv1"), anyInt())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return 1L;
+        });
+
+        // When
+        ChatMessagePipeline.Accepted accepted = pipeline.submit(request("conv1", "quick"), "alice");
+
+        // Then: accepted while the drainer is still waiting for its block
+        assertFalse(accepted.persisted().isDone());
+        assertNull(accepted.message().getSequence());
+        release.countDown();
+        assertEquals(1L, accepted.persisted().get(5, TimeUnit.SECONDS).getSequence());
+    }
+
+    @Test
+    void testTwoNodesNeverShareASequence() throws Exception {
+        // Given: a second node taking messages for the same conversation
+        when(messageStore.findLastSequence("conv1")).thenReturn(5L);
+        ChatMessagePipeline otherNode = new ChatMessagePipeline(chatService, messageStore, sequences, 50, "persist", 10);
+
+        // When
+        List<Long> assigned = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ChatMessagePipeline node = i % 2 == 0 ? pipeline : otherNode;
+            assigned.add(node.submit(request("conv1", "m" + i), "alice").persisted().get(5, TimeUnit.SECONDS)
+                    .getSequence());
+        }
+        otherNode.shutdown();
+
+        // Then
+        assertEquals(List.of(6L, 7L, 8L, 9L), assigned);
+    }
+
+    @Test
+    void testLane_KeepsOrderAndBatchesWhileAWriteIsInFlight() throws Exception {
+        // Given: the first write blocks until the rest have been queued
+        when(messageStore.findLastSequence("conv1")).thenReturn(0L);
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<List<Long>> batches = new CopyOnWriteArrayList<>();
+        doAnswer(invocation -> {
+            List<ChatMessage> batch = invocation.getArgument(1);
+            batches.add(batch.stream().map(ChatMessage::getSequence).toList());
+            firstWriteStarted.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(chatService).persistBatch(eq("conv1"), anyList());
+
+        // When
+        List<ChatMessagePipeline.Accepted> accepted = new ArrayList<>();
+        accepted.add(pipeline.submit(request("conv1", "m1"), "alice"));
+        assertTrue(firstWriteStarted.await(5, TimeUnit.SECONDS));
+        for (int i = 2; i <= 10; i++) {
+            accepted.add(pipeline.submit(request("conv1", "m" + i), "alice"));
+        }
+        release.countDown();
+        for (ChatMessagePipeline.Accepted message : accepted) {
+            message.persisted().get(5, TimeUnit.SECONDS);
+        }
+
+        // Then
+        assertEquals(List.of(List.of(1L), List.of(2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L)), batches);
+    }
+
+    @Test
+    void testFailedWrite_CompletesExceptionally() {
+        // Given
+        when(messageStore.findLastSequence("conv1")).thenReturn(0L);
+        doThrow(new IllegalStateException("mongo down")).when(chatService).persistBatch(eq("conv1"), anyList());
+
+        // When
+        ChatMessagePipeline.Accepted accepted = pipeline.submit(request("conv1", "lost"), "alice");
+
+        // Then
+        assertThrows(Exception.class, () -> accepted.persisted().get(5, TimeUnit.SECONDS));
+        assertNotNull(accepted.message().getId());
+    }
+
+    private static SendMessageDTO request(String conversationId, String content) {
+        return SendMessageDTO.builder().conversationId(conversationId).content(content).messageType("TEXT").build();
+    }
+}
@@ -0,0 +1,183 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.UserSummaryDTO;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatRecentContacts;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatRecentContactsServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    private ChatRecentContactsService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatRecentContactsService(mongoTemplate, userSummaryCache, 50);
+    }
+
+    @Test
+    void testRecordIsOneUpsertPerParticipant() {
+        // Given: three messages from alice
+        List<ChatMessage> batch = List.of(message("alice", "one"), message("alice", "two"), message("alice", "three"));
+
+        // When
+        service.record("c1", Set.of("alice", "bob"), batch);
+
+        // Then: alice's unread restarts at zero; bob's grows by three from whatever it was
+        Map<String, Document> entries = recordedEntries(2);
+        assertEquals("bob", literal(entries.get("alice").get("peerId")));
+        assertEquals("alice", literal(entries.get("bob").get("peerId")));
+        assertEquals("three", literal(entries.get("alice").get("lastMessage")));
+        assertEquals(0L, entries.get("alice").get("unread"));
+        Document bobUnread = entries.get("bob").get("unread", Document.class);
+        assertEquals(3L, bobUnread.getList("$add", Object.class).get(1));
+        Document messageCount = entries.get("bob").get("messageCount", Document.class);
+        assertEquals(3L, messageCount.getList("$add", Object.class).get(1));
+    }
+
+    @Test
+    void testUnreadCountsOnlyMessagesAfterTheReadersOwnReply() {
+        // When: alice writes, bob replies, alice writes again
+        service.record("c1", Set.of("alice", "bob"),
+                List.of(message("alice", "one"), message("bob", "two"), message("alice", "three")));
+
+        // Then
+        Map<String, Document> entries = recordedEntries(2);
+        assertEquals(1L, entries.get("bob").get("unread"));
+        assertEquals(0L, entries.get("alice").get("unread"));
+    }
+
+    @Test
+    void testListIsSlicedToTheLimitWithThePeerMovedToTheFront() {
+        // When
+        service.record("c1", Set.of("alice", "bob"), List.of(message("alice", "hi")));
+
+        // Then
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate, times(2)).upsert(any(Query.class), update.capture(), eq(ChatRecentContacts.class));
+        Document slice = contacts(update.getValue()).get("$let", Document.class).get("in", Document.class);
+        List<Object> arguments = slice.getList("$slice", Object.class);
+        assertEquals(50, arguments.get(1));
+        List<Object> concatenated = ((Document) arguments.get(0)).getList("$concatArrays", Object.class);
+        assertEquals(2, concatenated.size());
+        assertEquals(1, ((List<?>) concatenated.get(0)).size());
+        assertTrue(((Document) concatenated.get(1)).containsKey("$filter"));
+    }
+
+    @Test
+    void testGroupSizedParticipantSetsAreIgnored() {
+        // When
+        service.record("g1", Set.of("alice", "bob", "carol"), List.of(message("alice", "hi")));
+
+        // Then
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testRecentUsersAreOneReadHydratedFromTheUserCache() {
+        // Given
+        when(mongoTemplate.findById("alice", ChatRecentContacts.class)).thenReturn(ChatRecentContacts.builder()
+                .userId("alice")
+                .contacts(List.of(ChatRecentContacts.Contact.builder().peerId("bob").build(),
+                        ChatRecentContacts.Contact.builder().peerId("gone").build()))
+                .build());
+        when(userSummaryCache.getByUsername("bob")).thenReturn(Optional.of(UserSummaryCache.CachedUser.builder()
+                .id(new org.bson.types.ObjectId()).userName("bob").firstName("Bob").roles(List.of()).build()));
+        when(userSummaryCache.getByUsername("gone")).thenReturn(Optional.empty());
+
+        // When
+        List<UserSummaryDTO> users = service.getRecentUsers("alice");
+
+        // Then
+        assertEquals(List.of("bob", "gone"), users.stream().map(UserSummaryDTO::getUserName).toList());
+        assertEquals("Bob", users.get(0).getFirstName());
+        verify(mongoTemplate, times(1)).findById("alice", ChatRecentContacts.class);
+    }
+
+    @Test
+    void testContactIsReadWithAPositionalProjection() {
+        // Given
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.findOne(query.capture(), eq(ChatRecentContacts.class))).thenReturn(ChatRecentContacts
+                .builder().contacts(List.of(ChatRecentContacts.Contact.builder().peerId("bob").unread(3).build()))
+                .build());
+
+        // When
+        Optional<ChatRecentContacts.Contact> contact = service.getContact("alice", "bob");
+
+        // Then
+        assertEquals(3, contact.orElseThrow().getUnread());
+        assertEquals("bob", query.getValue().getQueryObject().get("contacts.peerId"));
+        assertEquals(1, query.getValue().getFieldsObject().get("contacts.$"));
+    }
+
+    @Test
+    void testPreviewIsTruncated() {
+        String preview = ChatRecentContactsService.preview("x".repeat(500));
+
+        assertEquals(ChatRecentContactsService.PREVIEW_LENGTH, preview.length());
+        assertTrue(preview.endsWith("…"));
+        assertEquals("short", ChatRecentContactsService.preview("short"));
+    }
+
+    /**
+     * The entry each user's upsert prepends, by user
+     */
+    private Map<String, Document> recordedEntries(int upserts) {
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> updates = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate, times(upserts)).upsert(queries.capture(), updates.capture(), eq(ChatRecentContacts.class));
+        Map<String, Document> entries = new HashMap<>();
+        for (int i = 0; i < upserts; i++) {
+            Document slice = contacts(updates.getAllValues().get(i)).get("$let", Document.class).get("in", Document.class);
+            List<Object> concatenated = ((Document) slice.getList("$slice", Object.class).get(0))
+                    .getList("$concatArrays", Object.class);
+            entries.put(queries.getAllValues().get(i).getQueryObject().getString("_id"),
+                    (Document) ((List<?>) concatenated.get(0)).get(0));
+        }
+        return entries;
+    }
+
+    private static Document contacts(AggregationUpdate update) {
+        return update.toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$set", Document.class)
+                .get("contacts", Document.class);
+    }
+
+    private static Object literal(Object value) {
+        return ((Document) value).get("$literal");
+    }
+
+    private static ChatMessage message(String senderId, String content) {
+        return ChatMessage.builder().conversationId("c1").senderId(senderId).content(content).createdAt(NOW).build();
+    }
+}
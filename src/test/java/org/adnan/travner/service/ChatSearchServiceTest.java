@@ -0,0 +1,212 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.ChatSearchResultDTO;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.entry.ChatMessage;
+import org.adnan.travner.entry.ChatSearchEntry;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ChatSearchServiceTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2025, 3, 1, 9, 0);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private ChatMessageStore messageStore;
+
+    @Mock
+    private ConversationMembershipCache conversationMembers;
+
+    @Mock
+    private BulkOperations bulk;
+
+    private ChatSearchService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new ChatSearchService(mongoTemplate, messageStore, conversationMembers, 40, 256);
+        lenient().when(conversationMembers.isParticipant("c1", "alice")).thenReturn(true);
+    }
+
+    @Test
+    void testTermsAreNormalizedDistinctWords() {
+        assertEquals(List.of("meet", "at", "the", "cafe", "lisboa", "8pm"),
+                List.copyOf(service.tokenize("Meet at the Café — CAFÉ? Lisboa, 8pm! a")));
+        assertTrue(service.tokenize("x ! ?").isEmpty());
+        assertTrue(service.tokenize("https://t.co/" + "a".repeat(60)).contains("https"));
+        assertFalse(service.tokenize("a".repeat(60)).iterator().hasNext());
+    }
+
+    @Test
+    void testBatchIsOneBulkWriteOfEntries() {
+        // Given
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatSearchEntry.class)).thenReturn(bulk);
+        ChatMessage first = message(new ObjectId().toHexString(), "c1", "Dinner in Porto tonight?");
+        ChatMessage second = message(new ObjectId().toHexString(), "c1", "!!");
+
+        // When
+        service.index(List.of(first, second));
+
+        // Then: searchable content is upserted, content without words drops any old entry
+        ArgumentCaptor<Object> entry = ArgumentCaptor.forClass(Object.class);
+        verify(bulk).replaceOne(any(Query.class), entry.capture(), any(FindAndReplaceOptions.class));
+        assertEquals(List.of("dinner", "in", "porto", "tonight"), ((ChatSearchEntry) entry.getValue()).getTerms());
+        assertEquals(first.getId(), ((ChatSearchEntry) entry.getValue()).getMessageId());
+        verify(bulk).remove(any(Query.class));
+        verify(bulk, times(1)).execute();
+    }
+
+    @Test
+    void testSearchWithoutConversationIsScopedToParticipatingConversations() {
+        // Given
+        ArgumentCaptor<Query> participating = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.find(participating.capture(), eq(ChatConversation.class)))
+                .thenReturn(List.of(conversation("c1"), conversation("c2")));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        List<ChatSearchEntry> found = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            found.add(entry(new ObjectId().toHexString(), "c" + (i % 2 + 1), "porto trip " + i));
+        }
+        when(mongoTemplate.find(query.capture(), eq(ChatSearchEntry.class))).thenReturn(found);
+
+        // When
+        ChatSearchResultDTO result = service.search("alice", null, "Trip PORTO", null, 2);
+
+        // Then: the scope comes from participantIds, not membership rows
+        assertEquals(new Document("participantIds", "alice"), participating.getValue().getQueryObject());
+        Document filter = query.getValue().getQueryObject();
+        assertEquals(List.of("c1", "c2"), filter.get("conversationId", Document.class).get("$in"));
+        assertEquals(List.of("trip", "porto"), filter.get("terms", Document.class).get("$all"));
+        assertEquals(new Document("createdAt", -1).append("_id", -1), query.getValue().getSortObject());
+        assertEquals(3, query.getValue().getLimit());
+        assertEquals(2, result.getHits().size());
+        assertTrue(result.isHasMore());
+        assertEquals(found.get(1).getMessageId(), result.getNextCursor());
+    }
+
+    @Test
+    void testUserWithoutConversationsFindsNothing() {
+        when(mongoTemplate.find(any(Query.class), eq(ChatConversation.class))).thenReturn(List.of());
+
+        ChatSearchResultDTO result = service.search("alice", null, "porto", null, 20);
+
+        assertTrue(result.getHits().isEmpty());
+        verify(mongoTemplate, never()).find(any(Query.class), eq(ChatSearchEntry.class));
+    }
+
+    @Test
+    void testConversationSearchRejectsNonParticipants() {
+        when(conversationMembers.isParticipant("c2", "alice")).thenReturn(false);
+
+        assertThrows(IllegalArgumentException.class, () -> service.search("alice", "c2", "porto", null, 20));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testNextPageContinuesAfterTheCursor() {
+        // Given
+        String cursorId = new ObjectId().toHexString();
+        when(mongoTemplate.findOne(any(Query.class), eq(ChatSearchEntry.class)))
+                .thenReturn(entry(cursorId, "c1", "porto"));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        when(mongoTemplate.find(query.capture(), eq(ChatSearchEntry.class))).thenReturn(List.of());
+
+        // When
+        ChatSearchResultDTO result = service.search("alice", "c1", "porto", cursorId, 20);
+
+        // Then: strictly older, ties on time broken by id
+        List<?> keyset = query.getValue().getQueryObject().getList("$or", Object.class);
+        assertEquals(new Document("createdAt", new Document("$lt", NOW)), keyset.get(0));
+        assertEquals(new Document("createdAt", NOW).append("_id", new Document("$lt", new ObjectId(cursorId))),
+                keyset.get(1));
+        assertEquals("c1", query.getValue().getQueryObject().get("conversationId"));
+        assertFalse(result.isHasMore());
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    void testUnknownCursorAndWordlessQueryAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> service.search("alice", "c1", "porto", "nope", 20));
+        assertThrows(IllegalArgumentException.class, () -> service.search("alice", "c1", " ? a ", null, 20));
+    }
+
+    @Test
+    void testSnippetIsAWindowAroundTheFirstMatchWithHighlights() {
+        // Given: a long message with the match in the middle
+        String content = "x".repeat(100) + " we land in Porto at noon, Porto again " + "y".repeat(100);
+        when(mongoTemplate.find(any(Query.class), eq(ChatSearchEntry.class)))
+                .thenReturn(List.of(entry(new ObjectId().toHexString(), "c1", content)));
+
+        // When
+        ChatSearchResultDTO.Hit hit = service.search("alice", "c1", "porto", null, 20).getHits().get(0);
+
+        // Then
+        assertTrue(hit.getSnippet().startsWith("…"));
+        assertTrue(hit.getSnippet().endsWith("…"));
+        assertEquals(40 + 2, hit.getSnippet().length());
+        assertFalse(hit.getHighlights().isEmpty());
+        for (ChatSearchResultDTO.Highlight highlight : hit.getHighlights()) {
+            assertEquals("Porto", hit.getSnippet().substring(highlight.getStart(), highlight.getEnd()));
+        }
+    }
+
+    @Test
+    void testRebuildStreamsHistoryPageByPage() {
+        // Given: a full page, then the rest
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, ChatSearchEntry.class)).thenReturn(bulk);
+        List<ChatMessage> newest = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            newest.add(message(new ObjectId().toHexString(), "c1", "message " + i));
+        }
+        ChatMessage oldest = message(new ObjectId().toHexString(), "c1", "first words");
+        when(messageStore.findNewest("c1", 500)).thenReturn(newest);
+        when(messageStore.findBefore(newest.get(499), 500)).thenReturn(List.of(oldest));
+
+        // When
+        long read = service.rebuild("c1");
+
+        // Then
+        assertEquals(501, read);
+        verify(mongoTemplate).remove(any(Query.class), eq(ChatSearchEntry.class));
+        verify(bulk, times(2)).execute();
+        verify(bulk, times(501)).replaceOne(any(Query.class), any(), any(FindAndReplaceOptions.class));
+    }
+
+    private static ChatMessage message(String id, String conversationId, String content) {
+        return ChatMessage.builder().id(id).conversationId(conversationId).senderId("alice").content(content)
+                .createdAt(NOW).build();
+    }
+
+    private static ChatSearchEntry entry(String id, String conversationId, String content) {
+        return ChatSearchEntry.builder().messageId(id).conversationId(conversationId).senderId("bob")
+                .content(content).createdAt(NOW).build();
+    }
+
+    private static ChatConversation conversation(String conversationId) {
+        return ChatConversation.builder().id(conversationId).participantIds(List.of("alice", "bob")).build();
+    }
+}
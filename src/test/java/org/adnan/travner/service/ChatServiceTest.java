@@ -1,12 +1,18 @@
 package org.adnan.travner.service;
 
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.domain.conversation.ConversationMembershipRepository;
 import org.adnan.travner.dto.ChatConversationDTO;
 import org.adnan.travner.dto.ChatMessageDTO;
+import org.adnan.travner.dto.ChatMessageWindowDTO;
 import org.adnan.travner.dto.SendMessageDTO;
+import org.adnan.travner.dto.chat.AddMembersRequest;
 import org.adnan.travner.entry.ChatConversation;
 import org.adnan.travner.entry.ChatMessage;
 import org.adnan.travner.repository.ChatConversationRepository;
 import org.adnan.travner.repository.ChatMessageRepository;
+import org.adnan.travner.repository.ChatMessageStore;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -15,16 +21,22 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.*;
 
 /**
@@ -33,6 +45,9 @@ import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 class ChatServiceTest {
 
+    @Mock
+    private ChatMessageStore messageStore;
+
     @Mock
     private ChatMessageRepository chatMessageRepository;
 
@@ -40,7 +55,22 @@ class ChatServiceTest {
     private ChatConversationRepository chatConversationRepository;
 
     @Mock
-    private UserService userService;
+    private PrincipalContext principalContext;
+
+    @Mock
+    private ConversationMembershipRepository membershipRepository;
+
+    @Mock
+    private ConversationMembershipCache conversationMembers;
+
+    @Mock
+    private ChatActivityRollupService activityRollups;
+
+    @Mock
+    private ChatRecentContactsService recentContacts;
+
+    @Mock
+    private ChatSearchService searchIndex;
 
     @InjectMocks
     private ChatService chatService;
@@ -78,9 +108,9 @@ class ChatServiceTest {
 
     @Test
     void testGetOrCreateDirectConversation_ExistingConversation() {
-        // Given
-        when(chatConversationRepository.findDirectConversationBetweenUsers("user1", "user2"))
-                .thenReturn(Optional.of(testConversation));
+        // Given: the upsert matched a conversation created earlier
+        when(chatConversationRepository.upsertDirectConversation(any(ChatConversation.class)))
+                .thenReturn(testConversation);
 
         // When
         ChatConversationDTO result = chatService.getOrCreateDirectConversation("user1", "user2");
@@ -90,23 +120,38 @@ class ChatServiceTest {
         assertEquals("conv1", result.getId());
         assertEquals("DIRECT", result.getType());
         verify(chatConversationRepository, never()).save(any());
+        verify(conversationMembers, never()).put(any());
     }
 
     @Test
     void testGetOrCreateDirectConversation_NewConversation() {
-        // Given
-        when(chatConversationRepository.findDirectConversationBetweenUsers("user1", "user2"))
-                .thenReturn(Optional.empty());
-        when(chatConversationRepository.save(any(ChatConversation.class)))
-                .thenReturn(testConversation);
+        // Given: the upsert inserted the candidate
+        when(chatConversationRepository.upsertDirectConversation(any(ChatConversation.class)))
+                .thenAnswer(invocation -> invocation.getArgument(0));
 
         // When
         ChatConversationDTO result = chatService.getOrCreateDirectConversation("user1", "user2");
 
         // Then
         assertNotNull(result);
-        assertEquals("conv1", result.getId());
-        verify(chatConversationRepository).save(any(ChatConversation.class));
+        assertTrue(ObjectId.isValid(result.getId()));
+        verify(conversationMembers).put(any(ChatConversation.class));
+        verify(membershipRepository).saveAll(any());
+    }
+
+    @Test
+    void testGetOrCreateDirectConversation_PairKeyIsOrderIndependent() {
+        // Given
+        when(chatConversationRepository.upsertDirectConversation(any(ChatConversation.class)))
+                .thenReturn(testConversation);
+
+        // When
+        chatService.getOrCreateDirectConversation("user2", "user1");
+        chatService.getOrCreateDirectConversation("user1", "user2");
+
+        // Then
+        verify(chatConversationRepository, times(2)).upsertDirectConversation(
+                argThat(candidate -> "user1:user2".equals(candidate.getPairKey())));
     }
 
     @Test
@@ -118,22 +163,23 @@ class ChatServiceTest {
                 .messageType("TEXT")
                 .build();
 
-        when(chatConversationRepository.findById("conv1"))
-                .thenReturn(Optional.of(testConversation));
-        when(chatMessageRepository.save(any(ChatMessage.class)))
-                .thenReturn(testMessage);
-        when(chatConversationRepository.save(any(ChatConversation.class)))
-                .thenReturn(testConversation);
+        when(conversationMembers.get("conv1"))
+                .thenReturn(Optional.of(members(testConversation)));
+        when(membershipRepository.incrementUnreadCount("conv1", List.of("user2"), 1L)).thenReturn(1L);
 
         // When
-        ChatMessageDTO result = chatService.sendMessage(request, "user1");
+        ChatMessage prepared = chatService.prepareMessage(request, "user1");
+        prepared.setId("msg1");
+        chatService.persistBatch("conv1", List.of(prepared));
+        ChatMessageDTO result = chatService.toMessageDTO(prepared);
 
         // Then
         assertNotNull(result);
         assertEquals("msg1", result.getId());
         assertEquals("Test message", result.getContent());
-        verify(chatMessageRepository).save(any(ChatMessage.class));
-        verify(chatConversationRepository).save(any(ChatConversation.class));
+        assertEquals("DELIVERED", result.getStatus());
+        verify(messageStore).append("conv1", List.of(prepared));
+        verify(chatConversationRepository).updateLastMessage(eq("conv1"), eq("Test message"), any());
     }
 
     @Test
@@ -160,7 +206,7 @@ class ChatServiceTest {
         List<ChatMessage> messages = Arrays.asList(testMessage);
         Page<ChatMessage> messagePage = new PageImpl<>(messages);
         
-        when(chatMessageRepository.findByConversationIdOrderByCreatedAtDesc("conv1", any(Pageable.class)))
+        when(messageStore.findPage(eq("conv1"), any(Pageable.class)))
                 .thenReturn(messagePage);
 
         // When
@@ -171,6 +217,288 @@ class ChatServiceTest {
         assertEquals(1, result.getContent().size());
         assertEquals("msg1", result.getContent().get(0).getId());
     }
-}
 
+    @Test
+    void testPersistBatch_OneInsertAndCoalescedUpdates() {
+        // Given: two messages from user1 and one from user2 in a single batch
+        when(conversationMembers.get("conv1")).thenReturn(Optional.of(members(testConversation)));
+        when(membershipRepository.incrementUnreadCount("conv1", List.of("user2"), 2L)).thenReturn(1L);
+        when(membershipRepository.incrementUnreadCount("conv1", List.of("user1"), 1L)).thenReturn(1L);
+        List<ChatMessage> batch = List.of(
+                ChatMessage.builder().conversationId("conv1").senderId("user1").content("one").build(),
+                ChatMessage.builder().conversationId("conv1").senderId("user2").content("two").build(),
+                ChatMessage.builder().conversationId("conv1").senderId("user1").content("three").build());
+
+        // When
+        chatService.persistBatch("conv1", batch);
+
+        // Then
+        verify(messageStore).append("conv1", batch);
+        verify(chatConversationRepository).updateLastMessage(eq("conv1"), eq("three"), any());
+        verify(membershipRepository).incrementUnreadCount("conv1", List.of("user2"), 2L);
+        verify(membershipRepository).incrementUnreadCount("conv1", List.of("user1"), 1L);
+        verify(chatConversationRepository, never()).findById(any());
+        verify(chatMessageRepository, never()).countUnreadByLegacyReadBy(any(), any());
+        verify(membershipRepository, never()).saveAll(any());
+        verify(activityRollups).record(batch);
+        verify(searchIndex).index(batch);
+        verify(recentContacts).record("conv1", Set.of("user1", "user2"), batch);
+    }
+
+    @Test
+    void testPersistBatch_GroupConversationsSkipRecentContacts() {
+        // Given
+        testConversation.setType("GROUP");
+        when(conversationMembers.get("conv1")).thenReturn(Optional.of(members(testConversation)));
+        when(membershipRepository.incrementUnreadCount("conv1", List.of("user2"), 1L)).thenReturn(1L);
+        List<ChatMessage> batch = List.of(
+                ChatMessage.builder().conversationId("conv1").senderId("user1").content("one").build());
+
+        // When
+        chatService.persistBatch("conv1", batch);
+
+        // Then
+        verify(recentContacts, never()).record(any(), any(), any());
+    }
+
+    @Test
+    void testGetUserConversations_ReturnsViewersOwnUnreadCount() {
+        // Given
+        Pageable pageable = PageRequest.of(0, 20);
+        when(chatConversationRepository.findByParticipantIdsContainingAndIsActiveTrue("user2", pageable))
+                .thenReturn(new PageImpl<>(List.of(testConversation), pageable, 1));
+        when(membershipRepository.findByUserIdAndConversationIdIn("user2", List.of("conv1")))
+                .thenReturn(List.of(ConversationMembership.builder()
+                        .conversationId("conv1").userId("user2").unreadCount(3).build()));
+
+        // When
+        Page<ChatConversationDTO> result = chatService.getUserConversations("user2", pageable);
+
+        // Then
+        assertEquals(3, result.getContent().get(0).getUnreadCount());
+        verify(chatMessageRepository, never()).countUnreadByLegacyReadBy(any(), any());
+    }
+
+    @Test
+    void testMarkMessagesAsRead_SubtractsOnlyTheMessagesPassed() {
+        // Given: user2 had read up to a minute before the newest message
+        LocalDateTime previous = testMessage.getCreatedAt().minusMinutes(1);
+        when(conversationMembers.isParticipant("conv1", "user2")).thenReturn(true);
+        when(messageStore.findLatest("conv1")).thenReturn(Optional.of(testMessage));
+        when(membershipRepository.findByConversationIdAndUserId("conv1", "user2")).thenReturn(Optional.of(
+                ConversationMembership.builder().conversationId("conv1").userId("user2")
+                        .lastReadMessageAt(previous).unreadCount(5).build()));
+        when(messageStore.countFromOthers("conv1", "user2", previous, testMessage.getCreatedAt())).thenReturn(2L);
+        when(membershipRepository.markRead(eq("conv1"), eq("user2"), any(), eq("msg1"),
+                eq(testMessage.getCreatedAt()), eq(previous), eq(2L))).thenReturn(1L);
+
+        // When
+        chatService.markMessagesAsRead("conv1", "user2");
+
+        // Then: one guarded write, no reset of messages counted meanwhile
+        verify(membershipRepository, times(1)).markRead(any(), any(), any(), any(), any(), any(), anyLong());
+        verify(chatMessageRepository, never()).save(any(ChatMessage.class));
+        verify(membershipRepository, never()).saveAll(any());
+    }
+
+    @Test
+    void testMarkMessagesAsRead_RecountsWhenTheWatermarkMoved() {
+        // Given: another mark-read moves the watermark between the read and the write
+        LocalDateTime moved = testMessage.getCreatedAt().minusSeconds(10);
+        when(conversationMembers.isParticipant("conv1", "user2")).thenReturn(true);
+        when(messageStore.findLatest("conv1")).thenReturn(Optional.of(testMessage));
+        when(membershipRepository.findByConversationIdAndUserId("conv1", "user2"))
+                .thenReturn(Optional.of(ConversationMembership.builder().conversationId("conv1").userId("user2").build()))
+                .thenReturn(Optional.of(ConversationMembership.builder().conversationId("conv1").userId("user2")
+                        .lastReadMessageAt(moved).build()));
+        when(messageStore.countFromOthers("conv1", "user2", null, testMessage.getCreatedAt())).thenReturn(4L);
+        when(messageStore.countFromOthers("conv1", "user2", moved, testMessage.getCreatedAt())).thenReturn(1L);
+        when(membershipRepository.markRead(eq("conv1"), eq("user2"), any(), eq("msg1"), any(), isNull(), eq(4L)))
+                .thenReturn(0L);
+        when(membershipRepository.markRead(eq("conv1"), eq("user2"), any(), eq("msg1"), any(), eq(moved), eq(1L)))
+                .thenReturn(1L);
+
+        // When
+        chatService.markMessagesAsRead("conv1", "user2");
+
+        // Then
+        verify(membershipRepository, times(2)).markRead(any(), any(), any(), any(), any(), any(), anyLong());
+    }
+
+    @Test
+    void testMarkMessagesAsRead_ClearsRecentContactUnread() {
+        // Given
+        when(conversationMembers.isParticipant("conv1", "user2")).thenReturn(true);
+        when(conversationMembers.get("conv1")).thenReturn(Optional.of(members(testConversation)));
+        when(messageStore.findLatest("conv1")).thenReturn(Optional.of(testMessage));
+        when(membershipRepository.findByConversationIdAndUserId("conv1", "user2")).thenReturn(Optional.of(
+                ConversationMembership.builder().conversationId("conv1").userId("user2").build()));
+        when(membershipRepository.markRead(eq("conv1"), eq("user2"), any(), eq("msg1"), any(), any(), anyLong()))
+                .thenReturn(1L);
+
+        // When
+        chatService.markMessagesAsRead("conv1", "user2");
 
+        // Then
+        verify(recentContacts).markRead("user2", "conv1");
+    }
+
+    @Test
+    void testMarkMessagesAsRead_NonParticipantCreatesNoMembership() {
+        // Given
+        when(conversationMembers.isParticipant("conv1", "stranger")).thenReturn(false);
+
+        // When / Then
+        assertThrows(RuntimeException.class, () -> chatService.markMessagesAsRead("conv1", "stranger"));
+        verifyNoInteractions(membershipRepository);
+    }
+
+    @Test
+    void testGetConversationMessages_ReadStateDerivedFromWatermarks() {
+        // Given: user2 has read up to the older message only
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessage older = ChatMessage.builder().id("msg1").conversationId("conv1").senderId("user1")
+                .createdAt(now.minusMinutes(1)).status("DELIVERED").build();
+        ChatMessage newer = ChatMessage.builder().id("msg2").conversationId("conv1").senderId("user1")
+                .createdAt(now).status("DELIVERED").build();
+        Pageable pageable = PageRequest.of(0, 20);
+        when(messageStore.findPage("conv1", pageable))
+                .thenReturn(new PageImpl<>(List.of(newer, older), pageable, 2));
+        when(membershipRepository.findByConversationId("conv1")).thenReturn(List.of(
+                ConversationMembership.builder().conversationId("conv1").userId("user1").build(),
+                ConversationMembership.builder().conversationId("conv1").userId("user2")
+                        .lastReadMessageId("msg1").lastReadMessageAt(older.getCreatedAt()).build()));
+
+        // When
+        List<ChatMessageDTO> result = chatService.getConversationMessages("conv1", pageable).getContent();
+
+        // Then
+        assertEquals("DELIVERED", result.get(0).getStatus());
+        assertEquals(List.of("user1"), result.get(0).getReadBy());
+        assertEquals("READ", result.get(1).getStatus());
+        assertEquals(List.of("user1", "user2"), result.get(1).getReadBy());
+        verify(membershipRepository, times(1)).findByConversationId("conv1");
+    }
+
+    @Test
+    void testSendMessage_ArchivedConversationIsRejected() {
+        // Given
+        testConversation.setActive(false);
+        when(conversationMembers.get("conv1")).thenReturn(Optional.of(members(testConversation)));
+        SendMessageDTO request = SendMessageDTO.builder().conversationId("conv1").content("Hi").build();
+
+        // When / Then
+        assertThrows(RuntimeException.class, () -> chatService.prepareMessage(request, "user1"));
+    }
+
+    @Test
+    void testAddMembers_InvalidatesMembershipCache() {
+        // Given
+        testConversation.setType("GROUP");
+        when(chatConversationRepository.findById("conv1")).thenReturn(Optional.of(testConversation));
+        when(membershipRepository.findByConversationId("conv1")).thenReturn(List.of());
+        AddMembersRequest request = AddMembersRequest.builder()
+                .conversationId("conv1").userIds(List.of("user2", "user3")).build();
+
+        // When
+        chatService.addMembers(request, "user1");
+
+        // Then
+        verify(chatConversationRepository).addParticipants(eq("conv1"), eq(List.of("user3")), any());
+        verify(conversationMembers).invalidate("conv1");
+    }
+
+    @Test
+    void testArchiveConversation_InvalidatesMembershipCache() {
+        // Given
+        when(conversationMembers.isParticipant("conv1", "user1")).thenReturn(true);
+
+        // When
+        chatService.archiveConversation("conv1", "user1");
+
+        // Then
+        verify(chatConversationRepository).archive(eq("conv1"), any());
+        verify(conversationMembers).invalidate("conv1");
+    }
+
+    @Test
+    void testSetMuted_InvalidatesMembershipCache() {
+        // Given
+        when(conversationMembers.isParticipant("conv1", "user2")).thenReturn(true);
+        when(membershipRepository.setMuted("conv1", "user2", true)).thenReturn(1L);
+
+        // When
+        chatService.setMuted("conv1", "user2", true);
+
+        // Then
+        verify(membershipRepository).setMuted("conv1", "user2", true);
+        verify(conversationMembers).invalidate("conv1");
+    }
+
+    @Test
+    void testGetMessageWindow_BeforeCursorIsChronologicalWithoutCount() {
+        // Given: three older messages exist before the cursor, limit is two
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessage cursor = message(now, "conv1");
+        ChatMessage m3 = message(now.minusMinutes(1), "conv1");
+        ChatMessage m2 = message(now.minusMinutes(2), "conv1");
+        ChatMessage m1 = message(now.minusMinutes(3), "conv1");
+        when(messageStore.findById("conv1", cursor.getId())).thenReturn(Optional.of(cursor));
+        when(messageStore.findBefore(cursor, 3)).thenReturn(List.of(m3, m2, m1));
+        when(membershipRepository.findByConversationId("conv1")).thenReturn(List.of());
+
+        // When
+        ChatMessageWindowDTO window = chatService.getMessageWindow("conv1", cursor.getId(), null, null, 2);
+
+        // Then
+        assertEquals(List.of(m2.getId(), m3.getId()), window.getMessages().stream().map(ChatMessageDTO::getId).toList());
+        assertTrue(window.isHasMoreBefore());
+        assertTrue(window.isHasMoreAfter());
+        assertEquals(m2.getId(), window.getBeforeCursor());
+        verify(messageStore, never()).findPage(any(), any());
+        verify(messageStore, never()).count();
+    }
+
+    @Test
+    void testGetMessageWindow_AroundReturnsAnchorInTheMiddle() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        ChatMessage anchor = message(now, "conv1");
+        ChatMessage older = message(now.minusMinutes(1), "conv1");
+        ChatMessage newer = message(now.plusMinutes(1), "conv1");
+        when(messageStore.findById("conv1", anchor.getId())).thenReturn(Optional.of(anchor));
+        when(messageStore.findBefore(eq(anchor), anyInt())).thenReturn(List.of(older));
+        when(messageStore.findAfter(eq(anchor), anyInt())).thenReturn(List.of(newer));
+        when(membershipRepository.findByConversationId("conv1")).thenReturn(List.of());
+
+        // When
+        ChatMessageWindowDTO window = chatService.getMessageWindow("conv1", null, null, anchor.getId(), 5);
+
+        // Then
+        assertEquals(List.of(older.getId(), anchor.getId(), newer.getId()),
+                window.getMessages().stream().map(ChatMessageDTO::getId).toList());
+        assertFalse(window.isHasMoreBefore());
+        assertFalse(window.isHasMoreAfter());
+    }
+
+    @Test
+    void testGetMessageWindow_CursorFromAnotherConversationIsRejected() {
+        // Given: the store only finds messages within the requested conversation
+        ChatMessage foreign = message(LocalDateTime.now(), "conv2");
+        when(messageStore.findById("conv1", foreign.getId())).thenReturn(Optional.empty());
+
+        // When / Then
+        assertThrows(IllegalArgumentException.class,
+                () -> chatService.getMessageWindow("conv1", foreign.getId(), null, null, 10));
+    }
+
+    private static ChatMessage message(LocalDateTime createdAt, String conversationId) {
+        return ChatMessage.builder().id(new ObjectId().toHexString()).conversationId(conversationId)
+                .senderId("user1").createdAt(createdAt).status("DELIVERED").build();
+    }
+
+    private static ConversationMembershipCache.Members members(ChatConversation conversation) {
+        return new ConversationMembershipCache.Members(conversation.getType(),
+                Set.copyOf(conversation.getParticipantIds()), conversation.isActive(), Set.of());
+    }
+}
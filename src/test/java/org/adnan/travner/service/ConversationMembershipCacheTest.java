@@ -0,0 +1,121 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.domain.conversation.ConversationMembership;
+import org.adnan.travner.domain.conversation.ConversationMembershipRepository;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.repository.ChatConversationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConversationMembershipCacheTest {
+
+    @Mock
+    private ChatConversationRepository chatConversationRepository;
+
+    @Mock
+    private ConversationMembershipRepository membershipRepository;
+
+    private final PresenceSync sync = new LocalPresenceSync();
+    private ConversationMembershipCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new ConversationMembershipCache(chatConversationRepository, membershipRepository, sync, 100, 60);
+        cache.start();
+    }
+
+    @Test
+    void testIsParticipant_LoadsConversationOnce() {
+        // Given
+        when(chatConversationRepository.findById("conv1")).thenReturn(Optional.of(conversation("alice", "bob")));
+
+        // When
+        boolean alice = cache.isParticipant("conv1", "alice");
+        boolean mallory = cache.isParticipant("conv1", "mallory");
+        boolean bob = cache.isParticipant("conv1", "bob");
+
+        // Then
+        assertTrue(alice);
+        assertFalse(mallory);
+        assertTrue(bob);
+        verify(chatConversationRepository, times(1)).findById("conv1");
+    }
+
+    @Test
+    void testInvalidate_ReloadsChangedMembers() {
+        // Given
+        when(chatConversationRepository.findById("conv1"))
+                .thenReturn(Optional.of(conversation("alice", "bob")))
+                .thenReturn(Optional.of(conversation("alice", "bob", "carol")));
+        assertFalse(cache.isParticipant("conv1", "carol"));
+
+        // When
+        cache.invalidate("conv1");
+
+        // Then
+        assertTrue(cache.isParticipant("conv1", "carol"));
+    }
+
+    @Test
+    void testInvalidate_ReachesOtherNodes() {
+        // Given: a second node sharing the sync channel, both with conv1 cached
+        ConversationMembershipCache otherNode = new ConversationMembershipCache(chatConversationRepository,
+                membershipRepository, sync, 100, 60);
+        otherNode.start();
+        when(chatConversationRepository.findById("conv1"))
+                .thenReturn(Optional.of(conversation("alice", "bob", "carol")))
+                .thenReturn(Optional.of(conversation("alice", "bob")));
+        assertTrue(otherNode.isParticipant("conv1", "carol"));
+
+        // When: carol is removed through this node
+        cache.invalidate("conv1");
+
+        // Then
+        assertFalse(otherNode.isParticipant("conv1", "carol"));
+    }
+
+    @Test
+    void testMutedMembersLoadedWithParticipants() {
+        // Given
+        when(chatConversationRepository.findById("conv1")).thenReturn(Optional.of(conversation("alice", "bob")));
+        when(membershipRepository.findByConversationIdAndMutedTrue("conv1")).thenReturn(List.of(
+                ConversationMembership.builder().conversationId("conv1").userId("bob").muted(true).build()));
+
+        // When
+        ConversationMembershipCache.Members members = cache.get("conv1").orElseThrow();
+
+        // Then
+        assertTrue(members.isMuted("bob"));
+        assertFalse(members.isMuted("alice"));
+        cache.get("conv1");
+        verify(membershipRepository, times(1)).findByConversationIdAndMutedTrue("conv1");
+    }
+
+    @Test
+    void testUnknownConversationIsNotCached() {
+        // Given
+        when(chatConversationRepository.findById("missing")).thenReturn(Optional.empty());
+
+        // When
+        assertFalse(cache.isParticipant("missing", "alice"));
+        assertFalse(cache.isParticipant("missing", "alice"));
+
+        // Then
+        verify(chatConversationRepository, times(2)).findById("missing");
+    }
+
+    private static ChatConversation conversation(String... participants) {
+        return ChatConversation.builder().id("conv1").type("GROUP").participantIds(List.of(participants))
+                .isActive(true).build();
+    }
+}
@@ -0,0 +1,197 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.FollowEntry;
+import org.adnan.travner.repository.FollowRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FollowGraphTest {
+
+    @Mock
+    private FollowRepository followRepository;
+
+    private final LocalPresenceSync sync = new LocalPresenceSync();
+    private FollowGraph followGraph;
+    private ObjectId alice;
+    private ObjectId bob;
+    private ObjectId carol;
+    private ObjectId dave;
+    private ObjectId erin;
+
+    @BeforeEach
+    void setUp() {
+        followGraph = new FollowGraph(followRepository, sync, 2);
+        followGraph.start();
+        alice = new ObjectId();
+        bob = new ObjectId();
+        carol = new ObjectId();
+        dave = new ObjectId();
+        erin = new ObjectId();
+    }
+
+    @Test
+    void testSuggest_RankedByMutualCountExcludingFollowed() {
+        // Given: alice follows bob and carol; both follow dave, only carol follows erin
+        when(followRepository.streamEdges()).thenReturn(Stream.of(
+                edge(alice, bob), edge(alice, carol),
+                edge(bob, dave), edge(carol, dave),
+                edge(carol, erin), edge(carol, alice), edge(bob, carol)));
+        followGraph.rebuild();
+
+        // When
+        List<FollowGraph.Suggestion> suggestions = followGraph.suggest(alice, 10);
+
+        // Then
+        assertEquals(List.of(new FollowGraph.Suggestion(dave, 2), new FollowGraph.Suggestion(erin, 1)), suggestions);
+    }
+
+    @Test
+    void testFollowAndUnfollowPatchTheGraph() {
+        // Given
+        when(followRepository.streamEdges()).thenReturn(Stream.of(edge(alice, bob), edge(bob, carol)));
+        followGraph.rebuild();
+        ObjectId newcomer = new ObjectId();
+
+        // When
+        followGraph.onFollow(bob, newcomer);
+        followGraph.onFollow(alice, carol);
+
+        // Then
+        assertEquals(List.of(new FollowGraph.Suggestion(newcomer, 1)), followGraph.suggest(alice, 10));
+
+        // When
+        followGraph.onUnfollow(alice, bob);
+
+        // Then
+        assertTrue(followGraph.suggest(alice, 10).isEmpty());
+    }
+
+    @Test
+    void testCompactionKeepsPatchedEdges() {
+        // Given a threshold of 2 patched rows, the third patched row triggers compaction
+        when(followRepository.streamEdges()).thenReturn(Stream.empty());
+        followGraph.rebuild();
+
+        // When
+        followGraph.onFollow(alice, bob);
+        followGraph.onFollow(bob, carol);
+        followGraph.onFollow(carol, dave);
+        followGraph.onFollow(bob, erin);
+
+        // Then
+        assertEquals(List.of(new FollowGraph.Suggestion(carol, 1), new FollowGraph.Suggestion(erin, 1)),
+                followGraph.suggest(alice, 10));
+    }
+
+    @Test
+    void testSuggest_ParallelCountMatchesExpectedMutuals() {
+        // Given: alice follows 200 users, every third of which follows the same target
+        ObjectId target = new ObjectId();
+        List<FollowEntry> edges = new ArrayList<>();
+        IntStream.range(0, 200).forEach(i -> {
+            ObjectId friend = new ObjectId();
+            edges.add(edge(alice, friend));
+            if (i % 3 == 0) {
+                edges.add(edge(friend, target));
+            }
+            edges.add(edge(friend, new ObjectId()));
+        });
+        when(followRepository.streamEdges()).thenReturn(edges.stream());
+        followGraph.rebuild();
+
+        // When
+        List<FollowGraph.Suggestion> suggestions = followGraph.suggest(alice, 5);
+
+        // Then
+        assertEquals(5, suggestions.size());
+        assertEquals(new FollowGraph.Suggestion(target, 67), suggestions.get(0));
+        assertTrue(suggestions.stream().skip(1).allMatch(s -> s.mutualCount() == 1));
+    }
+
+    @Test
+    void testSuggest_IneligibleCandidatesDoNotTakeSlots() {
+        // Given: dave ranks first but is filtered out
+        when(followRepository.streamEdges()).thenReturn(Stream.of(
+                edge(alice, bob), edge(alice, carol),
+                edge(bob, dave), edge(carol, dave), edge(carol, erin)));
+        followGraph.rebuild();
+
+        // When
+        List<FollowGraph.Suggestion> suggestions = followGraph.suggest(alice, 1, candidate -> !candidate.equals(dave));
+
+        // Then
+        assertEquals(List.of(new FollowGraph.Suggestion(erin, 1)), suggestions);
+    }
+
+    @Test
+    void testSuggest_WidensUntilEnoughEligibleCandidates() {
+        // Given: alice follows bob, who follows ten users; the best-ranked are filtered out
+        List<FollowEntry> edges = new ArrayList<>(List.of(edge(alice, bob), edge(alice, carol)));
+        List<ObjectId> candidates = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ObjectId candidate = new ObjectId();
+            candidates.add(candidate);
+            edges.add(edge(bob, candidate));
+            if (i < 5) {
+                edges.add(edge(carol, candidate));
+            }
+        }
+        when(followRepository.streamEdges()).thenReturn(edges.stream());
+        followGraph.rebuild();
+
+        // When: only candidates 3, 4 and 7 are eligible
+        List<ObjectId> eligible = List.of(candidates.get(3), candidates.get(4), candidates.get(7));
+        List<FollowGraph.Suggestion> suggestions = followGraph.suggest(alice, 3, eligible::contains);
+
+        // Then
+        assertEquals(List.of(2, 2, 1), suggestions.stream().map(FollowGraph.Suggestion::mutualCount).toList());
+        assertEquals(Set.copyOf(eligible),
+                suggestions.stream().map(FollowGraph.Suggestion::userId).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testPatch_FollowOnAnotherNodeIsApplied() {
+        // Given
+        FollowGraph otherNode = new FollowGraph(followRepository, sync, 2);
+        otherNode.start();
+        when(followRepository.streamEdges()).thenAnswer(invocation -> Stream.of(edge(alice, bob)));
+        followGraph.rebuild();
+        otherNode.rebuild();
+
+        // When
+        otherNode.onFollow(bob, carol);
+
+        // Then
+        assertEquals(List.of(new FollowGraph.Suggestion(carol, 1)), followGraph.suggest(alice, 10));
+
+        // When
+        otherNode.onUnfollow(bob, carol);
+
+        // Then
+        assertTrue(followGraph.suggest(alice, 10).isEmpty());
+    }
+
+    @Test
+    void testSuggest_UnknownUserIsEmpty() {
+        assertTrue(followGraph.suggest(new ObjectId(), 10).isEmpty());
+    }
+
+    private static FollowEntry edge(ObjectId follower, ObjectId following) {
+        return FollowEntry.builder().followerId(follower).followingId(following).build();
+    }
+}
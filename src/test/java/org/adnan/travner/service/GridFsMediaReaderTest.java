@@ -0,0 +1,273 @@
+package org.adnan.travner.service;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GridFsMediaReaderTest {
+
+    private static final int CHUNK_SIZE = 1000;
+    private static final int LENGTH = 10 * CHUNK_SIZE + 500;
+    private static final Date UPLOADED = new Date(1_741_600_000_000L);
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MongoCollection<Document> chunks;
+
+    private final byte[] content = new byte[LENGTH];
+    private final List<Document> stored = new ArrayList<>();
+    private final List<int[]> queries = new ArrayList<>();
+    private final GridFSFile file = new GridFSFile(new BsonObjectId(new ObjectId()), "clip.mp4", LENGTH, CHUNK_SIZE,
+            UPLOADED, new Document());
+    private GridFsMediaReader reader;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < LENGTH; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        for (int n = 0; n * CHUNK_SIZE < LENGTH; n++) {
+            stored.add(new Document("files_id", file.getId()).append("n", n).append("data",
+                    new Binary(Arrays.copyOfRange(content, n * CHUNK_SIZE, Math.min(LENGTH, (n + 1) * CHUNK_SIZE)))));
+        }
+        lenient().when(mongoTemplate.getCollection("fs.chunks")).thenReturn(chunks);
+        lenient().when(chunks.find(any(Bson.class))).thenAnswer(invocation -> find(invocation.getArgument(0)));
+        reader = new GridFsMediaReader(mongoTemplate);
+    }
+
+    @Test
+    void testWholeFileAdvertisesRanges() throws Exception {
+        // When
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), new HttpHeaders());
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        assertEquals(LENGTH, response.getHeaders().getContentLength());
+        assertEquals(UPLOADED.getTime(), response.getHeaders().getLastModified());
+        assertArrayEquals(content, body(response));
+    }
+
+    @Test
+    void testRangeReadsOnlyTheChunksThatHoldIt() throws Exception {
+        // Given: a seek into the middle of the file, spanning chunks 5 and 6
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=5500-6499");
+
+        // When
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), request);
+
+        // Then
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("bytes 5500-6499/" + LENGTH, response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertEquals(1000, response.getHeaders().getContentLength());
+        assertArrayEquals(Arrays.copyOfRange(content, 5500, 6500), body(response));
+        assertEquals(1, queries.size());
+        assertArrayEquals(new int[]{5, 6}, queries.get(0));
+    }
+
+    @Test
+    void testSuffixRangeReadsTheTail() throws Exception {
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=-10");
+
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), request);
+
+        assertArrayEquals(Arrays.copyOfRange(content, LENGTH - 10, LENGTH), body(response));
+        assertArrayEquals(new int[]{10, 10}, queries.get(0));
+    }
+
+    @Test
+    void testSeveralRangesAreOneMultipartBody() throws Exception {
+        // Given
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=0-9,9990-10009");
+
+        // When
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), request);
+
+        // Then
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        MediaType type = response.getHeaders().getContentType();
+        assertEquals("multipart/byteranges", type.getType() + "/" + type.getSubtype());
+        byte[] body = body(response);
+        assertEquals(response.getHeaders().getContentLength(), body.length);
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        String boundary = type.getParameter("boundary");
+        assertTrue(text.contains("Content-Range: bytes 0-9/" + LENGTH));
+        assertTrue(text.contains("Content-Range: bytes 9990-10009/" + LENGTH));
+        assertTrue(text.endsWith("--" + boundary + "--\r\n"));
+        assertTrue(text.contains(new String(Arrays.copyOfRange(content, 9990, 10010), StandardCharsets.ISO_8859_1)));
+        assertEquals(2, queries.size());
+    }
+
+    @Test
+    void testStaleIfRangeSendsTheWholeFile() throws Exception {
+        // Given
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=100-199");
+        request.setDate(HttpHeaders.IF_RANGE, UPLOADED.getTime() - 60_000);
+
+        // When
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), request);
+
+        // Then
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(LENGTH, body(response).length);
+    }
+
+    @Test
+    void testCurrentIfRangeAllowsTheRange() throws Exception {
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=100-199");
+        request.setDate(HttpHeaders.IF_RANGE, UPLOADED.getTime());
+
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                new HttpHeaders(), request);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), body(response));
+    }
+
+    @Test
+    void testIfRangeWithTheCurrentEtagAllowsTheRange() throws Exception {
+        // Given
+        HttpHeaders headers = reader.cacheHeaders("\"abc\"", UPLOADED.toInstant());
+        HttpHeaders request = new HttpHeaders();
+        request.set(HttpHeaders.RANGE, "bytes=0-9");
+        request.set(HttpHeaders.IF_RANGE, "\"abc\"");
+
+        // When
+        ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                headers, request);
+
+        // Then
+        assertEquals(HttpStatus.PARTIAL_CONTENT, response.getStatusCode());
+        assertEquals("\"abc\"", response.getHeaders().getETag());
+        assertEquals("max-age=31536000, public, immutable", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    void testPrivateFilesAreRevalidatedAndNotShared() {
+        HttpHeaders headers = reader.privateCacheHeaders("\"abc\"", UPLOADED.toInstant());
+
+        assertEquals("\"abc\"", headers.getETag());
+        assertEquals(UPLOADED.getTime(), headers.getLastModified());
+        assertEquals("no-cache, private", headers.getCacheControl());
+    }
+
+    @Test
+    void testRevalidationMatchesEtagsBeforeDates() {
+        HttpHeaders headers = reader.cacheHeaders("\"abc\"", UPLOADED.toInstant());
+
+        HttpHeaders matching = new HttpHeaders();
+        matching.set(HttpHeaders.IF_NONE_MATCH, "\"xyz\", W/\"abc\"");
+        HttpHeaders other = new HttpHeaders();
+        other.setIfNoneMatch("\"xyz\"");
+        other.setIfModifiedSince(UPLOADED.getTime());
+        HttpHeaders since = new HttpHeaders();
+        since.setIfModifiedSince(UPLOADED.getTime());
+        HttpHeaders before = new HttpHeaders();
+        before.setIfModifiedSince(UPLOADED.getTime() - 60_000);
+
+        assertTrue(reader.isNotModified(matching, headers));
+        assertFalse(reader.isNotModified(other, headers));
+        assertTrue(reader.isNotModified(since, headers));
+        assertFalse(reader.isNotModified(before, headers));
+        assertFalse(reader.isNotModified(new HttpHeaders(), headers));
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void testUnsatisfiableRangesAreRefused() {
+        for (String range : List.of("bytes=20000-", "bytes=0-10499,0-10499", "pages=1")) {
+            HttpHeaders request = new HttpHeaders();
+            request.set(HttpHeaders.RANGE, range);
+
+            ResponseEntity<InputStreamResource> response = reader.serve(file, MediaType.valueOf("video/mp4"),
+                    new HttpHeaders(), request);
+
+            assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatusCode(), range);
+            assertEquals("bytes */" + LENGTH, response.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        }
+        verifyNoInteractions(chunks);
+    }
+
+    @Test
+    void testMissingChunkFailsTheRead() {
+        // Given
+        stored.remove(6);
+
+        // When / Then
+        InputStream stream = reader.open(file, 5500, 6499);
+        assertThrows(IOException.class, stream::readAllBytes);
+    }
+
+    private static byte[] body(ResponseEntity<InputStreamResource> response) throws IOException {
+        try (InputStream in = response.getBody().getInputStream()) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * The stored chunks the filter selects, in order, recording the chunk bounds asked for
+     */
+    @SuppressWarnings("unchecked")
+    private FindIterable<Document> find(Bson filter) {
+        BsonDocument n = filter.toBsonDocument().getDocument("n");
+        int first = n.getInt32("$gte").getValue();
+        int last = n.getInt32("$lte").getValue();
+        queries.add(new int[]{first, last});
+        Iterator<Document> selected = stored.stream()
+                .filter(chunk -> chunk.getInteger("n") >= first && chunk.getInteger("n") <= last)
+                .toList().iterator();
+        FindIterable<Document> iterable = mock(FindIterable.class);
+        MongoCursor<Document> cursor = mock(MongoCursor.class);
+        when(iterable.sort(any())).thenReturn(iterable);
+        when(iterable.batchSize(anyInt())).thenReturn(iterable);
+        when(iterable.iterator()).thenReturn(cursor);
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> selected.hasNext());
+        lenient().when(cursor.next()).thenAnswer(invocation -> selected.next());
+        return iterable;
+    }
+}
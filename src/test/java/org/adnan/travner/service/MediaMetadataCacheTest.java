@@ -0,0 +1,104 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.MediaEntry;
+import org.adnan.travner.repository.MediaRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MediaMetadataCacheTest {
+
+    @Mock
+    private MediaRepository mediaRepository;
+
+    private MediaMetadataCache mediaCache;
+    private MediaEntry media;
+
+    @BeforeEach
+    void setUp() {
+        mediaCache = new MediaMetadataCache(mediaRepository, 100, 60);
+        media = MediaEntry.builder()
+                .id(new ObjectId())
+                .filename("5f0c_beach.jpg")
+                .gridFsId(new ObjectId().toHexString())
+                .contentType("image/jpeg")
+                .build();
+    }
+
+    @Test
+    void testGetById_LoadsOnceThenServesFromCache() {
+        when(mediaRepository.findById(media.getId())).thenReturn(Optional.of(media));
+
+        mediaCache.getById(media.getId().toHexString());
+        Optional<MediaMetadataCache.CachedMedia> result = mediaCache.getById(media.getId().toHexString());
+
+        assertEquals("image/jpeg", result.map(MediaMetadataCache.CachedMedia::contentType).orElse(null));
+        verify(mediaRepository, times(1)).findById(media.getId());
+    }
+
+    @Test
+    void testIdLookupAlsoServesFilenameLookup() {
+        when(mediaRepository.findById(media.getId())).thenReturn(Optional.of(media));
+
+        mediaCache.getById(media.getId().toHexString());
+        Optional<MediaMetadataCache.CachedMedia> byName = mediaCache.getByFilename("5f0c_beach.jpg");
+
+        assertEquals(media.getId(), byName.map(MediaMetadataCache.CachedMedia::id).orElse(null));
+        verify(mediaRepository, never()).findFirstByFilename(any());
+    }
+
+    @Test
+    void testChatAttachmentKeepsItsConversation() {
+        media.setType("chat");
+        media.setEntityId("conv1");
+        when(mediaRepository.findById(media.getId())).thenReturn(Optional.of(media));
+
+        MediaMetadataCache.CachedMedia cached = mediaCache.getById(media.getId().toHexString()).orElseThrow();
+
+        assertTrue(cached.isChat());
+        assertEquals("conv1", cached.entityId());
+    }
+
+    @Test
+    void testUnknownAndMalformedIdsAreNotCached() {
+        when(mediaRepository.findById(media.getId())).thenReturn(Optional.empty());
+
+        assertTrue(mediaCache.getById(media.getId().toHexString()).isEmpty());
+        assertTrue(mediaCache.getById(media.getId().toHexString()).isEmpty());
+        assertTrue(mediaCache.getById("not-an-id").isEmpty());
+
+        verify(mediaRepository, times(2)).findById(media.getId());
+    }
+
+    @Test
+    void testInvalidateForgetsBothKeys() {
+        when(mediaRepository.findFirstByFilename("5f0c_beach.jpg")).thenReturn(Optional.of(media));
+        mediaCache.getByFilename("5f0c_beach.jpg");
+
+        mediaCache.invalidate(media);
+        mediaCache.getByFilename("5f0c_beach.jpg");
+
+        verify(mediaRepository, times(2)).findFirstByFilename("5f0c_beach.jpg");
+    }
+
+    @Test
+    void testEtagPrefersTheContentHash() {
+        MediaMetadataCache.CachedMedia byUploadId = MediaMetadataCache.CachedMedia.from(media);
+        media.setSha256("9f86d081884c7d65");
+        MediaMetadataCache.CachedMedia byHash = MediaMetadataCache.CachedMedia.from(media);
+
+        assertEquals("\"" + media.getGridFsId() + "\"", byUploadId.etag());
+        assertEquals("\"9f86d081884c7d65\"", byHash.etag());
+        assertEquals(new ObjectId(media.getGridFsId()).getDate().toInstant(), byHash.lastModified());
+    }
+}
@@ -6,7 +6,6 @@ import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.CommentRepository;
 import org.adnan.travner.repository.PostRepository;
 import org.adnan.travner.repository.PostVoteRepository;
-import org.adnan.travner.repository.UserRepository;
 import org.adnan.travner.repository.MediaRepository;
 import org.adnan.travner.entry.MediaEntry;
 import org.junit.jupiter.api.BeforeEach;
@@ -33,7 +32,7 @@ class PostServiceTest {
     private PostRepository postRepository;
 
     @Mock
-    private UserRepository userRepository;
+    private PrincipalContext principalContext;
 
     @Mock
     private CommentRepository commentRepository;
@@ -44,6 +43,9 @@ class PostServiceTest {
     @Mock
     private MediaRepository mediaRepository;
 
+    @Mock
+    private MediaMetadataCache mediaCache;
+
     @InjectMocks
     private PostService postService;
 
@@ -85,7 +87,7 @@ class PostServiceTest {
                 .published(true)
                 .build();
 
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(principalContext.findUser("testuser")).thenReturn(testUser);
         when(postRepository.save(any(PostEntry.class))).thenReturn(testPost);
 
         // When
@@ -129,7 +131,7 @@ class PostServiceTest {
                 .uploadedAt(LocalDateTime.now())
                 .build();
 
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(principalContext.findUser("testuser")).thenReturn(testUser);
         when(postRepository.save(any(PostEntry.class))).thenReturn(testPost);
         when(mediaRepository.findById(any(ObjectId.class)))
                 .thenReturn(Optional.of(media1))
@@ -158,7 +160,7 @@ class PostServiceTest {
                 .published(true)
                 .build();
 
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(principalContext.findUser("testuser")).thenReturn(testUser);
         when(postRepository.findById(any(ObjectId.class))).thenReturn(Optional.of(testPost));
         when(postRepository.save(any(PostEntry.class))).thenReturn(testPost);
 
@@ -194,7 +196,7 @@ class PostServiceTest {
                 .uploadedAt(LocalDateTime.now())
                 .build();
 
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(principalContext.findUser("testuser")).thenReturn(testUser);
         when(postRepository.findById(any(ObjectId.class))).thenReturn(Optional.of(testPost));
         when(postRepository.save(any(PostEntry.class))).thenReturn(testPost);
         when(mediaRepository.findByPostId(any(ObjectId.class))).thenReturn(new ArrayList<>());
@@ -215,7 +217,7 @@ class PostServiceTest {
     void testDeletePost_Success() {
         // Given
         String postId = testPost.getId().toString();
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(principalContext.findUser("testuser")).thenReturn(testUser);
         when(postRepository.findById(any(ObjectId.class))).thenReturn(Optional.of(testPost));
         when(mediaRepository.findByPostId(any(ObjectId.class))).thenReturn(new ArrayList<>());
 
@@ -0,0 +1,161 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.chat.UserPresenceDTO;
+import org.adnan.travner.entry.ChatConversation;
+import org.adnan.travner.repository.ChatConversationRepository;
+import org.adnan.travner.util.HashedTimingWheel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PresenceServiceTest {
+
+    private static final long SESSION_TIMEOUT_MS = 30_000;
+    private static final long NODE_HEARTBEAT_MS = 10_000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final LocalPresenceSync sync = new LocalPresenceSync();
+    private ChatConversationRepository conversationRepository;
+    private SimpMessageSendingOperations messagingTemplate;
+    private HashedTimingWheel wheelA;
+    private HashedTimingWheel wheelB;
+    private PresenceService nodeA;
+    private PresenceService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        conversationRepository = mock(ChatConversationRepository.class);
+        messagingTemplate = mock(SimpMessageSendingOperations.class);
+        when(conversationRepository.findByParticipantIdsContainingAndIsActiveTrue(anyString())).thenReturn(List.of());
+        wheelA = new HashedTimingWheel("a", 100, 64, clock::get);
+        wheelB = new HashedTimingWheel("b", 100, 64, clock::get);
+        nodeA = node("node-a", wheelA);
+        nodeB = node("node-b", wheelB);
+        nodeA.start();
+    }
+
+    @Test
+    void testSessionsTrackedUntilLastDisconnect() {
+        // Given
+        nodeA.connect("s1", "alice");
+        nodeA.connect("s2", "alice");
+
+        // When
+        nodeA.disconnect("s1");
+
+        // Then
+        assertTrue(nodeA.isOnline("alice"));
+        nodeA.disconnect("s2");
+        assertFalse(nodeA.isOnline("alice"));
+    }
+
+    @Test
+    void testSessionExpiresWithoutHeartbeats() {
+        // Given
+        nodeA.connect("s1", "alice");
+        nodeA.connect("s2", "bob");
+
+        // When: only bob's session keeps sending heartbeats
+        for (int i = 0; i < 4; i++) {
+            advance(10_000);
+            nodeA.touch("s2");
+        }
+
+        // Then
+        assertFalse(nodeA.isOnline("alice"));
+        assertTrue(nodeA.isOnline("bob"));
+    }
+
+    @Test
+    void testPresenceChangePublishedOnlyWhereSomeoneIsListening() {
+        // Given: alice shares c1 with bob (online) and c2 with carol (offline)
+        ChatConversation withBob = conversation("c1", "alice", "bob");
+        ChatConversation withCarol = conversation("c2", "alice", "carol");
+        when(conversationRepository.findByParticipantIdsContainingAndIsActiveTrue("alice"))
+                .thenReturn(List.of(withBob, withCarol));
+        nodeA.connect("s-bob", "bob");
+
+        // When
+        nodeA.connect("s-alice", "alice");
+
+        // Then
+        verify(messagingTemplate).convertAndSend(eq("/topic/conversation/c1/presence"), any(UserPresenceDTO.class));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/conversation/c2/presence"), any(Object.class));
+    }
+
+    @Test
+    void testOnlineContactsInOneCall() {
+        // Given
+        when(conversationRepository.findByParticipantIdsContainingAndIsActiveTrue("alice"))
+                .thenReturn(List.of(conversation("c1", "alice", "bob", "carol"), conversation("c2", "alice", "dave")));
+        nodeA.connect("s-bob", "bob");
+        nodeA.connect("s-dave", "dave");
+
+        // When
+        List<UserPresenceDTO> online = nodeA.getOnlineContacts("alice");
+
+        // Then
+        assertEquals(List.of("bob", "dave"), online.stream().map(UserPresenceDTO::getUserId).toList());
+        assertTrue(online.stream().allMatch(presence -> presence.getStatus() == UserPresenceDTO.Status.ONLINE));
+    }
+
+    @Test
+    void testPresenceSyncedAcrossNodes() {
+        // Given: alice connected to node A before node B started
+        nodeA.connect("s1", "alice");
+
+        // When: node B joins and receives A's snapshot, then alice connects again on B
+        nodeB.start();
+        assertTrue(nodeB.isOnline("alice"));
+        nodeA.disconnect("s1");
+
+        // Then
+        assertFalse(nodeB.isOnline("alice"));
+        nodeB.connect("s2", "bob");
+        assertTrue(nodeA.isOnline("bob"));
+    }
+
+    @Test
+    void testSilentNodeIsDropped() {
+        // Given
+        nodeB.start();
+        nodeB.connect("s1", "bob");
+        assertTrue(nodeA.isOnline("bob"));
+
+        // When: node B stops heartbeating (its wheel is never advanced) while A's runs
+        for (int i = 0; i < 5; i++) {
+            clock.addAndGet(NODE_HEARTBEAT_MS);
+            wheelA.advanceTo(clock.get());
+        }
+
+        // Then
+        assertFalse(nodeA.isOnline("bob"));
+    }
+
+    private PresenceService node(String nodeId, HashedTimingWheel wheel) {
+        return new PresenceService(sync, messagingTemplate, conversationRepository, nodeId, 4,
+                SESSION_TIMEOUT_MS, NODE_HEARTBEAT_MS, false, wheel, clock::get, Runnable::run);
+    }
+
+    private void advance(long millis) {
+        long target = clock.get() + millis;
+        while (clock.get() < target) {
+            long now = clock.addAndGet(Math.min(100, target - clock.get()));
+            wheelA.advanceTo(now);
+            wheelB.advanceTo(now);
+        }
+    }
+
+    private static ChatConversation conversation(String id, String... participants) {
+        return ChatConversation.builder().id(id).participantIds(List.of(participants)).isActive(true).build();
+    }
+}
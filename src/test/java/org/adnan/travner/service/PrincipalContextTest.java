@@ -0,0 +1,206 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.CreateOrderRequest;
+import org.adnan.travner.entry.CartEntry;
+import org.adnan.travner.entry.OrderEntry;
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.CartRepository;
+import org.adnan.travner.repository.OrderRepository;
+import org.adnan.travner.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Guards the number of user queries issued per request
+ */
+@ExtendWith(MockitoExtension.class)
+class PrincipalContextTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private CartRepository cartRepository;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ProductService productService;
+
+    @Mock
+    private UserService userService;
+
+    private PrincipalContext principalContext;
+    private UserEntry testUser;
+
+    @BeforeEach
+    void setUp() {
+        // A cold cache per test, so only the request scope can absorb repeated lookups
+        principalContext = new PrincipalContext(new UserSummaryCache(userRepository, 100, 60), 60);
+
+        testUser = new UserEntry();
+        testUser.setId(new ObjectId());
+        testUser.setUserName("testuser");
+        testUser.setEmail("test@example.com");
+        testUser.setPassword("encodedpassword");
+        testUser.setRoles(List.of("USER"));
+        testUser.setActive(true);
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    }
+
+    @AfterEach
+    void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    void testAuthenticatedCheckout_QueriesUserOnce() {
+        // Given
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        CartEntry cart = CartEntry.builder().id(new ObjectId()).userId("testuser").build();
+        cart.addItem(CartEntry.CartItem.builder()
+                .productId("p1")
+                .productName("Guide book")
+                .unitPrice(BigDecimal.TEN)
+                .quantity(1)
+                .build());
+        when(cartRepository.findByUserId("testuser")).thenReturn(Optional.of(cart));
+        when(cartRepository.save(any(CartEntry.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(orderRepository.save(any(OrderEntry.class))).thenAnswer(invocation -> {
+            OrderEntry order = invocation.getArgument(0);
+            order.setId(new ObjectId());
+            return order;
+        });
+
+        UserDetailsServiceImpl userDetailsService = new UserDetailsServiceImpl();
+        ReflectionTestUtils.setField(userDetailsService, "userRepository", userRepository);
+        ReflectionTestUtils.setField(userDetailsService, "userService", userService);
+        ReflectionTestUtils.setField(userDetailsService, "principalContext", principalContext);
+        CartService cartService = new CartService(cartRepository, principalContext, productService);
+        OrderService orderService = new OrderService(orderRepository, principalContext, cartService);
+
+        // When
+        userDetailsService.loadUserByUsername("testuser");
+        orderService.createOrder("testuser", checkoutRequest());
+
+        // Then
+        verify(userRepository, times(1)).findByuserName("testuser");
+        verify(userRepository, never()).findById(any());
+        verify(userService).updateLastLogin(testUser);
+    }
+
+    @Test
+    void testResolve_MatchesBoundPrincipalById() {
+        // Given
+        principalContext.seed(testUser);
+
+        // When
+        Optional<UserSummaryCache.CachedUser> result = principalContext.resolve(testUser.getId().toHexString());
+
+        // Then
+        assertEquals("testuser", result.map(UserSummaryCache.CachedUser::getUserName).orElse(null));
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void testFindUser_OtherUserFallsBackToCache() {
+        // Given
+        principalContext.seed(testUser);
+        UserEntry other = new UserEntry();
+        other.setId(new ObjectId());
+        other.setUserName("other");
+        when(userRepository.findByuserName("other")).thenReturn(other);
+
+        // When
+        UserEntry result = principalContext.findUser("other");
+
+        // Then
+        assertEquals("other", result.getUserName());
+        assertEquals("testuser", principalContext.current().map(UserSummaryCache.CachedUser::getUserName).orElse(null));
+    }
+
+    @Test
+    void testBindSession_StoresPrincipalInSessionAttributes() {
+        // Given
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        Map<String, Object> sessionAttributes = new HashMap<>();
+
+        // When
+        principalContext.bindSession("testuser", sessionAttributes);
+
+        // Then
+        UserSummaryCache.CachedUser principal = (UserSummaryCache.CachedUser) sessionAttributes.get(PrincipalContext.ATTRIBUTE);
+        assertNotNull(principal);
+        assertEquals(testUser.getId(), principal.getId());
+        assertTrue(principal.hasRole("USER"));
+    }
+
+    @Test
+    void testRevalidateSession_KeepsFreshSnapshotWithoutQuerying() {
+        // Given
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        principalContext.bindSession("testuser", sessionAttributes);
+
+        // When / Then
+        assertTrue(principalContext.revalidateSession(sessionAttributes));
+        verify(userRepository, times(1)).findByuserName("testuser");
+    }
+
+    @Test
+    void testRevalidateSession_ExpiredSnapshotPicksUpDeactivation() {
+        // Given: a snapshot that expires immediately
+        UserSummaryCache cache = new UserSummaryCache(userRepository, 100, 60);
+        PrincipalContext expiring = new PrincipalContext(cache, 0);
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        expiring.bindSession("testuser", sessionAttributes);
+        assertTrue(expiring.revalidateSession(sessionAttributes));
+
+        // When: the user is deactivated while connected
+        testUser.setActive(false);
+        cache.invalidate(testUser);
+
+        // Then
+        assertFalse(expiring.revalidateSession(sessionAttributes));
+        assertFalse(sessionAttributes.containsKey(PrincipalContext.ATTRIBUTE));
+    }
+
+    private CreateOrderRequest checkoutRequest() {
+        return CreateOrderRequest.builder()
+                .shippingAddress(CreateOrderRequest.ShippingAddressRequest.builder()
+                        .fullName("Test User")
+                        .addressLine1("1 Main St")
+                        .city("Dhaka")
+                        .state("Dhaka")
+                        .zipCode("1000")
+                        .country("BD")
+                        .phoneNumber("0123456789")
+                        .build())
+                .paymentInfo(CreateOrderRequest.PaymentInfoRequest.builder()
+                        .paymentMethod("COD")
+                        .build())
+                .build();
+    }
+}
@@ -0,0 +1,156 @@
+package org.adnan.travner.service;
+
+import com.mongodb.client.gridfs.GridFSBucket;
+import com.mongodb.client.gridfs.GridFSUploadStream;
+import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class StreamingGridFsUploaderTest {
+
+    private static final int CHUNK_KB = 255;
+
+    @Mock
+    private GridFSBucket bucket;
+
+    @Mock
+    private GridFSUploadStream upload;
+
+    private StreamingGridFsUploader uploader;
+
+    @BeforeEach
+    void setUp() {
+        uploader = new StreamingGridFsUploader(bucket, CHUNK_KB);
+        when(bucket.openUploadStream(any(String.class), any(GridFSUploadOptions.class))).thenReturn(upload);
+    }
+
+    @Test
+    void testLargeBodyIsWrittenChunkByChunkWithSizeAndHash() throws Exception {
+        // Given: a 50 MB body generated on the fly, never held in memory
+        long length = 50L * 1024 * 1024;
+        MessageDigest expected = MessageDigest.getInstance("SHA-256");
+        AtomicLong written = new AtomicLong();
+        AtomicInteger largestWrite = new AtomicInteger();
+        doAnswer(invocation -> {
+            byte[] bytes = invocation.getArgument(0);
+            int offset = invocation.getArgument(1);
+            int count = invocation.getArgument(2);
+            expected.update(bytes, offset, count);
+            written.addAndGet(count);
+            largestWrite.accumulateAndGet(count, Math::max);
+            return null;
+        }).when(upload).write(any(byte[].class), anyInt(), anyInt());
+        ObjectId id = new ObjectId();
+        when(upload.getObjectId()).thenReturn(id);
+
+        // When
+        StreamingGridFsUploader.StoredFile stored = uploader.store(generated(length), "clip.mp4", "video/mp4",
+                new Document("uploadedBy", "alice"), length);
+
+        // Then
+        assertEquals(id, stored.id());
+        assertEquals(length, stored.size());
+        assertEquals(length, written.get());
+        assertEquals(CHUNK_KB * 1024, largestWrite.get());
+        assertEquals(HexFormat.of().formatHex(expected.digest()), stored.sha256());
+        verify(upload).close();
+        verify(upload, never()).abort();
+    }
+
+    @Test
+    void testContentTypeIsStoredWhereGridFsResourceReadsIt() throws Exception {
+        // When
+        uploader.store(new ByteArrayInputStream(new byte[]{1, 2, 3}), "a.png", "image/png",
+                new Document("uploadedBy", "alice"), 1024);
+
+        // Then
+        ArgumentCaptor<GridFSUploadOptions> options = ArgumentCaptor.forClass(GridFSUploadOptions.class);
+        verify(bucket).openUploadStream(eq("a.png"), options.capture());
+        assertEquals("image/png", options.getValue().getMetadata().getString("_contentType"));
+        assertEquals("alice", options.getValue().getMetadata().getString("uploadedBy"));
+        assertEquals(CHUNK_KB * 1024, options.getValue().getChunkSizeBytes());
+    }
+
+    @Test
+    void testOversizedBodyAbortsTheUpload() {
+        // When / Then: the declared length was absent, so the limit is enforced while reading
+        assertThrows(IllegalArgumentException.class, () -> uploader.store(generated(3L * 1024 * 1024),
+                "big.mp4", "video/mp4", new Document(), 1024 * 1024));
+        verify(upload).abort();
+        verify(upload, never()).close();
+    }
+
+    @Test
+    void testBrokenBodyAbortsTheUpload() {
+        // Given: the client disconnects mid-way
+        InputStream broken = new InputStream() {
+            private int served;
+
+            @Override
+            public int read() throws IOException {
+                if (served++ > 10_000) {
+                    throw new IOException("Connection reset");
+                }
+                return 7;
+            }
+        };
+
+        // When / Then
+        assertThrows(IOException.class, () -> uploader.store(broken, "a.png", "image/png", new Document(), 1 << 20));
+        verify(upload).abort();
+    }
+
+    @Test
+    void testEmptyBodyIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> uploader.store(InputStream.nullInputStream(),
+                "a.png", "image/png", new Document(), 1024));
+        verify(upload).abort();
+    }
+
+    /**
+     * A stream of the given length whose bytes are computed, not stored
+     */
+    private static InputStream generated(long length) {
+        return new InputStream() {
+            private long position;
+
+            @Override
+            public int read() {
+                return position < length ? (int) (position++ * 31 & 0xff) : -1;
+            }
+
+            @Override
+            public int read(byte[] bytes, int offset, int count) {
+                if (position >= length) {
+                    return -1;
+                }
+                int n = (int) Math.min(count, length - position);
+                for (int i = 0; i < n; i++) {
+                    bytes[offset + i] = (byte) (position++ * 31);
+                }
+                return n;
+            }
+        };
+    }
+}
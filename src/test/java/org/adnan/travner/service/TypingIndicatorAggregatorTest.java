@@ -0,0 +1,145 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.dto.TypingStateDTO;
+import org.adnan.travner.util.HashedTimingWheel;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.simp.SimpMessageSendingOperations;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class TypingIndicatorAggregatorTest {
+
+    private static final long COOLDOWN_MS = 2000;
+    private static final long EXPIRY_MS = 5000;
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final List<TypingStateDTO> frames = new CopyOnWriteArrayList<>();
+    private HashedTimingWheel wheel;
+    private TypingIndicatorAggregator aggregator;
+
+    @BeforeEach
+    void setUp() {
+        SimpMessageSendingOperations messagingTemplate = mock(SimpMessageSendingOperations.class);
+        doAnswer(invocation -> frames.add(invocation.getArgument(1)))
+                .when(messagingTemplate).convertAndSend(anyString(), any(Object.class));
+        wheel = new HashedTimingWheel("test-wheel", 10, 64, clock::get);
+        aggregator = new TypingIndicatorAggregator(messagingTemplate, "node-a", COOLDOWN_MS, EXPIRY_MS, wheel, clock::get);
+    }
+
+    @Test
+    void testFramesWithinCooldownAreCoalesced() {
+        // Given: alice starts typing and is published immediately
+        aggregator.onTyping("c1", "alice", "alice", true);
+        assertEquals(1, frames.size());
+
+        // When: bob and carol start typing inside the cooldown window
+        advance(500);
+        aggregator.onTyping("c1", "bob", "bob", true);
+        advance(500);
+        aggregator.onTyping("c1", "carol", "carol", true);
+        aggregator.onTyping("c1", "alice", "alice", true);
+
+        // Then: nothing more until the window closes, then one frame with all three
+        assertEquals(1, frames.size());
+        advance(1000);
+        assertEquals(2, frames.size());
+        assertEquals(List.of("alice", "bob", "carol"), typingUserIds(frames.get(1)));
+        assertEquals("node-a", frames.get(1).getNodeId());
+    }
+
+    @Test
+    void testSilentTypistExpiresWithStopEvent() {
+        // Given
+        aggregator.onTyping("c1", "alice", "alice", true);
+
+        // When: alice sends nothing further
+        advance(EXPIRY_MS + 100);
+
+        // Then
+        TypingStateDTO last = frames.get(frames.size() - 1);
+        assertTrue(last.getTyping().isEmpty());
+        assertEquals(List.of("alice"), last.getStoppedUserIds());
+    }
+
+    @Test
+    void testActiveTypistDoesNotExpire() {
+        // Given
+        aggregator.onTyping("c1", "alice", "alice", true);
+
+        // When: alice keeps typing past the expiry period
+        for (int i = 0; i < 10; i++) {
+            advance(1000);
+            aggregator.onTyping("c1", "alice", "alice", true);
+        }
+
+        // Then: only the initial frame was sent
+        assertEquals(1, frames.size());
+    }
+
+    @Test
+    void testExplicitStopIsReportedOnce() {
+        // Given
+        aggregator.onTyping("c1", "alice", "alice", true);
+        advance(COOLDOWN_MS);
+
+        // When
+        aggregator.onTyping("c1", "alice", "alice", false);
+        advance(EXPIRY_MS * 2);
+
+        // Then
+        assertEquals(2, frames.size());
+        assertEquals(List.of("alice"), frames.get(1).getStoppedUserIds());
+        assertTrue(frames.get(1).getTyping().isEmpty());
+    }
+
+    @Test
+    @Tag("load")
+    void testBenchmarkOutboundFramesForFiftyMemberGroup() {
+        // Given: a 50-member group where 10 members type for 30 seconds, each sending
+        // a typing frame every 300 ms as clients do while keys are pressed
+        int members = 50;
+        int typists = 10;
+        long durationMs = 30_000;
+        long frameIntervalMs = 300;
+
+        // When
+        long inboundFrames = 0;
+        for (long t = 0; t < durationMs; t += frameIntervalMs) {
+            for (int i = 0; i < typists; i++) {
+                aggregator.onTyping("group", "user-" + i, "user-" + i, true);
+                inboundFrames++;
+            }
+            advance(frameIntervalMs);
+        }
+        advance(EXPIRY_MS + COOLDOWN_MS);
+
+        // Then: rebroadcasting every frame delivers each one to every member
+        long deliveriesBefore = inboundFrames * members;
+        long deliveriesAfter = (long) frames.size() * members;
+        long windows = (durationMs + EXPIRY_MS + COOLDOWN_MS) / COOLDOWN_MS + 1;
+        assertTrue(frames.size() <= windows, "at most one frame per cooldown window");
+        assertTrue(deliveriesAfter * 50 < deliveriesBefore);
+        assertEquals(typists, frames.stream().mapToInt(frame -> frame.getStoppedUserIds().size()).sum());
+    }
+
+    private void advance(long millis) {
+        long target = clock.get() + millis;
+        while (clock.get() < target) {
+            wheel.advanceTo(clock.addAndGet(Math.min(10, target - clock.get())));
+        }
+    }
+
+    private static List<String> typingUserIds(TypingStateDTO frame) {
+        return frame.getTyping().stream().map(TypingStateDTO.TypingUser::getUserId).toList();
+    }
+}
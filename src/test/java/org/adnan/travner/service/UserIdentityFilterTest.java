@@ -0,0 +1,140 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserIdentityFilterTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private final LocalPresenceSync sync = new LocalPresenceSync();
+    private UserIdentityFilter userIdentityFilter;
+
+    @BeforeEach
+    void setUp() {
+        userIdentityFilter = new UserIdentityFilter(userRepository, sync, 10_000, 0.01);
+        userIdentityFilter.start();
+    }
+
+    @Test
+    void testBeforeBuild_EverythingMightExist() {
+        assertFalse(userIdentityFilter.isReady());
+        assertTrue(userIdentityFilter.mightContainUsername("anyone"));
+        assertTrue(userIdentityFilter.mightContainEmail("anyone@example.com"));
+    }
+
+    @Test
+    void testBuild_NoFalseNegativesAndNormalizedLookups() {
+        // Given
+        when(userRepository.streamIdentities()).thenReturn(IntStream.range(0, 5_000)
+                .mapToObj(i -> UserEntry.builder().userName("user" + i).email("user" + i + "@example.com").build()));
+
+        // When
+        userIdentityFilter.build();
+
+        // Then
+        assertTrue(userIdentityFilter.isReady());
+        for (int i = 0; i < 5_000; i++) {
+            assertTrue(userIdentityFilter.mightContainUsername("user" + i));
+            assertTrue(userIdentityFilter.mightContainEmail("user" + i + "@example.com"));
+        }
+        assertTrue(userIdentityFilter.mightContainUsername("USER42"));
+        assertTrue(userIdentityFilter.mightContainEmail(" User42@Example.com "));
+    }
+
+    @Test
+    void testBuild_MostUnknownNamesAreDefiniteNegatives() {
+        // Given
+        when(userRepository.streamIdentities()).thenReturn(IntStream.range(0, 5_000)
+                .mapToObj(i -> UserEntry.builder().userName("user" + i).build()));
+        userIdentityFilter.build();
+
+        // When
+        long positives = IntStream.range(0, 10_000)
+                .filter(i -> userIdentityFilter.mightContainUsername("stranger" + i))
+                .count();
+
+        // Then
+        assertTrue(positives < 300, "false positive count too high: " + positives);
+    }
+
+    @Test
+    void testAdd_RegisteredAfterBuildIsVisible() {
+        // Given
+        when(userRepository.streamIdentities()).thenReturn(Stream.empty());
+        userIdentityFilter.build();
+        assertFalse(userIdentityFilter.mightContainUsername("newuser"));
+
+        // When
+        userIdentityFilter.add(UserEntry.builder().userName("newuser").email("new@example.com").build());
+
+        // Then
+        assertTrue(userIdentityFilter.mightContainUsername("newuser"));
+        assertTrue(userIdentityFilter.mightContainEmail("new@example.com"));
+    }
+
+    @Test
+    void testAdd_RegisteredOnAnotherNodeIsVisible() {
+        // Given
+        UserIdentityFilter otherNode = new UserIdentityFilter(userRepository, sync, 10_000, 0.01);
+        otherNode.start();
+        when(userRepository.streamIdentities()).thenAnswer(invocation -> Stream.empty());
+        userIdentityFilter.build();
+        otherNode.build();
+
+        // When
+        otherNode.add(UserEntry.builder().userName("remote").email("remote@example.com").build());
+        otherNode.addEmail("changed@example.com");
+
+        // Then
+        assertTrue(userIdentityFilter.mightContainUsername("remote"));
+        assertTrue(userIdentityFilter.mightContainEmail("remote@example.com"));
+        assertTrue(userIdentityFilter.mightContainEmail("changed@example.com"));
+    }
+
+    @Test
+    void testRebuild_PicksUpUsersWhoseAdditionWasMissed() {
+        // Given
+        when(userRepository.streamIdentities())
+                .thenReturn(Stream.empty())
+                .thenReturn(Stream.of(UserEntry.builder().userName("missed").build()));
+        userIdentityFilter.build();
+        assertFalse(userIdentityFilter.mightContainUsername("missed"));
+
+        // When
+        userIdentityFilter.rebuild();
+
+        // Then
+        assertTrue(userIdentityFilter.mightContainUsername("missed"));
+    }
+
+    @Test
+    void testRebuild_AdditionsDuringTheStreamSurviveTheSwap() {
+        // Given
+        when(userRepository.streamIdentities())
+                .thenReturn(Stream.empty())
+                .thenAnswer(invocation -> Stream.of(UserEntry.builder().userName("existing").build())
+                        .peek(user -> userIdentityFilter.addUsername("latecomer")));
+        userIdentityFilter.build();
+
+        // When
+        userIdentityFilter.rebuild();
+
+        // Then
+        assertTrue(userIdentityFilter.mightContainUsername("existing"));
+        assertTrue(userIdentityFilter.mightContainUsername("latecomer"));
+    }
+}
@@ -1,5 +1,6 @@
 package org.adnan.travner.service;
 
+import org.adnan.travner.config.MongoIndexInitializer;
 import org.adnan.travner.entry.UserEntry;
 import org.adnan.travner.repository.UserRepository;
 import org.junit.jupiter.api.BeforeEach;
@@ -9,12 +10,20 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.bson.types.ObjectId;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,6 +38,15 @@ class UserServiceTest {
     @Mock
     private PasswordEncoder passwordEncoder;
 
+    @Mock
+    private UserSummaryCache userSummaryCache;
+
+    @Mock
+    private UserIdentityFilter userIdentityFilter;
+
+    @Mock
+    private MongoIndexInitializer mongoIndexInitializer;
+
     @InjectMocks
     private UserService userService;
 
@@ -70,6 +88,49 @@ class UserServiceTest {
         assertNotNull(newUser.getCreatedAt());
     }
 
+    @Test
+    void testSaveNewUser_DuplicateEmailRejectedByIndex() {
+        // Given
+        UserEntry newUser = new UserEntry();
+        newUser.setUserName("newuser");
+        newUser.setEmail("test@example.com");
+        newUser.setPassword("plainpassword");
+        when(mongoIndexInitializer.hasUniqueUserIndexes()).thenReturn(true);
+        when(passwordEncoder.encode("plainpassword")).thenReturn("$2a$10$encodedpassword");
+        when(userRepository.save(any(UserEntry.class))).thenThrow(new DuplicateKeyException(
+                "E11000 duplicate key error collection: travner.users index: email dup key: { email: \"test@example.com\" }"));
+
+        // When
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.saveNewUser(newUser));
+
+        // Then
+        assertEquals("Email already exists", e.getMessage());
+        verify(userRepository, never()).findByuserName(any());
+        verify(userRepository, never()).findByEmail(any());
+        verify(userIdentityFilter, never()).add(any());
+    }
+
+    @Test
+    void testSaveNewUser_ChecksDuplicatesWithoutUniqueIndexes() {
+        // Given: the unique indexes could not be built at startup
+        UserEntry newUser = new UserEntry();
+        newUser.setUserName("emailuser");
+        newUser.setEmail("test@example.com");
+        newUser.setPassword("plainpassword");
+        when(passwordEncoder.encode("plainpassword")).thenReturn("$2a$10$encodedpassword");
+        when(userIdentityFilter.mightContainUsername("emailuser")).thenReturn(true);
+        when(userRepository.existsByuserName("emailuser")).thenReturn(true);
+
+        // When
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> userService.saveNewUser(newUser));
+
+        // Then
+        assertEquals("Username already exists", e.getMessage());
+        verify(userRepository, never()).save(any());
+    }
+
     @Test
     void testGetByUsername_Success() {
         // Given
@@ -249,27 +310,42 @@ class UserServiceTest {
     @Test
     void testIsUsernameAvailable_Available() {
         // Given
-        when(userRepository.findByuserName("availableuser")).thenReturn(null);
+        when(userIdentityFilter.mightContainUsername("availableuser")).thenReturn(true);
+        when(userRepository.existsByuserName("availableuser")).thenReturn(false);
 
         // When
         boolean result = userService.isUsernameAvailable("availableuser");
 
         // Then
         assertTrue(result);
-        verify(userRepository).findByuserName("availableuser");
+        verify(userRepository).existsByuserName("availableuser");
+    }
+
+    @Test
+    void testIsUsernameAvailable_FilterNegativeSkipsDatabase() {
+        // Given
+        when(userIdentityFilter.mightContainUsername("freshname")).thenReturn(false);
+
+        // When
+        boolean result = userService.isUsernameAvailable("freshname");
+
+        // Then
+        assertTrue(result);
+        verifyNoInteractions(userRepository);
     }
 
     @Test
     void testIsUsernameAvailable_NotAvailable() {
         // Given
-        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+        when(userIdentityFilter.mightContainUsername("testuser")).thenReturn(true);
+        when(userRepository.existsByuserName("testuser")).thenReturn(true);
 
         // When
         boolean result = userService.isUsernameAvailable("testuser");
 
         // Then
         assertFalse(result);
-        verify(userRepository).findByuserName("testuser");
+        verify(userRepository).existsByuserName("testuser");
     }
 
     @Test
@@ -364,5 +440,37 @@ class UserServiceTest {
         assertFalse(testUser.isActive());
         verify(userRepository).save(testUser);
     }
-}
 
+    @Test
+    void testGetUsersByRole_UsesIndexedQuery() {
+        // Given
+        Pageable pageable = PageRequest.of(0, 20);
+        when(userRepository.findByRoleWithoutPassword("USER", pageable))
+                .thenReturn(new PageImpl<>(List.of(testUser), pageable, 1));
+
+        // When
+        Page<UserEntry> result = userService.getUsersByRole("USER", pageable);
+
+        // Then
+        assertEquals(1, result.getTotalElements());
+        verify(userRepository).findByRoleWithoutPassword("USER", pageable);
+        verify(userRepository, never()).findAll();
+    }
+
+    @Test
+    void testForEachUser_StreamsAndClosesCursor() {
+        // Given
+        AtomicBoolean closed = new AtomicBoolean(false);
+        when(userRepository.streamAllWithoutPassword())
+                .thenReturn(Stream.of(testUser, testUser).onClose(() -> closed.set(true)));
+        List<UserEntry> visited = new ArrayList<>();
+
+        // When
+        long count = userService.forEachUser(null, visited::add);
+
+        // Then
+        assertEquals(2, count);
+        assertEquals(2, visited.size());
+        assertTrue(closed.get());
+    }
+}
@@ -0,0 +1,94 @@
+package org.adnan.travner.service;
+
+import org.adnan.travner.entry.UserEntry;
+import org.adnan.travner.repository.UserRepository;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserSummaryCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private UserSummaryCache userSummaryCache;
+    private UserEntry testUser;
+
+    @BeforeEach
+    void setUp() {
+        userSummaryCache = new UserSummaryCache(userRepository, 100, 60);
+
+        testUser = new UserEntry();
+        testUser.setId(new ObjectId());
+        testUser.setUserName("testuser");
+        testUser.setFirstName("Test");
+        testUser.setLastName("User");
+        testUser.setPassword("encodedpassword");
+        testUser.setRoles(List.of("USER"));
+    }
+
+    @Test
+    void testGetByUsername_LoadsOnceThenServesFromCache() {
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+
+        userSummaryCache.getByUsername("testuser");
+        Optional<UserSummaryCache.CachedUser> result = userSummaryCache.getByUsername("testuser");
+
+        assertTrue(result.isPresent());
+        assertEquals(testUser.getId(), result.get().getId());
+        verify(userRepository, times(1)).findByuserName("testuser");
+    }
+
+    @Test
+    void testUsernameLookupAlsoServesIdLookup() {
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+
+        userSummaryCache.getByUsername("testuser");
+        Optional<UserSummaryCache.CachedUser> byId = userSummaryCache.resolve(testUser.getId().toHexString());
+
+        assertEquals("testuser", byId.map(UserSummaryCache.CachedUser::getUserName).orElse(null));
+        verify(userRepository, never()).findById(any());
+    }
+
+    @Test
+    void testInvalidate_ForcesReload() {
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+
+        userSummaryCache.getByUsername("testuser");
+        userSummaryCache.invalidate(testUser);
+        userSummaryCache.getByUsername("testuser");
+
+        verify(userRepository, times(2)).findByuserName("testuser");
+    }
+
+    @Test
+    void testUnknownUserIsNotCached() {
+        when(userRepository.findByuserName("ghost")).thenReturn(null);
+
+        assertNull(userSummaryCache.findByUsername("ghost"));
+        assertNull(userSummaryCache.findByUsername("ghost"));
+
+        verify(userRepository, times(2)).findByuserName("ghost");
+    }
+
+    @Test
+    void testFindByUsername_ReturnsDetachedCopyWithoutPassword() {
+        when(userRepository.findByuserName("testuser")).thenReturn(testUser);
+
+        UserEntry copy = userSummaryCache.findByUsername("testuser");
+        copy.getRoles().add("ADMIN");
+
+        assertNull(copy.getPassword());
+        assertFalse(userSummaryCache.findByUsername("testuser").getRoles().contains("ADMIN"));
+    }
+}